@@ -0,0 +1,252 @@
+package app.control;
+
+import app.model.spread.SheetFile;
+import app.model.spread.SpreadsheetGraph;
+import app.model.spread.XlsxFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Command line entry point that recalculates sheet files, or Excel workbooks ending in .xlsx, without a window,
+ * for use on headless servers.
+ * Each workbook is loaded, has the overrides applied, is evaluated once, and has its output cells written
+ * as lines of "R#C#", a tab, and the value (or the literal text, or #ERR for a formula that failed).
+ * Workbooks are processed on virtual threads, with at most one recalculation per processor at a time.
+ * Nothing here touches AWT, so the JVM starts as quickly as it can.
+ *
+ * <pre>
+ * usage: BatchCalculator [options] workbook...
+ *   -s, --set R#C#=instructions   override a cell before recalculating, repeatable
+ *   -o, --output R#C#[,R#C#...]   cells to write, by default every cell that is not empty
+ *   -d, --directory dir           write each result to dir/name.out instead of standard output
+ *   -j, --parallelism n           number of workbooks to recalculate at once
+ * </pre>
+ *
+ * The exit status is 0 if every workbook evaluated cleanly, 1 if any failed or had cells that failed to
+ * evaluate, and 2 for bad usage.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class BatchCalculator {
+    private static final String USAGE = """
+            usage: BatchCalculator [options] workbook...
+              -s, --set R#C#=instructions   override a cell before recalculating, repeatable
+              -o, --output R#C#[,R#C#...]   cells to write, by default every cell that is not empty
+              -d, --directory dir           write each result to dir/name.out instead of standard output
+              -j, --parallelism n           number of workbooks to recalculate at once""";
+
+    private final Map<String, String> overrides = new LinkedHashMap<>();
+    private final List<String> outputs = new ArrayList<>();
+    private final List<Path> workbooks = new ArrayList<>();
+    private Path directory;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    BatchCalculator() {
+    }
+
+    /**
+     * Runs the batch calculation.
+     * @param args the command line arguments, see the class description
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BatchCalculator calculator = new BatchCalculator();
+        try {
+            calculator.parseArguments(args);
+        } catch (IllegalArgumentException exc) {
+            System.err.println(exc.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        System.exit(calculator.run(System.out, System.err));
+    }
+
+    /**
+     * Recalculates every workbook and writes the results.
+     * @param theOut where results go when not writing to a directory
+     * @param theErr where failures are reported
+     * @return the exit status
+     */
+    int run(PrintStream theOut, PrintStream theErr) {
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<Result>> futures = new ArrayList<>(workbooks.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path workbook : workbooks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return calculate(workbook);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            //Report in the order the workbooks were given, whatever order they finish in
+            int status = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                Path workbook = workbooks.get(i);
+                try {
+                    Result result = futures.get(i).get();
+                    for (String warning : result.warnings) {
+                        theErr.println(workbook + ": " + warning);
+                        status = 1;
+                    }
+                    if (directory == null) {
+                        if (workbooks.size() > 1) theOut.println("==> " + workbook + " <==");
+                        theOut.print(result.output);
+                    }
+                } catch (ExecutionException exc) {
+                    theErr.println(workbook + ": " + exc.getCause().getMessage());
+                    status = 1;
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                    return 1;
+                }
+            }
+            theOut.flush();
+            return status;
+        }
+    }
+
+    //Helper method that loads, evaluates and renders one workbook, writing it out when writing to a directory
+    private Result calculate(Path theWorkbook) throws IOException {
+        SheetFile file;
+        SpreadsheetGraph sheet;
+        List<String> warnings = new ArrayList<>();
+        if (theWorkbook.getFileName().toString().toLowerCase().endsWith(".xlsx")) {
+            //Excel workbooks keep their values, so only the cells the overrides affect are recalculated
+            sheet = XlsxFile.read(theWorkbook);
+            try {
+                sheet.setCellInstructions(overridesWithin(sheet.getRowCount(), sheet.getColumnCount(), warnings));
+            } catch (IllegalArgumentException exc) {
+                warnings.add(exc.getMessage());
+            }
+            file = SheetFile.of(sheet);
+        } else {
+            file = SheetFile.read(theWorkbook);
+            file.getInstructions().putAll(overridesWithin(file.getRowCount(), file.getColumnCount(), warnings));
+
+            sheet = new SpreadsheetGraph(file.getRowCount(), file.getColumnCount());
+            try {
+                sheet.setCellInstructions(file.getInstructions());
+            } catch (IllegalArgumentException exc) {
+                //The rest of the sheet is still evaluated, so report the failure and write what there is
+                warnings.add(exc.getMessage());
+            }
+        }
+
+        StringBuilder output = new StringBuilder();
+        if (outputs.isEmpty()) {
+            for (String rowColumn : file.getInstructions().keySet()) {
+                if (!file.getInstructions().get(rowColumn).isBlank()) render(sheet, rowColumn, output);
+            }
+        } else {
+            for (String rowColumn : outputs) render(sheet, rowColumn, output);
+        }
+
+        if (directory != null) {
+            String name = theWorkbook.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) name = name.substring(0, dot);
+            Files.writeString(directory.resolve(name + ".out"), output, StandardCharsets.UTF_8);
+        }
+        return new Result(output.toString(), warnings);
+    }
+
+    //Helper method that gets the overrides of cells inside a sheet, adding a warning for each one outside it,
+    //since setting many cells at once refuses them all over a single cell outside the sheet
+    private Map<String, String> overridesWithin(int theRows, int theColumns, List<String> theWarnings) {
+        Map<String, String> within = new LinkedHashMap<>();
+        for (Map.Entry<String, String> override : overrides.entrySet()) {
+            String rowColumn = override.getKey();
+            int columnMark = rowColumn.indexOf('C');
+            long row = Long.parseLong(rowColumn, 1, columnMark, 10);
+            long column = Long.parseLong(rowColumn, columnMark + 1, rowColumn.length(), 10);
+            if (row >= 1 && row <= theRows && column >= 1 && column <= theColumns) {
+                within.put(rowColumn, override.getValue());
+            } else {
+                theWarnings.add("Override %s is outside the %dx%d sheet, not set".formatted(rowColumn, theRows, theColumns));
+            }
+        }
+        return within;
+    }
+
+    //Helper method that appends a line with a cell's value, its literal text, or #ERR if its formula failed
+    private static void render(SpreadsheetGraph theSheet, String theRowColumn, StringBuilder theOutput) {
+        Double value = theSheet.getCellValue(theRowColumn);
+        String instructions = theSheet.getCellInstructions(theRowColumn);
+        theOutput.append(theRowColumn).append('\t');
+        if (value != null) theOutput.append(value);
+        else if (instructions != null && instructions.startsWith("=")) theOutput.append("#ERR");
+        else if (instructions != null) theOutput.append(instructions);
+        theOutput.append('\n');
+    }
+
+    //Helper method that reads the options and workbooks from the command line
+    void parseArguments(String[] theArgs) {
+        for (int i = 0; i < theArgs.length; i++) {
+            String arg = theArgs[i];
+            switch (arg) {
+                case "-s", "--set" -> {
+                    String override = optionValue(theArgs, ++i, arg);
+                    int equals = override.indexOf('=');
+                    if (equals <= 0) throw new IllegalArgumentException("Override %s is not R#C#=instructions".formatted(override));
+                    overrides.put(override.substring(0, equals).trim().toUpperCase(), override.substring(equals + 1));
+                }
+                case "-o", "--output" -> {
+                    for (String rowColumn : optionValue(theArgs, ++i, arg).split(",")) {
+                        if (!rowColumn.isBlank()) outputs.add(rowColumn.trim().toUpperCase());
+                    }
+                }
+                case "-d", "--directory" -> {
+                    directory = Path.of(optionValue(theArgs, ++i, arg));
+                    if (!Files.isDirectory(directory)) throw new IllegalArgumentException("%s is not a directory".formatted(directory));
+                }
+                case "-j", "--parallelism" -> {
+                    try {
+                        parallelism = Integer.parseInt(optionValue(theArgs, ++i, arg));
+                    } catch (NumberFormatException exc) {
+                        parallelism = 0;
+                    }
+                    if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be a positive number");
+                }
+                default -> {
+                    if (arg.startsWith("-")) throw new IllegalArgumentException("Unknown option " + arg);
+                    workbooks.add(Path.of(arg));
+                }
+            }
+        }
+        for (String rowColumn : overrides.keySet()) {
+            if (!rowColumn.matches("R\\d+C\\d+")) throw new IllegalArgumentException("Override %s is not R#C#=instructions".formatted(rowColumn));
+        }
+        for (String rowColumn : outputs) {
+            if (!rowColumn.matches("R\\d+C\\d+")) throw new IllegalArgumentException("Output %s is not R#C#".formatted(rowColumn));
+        }
+        if (workbooks.isEmpty()) throw new IllegalArgumentException("No workbooks given");
+    }
+
+    //Helper method that gets the value following an option
+    private static String optionValue(String[] theArgs, int theIndex, String theOption) {
+        if (theIndex >= theArgs.length) throw new IllegalArgumentException("Option %s needs a value".formatted(theOption));
+        return theArgs[theIndex];
+    }
+
+    //Rendered output of one workbook, and the failures to report for it
+    private record Result(String output, List<String> warnings) {
+    }
+}
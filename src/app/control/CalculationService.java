@@ -0,0 +1,248 @@
+package app.control;
+
+import app.model.spread.SheetFile;
+import app.model.spread.SheetOverlay;
+import app.model.spread.SpreadsheetGraph;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP service answering "what-if" questions about a template sheet. Each request is worked out on its
+ * own {@link SheetOverlay} of the template, so requests never see each other's inputs and only the cells
+ * depending on the inputs are recalculated. Requests are handled on virtual threads.
+ *
+ * <p>A request is a POST to /calculate with a body such as
+ * <pre>{"inputs": {"R1C1": 5, "R1C2": "text", "R1C3": null}, "outputs": ["R10C1", "R10C2"]}</pre>
+ * where a null input clears the cell. The answer holds the value of each output cell, its literal text,
+ * or null if it has neither:
+ * <pre>{"outputs": {"R10C1": 42.0, "R10C2": null}, "error": "Divide by zero"}</pre>
+ * Without "outputs", every cell the inputs changed is returned. "error" is only present when a cell
+ * failed to evaluate. Malformed requests, and requests naming cells outside the template, are answered with
+ * status 400 and an "error".
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class CalculationService {
+    private static final Pattern CELLREF = Pattern.compile("R\\d+C\\d+");
+    private static final String USAGE = "usage: CalculationService [--host address] [--port port] template.sheet";
+
+    private final SpreadsheetGraph template;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Constructor for a service over a template sheet.
+     * @param theTemplate the evaluated sheet to answer from, which must not be edited while the service runs
+     */
+    public CalculationService(SpreadsheetGraph theTemplate) {
+        template = theTemplate;
+        //Plans the template's dependencies now rather than on the first request
+        new SheetOverlay(template);
+    }
+
+    /**
+     * Runs the service over a sheet file until the process is stopped. It listens on the loopback
+     * address and port 8080 unless told otherwise.
+     * @param args the command line arguments: [--host address] [--port port] template.sheet
+     * @throws IOException if the template could not be read or the server could not start
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        int port = 8080;
+        Path templatePath = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--host" -> host = args[++i];
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    default -> {
+                        if (templatePath != null || args[i].startsWith("-")) throw new IllegalArgumentException();
+                        templatePath = Path.of(args[i]);
+                    }
+                }
+            }
+            if (templatePath == null) throw new IllegalArgumentException();
+        } catch (RuntimeException exc) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        SheetFile file = SheetFile.read(templatePath);
+        SpreadsheetGraph template = new SpreadsheetGraph(file.getRowCount(), file.getColumnCount());
+        try {
+            template.setCellInstructions(file.getInstructions());
+        } catch (IllegalArgumentException exc) {
+            System.err.println(templatePath + ": " + exc.getMessage());
+        }
+
+        CalculationService service = new CalculationService(template);
+        service.start(new InetSocketAddress(host, port));
+        System.err.println("Serving " + templatePath + " on http://" + host + ":" + service.getPort() + "/calculate");
+    }
+
+    /**
+     * Starts listening.
+     * @param theAddress the address and port to listen on, port 0 picking any free port
+     * @throws IOException if the server could not bind
+     */
+    public synchronized void start(InetSocketAddress theAddress) throws IOException {
+        if (server != null) throw new IllegalStateException("Service already started");
+        server = HttpServer.create(theAddress, 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/calculate", this::handleCalculate);
+        server.start();
+    }
+
+    /**
+     * Stops listening, waiting for requests in progress to finish.
+     */
+    public synchronized void stop() {
+        if (server == null) return;
+        server.stop(0);
+        executor.close();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * Gets the port the service listens on.
+     * @return the port
+     */
+    public synchronized int getPort() {
+        if (server == null) throw new IllegalStateException("Service not started");
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Answers a calculation request, without going through HTTP.
+     * @param theRequest the request body, as described for the service
+     * @return the answer body
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    public String calculate(String theRequest) {
+        if (!(Json.parse(theRequest) instanceof Map<?, ?> request))
+            throw new IllegalArgumentException("Request must be a JSON object");
+
+        Map<String, String> inputs = new LinkedHashMap<>();
+        Object inputObject = request.get("inputs");
+        if (inputObject != null) {
+            if (!(inputObject instanceof Map<?, ?> inputMap)) throw new IllegalArgumentException("\"inputs\" must be an object");
+            for (Map.Entry<?, ?> entry : inputMap.entrySet()) {
+                String rowColumn = checkCellRef(entry.getKey());
+                Object value = entry.getValue();
+                if (value == null) inputs.put(rowColumn, "");
+                else if (value instanceof Double number) inputs.put(rowColumn, plainNumber(number));
+                else if (value instanceof String text && !text.trim().startsWith("=")) inputs.put(rowColumn, text);
+                else throw new IllegalArgumentException("Input %s must be a number, text or null".formatted(rowColumn));
+            }
+        }
+
+        List<String> outputs = null;
+        Object outputObject = request.get("outputs");
+        if (outputObject != null) {
+            if (!(outputObject instanceof List<?> outputList)) throw new IllegalArgumentException("\"outputs\" must be an array");
+            outputs = new ArrayList<>(outputList.size());
+            for (Object rowColumn : outputList) outputs.add(checkCellRef(rowColumn));
+        }
+
+        SheetOverlay overlay = new SheetOverlay(template);
+        String error = null;
+        try {
+            overlay.setCellInstructions(inputs);
+        } catch (IllegalArgumentException exc) {
+            error = exc.getMessage();
+        }
+
+        Collection<String> answered = outputs != null ? outputs : new TreeSet<>(overlay.getChangedCells());
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String rowColumn : answered) {
+            Double value = overlay.getCellValue(rowColumn);
+            String instructions = overlay.getCellInstructions(rowColumn);
+            if (value != null) values.put(rowColumn, value);
+            else if (instructions != null && !instructions.startsWith("=")) values.put(rowColumn, instructions);
+            else values.put(rowColumn, null);
+        }
+
+        Map<String, Object> answer = new LinkedHashMap<>();
+        answer.put("outputs", values);
+        if (error != null) answer.put("error", error);
+        StringBuilder body = new StringBuilder();
+        Json.write(answer, body);
+        return body.toString();
+    }
+
+    //Helper method that answers requests to /calculate
+    private void handleCalculate(HttpExchange theExchange) throws IOException {
+        try (theExchange) {
+            if (!"POST".equals(theExchange.getRequestMethod())) {
+                theExchange.getResponseHeaders().set("Allow", "POST");
+                respond(theExchange, 405, errorBody("Use POST"));
+                return;
+            }
+            String request = new String(theExchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            try {
+                respond(theExchange, 200, calculate(request));
+            } catch (IllegalArgumentException exc) {
+                respond(theExchange, 400, errorBody(exc.getMessage()));
+            } catch (RuntimeException exc) {
+                respond(theExchange, 500, errorBody(exc.toString()));
+            }
+        }
+    }
+
+    //Helper method that sends a JSON body
+    private static void respond(HttpExchange theExchange, int theStatus, String theBody) throws IOException {
+        byte[] bytes = theBody.getBytes(StandardCharsets.UTF_8);
+        theExchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        theExchange.sendResponseHeaders(theStatus, bytes.length);
+        try (OutputStream body = theExchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    //Helper method that gives a body holding only an error
+    private static String errorBody(String theMessage) {
+        StringBuilder body = new StringBuilder();
+        Json.write(Map.of("error", String.valueOf(theMessage)), body);
+        return body.toString();
+    }
+
+    //Helper method that checks a JSON value is a cellref inside the template
+    private String checkCellRef(Object theValue) {
+        if (!(theValue instanceof String rowColumn && CELLREF.matcher(rowColumn).matches()))
+            throw new IllegalArgumentException("%s is not a cell in the format R#C#".formatted(theValue));
+        int columnMark = rowColumn.indexOf('C');
+        long row = Long.parseLong(rowColumn, 1, columnMark, 10);
+        long column = Long.parseLong(rowColumn, columnMark + 1, rowColumn.length(), 10);
+        if (row < 1 || row > template.getRowCount() || column < 1 || column > template.getColumnCount())
+            throw new IllegalArgumentException("Cell %s is outside the %dx%d sheet".formatted(
+                    rowColumn, template.getRowCount(), template.getColumnCount()));
+        return rowColumn;
+    }
+
+    //Helper method that writes a number without an exponent, as the sheet reads numbers
+    private static String plainNumber(double theNumber) {
+        return theNumber == 0 ? "0" : BigDecimal.valueOf(theNumber).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,238 @@
+package app.control;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the calculation service. Parsing gives maps, lists, strings, doubles, booleans
+ * and null; writing takes the same, where non-finite doubles are written as null.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+final class Json {
+    private final String text;
+    private int position;
+
+    private Json(String theText) {
+        text = theText;
+    }
+
+    /**
+     * Parses a JSON document.
+     * @param theText the document
+     * @return the value of the document
+     * @throws IllegalArgumentException if the document is not valid JSON
+     */
+    static Object parse(String theText) {
+        Json json = new Json(theText);
+        Object value = json.nextValue();
+        json.skipWhitespace();
+        if (json.position != theText.length()) throw json.error("Unexpected trailing characters");
+        return value;
+    }
+
+    /**
+     * Writes a value as JSON.
+     * @param theValue a map with string keys, an iterable, a string, a number, a boolean or null
+     * @param theOutput where to write the JSON
+     */
+    static void write(Object theValue, StringBuilder theOutput) {
+        if (theValue == null) {
+            theOutput.append("null");
+        } else if (theValue instanceof String string) {
+            quote(string, theOutput);
+        } else if (theValue instanceof Double number) {
+            if (number.isNaN() || number.isInfinite()) theOutput.append("null");
+            else theOutput.append(number.doubleValue());
+        } else if (theValue instanceof Number || theValue instanceof Boolean) {
+            theOutput.append(theValue);
+        } else if (theValue instanceof Map<?, ?> map) {
+            theOutput.append('{');
+            Iterator<? extends Map.Entry<?, ?>> entries = map.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<?, ?> entry = entries.next();
+                quote(entry.getKey().toString(), theOutput);
+                theOutput.append(':');
+                write(entry.getValue(), theOutput);
+                if (entries.hasNext()) theOutput.append(',');
+            }
+            theOutput.append('}');
+        } else if (theValue instanceof Iterable<?> iterable) {
+            theOutput.append('[');
+            Iterator<?> elements = iterable.iterator();
+            while (elements.hasNext()) {
+                write(elements.next(), theOutput);
+                if (elements.hasNext()) theOutput.append(',');
+            }
+            theOutput.append(']');
+        } else {
+            throw new IllegalArgumentException("Cannot write %s as JSON".formatted(theValue.getClass().getName()));
+        }
+    }
+
+    //Helper method that writes a string with JSON escapes
+    private static void quote(String theString, StringBuilder theOutput) {
+        theOutput.append('"');
+        for (int i = 0; i < theString.length(); i++) {
+            char c = theString.charAt(i);
+            switch (c) {
+                case '"' -> theOutput.append("\\\"");
+                case '\\' -> theOutput.append("\\\\");
+                case '\n' -> theOutput.append("\\n");
+                case '\r' -> theOutput.append("\\r");
+                case '\t' -> theOutput.append("\\t");
+                default -> {
+                    if (c < 0x20) theOutput.append("\\u%04x".formatted((int) c));
+                    else theOutput.append(c);
+                }
+            }
+        }
+        theOutput.append('"');
+    }
+
+    //Helper method that parses the value starting at the current position
+    private Object nextValue() {
+        skipWhitespace();
+        if (position >= text.length()) throw error("Unexpected end of document");
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return nextObject();
+            case '[':
+                return nextArray();
+            case '"':
+                return nextString();
+            case 't':
+                return nextKeyword("true", Boolean.TRUE);
+            case 'f':
+                return nextKeyword("false", Boolean.FALSE);
+            case 'n':
+                return nextKeyword("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return nextNumber();
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    //Helper method that parses an object
+    private Map<String, Object> nextObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') throw error("Expected a member name");
+            String key = nextString();
+            skipWhitespace();
+            expect(':');
+            object.put(key, nextValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    //Helper method that parses an array
+    private List<Object> nextArray() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            array.add(nextValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    //Helper method that parses a string, the current position being its opening quote
+    private String nextString() {
+        StringBuilder string = new StringBuilder();
+        position++;
+        while (true) {
+            if (position >= text.length()) throw error("Unterminated string");
+            char c = text.charAt(position++);
+            if (c == '"') return string.toString();
+            if (c != '\\') {
+                string.append(c);
+                continue;
+            }
+            if (position >= text.length()) throw error("Unterminated string");
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case '"', '\\', '/' -> string.append(escaped);
+                case 'b' -> string.append('\b');
+                case 'f' -> string.append('\f');
+                case 'n' -> string.append('\n');
+                case 'r' -> string.append('\r');
+                case 't' -> string.append('\t');
+                case 'u' -> {
+                    if (position + 4 > text.length()) throw error("Bad unicode escape");
+                    try {
+                        string.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException exc) {
+                        throw error("Bad unicode escape");
+                    }
+                    position += 4;
+                }
+                default -> throw error("Bad escape '\\" + escaped + "'");
+            }
+        }
+    }
+
+    //Helper method that parses a number
+    private Double nextNumber() {
+        int start = position;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) position++;
+        try {
+            return Double.parseDouble(text.substring(start, position));
+        } catch (NumberFormatException exc) {
+            throw error("Bad number");
+        }
+    }
+
+    //Helper method that parses true, false or null
+    private Object nextKeyword(String theKeyword, Object theValue) {
+        if (!text.startsWith(theKeyword, position)) throw error("Unexpected characters");
+        position += theKeyword.length();
+        return theValue;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) position++;
+    }
+
+    private char peek() {
+        if (position >= text.length()) throw error("Unexpected end of document");
+        return text.charAt(position);
+    }
+
+    private void expect(char theExpected) {
+        if (peek() != theExpected) throw error("Expected '" + theExpected + "'");
+        position++;
+    }
+
+    private IllegalArgumentException error(String theMessage) {
+        return new IllegalArgumentException("%s at character %d".formatted(theMessage, position));
+    }
+}
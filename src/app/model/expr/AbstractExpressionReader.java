@@ -16,9 +16,15 @@ import java.util.regex.Pattern;
 abstract class AbstractExpressionReader implements ExpressionReader {
     private static final Pattern EXPRESSION_MATCHER;
     private static final Pattern CELLREF_MATCHER;
+    private static final Pattern RANGE_MATCHER;
     private static final Pattern NUMBER_MATCHER;
     private static final Pattern WORD_MATCHER;
 
+    /**
+     * What a reference to a deleted cell is rewritten to, which does not compile.
+     */
+    static final String DELETED_REF = "#REF!";
+
     static {
         // regex that first looks for cellref, then floating-point, then integer,
         // then operators and parentheses, then words, and finally symbols
@@ -26,6 +32,8 @@ abstract class AbstractExpressionReader implements ExpressionReader {
         EXPRESSION_MATCHER = Pattern.compile(lExpRegex);
         final String lCellRefRegex = "R\\d+C\\d+";
         CELLREF_MATCHER = Pattern.compile(lCellRefRegex);
+        // a cellref, or two cellrefs joined by a colon for a range, allowing whitespace around the colon
+        RANGE_MATCHER = Pattern.compile("R(\\d+)C(\\d+)(?:\\s*:\\s*R(\\d+)C(\\d+))?");
 
         // checks for negative numbers that have the sign, and positive ones
         // that do not have the sign
@@ -60,11 +68,127 @@ abstract class AbstractExpressionReader implements ExpressionReader {
         return lExpressionTokens;
     }
 
+    /**
+     * Splits a cellref into its row and column, counted from zero.
+     * @param pCellRef the cellref of the format "R#C#"
+     * @return an array of the row then the column
+     */
+    static int[] toRowColumn(final String pCellRef) {
+        final int lColumnMark = pCellRef.indexOf('C');
+        return new int[] {
+                Integer.parseInt(pCellRef.substring(1, lColumnMark)) - 1,
+                Integer.parseInt(pCellRef.substring(lColumnMark + 1)) - 1
+        };
+    }
+
+    /**
+     * Joins a row and column, counted from zero, into a cellref.
+     * @param pRow the row of interest
+     * @param pColumn the column of interest
+     * @return the cellref of the format "R#C#"
+     */
+    static String toCellRef(final int pRow, final int pColumn) {
+        return "R" + (pRow + 1) + "C" + (pColumn + 1);
+    }
+
+    /**
+     * Rewrites the cellrefs and ranges of an expression for cells moved around the sheet, keeping the rest of it
+     * as it was written. The cellrefs are found as the tokenizer finds them.
+     * @param pExpression the expression to rewrite
+     * @param pMove where the cells move to
+     * @return the rewritten expression, where references to deleted cells read {@value #DELETED_REF}
+     */
+    static String moveReferences(final String pExpression, final ReferenceMove pMove) {
+        final String lExpression = pExpression.toUpperCase();
+        final Matcher lTokens = EXPRESSION_MATCHER.matcher(lExpression);
+        final Matcher lRange = RANGE_MATCHER.matcher(lExpression);
+        final StringBuilder lMoved = new StringBuilder(lExpression.length() + 8);
+        int lCopied = 0;
+        while (lTokens.find()) {
+            if (!CELLREF_MATCHER.matcher(lTokens.group()).matches()) continue;
+            lRange.region(lTokens.start(), lExpression.length());
+            if (!lRange.lookingAt()) continue;
+            if (!pMove.movesSheet(sheetBefore(lExpression, lRange.start()))) {
+                lTokens.region(lRange.end(), lExpression.length());
+                continue;
+            }
+
+            final int lFirstRow = Integer.parseInt(lRange.group(1)) - 1;
+            final int lFirstCol = Integer.parseInt(lRange.group(2)) - 1;
+            final String lReplacement;
+            if (lRange.group(3) == null) {
+                final int[] lCell = pMove.moveCell(lFirstRow, lFirstCol);
+                if (lCell == null) lReplacement = DELETED_REF;
+                else if (lCell[0] == lFirstRow && lCell[1] == lFirstCol) lReplacement = null;
+                else lReplacement = toCellRef(lCell[0], lCell[1]);
+            } else {
+                final int lLastRow = Integer.parseInt(lRange.group(3)) - 1;
+                final int lLastCol = Integer.parseInt(lRange.group(4)) - 1;
+                final int lTop = Math.min(lFirstRow, lLastRow);
+                final int lLeft = Math.min(lFirstCol, lLastCol);
+                final int lBottom = Math.max(lFirstRow, lLastRow);
+                final int lRight = Math.max(lFirstCol, lLastCol);
+                final int[] lSpan = pMove.moveRange(lTop, lLeft, lBottom, lRight);
+                if (lSpan == null) lReplacement = DELETED_REF;
+                else if (lSpan[0] == lTop && lSpan[1] == lLeft && lSpan[2] == lBottom && lSpan[3] == lRight) {
+                    lReplacement = null;
+                } else lReplacement = toCellRef(lSpan[0], lSpan[1]) + ":" + toCellRef(lSpan[2], lSpan[3]);
+            }
+
+            if (lReplacement != null) {
+                lMoved.append(lExpression, lCopied, lRange.start()).append(lReplacement);
+                lCopied = lRange.end();
+            }
+            // carry on after the whole range, rather than at its second cellref
+            lTokens.region(lRange.end(), lExpression.length());
+        }
+        return lCopied == 0 ? pExpression : lMoved.append(lExpression, lCopied, lExpression.length()).toString();
+    }
+
+    /**
+     * Finds the name of the sheet that qualifies a cellref or range, as in "INPUTS!R1C1", allowing whitespace
+     * around the "!" as the tokenizer does.
+     * @param pExpression the expression
+     * @param pAt where the cellref or range starts
+     * @return the name of the sheet, or null if the cellref or range is not qualified
+     */
+    static String sheetBefore(final String pExpression, final int pAt) {
+        int lEnd = pAt;
+        while (lEnd > 0 && Character.isWhitespace(pExpression.charAt(lEnd - 1))) lEnd--;
+        if (lEnd == 0 || pExpression.charAt(lEnd - 1) != '!') return null;
+        lEnd--;
+        while (lEnd > 0 && Character.isWhitespace(pExpression.charAt(lEnd - 1))) lEnd--;
+        int lStart = lEnd;
+        while (lStart > 0 && isWordCharacter(pExpression.charAt(lStart - 1))) lStart--;
+        return lStart == lEnd ? null : pExpression.substring(lStart, lEnd).toUpperCase();
+    }
+
+    private static boolean isWordCharacter(final char pCharacter) {
+        return pCharacter >= 'A' && pCharacter <= 'Z' || pCharacter >= 'a' && pCharacter <= 'z'
+                || pCharacter >= '0' && pCharacter <= '9' || pCharacter == '_';
+    }
+
     @Override
     public List<String> getCellRefsOf(final String pExpression) {
         final List<String> lCellRefs = new LinkedList<>();
-        final Matcher lCellRefMatcher = CELLREF_MATCHER.matcher(pExpression);
-        while (lCellRefMatcher.find()) lCellRefs.add(lCellRefMatcher.group());
+        final Matcher lCellRefMatcher = RANGE_MATCHER.matcher(pExpression);
+        while (lCellRefMatcher.find()) {
+            final String lSheet = sheetBefore(pExpression, lCellRefMatcher.start());
+            final String lQualifier = lSheet == null ? "" : lSheet + "!";
+            if (lCellRefMatcher.group(3) == null) lCellRefs.add(lQualifier + lCellRefMatcher.group());
+            else {
+                // a range refers to every cell within it
+                final int lFirstRow = Integer.parseInt(lCellRefMatcher.group(1));
+                final int lFirstCol = Integer.parseInt(lCellRefMatcher.group(2));
+                final int lLastRow = Integer.parseInt(lCellRefMatcher.group(3));
+                final int lLastCol = Integer.parseInt(lCellRefMatcher.group(4));
+                for (int row = Math.min(lFirstRow, lLastRow); row <= Math.max(lFirstRow, lLastRow); row++) {
+                    for (int col = Math.min(lFirstCol, lLastCol); col <= Math.max(lFirstCol, lLastCol); col++) {
+                        lCellRefs.add(lQualifier + "R" + row + "C" + col);
+                    }
+                }
+            }
+        }
         return lCellRefs;
     }
 
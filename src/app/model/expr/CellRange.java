@@ -0,0 +1,192 @@
+package app.model.expr;
+
+import java.util.Map;
+
+/**
+ * A rectangular block of cell values passed to a {@link RangeFunction}, such as the table
+ * "R1C1:R10C3" in "VLOOKUP(5, R1C1:R10C3, 2)".
+ * <p>
+ * Values are addressed relative to the top left cell of the range and are read from the sheet as they
+ * are asked for, so passing a large range costs nothing until it is read. Cells that are empty or that
+ * do not hold a number read as {@link Double#NaN}. A plain number passed where a range is expected is a
+ * range of one cell that does not sit anywhere on the sheet.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public final class CellRange {
+    private final int iFirstRow;
+    private final int iFirstColumn;
+    private final int iRowCount;
+    private final int iColumnCount;
+
+    // a range holds either its values, or the table of cells to read them from
+    private final double[] iValues;
+    private final Map<String, Double> iCells;
+
+    private CellRange(final int pFirstRow, final int pFirstColumn, final int pRowCount, final int pColumnCount,
+                      final double[] pValues, final Map<String, Double> pCells) {
+        super();
+        this.iFirstRow = pFirstRow;
+        this.iFirstColumn = pFirstColumn;
+        this.iRowCount = pRowCount;
+        this.iColumnCount = pColumnCount;
+        this.iValues = pValues;
+        this.iCells = pCells;
+    }
+
+    /**
+     * Creates a range that reads its values from a table of cells.
+     * @param pFirstRow the row of the top left cell, counted from zero
+     * @param pFirstColumn the column of the top left cell, counted from zero
+     * @param pRowCount the number of rows in the range
+     * @param pColumnCount the number of columns in the range
+     * @param pCells the table of cells and their values
+     * @throws IllegalArgumentException if the range has more cells than can be read by position
+     */
+    CellRange(final int pFirstRow, final int pFirstColumn, final int pRowCount, final int pColumnCount,
+              final Map<String, Double> pCells) {
+        this(pFirstRow, pFirstColumn, pRowCount, pColumnCount, null, pCells);
+        if ((long) pRowCount * pColumnCount > Integer.MAX_VALUE) throw new IllegalArgumentException(
+                "Range of %d by %d cells is too large".formatted(pRowCount, pColumnCount)
+        );
+    }
+
+    /**
+     * Creates a range of a single value that does not sit on the sheet.
+     * @param pValue the value
+     * @return the range
+     */
+    public static CellRange of(final double pValue) {
+        return new CellRange(-1, -1, 1, 1, new double[] {pValue}, null);
+    }
+
+    /**
+     * Gets a value in the range.
+     * @param pRow the row within the range, counted from zero
+     * @param pColumn the column within the range, counted from zero
+     * @return the value, or NaN if the cell is empty or not a number
+     * @throws IndexOutOfBoundsException if the row or column lies outside the range
+     */
+    public double get(final int pRow, final int pColumn) {
+        if (pRow < 0 || pRow >= this.iRowCount || pColumn < 0 || pColumn >= this.iColumnCount)
+            throw new IndexOutOfBoundsException("(%d, %d) is outside of the range".formatted(pRow, pColumn));
+        return this.get(pRow * this.iColumnCount + pColumn);
+    }
+
+    /**
+     * Gets a value by its position when the range is read row by row.
+     * @param pIndex the position, counted from zero
+     * @return the value, or NaN if the cell is empty or not a number
+     */
+    public double get(final int pIndex) {
+        if (this.iValues != null) return this.iValues[pIndex];
+        final int lRow = this.iFirstRow + pIndex / this.iColumnCount;
+        final int lColumn = this.iFirstColumn + pIndex % this.iColumnCount;
+        if (this.iCells instanceof SheetCells lSheet
+                && (lRow >= lSheet.getRowCount() || lColumn >= lSheet.getColumnCount())) {
+            return Double.NaN; // past the edge of the sheet, where no cell can hold anything
+        }
+        final Double lValue = this.iCells.get(AbstractExpressionReader.toCellRef(lRow, lColumn));
+        return lValue == null ? Double.NaN : lValue;
+    }
+
+    /**
+     * Reads one column of the range.
+     * @param pColumn the column within the range, counted from zero
+     * @return the values of the column from top to bottom, NaN where a cell is empty or not a number
+     */
+    public double[] getColumn(final int pColumn) {
+        final double[] lColumn = new double[this.iRowCount];
+        for (int row = 0; row < lColumn.length; row++) lColumn[row] = this.get(row, pColumn);
+        return lColumn;
+    }
+
+    /**
+     * Searches one column of the range for a value. When the table the range reads from keeps
+     * lookup indexes, the search goes through the index of the column rather than the cells.
+     * @param pValue the value to look for
+     * @param pColumn the column within the range to search, counted from zero
+     * @param pType 0 for an equal value, 1 for the largest value not above, -1 for the smallest value not below
+     * @return the row within the range of the match, counted from zero, or -1 if there is none;
+     * between equal matches the first row wins
+     */
+    public int findInColumn(final double pValue, final int pColumn, final int pType) {
+        if (pColumn < 0 || pColumn >= this.iColumnCount)
+            throw new IndexOutOfBoundsException("Column %d is outside of the range".formatted(pColumn));
+
+        if (this.iCells instanceof IndexedCells lIndexed) {
+            return lIndexed.getLookupIndexCache().get(this, pColumn).find(pValue, pType);
+        }
+        return find(pValue, pType, this.getColumn(pColumn));
+    }
+
+    /**
+     * Searches one row of the range for a value, by scanning it.
+     * @param pValue the value to look for
+     * @param pRow the row within the range to search, counted from zero
+     * @param pType 0 for an equal value, 1 for the largest value not above, -1 for the smallest value not below
+     * @return the column within the range of the match, counted from zero, or -1 if there is none;
+     * between equal matches the first column wins
+     */
+    public int findInRow(final double pValue, final int pRow, final int pType) {
+        final double[] lRow = new double[this.iColumnCount];
+        for (int col = 0; col < lRow.length; col++) lRow[col] = this.get(pRow, col);
+        return find(pValue, pType, lRow);
+    }
+
+    private static int find(final double pValue, final int pType, final double[] pValues) {
+        int lMatch = -1;
+        for (int i = 0; i < pValues.length; i++) {
+            final double lCandidate = pValues[i];
+            if (Double.isNaN(lCandidate)) continue;
+            if (pType == 0) {
+                if (lCandidate == pValue) return i;
+            } else if (pType * (pValue - lCandidate) >= 0 // on the right side of the value
+                    && (lMatch == -1 || pType * (lCandidate - pValues[lMatch]) > 0)) { // and closer than the last
+                lMatch = i;
+            }
+        }
+        return lMatch;
+    }
+
+    /**
+     * Gets the number of cells in the range.
+     * @return the number of cells
+     */
+    public int size() {
+        return this.iRowCount * this.iColumnCount;
+    }
+
+    /**
+     * Gets the number of rows in the range.
+     * @return the row count
+     */
+    public int getRowCount() {
+        return this.iRowCount;
+    }
+
+    /**
+     * Gets the number of columns in the range.
+     * @return the column count
+     */
+    public int getColumnCount() {
+        return this.iColumnCount;
+    }
+
+    /**
+     * Gets the sheet row of the top left cell.
+     * @return the row, counted from zero, or -1 if the range is a plain value
+     */
+    public int getFirstRow() {
+        return this.iFirstRow;
+    }
+
+    /**
+     * Gets the sheet column of the top left cell.
+     * @return the column, counted from zero, or -1 if the range is a plain value
+     */
+    public int getFirstColumn() {
+        return this.iFirstColumn;
+    }
+}
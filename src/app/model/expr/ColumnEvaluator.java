@@ -0,0 +1,416 @@
+package app.model.expr;
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Evaluates one formula shape down a whole column at once.
+ * <p>
+ * A template is the expression as written for its anchor row, such as "R1C1*R1C2+3" anchored
+ * at row 0. Every cellref in the template keeps its column but its row is taken relative to the
+ * anchor, so evaluating the template for row {@code i} reads the cells shifted down by {@code i}.
+ * <p>
+ * Templates that only use numbers, cellrefs, parentheses and the arithmetic operators are compiled
+ * into a small postfix program that is run over blocks of rows with one tight primitive loop per
+ * operator, which the JIT turns into SIMD instructions. Any other template (for instance one that
+ * calls a function) falls back to the {@link GrammarExpressionReader}, one row at a time.
+ * <p>
+ * Column values use {@link Double#NaN} to mark cells that do not hold a number, and results use
+ * {@link Double#NaN} to mark rows that failed to evaluate (such as a division by zero). Rows outside
+ * a column, and columns that are not given at all, are empty cells and so read as zero.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public final class ColumnEvaluator {
+    /** number of rows held in each register while running the postfix program */
+    private static final int BLOCK_SIZE = 1024;
+
+    private static final byte OP_CONSTANT = 0;
+    private static final byte OP_CELL = 1;
+    private static final byte OP_ADD = 2;
+    private static final byte OP_SUBTRACT = 3;
+    private static final byte OP_MULTIPLY = 4;
+    private static final byte OP_DIVIDE = 5;
+    private static final byte OP_MODULUS = 6;
+    private static final byte OP_POWER = 7;
+
+    private final String iTemplate;
+    private final int iAnchorRow;
+    private final boolean iVectorized;
+
+    // the postfix program, each array is indexed by instruction
+    private final byte[] iOps;
+    private final double[] iConstants;
+    private final int[] iColumns;
+    private final int[] iRowOffsets;
+    private final int iStackDepth;
+
+    private ColumnEvaluator(final String pTemplate, final int pAnchorRow, final Compiler pCompiler) {
+        super();
+        this.iTemplate = pTemplate;
+        this.iAnchorRow = pAnchorRow;
+        this.iVectorized = pCompiler != null;
+        if (pCompiler == null) {
+            this.iOps = new byte[0];
+            this.iConstants = new double[0];
+            this.iColumns = new int[0];
+            this.iRowOffsets = new int[0];
+            this.iStackDepth = 0;
+        } else {
+            this.iOps = Arrays.copyOf(pCompiler.iOps, pCompiler.iSize);
+            this.iConstants = Arrays.copyOf(pCompiler.iConstants, pCompiler.iSize);
+            this.iColumns = Arrays.copyOf(pCompiler.iColumns, pCompiler.iSize);
+            this.iRowOffsets = Arrays.copyOf(pCompiler.iRowOffsets, pCompiler.iSize);
+            this.iStackDepth = pCompiler.iMaxDepth;
+        }
+    }
+
+    /**
+     * Compiles a template for evaluation down a column.
+     * @param pTemplate the expression as written for the anchor row, without the leading "="
+     * @param pAnchorRow the row, counted from zero, that the template was written for
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template is an arithmetic expression that is malformed
+     */
+    public static ColumnEvaluator compile(final String pTemplate, final int pAnchorRow)
+            throws IllegalArgumentException {
+        final Deque<String> lTokens = AbstractExpressionReader.tokenize(pTemplate);
+        if (lTokens.isEmpty()) lTokens.addLast("0");
+
+        // functions and comparisons are left to the scalar reader
+        for (final String token : lTokens) {
+            if (token.matches("\\w+") && !token.matches("\\d+|R\\d+C\\d+") || token.matches("[<>=]"))
+                return new ColumnEvaluator(pTemplate, pAnchorRow, null);
+        }
+
+        final Compiler lCompiler = new Compiler(lTokens, pAnchorRow);
+        lCompiler.compile();
+        return new ColumnEvaluator(pTemplate, pAnchorRow, lCompiler);
+    }
+
+    /**
+     * Queries if this template runs on the batched arithmetic path.
+     * @return true if the template is arithmetic-only, false if rows are evaluated one at a time
+     */
+    public boolean isVectorized() {
+        return this.iVectorized;
+    }
+
+    /**
+     * Gets the template this evaluator was compiled from.
+     * @return the template expression
+     */
+    public String getTemplate() {
+        return this.iTemplate;
+    }
+
+    /**
+     * Gets the columns the template reads, on the batched arithmetic path.
+     * @return the columns, counted from zero, in ascending order without repeats
+     */
+    public int[] getColumns() {
+        final int[] lColumns = new int[this.iOps.length];
+        int lCount = 0;
+        for (int op = 0; op < this.iOps.length; op++) {
+            if (this.iOps[op] == OP_CELL) lColumns[lCount++] = this.iColumns[op];
+        }
+        return Arrays.stream(lColumns, 0, lCount).sorted().distinct().toArray();
+    }
+
+    /**
+     * Gets how far the rows the template reads are from the row it is evaluated for, on the batched arithmetic path.
+     * @return the lowest then the highest row offset, both zero if the template reads no cells
+     */
+    public int[] getRowOffsetRange() {
+        int lLowest = 0;
+        int lHighest = 0;
+        for (int op = 0; op < this.iOps.length; op++) {
+            if (this.iOps[op] != OP_CELL) continue;
+            lLowest = Math.min(lLowest, this.iRowOffsets[op]);
+            lHighest = Math.max(lHighest, this.iRowOffsets[op]);
+        }
+        return new int[] {lLowest, lHighest};
+    }
+
+    /**
+     * Writes an expression relative to the row it is written for, so expressions of a column that only differ by
+     * the rows their cellrefs are shifted by, such as "R1C1*2" in row 0 and "R2C1*2" in row 1, are written the same.
+     * Expressions written the same are the same template, and cellrefs of other sheets are kept as written.
+     * The expression is scanned rather than tokenized, as this is done for every formula of a recalculation.
+     * @param pExpression the expression, without the leading "="
+     * @param pRow the row, counted from zero, the expression is written for
+     * @return the relative expression, which is only for comparing expressions
+     */
+    public static String relativeTemplate(final String pExpression, final int pRow) {
+        final StringBuilder lTemplate = new StringBuilder(pExpression.length() + 8);
+        int lIndex = 0;
+        while (lIndex < pExpression.length()) {
+            final char lChar = pExpression.charAt(lIndex);
+            // a cellref starts a token, so it follows neither a word nor the "!" of a sheet
+            final boolean lStartsToken = lIndex == 0 || !isWordChar(pExpression.charAt(lIndex - 1))
+                    && pExpression.charAt(lIndex - 1) != '!';
+            if ((lChar == 'R' || lChar == 'r') && lStartsToken) {
+                final int lColumnMark = digitsEnd(pExpression, lIndex + 1);
+                final int lEnd = lColumnMark < pExpression.length()
+                        && (pExpression.charAt(lColumnMark) == 'C' || pExpression.charAt(lColumnMark) == 'c')
+                        ? digitsEnd(pExpression, lColumnMark + 1) : -1;
+                // rows too long to be read are kept as written, and fail to compile
+                if (lColumnMark > lIndex + 1 && lColumnMark - lIndex <= 10 && lEnd > lColumnMark + 1) {
+                    final long lRow = Long.parseLong(pExpression, lIndex + 1, lColumnMark, 10) - 1;
+                    lTemplate.append("R[").append(lRow - pRow).append(']').append(pExpression, lColumnMark, lEnd);
+                    lIndex = lEnd;
+                    continue;
+                }
+            }
+            // a bracket as written is doubled, so it never reads as a relative row
+            if (lChar == '[') lTemplate.append(lChar);
+            lTemplate.append(lChar);
+            lIndex++;
+        }
+        return lTemplate.toString();
+    }
+
+    private static boolean isWordChar(final char pChar) {
+        return pChar < 128 && (Character.isLetterOrDigit(pChar) || pChar == '_');
+    }
+
+    private static int digitsEnd(final String pExpression, final int pFrom) {
+        int lIndex = pFrom;
+        while (lIndex < pExpression.length() && pExpression.charAt(lIndex) >= '0' && pExpression.charAt(lIndex) <= '9')
+            lIndex++;
+        return lIndex;
+    }
+
+    /**
+     * Evaluates the template for the rows {@code 0} up to {@code pResults.length - 1}.
+     * @param pColumns the cell values by column then row, both counted from zero; a column may be
+     *                 null or shorter than the sheet if it is empty
+     * @param pResults the array to write the value of each row into, NaN where a row failed
+     */
+    public void evaluate(final double[][] pColumns, final double[] pResults) {
+        if (this.iVectorized) this.evaluateBlocks(pColumns, pResults);
+        else this.evaluateRows(pColumns, pResults);
+    }
+
+    private void evaluateBlocks(final double[][] pColumns, final double[] pResults) {
+        final double[][] lRegisters = new double[this.iStackDepth][BLOCK_SIZE];
+
+        for (int first = 0; first < pResults.length; first += BLOCK_SIZE) {
+            final int lLength = Math.min(BLOCK_SIZE, pResults.length - first);
+            int lTop = -1;
+            for (int op = 0; op < this.iOps.length; op++) {
+                switch (this.iOps[op]) {
+                    case OP_CONSTANT -> Arrays.fill(lRegisters[++lTop], 0, lLength, this.iConstants[op]);
+                    case OP_CELL -> loadColumn(
+                            pColumns, this.iColumns[op], first + this.iRowOffsets[op], lRegisters[++lTop], lLength
+                    );
+                    default -> {
+                        apply(this.iOps[op], lRegisters[lTop - 1], lRegisters[lTop], lLength);
+                        lTop--;
+                    }
+                }
+            }
+            System.arraycopy(lRegisters[0], 0, pResults, first, lLength);
+        }
+    }
+
+    private static void loadColumn(final double[][] pColumns, final int pColumn, final int pFirstRow,
+                                   final double[] pRegister, final int pLength) {
+        final double[] lColumn = pColumn < pColumns.length ? pColumns[pColumn] : null;
+        if (lColumn == null) {
+            Arrays.fill(pRegister, 0, pLength, 0d);
+            return;
+        }
+
+        // only the rows that fall inside the column are copied, the rest are empty cells
+        final int lStart = Math.min(pLength, Math.max(0, -pFirstRow));
+        final int lEnd = Math.max(lStart, Math.min(pLength, lColumn.length - pFirstRow));
+        Arrays.fill(pRegister, 0, lStart, 0d);
+        if (lEnd > lStart) System.arraycopy(lColumn, pFirstRow + lStart, pRegister, lStart, lEnd - lStart);
+        Arrays.fill(pRegister, lEnd, pLength, 0d);
+    }
+
+    private static void apply(final byte pOp, final double[] pLeft, final double[] pRight, final int pLength) {
+        // each case is kept as a plain counted loop so that the JIT can vectorize it
+        switch (pOp) {
+            case OP_ADD -> {
+                for (int i = 0; i < pLength; i++) pLeft[i] += pRight[i];
+            }
+            case OP_SUBTRACT -> {
+                for (int i = 0; i < pLength; i++) pLeft[i] -= pRight[i];
+            }
+            case OP_MULTIPLY -> {
+                for (int i = 0; i < pLength; i++) pLeft[i] *= pRight[i];
+            }
+            case OP_DIVIDE -> {
+                for (int i = 0; i < pLength; i++) pLeft[i] /= pRight[i];
+                for (int i = 0; i < pLength; i++) if (pRight[i] == 0d) pLeft[i] = Double.NaN;
+            }
+            case OP_MODULUS -> {
+                // a modulus by zero is already NaN
+                for (int i = 0; i < pLength; i++) pLeft[i] %= pRight[i];
+            }
+            case OP_POWER -> {
+                // a cell that is not a number fails the row as in the reader, even to the power of zero
+                for (int i = 0; i < pLength; i++) {
+                    if (pLeft[i] == 0d && pRight[i] < 0 || Double.isNaN(pLeft[i]) || Double.isNaN(pRight[i]))
+                        pLeft[i] = Double.NaN;
+                    else pLeft[i] = Math.pow(pLeft[i], pRight[i]);
+                }
+            }
+            default -> throw new IllegalStateException("Unknown operation %d".formatted(pOp));
+        }
+    }
+
+    private void evaluateRows(final double[][] pColumns, final double[] pResults) {
+        final ExpressionReader lReader = new GrammarExpressionReader();
+        final Map<String, int[]> lCellRefs = new HashMap<>(); // cellref -> (column, row offset)
+        for (final String ref : lReader.getCellRefsOf(this.iTemplate.toUpperCase())) {
+            if (ref.indexOf('!') >= 0) continue; // cells of other sheets do not move with the row
+            final int[] lRowColumn = AbstractExpressionReader.toRowColumn(ref);
+            lCellRefs.put(ref, new int[] {lRowColumn[1], lRowColumn[0] - this.iAnchorRow});
+        }
+
+        // the template is read as is, only the values behind its cellrefs move with the row
+        final Map<String, Double> lCells = new HashMap<>();
+        for (int row = 0; row < pResults.length; row++) {
+            for (final Map.Entry<String, int[]> ref : lCellRefs.entrySet()) {
+                final double lValue = valueAt(pColumns, ref.getValue()[0], row + ref.getValue()[1]);
+                lCells.put(ref.getKey(), Double.isNaN(lValue) ? null : lValue);
+            }
+
+            try {
+                pResults[row] = lReader.evaluate(this.iTemplate, lCells);
+            } catch (final IllegalArgumentException lException) {
+                pResults[row] = Double.NaN;
+            }
+        }
+    }
+
+    private static double valueAt(final double[][] pColumns, final int pColumn, final int pRow) {
+        if (pColumn >= pColumns.length || pColumns[pColumn] == null) return 0d;
+        else if (pRow < 0 || pRow >= pColumns[pColumn].length) return 0d;
+        else return pColumns[pColumn][pRow];
+    }
+
+    /**
+     * Compiles the arithmetic subset of the grammar in {@link GrammarExpressionReader} into postfix.
+     */
+    private static final class Compiler {
+        private final Deque<String> iTokens;
+        private final int iAnchorRow;
+        private byte[] iOps = new byte[16];
+        private double[] iConstants = new double[16];
+        private int[] iColumns = new int[16];
+        private int[] iRowOffsets = new int[16];
+        private int iSize;
+        private int iDepth;
+        private int iMaxDepth;
+        private int iLeftParenthesisCount;
+
+        private Compiler(final Deque<String> pTokens, final int pAnchorRow) {
+            super();
+            this.iTokens = pTokens;
+            this.iAnchorRow = pAnchorRow;
+        }
+
+        private void compile() {
+            try {
+                this.nextExpression();
+            } catch (final NoSuchElementException lException) { // if unexpectedly ran out of tokens
+                throw new IllegalArgumentException("Insufficient tokens in template");
+            }
+        }
+
+        private void nextExpression() {
+            // a leading minus is a subtraction from zero, as in the reader
+            if ("-".equals(this.iTokens.peekFirst())) this.iTokens.addFirst("0");
+
+            this.nextTerm();
+            while (!this.iTokens.isEmpty()) {
+                final String lToken = this.iTokens.peekFirst();
+                if ("+".equals(lToken) || "-".equals(lToken)) {
+                    this.iTokens.removeFirst();
+                    this.nextTerm();
+                    this.emit("+".equals(lToken) ? OP_ADD : OP_SUBTRACT);
+                } else if (")".equals(lToken) && this.iLeftParenthesisCount > 0) {
+                    return;
+                } else if (",".equals(lToken)) {
+                    throw new IllegalArgumentException("Unexpected comma");
+                } else if (")".equals(lToken)) {
+                    throw new IllegalArgumentException("Missing opening parenthesis");
+                } else {
+                    throw new IllegalArgumentException("Unexpected token %s".formatted(lToken));
+                }
+            }
+        }
+
+        private void nextTerm() {
+            this.nextPrimary();
+            while (!this.iTokens.isEmpty()) {
+                final String lToken = this.iTokens.peekFirst();
+                final byte lOp;
+                switch (lToken) {
+                    case "*" -> lOp = OP_MULTIPLY;
+                    case "/" -> lOp = OP_DIVIDE;
+                    case "%" -> lOp = OP_MODULUS;
+                    default -> {
+                        return;
+                    }
+                }
+                this.iTokens.removeFirst();
+                this.nextPrimary();
+                this.emit(lOp);
+            }
+        }
+
+        private void nextPrimary() {
+            final String lToken = this.iTokens.removeFirst();
+            if (lToken.matches("\\d+\\.\\d+|\\d+")) {
+                this.push(OP_CONSTANT, Double.parseDouble(lToken), 0, 0);
+            } else if (lToken.matches("R\\d+C\\d+")) {
+                final int[] lRowColumn = AbstractExpressionReader.toRowColumn(lToken);
+                this.push(OP_CELL, 0d, lRowColumn[1], lRowColumn[0] - this.iAnchorRow);
+            } else if ("(".equals(lToken)) {
+                this.iLeftParenthesisCount++;
+                this.nextExpression();
+                this.iLeftParenthesisCount--;
+                if (!")".equals(this.iTokens.removeFirst()))
+                    throw new IllegalArgumentException("Missing closing parenthesis");
+            } else {
+                throw new IllegalArgumentException("Unexpected symbol \"%s\" in place of primary".formatted(lToken));
+            }
+
+            if ("^".equals(this.iTokens.peekFirst())) {
+                this.iTokens.removeFirst();
+                this.nextPrimary();
+                this.emit(OP_POWER);
+            }
+        }
+
+        private void emit(final byte pOp) {
+            this.push(pOp, 0d, 0, 0);
+            this.iDepth -= 2; // a binary operator pops two registers and pushes one
+        }
+
+        private void push(final byte pOp, final double pConstant, final int pColumn, final int pRowOffset) {
+            if (this.iSize == this.iOps.length) {
+                final int lCapacity = this.iSize * 2;
+                this.iOps = Arrays.copyOf(this.iOps, lCapacity);
+                this.iConstants = Arrays.copyOf(this.iConstants, lCapacity);
+                this.iColumns = Arrays.copyOf(this.iColumns, lCapacity);
+                this.iRowOffsets = Arrays.copyOf(this.iRowOffsets, lCapacity);
+            }
+            this.iOps[this.iSize] = pOp;
+            this.iConstants[this.iSize] = pConstant;
+            this.iColumns[this.iSize] = pColumn;
+            this.iRowOffsets[this.iSize] = pRowOffset;
+            this.iSize++;
+            this.iMaxDepth = Math.max(this.iMaxDepth, ++this.iDepth);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package app.model.expr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression that has been read once by an {@link ExpressionReader} and can then be evaluated
+ * any number of times without being read again.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public final class CompiledExpression {
+    private final String iExpression;
+    private final ExpressionNode iRoot;
+    private List<String> iCellRefs; // listed when first asked for, since ranges can cover many cells
+    private List<String> iSheetCellRefs;
+    private List<String> iReferences;
+    private List<String> iSheetReferences;
+
+    /**
+     * Creates a compiled expression.
+     * @param pExpression the expression as it was written
+     * @param pRoot the root of the expression tree
+     */
+    CompiledExpression(final String pExpression, final ExpressionNode pRoot) {
+        super();
+        this.iExpression = pExpression;
+        this.iRoot = pRoot;
+    }
+
+    /**
+     * Evaluates the expression.
+     * @param pCells the table of cells and their values
+     * @return the value of the expression
+     * @throws IllegalArgumentException when the expression produces a bad result (such as division by zero)
+     */
+    public double evaluate(final Map<String, Double> pCells) throws IllegalArgumentException {
+        return this.iRoot.evaluate(pCells);
+    }
+
+    /**
+     * Returns the cell references used in the expression to cells of the sheet it is on.
+     * @return an unmodifiable list of the cell references, in the order they were written
+     */
+    public List<String> getCellRefs() {
+        if (this.iCellRefs == null) this.collectCellRefs();
+        return this.iCellRefs;
+    }
+
+    /**
+     * Returns the cell references used in the expression to cells of sheets of the workbook named in them,
+     * such as "INPUTS!R1C1".
+     * @return an unmodifiable list of the cell references, qualified with the sheet's name, in the order
+     *         they were written
+     */
+    public List<String> getSheetCellRefs() {
+        if (this.iSheetCellRefs == null) this.collectCellRefs();
+        return this.iSheetCellRefs;
+    }
+
+    /**
+     * Returns the references used in the expression to cells of the sheet it is on, where each range is one
+     * reference "R#C#:R#C#" rather than a reference per cell, so a range costs the same however many cells it
+     * covers. A range of a single cell is given as that cell.
+     * @return an unmodifiable list of the cellrefs and ranges, in the order they were written
+     */
+    public List<String> getReferences() {
+        if (this.iReferences == null) this.collectReferences();
+        return this.iReferences;
+    }
+
+    /**
+     * Returns the references used in the expression to cells of sheets of the workbook named in them, with each
+     * range as one reference, as {@link #getReferences()} gives them.
+     * @return an unmodifiable list of the cellrefs and ranges, qualified with the sheet's name, such as
+     *         "INPUTS!R1C1:R10C1", in the order they were written
+     */
+    public List<String> getSheetReferences() {
+        if (this.iSheetReferences == null) this.collectReferences();
+        return this.iSheetReferences;
+    }
+
+    /**
+     * Lists the cell references of the expression, split into those to its own sheet and those to named sheets.
+     */
+    private void collectCellRefs() {
+        final List<String> lCellRefs = new ArrayList<>();
+        final List<String> lSheetCellRefs = new ArrayList<>();
+        this.split(false, lCellRefs, lSheetCellRefs);
+        this.iSheetCellRefs = lSheetCellRefs.isEmpty() ? List.of() : Collections.unmodifiableList(lSheetCellRefs);
+        this.iCellRefs = Collections.unmodifiableList(lCellRefs);
+    }
+
+    /**
+     * Lists the references of the expression, ranges whole, split as {@link #collectCellRefs()} splits them.
+     */
+    private void collectReferences() {
+        final List<String> lReferences = new ArrayList<>();
+        final List<String> lSheetReferences = new ArrayList<>();
+        this.split(true, lReferences, lSheetReferences);
+        this.iSheetReferences = lSheetReferences.isEmpty() ? List.of() : Collections.unmodifiableList(lSheetReferences);
+        this.iReferences = Collections.unmodifiableList(lReferences);
+    }
+
+    /**
+     * Collects the references of the expression into those to its own sheet and those to named sheets.
+     * @param pWhole true to give each range whole, false to give every cell of it
+     * @param pOwn the list to add references to its own sheet to
+     * @param pNamed the list to add references to named sheets to
+     */
+    private void split(final boolean pWhole, final List<String> pOwn, final List<String> pNamed) {
+        final List<String> lCollected = new ArrayList<>();
+        this.iRoot.collectCellRefs(lCollected, pWhole);
+        for (final String ref : lCollected) {
+            if (ref.indexOf('!') < 0) pOwn.add(ref);
+            else pNamed.add(ref);
+        }
+    }
+
+    /**
+     * Queries if the expression calls a volatile function, such as RAND or NOW, so that evaluating it again
+     * can give another value even though the cells it refers to did not change.
+     * @return true if the expression is volatile
+     */
+    public boolean isVolatile() {
+        return this.iRoot.isVolatile();
+    }
+
+    /**
+     * Gives this expression with its cellrefs moved along by rows or columns inserted or deleted, without
+     * reading it again. Ranges grow with the rows or columns inserted inside them and shrink with those deleted.
+     * @param pRows true if rows were inserted or deleted, false if columns were
+     * @param pAt the first row or column inserted or deleted, counted from zero
+     * @param pDelta the number inserted, or the negated number deleted
+     * @return this expression if none of its cellrefs moved, the moved expression if some did,
+     *         or null if it refers to a deleted cell
+     */
+    public CompiledExpression shift(final boolean pRows, final int pAt, final int pDelta) {
+        return this.move(ReferenceMove.shift(pRows, pAt, pDelta));
+    }
+
+    /**
+     * Gives this expression with its references to a sheet of a workbook moved along by rows or columns
+     * inserted into or deleted from that sheet, like {@link #shift(boolean, int, int)}.
+     * @param pSheet the name of the sheet, or null for a sheet outside a workbook
+     * @param pOnSheet true if this expression is on that sheet, so its unqualified references move as well
+     * @param pRows true if rows were inserted or deleted, false if columns were
+     * @param pAt the first row or column inserted or deleted, counted from zero
+     * @param pDelta the number inserted, or the negated number deleted
+     * @return this expression if none of its cellrefs moved, the moved expression if some did,
+     *         or null if it refers to a deleted cell
+     */
+    public CompiledExpression shift(final String pSheet, final boolean pOnSheet, final boolean pRows,
+                                    final int pAt, final int pDelta) {
+        return this.move(ReferenceMove.onSheet(ReferenceMove.shift(pRows, pAt, pDelta), pSheet, pOnSheet));
+    }
+
+    /**
+     * Rewrites the cellrefs and ranges of an expression as {@link #shift} moves them, keeping the rest
+     * of it as it was written, for expressions that are not compiled.
+     * @param pExpression the expression to rewrite
+     * @param pRows true if rows were inserted or deleted, false if columns were
+     * @param pAt the first row or column inserted or deleted, counted from zero
+     * @param pDelta the number inserted, or the negated number deleted
+     * @return the rewritten expression, where references to deleted cells read "#REF!", which does not compile
+     */
+    public static String shiftReferences(final String pExpression, final boolean pRows, final int pAt,
+                                         final int pDelta) {
+        return AbstractExpressionReader.moveReferences(pExpression, ReferenceMove.shift(pRows, pAt, pDelta));
+    }
+
+    /**
+     * Rewrites the references of an expression to a sheet of a workbook as
+     * {@link #shift(String, boolean, boolean, int, int)} moves them, for expressions that are not compiled.
+     * @param pExpression the expression to rewrite
+     * @param pSheet the name of the sheet, or null for a sheet outside a workbook
+     * @param pOnSheet true if the expression is on that sheet, so its unqualified references move as well
+     * @param pRows true if rows were inserted or deleted, false if columns were
+     * @param pAt the first row or column inserted or deleted, counted from zero
+     * @param pDelta the number inserted, or the negated number deleted
+     * @return the rewritten expression, where references to deleted cells read "#REF!", which does not compile
+     */
+    public static String shiftReferences(final String pExpression, final String pSheet, final boolean pOnSheet,
+                                         final boolean pRows, final int pAt, final int pDelta) {
+        return AbstractExpressionReader.moveReferences(pExpression,
+                ReferenceMove.onSheet(ReferenceMove.shift(pRows, pAt, pDelta), pSheet, pOnSheet));
+    }
+
+    /**
+     * Gives this expression with its cellrefs following the rows of a block of cells into another order, as
+     * sorting the block does. Ranges are left as they are, since they still cover the same block.
+     * @param pFirstRow the first row of the block, counted from zero
+     * @param pFirstColumn the first column of the block, counted from zero
+     * @param pLastColumn the last column of the block, counted from zero
+     * @param pNewRows for each row of the block, in order, the row of the block it moves to, counted from the
+     *                 first row of the block
+     * @return this expression if none of its cellrefs moved, or the moved expression if some did
+     */
+    public CompiledExpression permuteRows(final int pFirstRow, final int pFirstColumn, final int pLastColumn,
+                                          final int[] pNewRows) {
+        return this.move(ReferenceMove.permuteRows(pFirstRow, pFirstColumn, pLastColumn, pNewRows));
+    }
+
+    /**
+     * Gives this expression with its references to a sheet of a workbook following the rows of a block of that
+     * sheet into another order, like {@link #permuteRows(int, int, int, int[])}.
+     * @param pSheet the name of the sheet, or null for a sheet outside a workbook
+     * @param pOnSheet true if this expression is on that sheet, so its unqualified references move as well
+     * @param pFirstRow the first row of the block, counted from zero
+     * @param pFirstColumn the first column of the block, counted from zero
+     * @param pLastColumn the last column of the block, counted from zero
+     * @param pNewRows for each row of the block, in order, the row of the block it moves to, counted from the
+     *                 first row of the block
+     * @return this expression if none of its cellrefs moved, or the moved expression if some did
+     */
+    public CompiledExpression permuteRows(final String pSheet, final boolean pOnSheet, final int pFirstRow,
+                                          final int pFirstColumn, final int pLastColumn, final int[] pNewRows) {
+        return this.move(ReferenceMove.onSheet(
+                ReferenceMove.permuteRows(pFirstRow, pFirstColumn, pLastColumn, pNewRows), pSheet, pOnSheet));
+    }
+
+    /**
+     * Rewrites the cellrefs of an expression as {@link #permuteRows} moves them, keeping the rest of it
+     * as it was written, for expressions that are not compiled.
+     * @param pExpression the expression to rewrite
+     * @param pFirstRow the first row of the block, counted from zero
+     * @param pFirstColumn the first column of the block, counted from zero
+     * @param pLastColumn the last column of the block, counted from zero
+     * @param pNewRows for each row of the block, in order, the row of the block it moves to, counted from the
+     *                 first row of the block
+     * @return the rewritten expression
+     */
+    public static String permuteReferences(final String pExpression, final int pFirstRow, final int pFirstColumn,
+                                           final int pLastColumn, final int[] pNewRows) {
+        return AbstractExpressionReader.moveReferences(pExpression,
+                ReferenceMove.permuteRows(pFirstRow, pFirstColumn, pLastColumn, pNewRows));
+    }
+
+    /**
+     * Rewrites the references of an expression to a sheet of a workbook as
+     * {@link #permuteRows(String, boolean, int, int, int, int[])} moves them, for expressions that are not
+     * compiled.
+     * @param pExpression the expression to rewrite
+     * @param pSheet the name of the sheet, or null for a sheet outside a workbook
+     * @param pOnSheet true if the expression is on that sheet, so its unqualified references move as well
+     * @param pFirstRow the first row of the block, counted from zero
+     * @param pFirstColumn the first column of the block, counted from zero
+     * @param pLastColumn the last column of the block, counted from zero
+     * @param pNewRows for each row of the block, in order, the row of the block it moves to, counted from the
+     *                 first row of the block
+     * @return the rewritten expression
+     */
+    public static String permuteReferences(final String pExpression, final String pSheet, final boolean pOnSheet,
+                                           final int pFirstRow, final int pFirstColumn, final int pLastColumn,
+                                           final int[] pNewRows) {
+        return AbstractExpressionReader.moveReferences(pExpression, ReferenceMove.onSheet(
+                ReferenceMove.permuteRows(pFirstRow, pFirstColumn, pLastColumn, pNewRows), pSheet, pOnSheet));
+    }
+
+    /**
+     * Moves the tree and the text of this expression alike.
+     * @param pMove where the cells move to
+     * @return this expression if none of its cellrefs moved, the moved expression if some did,
+     *         or null if it refers to a deleted cell
+     */
+    private CompiledExpression move(final ReferenceMove pMove) {
+        final ExpressionNode lRoot = this.iRoot.move(pMove);
+        if (lRoot == null) return null;
+        else if (lRoot == this.iRoot) return this;
+        else return new CompiledExpression(AbstractExpressionReader.moveReferences(this.iExpression, pMove), lRoot);
+    }
+
+    /**
+     * Returns the expression this was compiled from.
+     * @return the expression as it was written
+     */
+    public String getExpression() {
+        return this.iExpression;
+    }
+
+    @Override
+    public String toString() {
+        return this.iExpression;
+    }
+}
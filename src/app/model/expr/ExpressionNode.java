@@ -0,0 +1,568 @@
+package app.model.expr;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A node of a compiled expression tree, built by the expression reader following its grammar.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+abstract class ExpressionNode {
+
+    /**
+     * Evaluates this node.
+     * @param pCells the table of cells and their values
+     * @return the value of this node
+     * @throws IllegalArgumentException if the node produces a bad result (such as division by zero)
+     */
+    abstract double evaluate(Map<String, Double> pCells) throws IllegalArgumentException;
+
+    /**
+     * Adds the cell references under this node to the list, in the order they were written.
+     * @param pCellRefs the list to add to
+     * @param pWhole true to add each range whole, as "R#C#:R#C#", false to add every cell of it
+     */
+    void collectCellRefs(final List<String> pCellRefs, final boolean pWhole) {
+        // only cellrefs and nodes with children have anything to add
+    }
+
+    /**
+     * Queries if this node calls a volatile function anywhere under it.
+     * @return true if evaluating this node again can give another value
+     */
+    boolean isVolatile() {
+        // only calls and nodes with children can call anything
+        return false;
+    }
+
+    /**
+     * Queries if any node of an array calls a volatile function.
+     * @param pNodes the nodes
+     * @return true if any of them is volatile
+     */
+    static boolean anyVolatile(final ExpressionNode[] pNodes) {
+        for (final ExpressionNode lNode : pNodes) {
+            if (lNode.isVolatile()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives this node with its cellrefs moved along with the cells they refer to.
+     * @param pMove where the cells move to
+     * @return this node if no cellref under it moved, a new node if some did,
+     *         or null if a cellref under it was deleted
+     */
+    ExpressionNode move(final ReferenceMove pMove) {
+        // only cellrefs and nodes with children have anything to move
+        return this;
+    }
+
+    /**
+     * Moves every node of an array.
+     * @param pNodes the nodes to move
+     * @param pMove where the cells move to
+     * @return the array itself if no node moved, a new array if some did, or null if a cellref was deleted
+     */
+    static ExpressionNode[] moveAll(final ExpressionNode[] pNodes, final ReferenceMove pMove) {
+        ExpressionNode[] lMoved = pNodes;
+        for (int i = 0; i < pNodes.length; i++) {
+            final ExpressionNode lNode = pNodes[i].move(pMove);
+            if (lNode == null) return null;
+            if (lNode != pNodes[i]) {
+                if (lMoved == pNodes) lMoved = pNodes.clone();
+                lMoved[i] = lNode;
+            }
+        }
+        return lMoved;
+    }
+
+    /**
+     * Gets the cells of a sheet of the workbook that the table of cells belongs to, for cellrefs and ranges
+     * qualified with the sheet's name.
+     * @param pSheet the name of the sheet
+     * @param pCells the table of cells and their values
+     * @return the table of cells of the named sheet
+     * @throws IllegalArgumentException if the table of cells does not belong to a workbook with such a sheet
+     */
+    static Map<String, Double> sheetCells(final String pSheet, final Map<String, Double> pCells) {
+        final Map<String, Double> lCells = pCells instanceof WorkbookCells lWorkbook
+                ? lWorkbook.getSheetCells(pSheet) : null;
+        if (lCells == null) throw new IllegalArgumentException("Unknown sheet %s".formatted(pSheet));
+        return lCells;
+    }
+
+    /**
+     * A number literal.
+     */
+    static final class Literal extends ExpressionNode {
+        private final double iValue;
+
+        Literal(final double pValue) {
+            super();
+            this.iValue = pValue;
+        }
+
+        @Override
+        double evaluate(final Map<String, Double> pCells) {
+            return this.iValue;
+        }
+    }
+
+    /**
+     * A reference to the value of another cell, where an empty cell counts as zero. A cellref qualified with
+     * the name of a sheet, such as "INPUTS!R1C1", refers to a cell of that sheet of the workbook.
+     */
+    static final class CellRef extends ExpressionNode {
+        private final String iSheet; // null for a cell of the sheet being evaluated
+        private final String iCellRef;
+
+        CellRef(final String pCellRef) {
+            this(null, pCellRef);
+        }
+
+        CellRef(final String pSheet, final String pCellRef) {
+            super();
+            this.iSheet = pSheet;
+            this.iCellRef = pCellRef;
+        }
+
+        @Override
+        double evaluate(final Map<String, Double> pCells) {
+            final Map<String, Double> lCells = this.iSheet == null ? pCells : sheetCells(this.iSheet, pCells);
+            // null only occurs if the cellref is mapped to a null, meaning the cell is not a number
+            final Double lValue = lCells.getOrDefault(this.iCellRef, 0d);
+            if (lValue == null) throw new IllegalArgumentException(
+                    "Cell %s does not contain a number".formatted(this.qualified())
+            );
+            return lValue;
+        }
+
+        @Override
+        void collectCellRefs(final List<String> pCellRefs, final boolean pWhole) {
+            pCellRefs.add(this.qualified());
+        }
+
+        @Override
+        ExpressionNode move(final ReferenceMove pMove) {
+            if (!pMove.movesSheet(this.iSheet)) return this;
+            final int[] lRowColumn = AbstractExpressionReader.toRowColumn(this.iCellRef);
+            final int[] lMoved = pMove.moveCell(lRowColumn[0], lRowColumn[1]);
+            if (lMoved == null) return null;
+            else if (lMoved[0] == lRowColumn[0] && lMoved[1] == lRowColumn[1]) return this;
+            else return new CellRef(this.iSheet, AbstractExpressionReader.toCellRef(lMoved[0], lMoved[1]));
+        }
+
+        private String qualified() {
+            return this.iSheet == null ? this.iCellRef : this.iSheet + "!" + this.iCellRef;
+        }
+    }
+
+    /**
+     * One of the binary operators "+", "-", "*", "/", "%" or "^".
+     */
+    static final class Operator extends ExpressionNode {
+        private final char iOperator;
+        private final ExpressionNode iLeft;
+        private final ExpressionNode iRight;
+
+        Operator(final char pOperator, final ExpressionNode pLeft, final ExpressionNode pRight) {
+            super();
+            this.iOperator = pOperator;
+            this.iLeft = pLeft;
+            this.iRight = pRight;
+        }
+
+        @Override
+        double evaluate(final Map<String, Double> pCells) {
+            final double lLeft = this.iLeft.evaluate(pCells);
+            final double lRight = this.iRight.evaluate(pCells);
+            return switch (this.iOperator) {
+                case '+' -> lLeft + lRight;
+                case '-' -> lLeft - lRight;
+                case '*' -> lLeft * lRight;
+                case '/', '%' -> {
+                    if (lRight == 0d) throw new IllegalArgumentException("Divide by zero");
+                    yield this.iOperator == '/' ? lLeft / lRight : lLeft % lRight;
+                }
+                case '^' -> {
+                    if (lLeft == 0d && lRight < 0) throw new IllegalArgumentException("Division by zero");
+                    yield Math.pow(lLeft, lRight);
+                }
+                default -> throw new IllegalStateException("Unknown operator %s".formatted(this.iOperator));
+            };
+        }
+
+        @Override
+        void collectCellRefs(final List<String> pCellRefs, final boolean pWhole) {
+            this.iLeft.collectCellRefs(pCellRefs, pWhole);
+            this.iRight.collectCellRefs(pCellRefs, pWhole);
+        }
+
+        @Override
+        boolean isVolatile() {
+            return this.iLeft.isVolatile() || this.iRight.isVolatile();
+        }
+
+        @Override
+        ExpressionNode move(final ReferenceMove pMove) {
+            final ExpressionNode lLeft = this.iLeft.move(pMove);
+            final ExpressionNode lRight = this.iRight.move(pMove);
+            if (lLeft == null || lRight == null) return null;
+            else if (lLeft == this.iLeft && lRight == this.iRight) return this;
+            else return new Operator(this.iOperator, lLeft, lRight);
+        }
+    }
+
+    /**
+     * One of the comparisons "<", "<=", ">", ">=", "=" or "<>", which is 1 when it holds and 0 otherwise.
+     */
+    static final class Comparison extends ExpressionNode {
+        private final String iComparison;
+        private final ExpressionNode iLeft;
+        private final ExpressionNode iRight;
+
+        Comparison(final String pComparison, final ExpressionNode pLeft, final ExpressionNode pRight) {
+            super();
+            this.iComparison = pComparison;
+            this.iLeft = pLeft;
+            this.iRight = pRight;
+        }
+
+        @Override
+        double evaluate(final Map<String, Double> pCells) {
+            final double lLeft = this.iLeft.evaluate(pCells);
+            final double lRight = this.iRight.evaluate(pCells);
+            final boolean lHolds = switch (this.iComparison) {
+                case "<" -> lLeft < lRight;
+                case "<=" -> lLeft <= lRight;
+                case ">" -> lLeft > lRight;
+                case ">=" -> lLeft >= lRight;
+                case "=" -> lLeft == lRight;
+                case "<>" -> lLeft != lRight;
+                default -> throw new IllegalStateException("Unknown comparison %s".formatted(this.iComparison));
+            };
+            return lHolds ? 1d : 0d;
+        }
+
+        @Override
+        void collectCellRefs(final List<String> pCellRefs, final boolean pWhole) {
+            this.iLeft.collectCellRefs(pCellRefs, pWhole);
+            this.iRight.collectCellRefs(pCellRefs, pWhole);
+        }
+
+        @Override
+        boolean isVolatile() {
+            return this.iLeft.isVolatile() || this.iRight.isVolatile();
+        }
+
+        @Override
+        ExpressionNode move(final ReferenceMove pMove) {
+            final ExpressionNode lLeft = this.iLeft.move(pMove);
+            final ExpressionNode lRight = this.iRight.move(pMove);
+            if (lLeft == null || lRight == null) return null;
+            else if (lLeft == this.iLeft && lRight == this.iRight) return this;
+            else return new Comparison(this.iComparison, lLeft, lRight);
+        }
+    }
+
+    /**
+     * A rectangular range of cells such as "R1C1:R10C2", which may only be a function argument. A range
+     * qualified with the name of a sheet, such as "INPUTS!R1C1:R10C2", covers cells of that sheet of the workbook.
+     */
+    static final class Range extends ExpressionNode {
+        private final String iSheet; // null for cells of the sheet being evaluated
+        private final int iFirstRow;
+        private final int iFirstColumn;
+        private final int iRowCount;
+        private final int iColumnCount;
+
+        Range(final int pFirstRow, final int pFirstColumn, final int pLastRow, final int pLastColumn) {
+            this(null, pFirstRow, pFirstColumn, pLastRow, pLastColumn);
+        }
+
+        Range(final String pSheet, final int pFirstRow, final int pFirstColumn, final int pLastRow,
+              final int pLastColumn) {
+            super();
+            this.iSheet = pSheet;
+            this.iFirstRow = Math.min(pFirstRow, pLastRow);
+            this.iFirstColumn = Math.min(pFirstColumn, pLastColumn);
+            this.iRowCount = Math.abs(pLastRow - pFirstRow) + 1;
+            this.iColumnCount = Math.abs(pLastColumn - pFirstColumn) + 1;
+        }
+
+        @Override
+        double evaluate(final Map<String, Double> pCells) {
+            throw new IllegalArgumentException("A range can only be a function argument");
+        }
+
+        /**
+         * Gets the range of values over the table of cells, which reads the cells only as they are asked for.
+         * @param pCells the table of cells and their values
+         * @return the range, NaN where a cell is empty or not a number
+         * @throws IllegalArgumentException if the range has more cells than a range can be read by position
+         */
+        CellRange evaluateRange(final Map<String, Double> pCells) {
+            if (this.size() > Integer.MAX_VALUE) throw new IllegalArgumentException(
+                    "Range of %d cells is too large".formatted(this.size())
+            );
+            return new CellRange(this.iFirstRow, this.iFirstColumn, this.iRowCount, this.iColumnCount,
+                    this.iSheet == null ? pCells : sheetCells(this.iSheet, pCells));
+        }
+
+        /**
+         * Gives the numbers in the range, row by row, skipping cells that are empty or not numbers. When the
+         * table of cells knows its sheet, only the cells it holds within the sheet are read.
+         * @param pCells the table of cells and their values
+         * @param pAction what to do with each number
+         */
+        void forEachNumber(final Map<String, Double> pCells, final DoubleConsumer pAction) {
+            final Map<String, Double> lCells = this.iSheet == null ? pCells : sheetCells(this.iSheet, pCells);
+            final int lLastRow = this.iFirstRow + this.iRowCount - 1;
+            final int lLastColumn = this.iFirstColumn + this.iColumnCount - 1;
+            if (lCells instanceof SheetCells lSheet) {
+                lSheet.forEachNumber(this.iFirstRow, this.iFirstColumn, lLastRow, lLastColumn, pAction);
+                return;
+            }
+            for (int row = this.iFirstRow; row <= lLastRow; row++) {
+                for (int col = this.iFirstColumn; col <= lLastColumn; col++) {
+                    final Double lValue = lCells.get(AbstractExpressionReader.toCellRef(row, col));
+                    if (lValue != null) pAction.accept(lValue);
+                }
+            }
+        }
+
+        long size() {
+            return (long) this.iRowCount * this.iColumnCount;
+        }
+
+        @Override
+        ExpressionNode move(final ReferenceMove pMove) {
+            if (!pMove.movesSheet(this.iSheet)) return this;
+            final int lLastRow = this.iFirstRow + this.iRowCount - 1;
+            final int lLastColumn = this.iFirstColumn + this.iColumnCount - 1;
+            final int[] lSpan = pMove.moveRange(this.iFirstRow, this.iFirstColumn, lLastRow, lLastColumn);
+            if (lSpan == null) return null;
+            else if (lSpan[0] == this.iFirstRow && lSpan[1] == this.iFirstColumn
+                    && lSpan[2] == lLastRow && lSpan[3] == lLastColumn) return this;
+            else return new Range(this.iSheet, lSpan[0], lSpan[1], lSpan[2], lSpan[3]);
+        }
+
+        @Override
+        void collectCellRefs(final List<String> pCellRefs, final boolean pWhole) {
+            final String lQualifier = this.iSheet == null ? "" : this.iSheet + "!";
+            if (pWhole) {
+                final String lFirst = AbstractExpressionReader.toCellRef(this.iFirstRow, this.iFirstColumn);
+                pCellRefs.add(this.size() == 1 ? lQualifier + lFirst : lQualifier + lFirst + ":"
+                        + AbstractExpressionReader.toCellRef(this.iFirstRow + this.iRowCount - 1,
+                        this.iFirstColumn + this.iColumnCount - 1));
+                return;
+            }
+            for (int row = this.iFirstRow; row < this.iFirstRow + this.iRowCount; row++) {
+                for (int col = this.iFirstColumn; col < this.iFirstColumn + this.iColumnCount; col++) {
+                    pCellRefs.add(lQualifier + AbstractExpressionReader.toCellRef(row, col));
+                }
+            }
+        }
+    }
+
+    /**
+     * A call to a function that was resolved when the expression was compiled.
+     * Ranges among the arguments are spread out into their numbers.
+     */
+    static final class Call extends ExpressionNode {
+        private static final int SPREAD_CAPACITY = 1024; // the most values an evaluation makes room for up front
+
+        private final SpreadsheetFunction iFunction;
+        private final ExpressionNode[] iArgs;
+        private final long iSpreadSize; // the most values the arguments can spread into, or -1 without ranges
+
+        Call(final SpreadsheetFunction pFunction, final ExpressionNode[] pArgs) {
+            super();
+            this.iFunction = pFunction;
+            this.iArgs = pArgs;
+
+            long lSpreadSize = 0;
+            boolean lHasRange = false;
+            for (final ExpressionNode arg : pArgs) {
+                if (arg instanceof Range lRange) {
+                    lHasRange = true;
+                    lSpreadSize += lRange.size();
+                } else lSpreadSize++;
+            }
+            this.iSpreadSize = lHasRange ? lSpreadSize : -1;
+        }
+
+        @Override
+        double evaluate(final Map<String, Double> pCells) {
+            if (this.iSpreadSize >= 0) return this.evaluateSpread(pCells);
+
+            // the common arities are passed straight through without building an array
+            return switch (this.iArgs.length) {
+                case 0 -> this.iFunction.apply();
+                case 1 -> this.iFunction.apply(this.iArgs[0].evaluate(pCells));
+                case 2 -> this.iFunction.apply(
+                        this.iArgs[0].evaluate(pCells),
+                        this.iArgs[1].evaluate(pCells)
+                );
+                case 3 -> this.iFunction.apply(
+                        this.iArgs[0].evaluate(pCells),
+                        this.iArgs[1].evaluate(pCells),
+                        this.iArgs[2].evaluate(pCells)
+                );
+                default -> {
+                    final double[] lValues = new double[this.iArgs.length];
+                    for (int i = 0; i < lValues.length; i++) lValues[i] = this.iArgs[i].evaluate(pCells);
+                    yield this.iFunction.apply(lValues);
+                }
+            };
+        }
+
+        private double evaluateSpread(final Map<String, Double> pCells) {
+            // ranges mostly run past the cells that hold numbers, so the array grows with the numbers found
+            final SpreadNumbers lValues = new SpreadNumbers((int) Math.min(this.iSpreadSize, SPREAD_CAPACITY));
+            for (final ExpressionNode arg : this.iArgs) {
+                if (arg instanceof Range lRange) lRange.forEachNumber(pCells, lValues);
+                else lValues.accept(arg.evaluate(pCells));
+            }
+            return this.iFunction.apply(lValues.toArray());
+        }
+
+        @Override
+        void collectCellRefs(final List<String> pCellRefs, final boolean pWhole) {
+            for (final ExpressionNode arg : this.iArgs) arg.collectCellRefs(pCellRefs, pWhole);
+        }
+
+        @Override
+        boolean isVolatile() {
+            return this.iFunction.isVolatile() || anyVolatile(this.iArgs);
+        }
+
+        @Override
+        ExpressionNode move(final ReferenceMove pMove) {
+            final ExpressionNode[] lArgs = moveAll(this.iArgs, pMove);
+            if (lArgs == null) return null;
+            else return lArgs == this.iArgs ? this : new Call(this.iFunction, lArgs);
+        }
+    }
+
+    /**
+     * The numbers spread out of the arguments of a call, in an array that grows as they are given.
+     */
+    private static final class SpreadNumbers implements DoubleConsumer {
+        private double[] iValues;
+        private int iCount;
+
+        SpreadNumbers(final int pCapacity) {
+            super();
+            this.iValues = new double[pCapacity];
+        }
+
+        @Override
+        public void accept(final double pValue) {
+            if (this.iCount == this.iValues.length) {
+                if (this.iCount == Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many numbers");
+                this.iValues = Arrays.copyOf(this.iValues, (int) Math.min(Integer.MAX_VALUE - 8,
+                        Math.max(16L, this.iCount * 2L)));
+            }
+            this.iValues[this.iCount++] = pValue;
+        }
+
+        double[] toArray() {
+            return this.iCount == this.iValues.length ? this.iValues : Arrays.copyOf(this.iValues, this.iCount);
+        }
+    }
+
+    /**
+     * A call to a function that receives every argument as a range.
+     */
+    static final class RangeCall extends ExpressionNode {
+        private final RangeFunction iFunction;
+        private final ExpressionNode[] iArgs;
+
+        RangeCall(final RangeFunction pFunction, final ExpressionNode[] pArgs) {
+            super();
+            this.iFunction = pFunction;
+            this.iArgs = pArgs;
+        }
+
+        @Override
+        double evaluate(final Map<String, Double> pCells) {
+            final CellRange[] lArgs = new CellRange[this.iArgs.length];
+            for (int i = 0; i < lArgs.length; i++) {
+                if (this.iArgs[i] instanceof Range lRange) lArgs[i] = lRange.evaluateRange(pCells);
+                else lArgs[i] = CellRange.of(this.iArgs[i].evaluate(pCells));
+            }
+            return this.iFunction.apply(lArgs);
+        }
+
+        @Override
+        void collectCellRefs(final List<String> pCellRefs, final boolean pWhole) {
+            for (final ExpressionNode arg : this.iArgs) arg.collectCellRefs(pCellRefs, pWhole);
+        }
+
+        @Override
+        boolean isVolatile() {
+            return this.iFunction.isVolatile() || anyVolatile(this.iArgs);
+        }
+
+        @Override
+        ExpressionNode move(final ReferenceMove pMove) {
+            final ExpressionNode[] lArgs = moveAll(this.iArgs, pMove);
+            if (lArgs == null) return null;
+            else return lArgs == this.iArgs ? this : new RangeCall(this.iFunction, lArgs);
+        }
+    }
+
+    /**
+     * A call to a function that evaluates its arguments only as it needs them.
+     */
+    static final class LazyCall extends ExpressionNode {
+        private final LazyFunction iFunction;
+        private final ExpressionNode[] iArgs;
+
+        LazyCall(final LazyFunction pFunction, final ExpressionNode[] pArgs) {
+            super();
+            this.iFunction = pFunction;
+            this.iArgs = pArgs;
+        }
+
+        @Override
+        double evaluate(final Map<String, Double> pCells) {
+            return this.iFunction.apply(new LazyArguments() {
+                @Override
+                public int size() {
+                    return LazyCall.this.iArgs.length;
+                }
+
+                @Override
+                public double evaluate(final int pIndex) {
+                    return LazyCall.this.iArgs[pIndex].evaluate(pCells);
+                }
+            });
+        }
+
+        @Override
+        void collectCellRefs(final List<String> pCellRefs, final boolean pWhole) {
+            // every argument counts, whether or not a particular evaluation reaches it
+            for (final ExpressionNode arg : this.iArgs) arg.collectCellRefs(pCellRefs, pWhole);
+        }
+
+        @Override
+        boolean isVolatile() {
+            // a branch not taken this time may be taken next time
+            return this.iFunction.isVolatile() || anyVolatile(this.iArgs);
+        }
+
+        @Override
+        ExpressionNode move(final ReferenceMove pMove) {
+            final ExpressionNode[] lArgs = moveAll(this.iArgs, pMove);
+            if (lArgs == null) return null;
+            else return lArgs == this.iArgs ? this : new LazyCall(this.iFunction, lArgs);
+        }
+    }
+}
@@ -21,10 +21,20 @@ public interface ExpressionReader {
      */
     double evaluate(String pExpression, Map<String, Double> pCells) throws IllegalArgumentException;
 
+    /**
+     * Reads an expression once so that it may be evaluated repeatedly, such as "3+4-(-5)"
+     * @param pExpression the expression, as a string, to compile
+     * @return the compiled expression
+     * @throws IllegalArgumentException when the expression is invalid, such as when it
+     * is malformed or calls an unknown function
+     */
+    CompiledExpression compile(String pExpression) throws IllegalArgumentException;
+
     /**
      * Returns a list of the cell references used in the expression
      * @param pExpression the expression to look in
-     * @return a list of cell references used in the argument expression
+     * @return a list of cell references used in the argument expression, those to other sheets of the
+     *         workbook qualified with the sheet's name, as in "INPUTS!R1C1"
      */
     List<String> getCellRefsOf(String pExpression);
 
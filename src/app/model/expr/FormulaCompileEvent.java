@@ -0,0 +1,25 @@
+package app.model.expr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for the compilation of an expression by the {@link GrammarExpressionReader}.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+@Name("app.FormulaCompile")
+@Label("Formula Compile")
+@Category({"Spreadsheet", "Engine"})
+@Description("Parsing of a formula into its compiled form")
+final class FormulaCompileEvent extends jdk.jfr.Event {
+    @Label("Expression")
+    String expression;
+
+    @Label("Succeeded")
+    @Description("Whether the expression was well formed")
+    boolean succeeded;
+}
@@ -0,0 +1,20 @@
+package app.model.expr;
+
+/**
+ * Service provider interface for libraries of custom functions.
+ * <p>
+ * Implementations listed in {@code META-INF/services/app.model.expr.FunctionLibrary} are discovered
+ * with {@link java.util.ServiceLoader} the first time the {@link FunctionRegistry} is used, and are
+ * expected to call {@link FunctionRegistry#register(String, SpreadsheetFunction)} for each of their
+ * functions.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public interface FunctionLibrary {
+
+    /**
+     * Registers all functions of this library with the {@link FunctionRegistry}.
+     */
+    void registerFunctions();
+}
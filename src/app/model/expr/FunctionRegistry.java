@@ -0,0 +1,87 @@
+package app.model.expr;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of every function the expression reader recognizes, mapping function names to the
+ * function instances that get called.
+ * <p>
+ * Lookups only happen while an expression is compiled; a synonym maps to the very same instance
+ * as the name it stands for, so calling it costs nothing extra.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public final class FunctionRegistry {
+    private static final Map<String, SpreadsheetFunction> REGISTRY = new ConcurrentHashMap<>();
+
+    // names must be single uppercase word tokens that cannot be mistaken for a cellref
+    private static final Pattern NAME_MATCHER = Pattern.compile("(?!R\\d+C\\d+)[A-Z][A-Z0-9_]*");
+
+    static {
+        Functions.registerBuiltIns();
+        registerLibraries(ServiceLoader.load(FunctionLibrary.class));
+    }
+
+    private FunctionRegistry() {
+        super();
+    }
+
+    /**
+     * Registers a function under a name.
+     * @param pName the name expressions call the function by, in uppercase
+     * @param pFunction the function
+     * @throws IllegalArgumentException if the name is not a valid function name or is already taken
+     */
+    public static void register(final String pName, final SpreadsheetFunction pFunction)
+            throws IllegalArgumentException {
+        if (pFunction == null) throw new IllegalArgumentException("Function %s is null".formatted(pName));
+        if (pName == null || !NAME_MATCHER.matcher(pName).matches())
+            throw new IllegalArgumentException("Invalid function name %s".formatted(pName));
+        if (REGISTRY.putIfAbsent(pName, pFunction) != null)
+            throw new IllegalArgumentException("Function %s already exists".formatted(pName));
+    }
+
+    /**
+     * Registers a synonym for a function that is already registered.
+     * @param pSynonym the other name to call the function by, in uppercase
+     * @param pName the name the function is registered under
+     * @throws IllegalArgumentException if the function does not exist or the synonym is invalid or taken
+     */
+    public static void registerSynonym(final String pSynonym, final String pName) throws IllegalArgumentException {
+        final SpreadsheetFunction lFunction = REGISTRY.get(pName);
+        if (lFunction == null) throw new IllegalArgumentException("Function %s does not exist".formatted(pName));
+        register(pSynonym, lFunction);
+    }
+
+    /**
+     * Registers the functions of every library a service loader finds.
+     * @param pLibraries the libraries, as found by the service loader
+     */
+    static void registerLibraries(final Iterable<FunctionLibrary> pLibraries) {
+        for (final FunctionLibrary library : pLibraries) {
+            library.registerFunctions();
+        }
+    }
+
+    /**
+     * Looks up a function by name. Note that function names are all uppercase.
+     * @param pName the name of the function
+     * @return the function, or null if no function has that name
+     */
+    public static SpreadsheetFunction lookup(final String pName) {
+        return REGISTRY.get(pName);
+    }
+
+    /**
+     * Queries if the function is recognized. Note that function names are all uppercase.
+     * @param pName the function name to query, in its original case
+     * @return if the function is recognized
+     */
+    public static boolean isRegistered(final String pName) {
+        return REGISTRY.containsKey(pName);
+    }
+}
@@ -1,60 +1,192 @@
 package app.model.expr;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.Function;
-
 /**
- * class that handles carrying out functions for the expression reader.
+ * class that holds the built-in functions for the expression reader,
+ * along with the other built-in function libraries.
  *
  * @author Roman Bureacov
- * @version 2025-05-25
+ * @version 2025-06
  */
 final class Functions {
-    private static final Map<String, Function<Object[], Double>> FUNC = new HashMap<>();
-
-    static {
-        // all recognized functions by the applications
-        // all functions must be capitalized and only have alpha characters, otherwise
-        // they will never be discovered by the expression reader
-        FUNC.put("AVERAGE", args -> {
-            double lAvg = 0;
-            final double lDenominator = args.length;
-            for (final Object arg : args) lAvg += ((Double) arg) / lDenominator;
-            return lAvg;
-        });
-        FUNC.put("AVG", args -> FUNC.get("AVERAGE").apply(args)); // synonym
-        FUNC.put("PRODUCT", args -> {
+
+    /** IF(condition, then[, otherwise]) where any condition other than zero holds, evaluating only the branch taken */
+    static final LazyFunction IF = new LazyFunction() {
+        @Override
+        public double apply(final LazyArguments pArgs) {
+            if (pArgs.evaluate(0) != 0d) return pArgs.evaluate(1);
+            else return pArgs.size() == 3 ? pArgs.evaluate(2) : 0d;
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 2;
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 3;
+        }
+    };
+
+    /** AND(conditions...), stopping at the first condition that does not hold */
+    static final LazyFunction AND = new LazyFunction() {
+        @Override
+        public double apply(final LazyArguments pArgs) {
+            for (int i = 0; i < pArgs.size(); i++) {
+                if (pArgs.evaluate(i) == 0d) return 0d;
+            }
+            return 1d;
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 1;
+        }
+    };
+
+    /** OR(conditions...), stopping at the first condition that holds */
+    static final LazyFunction OR = new LazyFunction() {
+        @Override
+        public double apply(final LazyArguments pArgs) {
+            for (int i = 0; i < pArgs.size(); i++) {
+                if (pArgs.evaluate(i) != 0d) return 1d;
+            }
+            return 0d;
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 1;
+        }
+    };
+
+    /** CHOOSE(index, values...) with the index counted from one, evaluating only the chosen value */
+    static final LazyFunction CHOOSE = new LazyFunction() {
+        @Override
+        public double apply(final LazyArguments pArgs) {
+            final double lIndex = pArgs.evaluate(0);
+            if (lIndex != Math.rint(lIndex) || lIndex < 1 || lIndex >= pArgs.size())
+                throw new IllegalArgumentException(
+                        "CHOOSE index must be a whole number between 1 and %d".formatted(pArgs.size() - 1)
+                );
+            return pArgs.evaluate((int) lIndex);
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 2;
+        }
+    };
+
+    /** NOT(condition) */
+    static final SpreadsheetFunction NOT = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            return this.apply(pArgs[0]);
+        }
+
+        @Override
+        public double apply(final double pCondition) {
+            return pCondition == 0d ? 1d : 0d;
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 1;
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 1;
+        }
+    };
+
+    static final SpreadsheetFunction PRODUCT = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
             double lProduct = 1;
-            for (final Object arg : args) lProduct *= (Double) arg;
+            for (final double arg : pArgs) lProduct *= arg;
             return lProduct;
-        });
-        FUNC.put("PROD", args -> FUNC.get("PRODUCT").apply(args)); // synonym
-        FUNC.put("SUM", args -> {
-            double lSum = 0;
-            for (final Object arg : args) lSum += (Double) arg;
-            return lSum;
-        });
-    }
+        }
+
+        @Override
+        public double apply(final double pFirst) {
+            return pFirst;
+        }
+
+        @Override
+        public double apply(final double pFirst, final double pSecond) {
+            return pFirst * pSecond;
+        }
+
+        @Override
+        public double apply(final double pFirst, final double pSecond, final double pThird) {
+            return pFirst * pSecond * pThird;
+        }
+    };
+
+    /** SUMPRODUCT(range, range...) over ranges of the same shape, where cells that are not numbers count as zero */
+    static final RangeFunction SUMPRODUCT = new RangeFunction() {
+        @Override
+        public double apply(final CellRange[] pArgs) {
+            final CellRange lFirst = pArgs[0];
+            for (final CellRange arg : pArgs) {
+                if (arg.getRowCount() != lFirst.getRowCount() || arg.getColumnCount() != lFirst.getColumnCount())
+                    throw new IllegalArgumentException("SUMPRODUCT ranges must have the same shape");
+            }
+
+            final double[] lProducts = new double[lFirst.size()];
+            for (int i = 0; i < lProducts.length; i++) {
+                double lProduct = 1;
+                for (final CellRange arg : pArgs) {
+                    final double lValue = arg.get(i);
+                    lProduct *= Double.isNaN(lValue) ? 0d : lValue;
+                }
+                lProducts[i] = lProduct;
+            }
+            return StatisticalFunctions.kahanSum(lProducts, lProducts.length);
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 1;
+        }
+    };
 
     private Functions() {
         super();
     }
 
+    /**
+     * Registers all built-in functions and their synonyms with the {@link FunctionRegistry}.
+     */
+    static void registerBuiltIns() {
+        // all functions must be capitalized, otherwise they will never be discovered by the expression reader
+        FunctionRegistry.register("AND", AND);
+        FunctionRegistry.register("CHOOSE", CHOOSE);
+        FunctionRegistry.register("IF", IF);
+        FunctionRegistry.register("NOT", NOT);
+        FunctionRegistry.register("OR", OR);
+        FunctionRegistry.register("PRODUCT", PRODUCT);
+        FunctionRegistry.registerSynonym("PROD", "PRODUCT");
+        FunctionRegistry.register("SUMPRODUCT", SUMPRODUCT);
+        StatisticalFunctions.registerAll();
+        LookupFunctions.registerAll();
+        VolatileFunctions.registerAll();
+    }
+
     /**
      * Applies the corresponding function to the arguments.
      * @param pFunctionName the name of the function of interest
      * @param pArgs the arguments to apply the function to
      * @return the calculated double value of the function applied on the arguments
+     * @throws IllegalArgumentException if the function does not exist or rejects the arguments
      */
-    public static double apply(final String pFunctionName, final Object... pArgs) {
-        try {
-            return FUNC.get(pFunctionName).apply(pArgs);
-        } catch (final ClassCastException lCastExc) {
-            throw new IllegalArgumentException("Bad argument(s) for function %s".formatted(pFunctionName));
-        } catch (final NullPointerException lNullPtrExc) {
+    public static double apply(final String pFunctionName, final double... pArgs) {
+        final SpreadsheetFunction lFunction = FunctionRegistry.lookup(pFunctionName);
+        if (lFunction == null)
             throw new IllegalArgumentException("Function %s does not exist".formatted(pFunctionName));
-        }
+        return lFunction.apply(pArgs);
     }
 
     /**
@@ -64,6 +196,6 @@ final class Functions {
      * @return if the function is recognized
      */
     public static boolean validFunctionName(final String pFunctionName) {
-        return FUNC.containsKey(pFunctionName);
+        return FunctionRegistry.isRegistered(pFunctionName);
     }
 }
@@ -1,7 +1,9 @@
 package app.model.expr;
 
+import java.util.ArrayList;
 import java.util.Deque;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -14,6 +16,11 @@ import java.util.NoSuchElementException;
 public final class GrammarExpressionReader extends AbstractExpressionReader {
     /*
     GRAMMAR
+        Comparison
+            expression
+            expression comparator expression
+        Comparator
+            "<" | "<=" | ">" | ">=" | "=" | "<>"
         Expression
             term
             expression "+" term
@@ -28,139 +35,189 @@ public final class GrammarExpressionReader extends AbstractExpressionReader {
         Primary
             number
             cellref
-            "(" expression ")"
+            "(" comparison ")"
             function "(" args ")"
             primary "^" primary
         Function
             AVG
             ... more function names
         Args
-            expression
-            args "," expression
+            arg
+            args "," arg
+        Arg
+            comparison
+            cellref ":" cellref
+            sheet "!" cellref ":" cellref
         Cellref
             "R" integer "C" integer
+            sheet "!" "R" integer "C" integer
+        Sheet
+            word naming a sheet of the workbook
         Number
             floating-point-literal
      */
 
-    private Map<String, Double> iSpreadsheetCells;
     private int iFunctionCount;
     private int iLeftParenthesisCount;
 
     @Override
     public double evaluate(final String pExpression, final Map<String, Double> pCells)
             throws IllegalArgumentException {
+        return this.compile(pExpression).evaluate(pCells);
+    }
+
+    @Override
+    public CompiledExpression compile(final String pExpression) throws IllegalArgumentException {
+        final FormulaCompileEvent lEvent = new FormulaCompileEvent();
+        lEvent.begin();
+        boolean lSucceeded = false;
+        try {
+            final CompiledExpression lCompiled = this.parse(pExpression);
+            lSucceeded = true;
+            return lCompiled;
+        } finally {
+            lEvent.end();
+            if (lEvent.shouldCommit()) {
+                lEvent.expression = pExpression;
+                lEvent.succeeded = lSucceeded;
+                lEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * parses the expression into its tree of nodes
+     * @param pExpression the expression to parse
+     * @return the compiled expression
+     */
+    private CompiledExpression parse(final String pExpression) {
         final Deque<String> lExpressionTokens = tokenize(pExpression);
-        if (lExpressionTokens.isEmpty()) return 0d;
+        if (lExpressionTokens.isEmpty()) return new CompiledExpression(pExpression, new ExpressionNode.Literal(0d));
         else {
-            this.iSpreadsheetCells = pCells;
-            final double lResult;
+            final ExpressionNode lRoot;
             try {
                 this.iFunctionCount = 0;
                 this.iLeftParenthesisCount = 0;
-                lResult = this.nextExpression(lExpressionTokens);
+                lRoot = this.nextComparison(lExpressionTokens);
+                if (!lExpressionTokens.isEmpty())
+                    throw new IllegalArgumentException("Unexpected token %s".formatted(lExpressionTokens.peekFirst()));
             } catch (final NoSuchElementException lException) { // if unexpectedly ran out of tokens
                 throw new IllegalArgumentException(
                         "Insufficient tokens in expression \"%s\"".formatted(pExpression)
                 );
             }
 
-            return lResult;
+            return new CompiledExpression(pExpression, lRoot);
+        }
+    }
+
+    private ExpressionNode nextComparison(final Deque<String> pTokens) {
+        final ExpressionNode lLeftNode = this.nextExpression(pTokens);
+
+        final String lComparator = pTokens.peekFirst();
+        if (!"<".equals(lComparator) && !">".equals(lComparator) && !"=".equals(lComparator)) return lLeftNode;
+        pTokens.removeFirst();
+
+        // two-character comparators arrive as two tokens
+        String lComparison = lComparator;
+        final String lNextToken = pTokens.peekFirst();
+        if ("=".equals(lNextToken) && !"=".equals(lComparator) || "<".equals(lComparator) && ">".equals(lNextToken)) {
+            lComparison += pTokens.removeFirst();
         }
+
+        return new ExpressionNode.Comparison(lComparison, lLeftNode, this.nextExpression(pTokens));
     }
 
-    private double nextExpression(final Deque<String> pTokens) {
+    private ExpressionNode nextExpression(final Deque<String> pTokens) {
         // append a zero to achieve the desired leading unary minus effect
         if ("-".equals(pTokens.peekFirst())) {
             pTokens.addFirst("0");
         }
 
-        double lLeftToken = this.nextTerm(pTokens);
+        ExpressionNode lLeftNode = this.nextTerm(pTokens);
 
         while (!pTokens.isEmpty()) {
             final String lNextToken = pTokens.removeFirst();
             switch (lNextToken) {
-                case "+" -> lLeftToken += this.nextTerm(pTokens);
-                case "-" -> lLeftToken -= this.nextTerm(pTokens);
+                case "+", "-" -> lLeftNode = new ExpressionNode.Operator(
+                        lNextToken.charAt(0), lLeftNode, this.nextTerm(pTokens)
+                );
                 case "," -> {
                     if (this.iFunctionCount == 0) // do we expect a comma here?
                         throw new IllegalArgumentException("Unexpected comma");
 
                     pTokens.addFirst(lNextToken);
-                    return lLeftToken;
+                    return lLeftNode;
                 }
                 case ")" -> {
                     if (this.iLeftParenthesisCount == 0) // do we expect a closing parenthesis here?
                         throw new IllegalArgumentException("Missing opening parenthesis");
 
                     pTokens.addFirst(lNextToken);
-                    return lLeftToken;
+                    return lLeftNode;
                 }
-                case "*", "/", "%" -> { // binary operators get a pass
+                case "*", "/", "%", "<", ">", "=" -> { // binary operators and comparators get a pass
                     pTokens.addFirst(lNextToken);
-                    return lLeftToken;
+                    return lLeftNode;
                 }
                 default -> throw new IllegalArgumentException("Unexpected token %s".formatted(lNextToken));
             }
         }
 
-        return lLeftToken;
+        return lLeftNode;
     }
 
-    private double nextTerm(final Deque<String> pTokens) {
-        double lLeftToken = this.nextPrimary(pTokens);
+    private ExpressionNode nextTerm(final Deque<String> pTokens) {
+        ExpressionNode lLeftNode = this.nextPrimary(pTokens);
 
         while (!pTokens.isEmpty()) {
             final String lNextToken = pTokens.removeFirst();
             switch (lNextToken) {
-                case "*" -> lLeftToken *= this.nextPrimary(pTokens);
-                case "/", "%" -> {
-                    final double lDenominator = this.nextPrimary(pTokens);
-                    if (lDenominator == 0d) throw new IllegalArgumentException("Divide by zero");
-                    else {
-                        if ("/".equals(lNextToken)) lLeftToken /= lDenominator;
-                        else lLeftToken %= lDenominator;
-                    }
-                }
+                case "*", "/", "%" -> lLeftNode = new ExpressionNode.Operator(
+                        lNextToken.charAt(0), lLeftNode, this.nextPrimary(pTokens)
+                );
                 default -> {
                     pTokens.addFirst(lNextToken);
-                    return lLeftToken;
+                    return lLeftNode;
                 }
             }
         }
 
-        return lLeftToken;
+        return lLeftNode;
     }
 
-    private double nextPrimary(final Deque<String> pTokens) {
+    private ExpressionNode nextPrimary(final Deque<String> pTokens) {
         final String lLeftToken = pTokens.removeFirst();
-        final double lLeftValue;
+        final ExpressionNode lLeftNode;
 
         if (this.isNumber(lLeftToken)) {
-            lLeftValue = Double.parseDouble(lLeftToken);
+            lLeftNode = new ExpressionNode.Literal(Double.parseDouble(lLeftToken));
         } else if (this.isCellRef(lLeftToken)) {
-            // check if the cell is even a number or not, null only occurs if the token is mapped to a null
-            final Double lIntermediate = this.iSpreadsheetCells.getOrDefault(lLeftToken, 0d);
-            if (lIntermediate == null) throw new IllegalArgumentException(
-                    "Cell %s does not contain a number".formatted(lLeftToken)
-            );
-            lLeftValue =  lIntermediate;
+            lLeftNode = new ExpressionNode.CellRef(lLeftToken);
         } else if ("(".equals(lLeftToken)) {
             this.iLeftParenthesisCount++;
-            final double lExpr = this.nextExpression(pTokens);
+            final ExpressionNode lExpr = this.nextComparison(pTokens);
             this.iLeftParenthesisCount--;
             if (!")".equals(pTokens.removeFirst()))
                 throw new IllegalArgumentException("Missing closing parenthesis");
-            else lLeftValue = lExpr;
+            else lLeftNode = lExpr;
 
+        } else if (this.isWord(lLeftToken) && "!".equals(pTokens.peekFirst())) {
+            pTokens.removeFirst();
+            final String lCellRef = pTokens.removeFirst();
+            if (!this.isCellRef(lCellRef))
+                throw new IllegalArgumentException("Sheet %s must be followed by a cellref, not %s"
+                        .formatted(lLeftToken, lCellRef));
+            lLeftNode = new ExpressionNode.CellRef(lLeftToken, lCellRef);
         } else if (this.isWord(lLeftToken)) {
-            if (!Functions.validFunctionName(lLeftToken))
+            final SpreadsheetFunction lFunction = FunctionRegistry.lookup(lLeftToken);
+            if (lFunction == null)
                 throw new IllegalArgumentException("Unknown function %s".formatted(lLeftToken));
 
             this.iFunctionCount++;
             this.iLeftParenthesisCount++;
             pTokens.addFirst(lLeftToken);
-            lLeftValue = this.nextFunction(pTokens);
+            lLeftNode = this.nextFunction(pTokens, lFunction);
             this.iFunctionCount--;
             this.iLeftParenthesisCount--;
         } else throw new IllegalArgumentException(
@@ -169,34 +226,71 @@ public final class GrammarExpressionReader extends AbstractExpressionReader {
 
         if ("^".equals(pTokens.peekFirst())) {
             pTokens.removeFirst();
-            final double lRightValue = this.nextPrimary(pTokens);
-            if (lLeftValue == 0d && lRightValue < 0) throw new IllegalArgumentException("Division by zero");
-            return Math.pow(lLeftValue, lRightValue);
-        } else return lLeftValue;
+            return new ExpressionNode.Operator('^', lLeftNode, this.nextPrimary(pTokens));
+        } else return lLeftNode;
     }
 
-    private double nextFunction(final Deque<String> pTokens) {
+    private ExpressionNode nextFunction(final Deque<String> pTokens, final SpreadsheetFunction pFunction) {
         final String lLeftToken = pTokens.removeFirst();
         if (pTokens.isEmpty())
             throw new IllegalArgumentException("Function opening parenthesis expected");
         if (!"(".equals(pTokens.removeFirst()))
             throw new IllegalArgumentException("missing opening parenthesis");
-        return Functions.apply(lLeftToken, this.nextArgs(pTokens));
+
+        final ExpressionNode[] lArgs = this.nextArgs(pTokens);
+        if (lArgs.length < pFunction.getMinArgs() || lArgs.length > pFunction.getMaxArgs())
+            throw new IllegalArgumentException(
+                    "Bad number of arguments (%d) for function %s".formatted(lArgs.length, lLeftToken)
+            );
+        if (pFunction instanceof RangeFunction lRangeFunction) return new ExpressionNode.RangeCall(lRangeFunction, lArgs);
+        else if (pFunction instanceof LazyFunction lLazyFunction) return new ExpressionNode.LazyCall(lLazyFunction, lArgs);
+        else return new ExpressionNode.Call(pFunction, lArgs);
     }
 
-    private Object[] nextArgs(final Deque<String> pTokens) {
-        final Deque<Double> lArgs = new LinkedList<>();
+    private ExpressionNode[] nextArgs(final Deque<String> pTokens) {
+        final List<ExpressionNode> lArgs = new ArrayList<>();
 
-        if (")".equals(pTokens.peekFirst())) return lArgs.toArray();
-        else {
-            lArgs.addLast(this.nextExpression(pTokens));
+        if (")".equals(pTokens.peekFirst())) {
+            pTokens.removeFirst();
+            return new ExpressionNode[0];
+        } else {
+            lArgs.add(this.nextArg(pTokens));
             while (!pTokens.isEmpty()) {
                 final String lLeftToken = pTokens.removeFirst();
-                if (",".equals(lLeftToken)) lArgs.addLast(this.nextExpression(pTokens));
-                else if (")".equals(lLeftToken)) return lArgs.toArray();
+                if (",".equals(lLeftToken)) lArgs.add(this.nextArg(pTokens));
+                else if (")".equals(lLeftToken)) return lArgs.toArray(new ExpressionNode[0]);
+                else throw new IllegalArgumentException("Unexpected token %s".formatted(lLeftToken));
             }
         }
         throw new IllegalArgumentException("Missing closing parenthesis");
     }
 
+    private ExpressionNode nextArg(final Deque<String> pTokens) {
+        final Iterator<String> lLookahead = pTokens.iterator();
+        String lFirstToken = lLookahead.next();
+        String lSheet = null;
+        // a sheet's name and "!" come before the first cellref of a range on another sheet
+        if (this.isWord(lFirstToken) && !this.isCellRef(lFirstToken) && lLookahead.hasNext()
+                && "!".equals(lLookahead.next()) && lLookahead.hasNext()) {
+            lSheet = lFirstToken;
+            lFirstToken = lLookahead.next();
+        }
+        if (!this.isCellRef(lFirstToken) || !lLookahead.hasNext() || !":".equals(lLookahead.next()))
+            return this.nextComparison(pTokens);
+
+        if (lSheet != null) {
+            pTokens.removeFirst();
+            pTokens.removeFirst();
+        }
+        pTokens.removeFirst();
+        pTokens.removeFirst();
+        final String lLastToken = pTokens.removeFirst();
+        if (!this.isCellRef(lLastToken))
+            throw new IllegalArgumentException("Range must end with a cellref, not %s".formatted(lLastToken));
+
+        final int[] lFirst = toRowColumn(lFirstToken);
+        final int[] lLast = toRowColumn(lLastToken);
+        return new ExpressionNode.Range(lSheet, lFirst[0], lFirst[1], lLast[0], lLast[1]);
+    }
+
 }
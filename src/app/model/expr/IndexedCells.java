@@ -0,0 +1,18 @@
+package app.model.expr;
+
+/**
+ * A table of cells that also keeps lookup indexes over its columns. When the table of cells handed to
+ * an expression implements this interface, lookup functions search through the indexes instead of
+ * scanning their ranges.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public interface IndexedCells {
+
+    /**
+     * Gets the lookup indexes kept for these cells.
+     * @return the index cache
+     */
+    LookupIndexCache getLookupIndexCache();
+}
@@ -0,0 +1,44 @@
+package app.model.expr;
+
+/**
+ * The arguments of a call to a {@link LazyFunction}, each of which is only evaluated when asked for.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public interface LazyArguments {
+
+    /**
+     * Gets the number of arguments written in the call.
+     * @return the argument count
+     */
+    int size();
+
+    /**
+     * Evaluates an argument. Each call evaluates the argument again, so a function
+     * should hold on to a value it needs more than once.
+     * @param pIndex the position of the argument, counted from zero
+     * @return the value of the argument
+     * @throws IllegalArgumentException if the argument produces a bad result (such as division by zero)
+     */
+    double evaluate(int pIndex) throws IllegalArgumentException;
+
+    /**
+     * Wraps arguments that have already been evaluated.
+     * @param pArgs the values of the arguments
+     * @return the arguments
+     */
+    static LazyArguments of(final double[] pArgs) {
+        return new LazyArguments() {
+            @Override
+            public int size() {
+                return pArgs.length;
+            }
+
+            @Override
+            public double evaluate(final int pIndex) {
+                return pArgs[pIndex];
+            }
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package app.model.expr;
+
+/**
+ * A function that decides which of its arguments to evaluate, such as IF only evaluating the branch it takes.
+ * Arguments that are never evaluated cost nothing and cannot fail, though the cells they refer to still
+ * count as dependencies of the expression. Ranges cannot be passed to a lazy function.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public interface LazyFunction extends SpreadsheetFunction {
+
+    /**
+     * Applies the function to its arguments.
+     * @param pArgs the arguments, in the order they were written, evaluated on demand
+     * @return the value of the function
+     * @throws IllegalArgumentException if the function is not defined for the arguments
+     */
+    double apply(LazyArguments pArgs) throws IllegalArgumentException;
+
+    @Override
+    default double apply(final double[] pArgs) throws IllegalArgumentException {
+        return this.apply(LazyArguments.of(pArgs));
+    }
+}
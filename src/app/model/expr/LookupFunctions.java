@@ -0,0 +1,147 @@
+package app.model.expr;
+
+/**
+ * class that holds the built-in lookup functions, which search a range for a value.
+ * <p>
+ * An exact match finds the first equal value. An approximate match finds the largest value not above
+ * the one looked for (or, for a MATCH of type -1, the smallest value not below it), so the searched
+ * row or column does not need to be sorted. Cells that are empty or not numbers never match.
+ * Searches down a column go through the sheet's lookup index when it has one, see {@link CellRange}.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+final class LookupFunctions {
+
+    /** VLOOKUP(value, table, column[, approximate]) */
+    static final RangeFunction VLOOKUP = new RangeFunction() {
+        @Override
+        public double apply(final CellRange[] pArgs) {
+            final CellRange lTable = pArgs[1];
+            final int lColumn = toIndex(scalar(pArgs[2]), lTable.getColumnCount());
+            final boolean lApproximate = pArgs.length < 4 || scalar(pArgs[3]) != 0d;
+
+            final int lRow = found(lTable.findInColumn(scalar(pArgs[0]), 0, lApproximate ? 1 : 0), pArgs[0]);
+            return number(lTable.get(lRow, lColumn - 1));
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 3;
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 4;
+        }
+    };
+
+    /** HLOOKUP(value, table, row[, approximate]) */
+    static final RangeFunction HLOOKUP = new RangeFunction() {
+        @Override
+        public double apply(final CellRange[] pArgs) {
+            final CellRange lTable = pArgs[1];
+            final int lRow = toIndex(scalar(pArgs[2]), lTable.getRowCount());
+            final boolean lApproximate = pArgs.length < 4 || scalar(pArgs[3]) != 0d;
+
+            final int lColumn = found(lTable.findInRow(scalar(pArgs[0]), 0, lApproximate ? 1 : 0), pArgs[0]);
+            return number(lTable.get(lRow - 1, lColumn));
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 3;
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 4;
+        }
+    };
+
+    /** MATCH(value, range[, type]) where type 1 finds the largest value not above, 0 an equal value,
+     * and -1 the smallest value not below, returning the position counted from one */
+    static final RangeFunction MATCH = new RangeFunction() {
+        @Override
+        public double apply(final CellRange[] pArgs) {
+            final CellRange lRange = pArgs[1];
+            if (lRange.getRowCount() != 1 && lRange.getColumnCount() != 1)
+                throw new IllegalArgumentException("MATCH needs a single row or column");
+            final int lType = pArgs.length < 3 ? 1 : (int) Math.signum(scalar(pArgs[2]));
+            final double lValue = scalar(pArgs[0]);
+
+            if (lRange.getColumnCount() == 1) return found(lRange.findInColumn(lValue, 0, lType), pArgs[0]) + 1;
+            else return found(lRange.findInRow(lValue, 0, lType), pArgs[0]) + 1;
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 2;
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 3;
+        }
+    };
+
+    /** INDEX(range, row[, column]) with the row and column counted from one */
+    static final RangeFunction INDEX = new RangeFunction() {
+        @Override
+        public double apply(final CellRange[] pArgs) {
+            final CellRange lRange = pArgs[0];
+            if (pArgs.length == 2 && lRange.getRowCount() == 1) {
+                // a single row is indexed by its column
+                return number(lRange.get(0, toIndex(scalar(pArgs[1]), lRange.getColumnCount()) - 1));
+            }
+            final int lRow = toIndex(scalar(pArgs[1]), lRange.getRowCount());
+            final int lColumn = pArgs.length < 3 ? 1 : toIndex(scalar(pArgs[2]), lRange.getColumnCount());
+            return number(lRange.get(lRow - 1, lColumn - 1));
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 2;
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 3;
+        }
+    };
+
+    private LookupFunctions() {
+        super();
+    }
+
+    /**
+     * Registers the functions of this class with the {@link FunctionRegistry}.
+     */
+    static void registerAll() {
+        FunctionRegistry.register("HLOOKUP", HLOOKUP);
+        FunctionRegistry.register("INDEX", INDEX);
+        FunctionRegistry.register("MATCH", MATCH);
+        FunctionRegistry.register("VLOOKUP", VLOOKUP);
+    }
+
+    private static int found(final int pPosition, final CellRange pValue) {
+        if (pPosition < 0) throw new IllegalArgumentException("No match for %s".formatted(pValue.get(0)));
+        return pPosition;
+    }
+
+    private static double scalar(final CellRange pArg) {
+        if (pArg.size() != 1) throw new IllegalArgumentException("Expected a single value, not a range");
+        return number(pArg.get(0));
+    }
+
+    private static double number(final double pValue) {
+        if (Double.isNaN(pValue)) throw new IllegalArgumentException("Looked up cell does not contain a number");
+        return pValue;
+    }
+
+    private static int toIndex(final double pIndex, final int pCount) {
+        if (pIndex != Math.rint(pIndex) || pIndex < 1 || pIndex > pCount)
+            throw new IllegalArgumentException("Index must be a whole number between 1 and %d".formatted(pCount));
+        return (int) pIndex;
+    }
+}
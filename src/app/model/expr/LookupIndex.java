@@ -0,0 +1,109 @@
+package app.model.expr;
+
+import java.util.Arrays;
+
+/**
+ * Index over the numbers of one column of a range, answering lookups without scanning the column.
+ * <p>
+ * An open-addressing hash table maps each number to the first row holding it, for exact matches,
+ * and a sorted copy of the distinct numbers answers approximate matches with a binary search.
+ * Both hold primitives only. Cells that are empty or not numbers are left out.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+final class LookupIndex {
+    private static final int EMPTY = -1;
+
+    private final int iFirstRow;
+    private final int iLastRow;
+    private final long[] iKeys;
+    private final int[] iRows;
+    private final int iMask;
+    private final double[] iSorted;
+
+    /**
+     * Builds the index over the values of a column.
+     * @param pFirstRow the sheet row of the first value, counted from zero
+     * @param pValues the values of the column from top to bottom, NaN where a cell is not a number
+     */
+    LookupIndex(final int pFirstRow, final double[] pValues) {
+        super();
+        this.iFirstRow = pFirstRow;
+        this.iLastRow = pFirstRow + pValues.length - 1;
+
+        final int lCapacity = Integer.highestOneBit(Math.max(2, pValues.length) * 2 - 1) << 1;
+        this.iKeys = new long[lCapacity];
+        this.iRows = new int[lCapacity];
+        this.iMask = lCapacity - 1;
+        Arrays.fill(this.iRows, EMPTY);
+
+        final double[] lDistinct = new double[pValues.length];
+        int lDistinctCount = 0;
+        for (int row = 0; row < pValues.length; row++) {
+            if (Double.isNaN(pValues[row])) continue;
+            if (this.insert(pValues[row], row)) lDistinct[lDistinctCount++] = normalize(pValues[row]);
+        }
+        this.iSorted = Arrays.copyOf(lDistinct, lDistinctCount);
+        Arrays.sort(this.iSorted);
+    }
+
+    /**
+     * Finds a value in the column.
+     * @param pValue the value to look for
+     * @param pType 0 for an equal value, 1 for the largest value not above, -1 for the smallest value not below
+     * @return the first row within the column holding the match, counted from zero, or -1 if there is none
+     */
+    int find(final double pValue, final int pType) {
+        if (pType == 0) return this.rowOf(pValue);
+
+        int lPosition = Arrays.binarySearch(this.iSorted, normalize(pValue));
+        if (lPosition < 0) {
+            final int lInsertion = -lPosition - 1;
+            lPosition = pType > 0 ? lInsertion - 1 : lInsertion;
+        }
+        if (lPosition < 0 || lPosition >= this.iSorted.length) return -1;
+        return this.rowOf(this.iSorted[lPosition]);
+    }
+
+    /**
+     * Queries if the index covers a sheet row.
+     * @param pRow the row, counted from zero
+     * @return if the row lies within the indexed column
+     */
+    boolean covers(final int pRow) {
+        return this.iFirstRow <= pRow && pRow <= this.iLastRow;
+    }
+
+    private boolean insert(final double pValue, final int pRow) {
+        final long lKey = Double.doubleToLongBits(normalize(pValue));
+        int lSlot = hash(lKey) & this.iMask;
+        while (this.iRows[lSlot] != EMPTY) {
+            if (this.iKeys[lSlot] == lKey) return false; // keep the first row
+            lSlot = (lSlot + 1) & this.iMask;
+        }
+        this.iKeys[lSlot] = lKey;
+        this.iRows[lSlot] = pRow;
+        return true;
+    }
+
+    private int rowOf(final double pValue) {
+        final long lKey = Double.doubleToLongBits(normalize(pValue));
+        int lSlot = hash(lKey) & this.iMask;
+        while (this.iRows[lSlot] != EMPTY) {
+            if (this.iKeys[lSlot] == lKey) return this.iRows[lSlot];
+            lSlot = (lSlot + 1) & this.iMask;
+        }
+        return -1;
+    }
+
+    private static int hash(final long pKey) {
+        final long lMixed = pKey * 0x9E3779B97F4A7C15L;
+        return (int) (lMixed ^ (lMixed >>> 32));
+    }
+
+    // -0 and 0 are equal to the reader, so they share one key
+    private static double normalize(final double pValue) {
+        return pValue == 0d ? 0d : pValue;
+    }
+}
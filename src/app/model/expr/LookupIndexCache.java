@@ -0,0 +1,76 @@
+package app.model.expr;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the lookup indexes built over the columns of a sheet, so that lookups into the same range
+ * share one index. Indexes are built the first time a lookup needs them, and the sheet drops them
+ * through {@link #invalidate(int, int)} whenever a cell they cover changes.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public final class LookupIndexCache {
+    // column -> (first row, last row) -> index
+    private final Map<Integer, Map<Long, LookupIndex>> iIndexes = new ConcurrentHashMap<>();
+    private final LongAdder iHits = new LongAdder();
+    private final LongAdder iMisses = new LongAdder();
+
+    /**
+     * Drops every index that covers a cell.
+     * @param pRow the row of the cell that changed, counted from zero
+     * @param pColumn the column of the cell that changed, counted from zero
+     */
+    public void invalidate(final int pRow, final int pColumn) {
+        final Map<Long, LookupIndex> lColumn = this.iIndexes.get(pColumn);
+        if (lColumn != null) lColumn.values().removeIf(index -> index.covers(pRow));
+    }
+
+    /**
+     * Drops every index.
+     */
+    public void clear() {
+        this.iIndexes.clear();
+    }
+
+    /**
+     * Gets the number of lookups that found their index already built.
+     * @return the hit count since this cache was created
+     */
+    public long getHitCount() {
+        return this.iHits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to build their index.
+     * @return the miss count since this cache was created
+     */
+    public long getMissCount() {
+        return this.iMisses.sum();
+    }
+
+    /**
+     * Gets the index over a column of a range, building it if there is none.
+     * @param pRange the range, which must sit on the sheet
+     * @param pColumn the column within the range, counted from zero
+     * @return the index
+     */
+    LookupIndex get(final CellRange pRange, final int pColumn) {
+        final int lFirstRow = pRange.getFirstRow();
+        final long lSpan = (long) lFirstRow << 32 | (lFirstRow + pRange.getRowCount() - 1);
+        final Map<Long, LookupIndex> lColumn = this.iIndexes
+                .computeIfAbsent(pRange.getFirstColumn() + pColumn, column -> new ConcurrentHashMap<>());
+
+        final LookupIndex lIndex = lColumn.get(lSpan);
+        if (lIndex != null) {
+            this.iHits.increment();
+            return lIndex;
+        }
+        return lColumn.computeIfAbsent(lSpan, span -> {
+            this.iMisses.increment();
+            return new LookupIndex(lFirstRow, pRange.getColumn(pColumn));
+        });
+    }
+}
@@ -0,0 +1,29 @@
+package app.model.expr;
+
+/**
+ * A function that needs the shape of its range arguments, such as VLOOKUP reading a column of a table.
+ * <p>
+ * Every argument reaches the function as a {@link CellRange}, where arguments that are not ranges are
+ * single values. Functions that only implement {@link SpreadsheetFunction} instead receive the numbers
+ * of any range argument spread out in their argument array.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public interface RangeFunction extends SpreadsheetFunction {
+
+    /**
+     * Applies the function to its arguments.
+     * @param pArgs the arguments, in the order they were written
+     * @return the value of the function
+     * @throws IllegalArgumentException if the function is not defined for the arguments
+     */
+    double apply(CellRange[] pArgs) throws IllegalArgumentException;
+
+    @Override
+    default double apply(final double[] pArgs) throws IllegalArgumentException {
+        final CellRange[] lArgs = new CellRange[pArgs.length];
+        for (int i = 0; i < lArgs.length; i++) lArgs[i] = CellRange.of(pArgs[i]);
+        return this.apply(lArgs);
+    }
+}
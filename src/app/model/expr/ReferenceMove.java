@@ -0,0 +1,142 @@
+package app.model.expr;
+
+/**
+ * Where the cells that expressions refer to end up when cells are moved around the sheet, such as by inserting
+ * rows or sorting them, so that references can follow the cells. References qualified with the name of another
+ * sheet of the workbook are left as they are, unless the move is of that sheet's cells.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+interface ReferenceMove {
+
+    /**
+     * Moves a single cell.
+     * @param pRow the row of the cell, counted from zero
+     * @param pColumn the column of the cell, counted from zero
+     * @return the row then column the cell moves to, or null if it was deleted
+     */
+    int[] moveCell(int pRow, int pColumn);
+
+    /**
+     * Moves a range of cells.
+     * @param pFirstRow the first row of the range, counted from zero
+     * @param pFirstColumn the first column of the range, counted from zero
+     * @param pLastRow the last row of the range, counted from zero
+     * @param pLastColumn the last column of the range, counted from zero
+     * @return the first row, first column, last row then last column the range covers afterwards,
+     *         or null if all of it was deleted
+     */
+    int[] moveRange(int pFirstRow, int pFirstColumn, int pLastRow, int pLastColumn);
+
+    /**
+     * Queries if the move applies to the references to a sheet. Unless made with {@link #onSheet}, a move applies
+     * only to the cells of the sheet the expression is on, which its unqualified references refer to.
+     * @param pSheet the name of the sheet a reference is qualified with, or null for an unqualified reference
+     * @return true if the reference moves
+     */
+    default boolean movesSheet(final String pSheet) {
+        return pSheet == null;
+    }
+
+    /**
+     * Makes a move of the cells of one sheet of a workbook, which applies to references qualified with the
+     * sheet's name, and to unqualified references only in expressions on that sheet.
+     * @param pMove where the cells of the sheet move to
+     * @param pSheet the name of the sheet, or null for a sheet outside a workbook
+     * @param pOnSheet true if the expressions are on that sheet
+     * @return the move
+     */
+    static ReferenceMove onSheet(final ReferenceMove pMove, final String pSheet, final boolean pOnSheet) {
+        return new ReferenceMove() {
+            @Override
+            public int[] moveCell(final int pRow, final int pColumn) {
+                return pMove.moveCell(pRow, pColumn);
+            }
+
+            @Override
+            public int[] moveRange(final int pFirstRow, final int pFirstColumn, final int pLastRow,
+                                   final int pLastColumn) {
+                return pMove.moveRange(pFirstRow, pFirstColumn, pLastRow, pLastColumn);
+            }
+
+            @Override
+            public boolean movesSheet(final String pReferenced) {
+                return pReferenced == null ? pOnSheet : pReferenced.equals(pSheet);
+            }
+        };
+    }
+
+    /**
+     * Moves cells along by rows or columns inserted or deleted before them. Ranges grow with the rows or columns
+     * inserted inside them and shrink with those deleted.
+     * @param pRows true if rows were inserted or deleted, false if columns were
+     * @param pAt the first row or column inserted or deleted, counted from zero
+     * @param pDelta the number inserted, or the negated number deleted
+     * @return the move
+     */
+    static ReferenceMove shift(final boolean pRows, final int pAt, final int pDelta) {
+        return new ReferenceMove() {
+            @Override
+            public int[] moveCell(final int pRow, final int pColumn) {
+                final int lShifted = shiftIndex(pRows ? pRow : pColumn, pAt, pDelta);
+                if (lShifted < 0) return null;
+                else return pRows ? new int[] {lShifted, pColumn} : new int[] {pRow, lShifted};
+            }
+
+            @Override
+            public int[] moveRange(final int pFirstRow, final int pFirstColumn, final int pLastRow,
+                                   final int pLastColumn) {
+                int lFirst = shiftIndex(pRows ? pFirstRow : pFirstColumn, pAt, pDelta);
+                int lLast = shiftIndex(pRows ? pLastRow : pLastColumn, pAt, pDelta);
+                // an end that was deleted moves to the nearest line that was kept
+                if (lFirst < 0) lFirst = pAt;
+                if (lLast < 0) lLast = pAt - 1;
+                if (lLast < lFirst) return null;
+                else if (pRows) return new int[] {lFirst, pFirstColumn, lLast, pLastColumn};
+                else return new int[] {pFirstRow, lFirst, pLastRow, lLast};
+            }
+        };
+    }
+
+    /**
+     * Moves the rows of a block of cells into another order, as sorting them does. Ranges are left where they
+     * are, since the cells they cover are still the cells of the block.
+     * @param pFirstRow the first row of the block, counted from zero
+     * @param pFirstColumn the first column of the block, counted from zero
+     * @param pLastColumn the last column of the block, counted from zero
+     * @param pNewRows for each row of the block, in order, the row of the block it moves to, counted from the
+     *                 first row of the block
+     * @return the move
+     */
+    static ReferenceMove permuteRows(final int pFirstRow, final int pFirstColumn, final int pLastColumn,
+                                     final int[] pNewRows) {
+        return new ReferenceMove() {
+            @Override
+            public int[] moveCell(final int pRow, final int pColumn) {
+                if (pRow < pFirstRow || pRow - pFirstRow >= pNewRows.length
+                        || pColumn < pFirstColumn || pColumn > pLastColumn) return new int[] {pRow, pColumn};
+                return new int[] {pFirstRow + pNewRows[pRow - pFirstRow], pColumn};
+            }
+
+            @Override
+            public int[] moveRange(final int pFirstRow, final int pFirstColumn, final int pLastRow,
+                                   final int pLastColumn) {
+                return new int[] {pFirstRow, pFirstColumn, pLastRow, pLastColumn};
+            }
+        };
+    }
+
+    /**
+     * Moves a row or column along by rows or columns inserted or deleted before it.
+     * @param pIndex the row or column, counted from zero
+     * @param pAt the first row or column inserted or deleted, counted from zero
+     * @param pDelta the number inserted, or the negated number deleted
+     * @return the row or column afterwards, or -1 if it was deleted
+     */
+    private static int shiftIndex(final int pIndex, final int pAt, final int pDelta) {
+        if (pIndex < pAt) return pIndex;
+        else if (pDelta >= 0) return pIndex + pDelta;
+        else return pIndex < pAt - pDelta ? -1 : pIndex + pDelta;
+    }
+}
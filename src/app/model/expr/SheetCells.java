@@ -0,0 +1,38 @@
+package app.model.expr;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * A table of cells that knows the size of its sheet and which of its cells hold something. When the table of
+ * cells handed to an expression implements this interface, the numbers of a range spread into a function's
+ * arguments are read only from the cells that hold something, within the sheet, rather than by looking up every
+ * cell the range covers, so a range written far past the edge of a small sheet costs no more than the sheet.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public interface SheetCells {
+
+    /**
+     * Gets the number of rows of the sheet.
+     * @return the row count
+     */
+    int getRowCount();
+
+    /**
+     * Gets the number of columns of the sheet.
+     * @return the column count
+     */
+    int getColumnCount();
+
+    /**
+     * Gives the numbers held by the cells of a block, row by row, skipping cells that are empty or not numbers.
+     * Rows and columns past the sheet are left out.
+     * @param pFirstRow the first row of the block, counted from zero
+     * @param pFirstColumn the first column of the block, counted from zero
+     * @param pLastRow the last row of the block, not before the first
+     * @param pLastColumn the last column of the block, not before the first
+     * @param pAction what to do with each number
+     */
+    void forEachNumber(int pFirstRow, int pFirstColumn, int pLastRow, int pLastColumn, DoubleConsumer pAction);
+}
@@ -0,0 +1,95 @@
+package app.model.expr;
+
+/**
+ * Defines a function that expressions can call, such as "SUM" in "SUM(1, 2, 3)".
+ * <p>
+ * The expression reader resolves the function once when it compiles an expression and from then on
+ * calls it directly with primitive arguments. Calls with up to three arguments go through the
+ * fixed-arity methods, which by default collect their arguments into an array and defer to
+ * {@link #apply(double[])}; functions that can do without the array should override them.
+ * <p>
+ * Implementations must be stateless, since one instance is shared by every expression that calls it.
+ * Register custom functions through {@link FunctionRegistry}.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public interface SpreadsheetFunction {
+
+    /**
+     * Applies the function to any number of arguments.
+     * @param pArgs the arguments, in the order they were written
+     * @return the value of the function
+     * @throws IllegalArgumentException if the function is not defined for the arguments
+     */
+    double apply(double[] pArgs) throws IllegalArgumentException;
+
+    /**
+     * Applies the function to no arguments.
+     * @return the value of the function
+     * @throws IllegalArgumentException if the function is not defined without arguments
+     */
+    default double apply() throws IllegalArgumentException {
+        return this.apply(new double[0]);
+    }
+
+    /**
+     * Applies the function to one argument.
+     * @param pFirst the argument
+     * @return the value of the function
+     * @throws IllegalArgumentException if the function is not defined for the argument
+     */
+    default double apply(final double pFirst) throws IllegalArgumentException {
+        return this.apply(new double[] {pFirst});
+    }
+
+    /**
+     * Applies the function to two arguments.
+     * @param pFirst the first argument
+     * @param pSecond the second argument
+     * @return the value of the function
+     * @throws IllegalArgumentException if the function is not defined for the arguments
+     */
+    default double apply(final double pFirst, final double pSecond) throws IllegalArgumentException {
+        return this.apply(new double[] {pFirst, pSecond});
+    }
+
+    /**
+     * Applies the function to three arguments.
+     * @param pFirst the first argument
+     * @param pSecond the second argument
+     * @param pThird the third argument
+     * @return the value of the function
+     * @throws IllegalArgumentException if the function is not defined for the arguments
+     */
+    default double apply(final double pFirst, final double pSecond, final double pThird)
+            throws IllegalArgumentException {
+        return this.apply(new double[] {pFirst, pSecond, pThird});
+    }
+
+    /**
+     * Gets the least number of arguments this function accepts, checked when an expression is compiled.
+     * @return the minimum argument count
+     */
+    default int getMinArgs() {
+        return 0;
+    }
+
+    /**
+     * Gets the greatest number of arguments this function accepts, checked when an expression is compiled.
+     * @return the maximum argument count
+     */
+    default int getMaxArgs() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Queries if this function can give a different value each time it is called with the same arguments,
+     * such as RAND or NOW. Expressions calling a volatile function are evaluated again whenever the sheet
+     * refreshes its volatile cells, rather than only when the cells they refer to change.
+     * @return true if the function is volatile
+     */
+    default boolean isVolatile() {
+        return false;
+    }
+}
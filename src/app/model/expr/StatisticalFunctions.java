@@ -0,0 +1,300 @@
+package app.model.expr;
+
+import java.util.Arrays;
+
+/**
+ * class that holds the built-in aggregate and order statistic functions.
+ * <p>
+ * Aggregates make a single pass over their arguments: sums use Kahan's compensated summation and
+ * variances use Welford's method, so that neither loses precision over long argument lists.
+ * Order statistics find their values with a selection algorithm instead of sorting every argument.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+final class StatisticalFunctions {
+
+    static final SpreadsheetFunction AVERAGE = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            if (pArgs.length == 0) throw new IllegalArgumentException("AVERAGE of no numbers");
+            return kahanSum(pArgs, pArgs.length) / pArgs.length;
+        }
+
+        @Override
+        public double apply(final double pFirst) {
+            return pFirst;
+        }
+
+        @Override
+        public double apply(final double pFirst, final double pSecond) {
+            return (pFirst + pSecond) / 2d;
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 1;
+        }
+    };
+
+    static final SpreadsheetFunction COUNT = pArgs -> pArgs.length;
+
+    static final SpreadsheetFunction MAX = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            if (pArgs.length == 0) return 0d;
+            double lMax = pArgs[0];
+            for (final double arg : pArgs) lMax = Math.max(lMax, arg);
+            return lMax;
+        }
+
+        @Override
+        public double apply(final double pFirst, final double pSecond) {
+            return Math.max(pFirst, pSecond);
+        }
+    };
+
+    static final SpreadsheetFunction MIN = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            if (pArgs.length == 0) return 0d;
+            double lMin = pArgs[0];
+            for (final double arg : pArgs) lMin = Math.min(lMin, arg);
+            return lMin;
+        }
+
+        @Override
+        public double apply(final double pFirst, final double pSecond) {
+            return Math.min(pFirst, pSecond);
+        }
+    };
+
+    static final SpreadsheetFunction SUM = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            return kahanSum(pArgs, pArgs.length);
+        }
+
+        @Override
+        public double apply(final double pFirst) {
+            return pFirst;
+        }
+
+        @Override
+        public double apply(final double pFirst, final double pSecond) {
+            return pFirst + pSecond;
+        }
+    };
+
+    static final SpreadsheetFunction SUMSQ = pArgs -> {
+        double lSum = 0;
+        double lCompensation = 0;
+        for (final double arg : pArgs) {
+            final double lTerm = arg * arg - lCompensation;
+            final double lNext = lSum + lTerm;
+            lCompensation = (lNext - lSum) - lTerm;
+            lSum = lNext;
+        }
+        return lSum;
+    };
+
+    static final SpreadsheetFunction VAR = pArgs -> variance(pArgs, true);
+    static final SpreadsheetFunction VARP = pArgs -> variance(pArgs, false);
+    static final SpreadsheetFunction STDEV = pArgs -> Math.sqrt(variance(pArgs, true));
+    static final SpreadsheetFunction STDEVP = pArgs -> Math.sqrt(variance(pArgs, false));
+
+    static final SpreadsheetFunction MEDIAN = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            if (pArgs.length == 0) throw new IllegalArgumentException("MEDIAN of no numbers");
+            return percentile(pArgs.clone(), pArgs.length, 0.5d);
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 1;
+        }
+    };
+
+    /** PERCENTILE(values..., p) with p between 0 and 1, interpolating between ranks */
+    static final SpreadsheetFunction PERCENTILE = withTrailingArg(2, (pValues, pCount, pFraction) -> {
+        if (pFraction < 0d || pFraction > 1d)
+            throw new IllegalArgumentException("PERCENTILE must be between 0 and 1");
+        return percentile(pValues, pCount, pFraction);
+    });
+
+    /** QUARTILE(values..., q) with q one of 0 to 4 */
+    static final SpreadsheetFunction QUARTILE = withTrailingArg(2, (pValues, pCount, pQuartile) -> {
+        if (pQuartile != Math.rint(pQuartile) || pQuartile < 0d || pQuartile > 4d)
+            throw new IllegalArgumentException("QUARTILE must be one of 0, 1, 2, 3 or 4");
+        return percentile(pValues, pCount, pQuartile / 4d);
+    });
+
+    /** LARGE(values..., k), the k-th largest value */
+    static final SpreadsheetFunction LARGE = withTrailingArg(2, (pValues, pCount, pRank) ->
+            select(pValues, 0, pCount - 1, pCount - toRank(pRank, pCount))
+    );
+
+    /** SMALL(values..., k), the k-th smallest value */
+    static final SpreadsheetFunction SMALL = withTrailingArg(2, (pValues, pCount, pRank) ->
+            select(pValues, 0, pCount - 1, toRank(pRank, pCount) - 1)
+    );
+
+    private StatisticalFunctions() {
+        super();
+    }
+
+    /**
+     * Registers the functions of this class with the {@link FunctionRegistry}.
+     */
+    static void registerAll() {
+        FunctionRegistry.register("AVERAGE", AVERAGE);
+        FunctionRegistry.registerSynonym("AVG", "AVERAGE");
+        FunctionRegistry.register("COUNT", COUNT);
+        FunctionRegistry.register("LARGE", LARGE);
+        FunctionRegistry.register("MAX", MAX);
+        FunctionRegistry.register("MEDIAN", MEDIAN);
+        FunctionRegistry.register("MIN", MIN);
+        FunctionRegistry.register("PERCENTILE", PERCENTILE);
+        FunctionRegistry.register("QUARTILE", QUARTILE);
+        FunctionRegistry.register("SMALL", SMALL);
+        FunctionRegistry.register("STDEV", STDEV);
+        FunctionRegistry.register("STDEVP", STDEVP);
+        FunctionRegistry.register("SUM", SUM);
+        FunctionRegistry.register("SUMSQ", SUMSQ);
+        FunctionRegistry.register("VAR", VAR);
+        FunctionRegistry.register("VARP", VARP);
+    }
+
+    /**
+     * Sums values with Kahan's compensated summation.
+     * @param pValues the values to sum
+     * @param pCount how many values from the start of the array to sum
+     * @return the sum
+     */
+    static double kahanSum(final double[] pValues, final int pCount) {
+        double lSum = 0;
+        double lCompensation = 0; // the low-order bits lost by the previous addition
+        for (int i = 0; i < pCount; i++) {
+            final double lTerm = pValues[i] - lCompensation;
+            final double lNext = lSum + lTerm;
+            lCompensation = (lNext - lSum) - lTerm;
+            lSum = lNext;
+        }
+        return lSum;
+    }
+
+    /**
+     * Computes the variance in one pass with Welford's method.
+     * @param pValues the values
+     * @param pSample if this is the sample variance rather than the population variance
+     * @return the variance
+     */
+    private static double variance(final double[] pValues, final boolean pSample) {
+        final int lMinimum = pSample ? 2 : 1;
+        if (pValues.length < lMinimum)
+            throw new IllegalArgumentException("Variance needs at least %d numbers".formatted(lMinimum));
+
+        double lMean = 0;
+        double lSquares = 0; // sum of squared differences from the running mean
+        int lCount = 0;
+        for (final double value : pValues) {
+            lCount++;
+            final double lDelta = value - lMean;
+            lMean += lDelta / lCount;
+            lSquares += lDelta * (value - lMean);
+        }
+        return lSquares / (pSample ? lCount - 1 : lCount);
+    }
+
+    /**
+     * Finds a percentile, interpolating between the two ranks around it.
+     * @param pValues the values, which get reordered
+     * @param pCount how many values from the start of the array to use
+     * @param pFraction the percentile between 0 and 1
+     * @return the percentile
+     */
+    private static double percentile(final double[] pValues, final int pCount, final double pFraction) {
+        final double lRank = pFraction * (pCount - 1);
+        final int lLower = (int) Math.floor(lRank);
+        final double lLowerValue = select(pValues, 0, pCount - 1, lLower);
+        if (lLower == lRank) return lLowerValue;
+
+        // after selecting, everything past the lower rank is no smaller than it, so the next rank is their minimum
+        double lUpperValue = pValues[lLower + 1];
+        for (int i = lLower + 2; i < pCount; i++) lUpperValue = Math.min(lUpperValue, pValues[i]);
+        return lLowerValue + (lRank - lLower) * (lUpperValue - lLowerValue);
+    }
+
+    /**
+     * Finds the value that would be at an index if the values were sorted, using quickselect.
+     * Afterwards the values before the index are no larger, and those after are no smaller.
+     * @param pValues the values, which get reordered
+     * @param pLow the first index to look in
+     * @param pHigh the last index to look in
+     * @param pIndex the sorted index to find
+     * @return the value at the sorted index
+     */
+    static double select(final double[] pValues, final int pLow, final int pHigh, final int pIndex) {
+        int lLow = pLow;
+        int lHigh = pHigh;
+        while (lLow < lHigh) {
+            // median of three pivot guards against already-sorted input
+            final int lMiddle = (lLow + lHigh) >>> 1;
+            if (pValues[lMiddle] < pValues[lLow]) swap(pValues, lMiddle, lLow);
+            if (pValues[lHigh] < pValues[lLow]) swap(pValues, lHigh, lLow);
+            if (pValues[lHigh] < pValues[lMiddle]) swap(pValues, lHigh, lMiddle);
+            final double lPivot = pValues[lMiddle];
+
+            int i = lLow;
+            int j = lHigh;
+            while (i <= j) {
+                while (pValues[i] < lPivot) i++;
+                while (pValues[j] > lPivot) j--;
+                if (i <= j) swap(pValues, i++, j--);
+            }
+
+            if (pIndex <= j) lHigh = j;
+            else if (pIndex >= i) lLow = i;
+            else return pValues[pIndex];
+        }
+        return pValues[pIndex];
+    }
+
+    private static void swap(final double[] pValues, final int pFirst, final int pSecond) {
+        final double lTemp = pValues[pFirst];
+        pValues[pFirst] = pValues[pSecond];
+        pValues[pSecond] = lTemp;
+    }
+
+    private static int toRank(final double pRank, final int pCount) {
+        if (pRank != Math.rint(pRank) || pRank < 1 || pRank > pCount)
+            throw new IllegalArgumentException("Rank must be a whole number between 1 and %d".formatted(pCount));
+        return (int) pRank;
+    }
+
+    /**
+     * A function over a list of values followed by one parameter, such as the p in PERCENTILE(values..., p).
+     */
+    @FunctionalInterface
+    private interface TrailingArgFunction {
+        double apply(double[] pValues, int pCount, double pTrailingArg);
+    }
+
+    private static SpreadsheetFunction withTrailingArg(final int pMinArgs, final TrailingArgFunction pFunction) {
+        return new SpreadsheetFunction() {
+            @Override
+            public double apply(final double[] pArgs) {
+                if (pArgs.length < 2) throw new IllegalArgumentException("No numbers to take the statistic of");
+                // the values are copied since selection reorders them
+                final double[] lValues = Arrays.copyOf(pArgs, pArgs.length - 1);
+                return pFunction.apply(lValues, lValues.length, pArgs[pArgs.length - 1]);
+            }
+
+            @Override
+            public int getMinArgs() {
+                return pMinArgs;
+            }
+        };
+    }
+}
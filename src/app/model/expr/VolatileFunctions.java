@@ -0,0 +1,139 @@
+package app.model.expr;
+
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * class that holds the built-in volatile functions, whose value changes from one call to the next
+ * without any argument changing.
+ * <p>
+ * Dates and times are serial numbers as other spreadsheets write them: whole days since 30 December 1899,
+ * with the time of day as the fraction, in the local time zone.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+final class VolatileFunctions {
+    private static final double MILLIS_PER_DAY = 86_400_000d;
+    private static final double EPOCH_SERIAL = 25_569d; // serial number of 1 January 1970
+
+    /** NOW(), the current date and time */
+    static final SpreadsheetFunction NOW = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            return this.apply();
+        }
+
+        @Override
+        public double apply() {
+            return now();
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 0;
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return true;
+        }
+    };
+
+    /** TODAY(), the current date without the time */
+    static final SpreadsheetFunction TODAY = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            return this.apply();
+        }
+
+        @Override
+        public double apply() {
+            return Math.floor(now());
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 0;
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return true;
+        }
+    };
+
+    /** RAND(), a random number at least 0 and below 1 */
+    static final SpreadsheetFunction RAND = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            return this.apply();
+        }
+
+        @Override
+        public double apply() {
+            return ThreadLocalRandom.current().nextDouble();
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 0;
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return true;
+        }
+    };
+
+    /** RANDBETWEEN(low, high), a random whole number from low to high */
+    static final SpreadsheetFunction RANDBETWEEN = new SpreadsheetFunction() {
+        @Override
+        public double apply(final double[] pArgs) {
+            return this.apply(pArgs[0], pArgs[1]);
+        }
+
+        @Override
+        public double apply(final double pLow, final double pHigh) {
+            final double lLow = Math.ceil(pLow);
+            final double lHigh = Math.floor(pHigh);
+            if (lLow > lHigh)
+                throw new IllegalArgumentException("RANDBETWEEN has no whole number from %s to %s".formatted(pLow, pHigh));
+            return lLow + Math.floor(ThreadLocalRandom.current().nextDouble() * (lHigh - lLow + 1));
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 2;
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 2;
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return true;
+        }
+    };
+
+    private VolatileFunctions() {
+        super();
+    }
+
+    /**
+     * Registers the volatile functions with the {@link FunctionRegistry}.
+     */
+    static void registerAll() {
+        FunctionRegistry.register("NOW", NOW);
+        FunctionRegistry.register("RAND", RAND);
+        FunctionRegistry.register("RANDBETWEEN", RANDBETWEEN);
+        FunctionRegistry.register("TODAY", TODAY);
+    }
+
+    private static double now() {
+        final long lMillis = System.currentTimeMillis();
+        return (lMillis + TimeZone.getDefault().getOffset(lMillis)) / MILLIS_PER_DAY + EPOCH_SERIAL;
+    }
+}
@@ -0,0 +1,21 @@
+package app.model.expr;
+
+import java.util.Map;
+
+/**
+ * A table of cells that is one sheet of a workbook. When the table of cells handed to an expression
+ * implements this interface, cellrefs and ranges qualified with the name of a sheet, such as
+ * "INPUTS!R1C1", are read from that sheet's cells.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public interface WorkbookCells {
+
+    /**
+     * Gets the cells of a sheet of the workbook.
+     * @param pSheet the name of the sheet, in upper case as expressions are read
+     * @return the table of the sheet's cells, or null if the workbook has no such sheet
+     */
+    Map<String, Double> getSheetCells(String pSheet);
+}
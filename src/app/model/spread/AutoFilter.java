@@ -0,0 +1,159 @@
+package app.model.spread;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Conditions on the columns of a sheet that pick out which of its rows to show. A row is shown when its cells
+ * meet the condition on every filtered column, and rows above the first filtered row are always shown. The rows
+ * shown are given as a bitset rather than a copy of them, so views can skip the hidden rows without the sheet
+ * itself changing.
+ * <p>
+ * A condition is written as a comparison, one of "&lt;", "&lt;=", "&gt;", "&gt;=", "=" or "&lt;&gt;", followed by
+ * a number or text, such as "&gt;5" or "&lt;&gt;done". Text without a comparison means "=". Numbers are compared
+ * with the values of cells, so formulas count by their results, and text with the text of cells, ignoring case.
+ * Empty cells and formulas without a value meet no condition but "&lt;&gt;", while "=" and "&lt;&gt;" with nothing
+ * after them pick out the empty and the filled cells.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class AutoFilter {
+    private final Spreadsheet sheet;
+    private final int firstRow;
+    private final Map<Integer, Condition> conditions;
+
+    /**
+     * Constructor for a filter over a sheet, with no conditions.
+     * @param theSheet the sheet to filter
+     * @param theFirstRow the first row to filter, counted from one
+     */
+    public AutoFilter(Spreadsheet theSheet, int theFirstRow) {
+        if (theFirstRow < 1) throw new IllegalArgumentException("First row %d must be positive".formatted(theFirstRow));
+        sheet = theSheet;
+        firstRow = theFirstRow;
+        conditions = new TreeMap<>();
+    }
+
+    /**
+     * Sets the condition on a column, replacing any it had.
+     * @param theColumn the column, counted from one
+     * @param theCriterion the condition, such as "&gt;5", "&lt;&gt;done" or "done", or empty to clear it
+     * @throws IllegalArgumentException if the column is not positive or a comparison has nothing to compare with
+     */
+    public void setCondition(int theColumn, String theCriterion) {
+        if (theColumn < 1) throw new IllegalArgumentException("Column %d must be positive".formatted(theColumn));
+        String criterion = theCriterion.trim();
+        if (criterion.isEmpty()) conditions.remove(theColumn);
+        else conditions.put(theColumn, Condition.parse(criterion));
+    }
+
+    /**
+     * Gets the condition on a column.
+     * @param theColumn the column, counted from one
+     * @return the condition as it was written, or an empty string if the column is not filtered
+     */
+    public String getCondition(int theColumn) {
+        Condition condition = conditions.get(theColumn);
+        return condition == null ? "" : condition.criterion;
+    }
+
+    /**
+     * Removes every condition, so every row is shown.
+     */
+    public void clear() {
+        conditions.clear();
+    }
+
+    /**
+     * Checks if any column is filtered.
+     * @return true if there is a condition on some column
+     */
+    public boolean isActive() {
+        return !conditions.isEmpty();
+    }
+
+    /**
+     * Works out which rows of the sheet are shown, reading only the filtered columns.
+     * @return the rows shown, counted from zero, among the rows the sheet has now
+     */
+    public BitSet apply() {
+        int rows = sheet.getRowCount();
+        BitSet visible = new BitSet(rows);
+        visible.set(0, rows);
+        for (Map.Entry<Integer, Condition> entry : conditions.entrySet()) {
+            int column = entry.getKey() - 1;
+            if (column >= sheet.getColumnCount()) continue;
+            Condition condition = entry.getValue();
+            //Rows already hidden by another column are not read again
+            for (int row = visible.nextSetBit(firstRow - 1); row >= 0; row = visible.nextSetBit(row + 1)) {
+                String rowColumn = sheet.toCellRef(row, column);
+                if (!condition.test(sheet.getCellInstructions(rowColumn), sheet.getCellValue(rowColumn))) {
+                    visible.clear(row);
+                }
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * A condition on the cells of one column.
+     */
+    private static final class Condition {
+        private final String criterion;
+        private final String comparison;
+        private final String text;
+        private final double number;  //NaN when the condition is on text
+
+        private Condition(String theCriterion, String theComparison, String theText, double theNumber) {
+            criterion = theCriterion;
+            comparison = theComparison;
+            text = theText;
+            number = theNumber;
+        }
+
+        //Helper method that reads a condition as it is written
+        static Condition parse(String theCriterion) {
+            String comparison = "=";
+            for (String candidate : new String[] {"<=", ">=", "<>", "<", ">", "="}) {
+                if (theCriterion.startsWith(candidate)) {
+                    comparison = candidate;
+                    break;
+                }
+            }
+            String operand = theCriterion.startsWith(comparison)
+                    ? theCriterion.substring(comparison.length()).trim() : theCriterion;
+            if (operand.isEmpty() && !comparison.equals("=") && !comparison.equals("<>"))
+                throw new IllegalArgumentException("Condition %s has nothing to compare with".formatted(theCriterion));
+            double number = CsvImporter.parseNumber(operand.toCharArray(), 0, operand.length());
+            return new Condition(theCriterion, comparison, operand, number);
+        }
+
+        //Helper method that checks a cell against the condition
+        boolean test(String theInstructions, Double theValue) {
+            int order;
+            if (!Double.isNaN(number)) {
+                if (theValue == null) return comparison.equals("<>");
+                order = theValue < number ? -1 : theValue > number ? 1 : 0;
+            } else if (text.isEmpty()) {
+                //"=" alone picks out empty cells and "<>" alone the rest
+                boolean empty = theInstructions == null;
+                return comparison.equals("=") == empty;
+            } else {
+                if (theInstructions == null || theInstructions.startsWith("=") || theValue != null) {
+                    return comparison.equals("<>");
+                }
+                order = String.CASE_INSENSITIVE_ORDER.compare(theInstructions, text);
+            }
+            return switch (comparison) {
+                case "<" -> order < 0;
+                case "<=" -> order <= 0;
+                case ">" -> order > 0;
+                case ">=" -> order >= 0;
+                case "<>" -> order != 0;
+                default -> order == 0;
+            };
+        }
+    }
+}
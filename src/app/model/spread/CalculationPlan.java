@@ -0,0 +1,184 @@
+package app.model.spread;
+
+import app.model.expr.CompiledExpression;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Function;
+
+/**
+ * Frozen picture of the dependencies of an evaluated sheet: its cells in an order where every cell
+ * comes after the cells it refers to, and for every cell the formulas that refer to it directly.
+ * Formulas referring to a range are kept once under the range, which a {@link RangeIndex} finds
+ * for any cell in it, rather than under every cell of it.
+ * Overlays use it to find and order the cells their changes affect, without touching the sheet's own
+ * graph, so one plan can be shared by any number of threads.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+final class CalculationPlan {
+    private static final int[] NONE = new int[0];
+
+    private final GraphVertex[] cells;
+    private final Map<String, int[]> dependents;
+    private final RangeIndex ranges;
+    private final Map<Integer, int[]> rangeDependents;
+
+    /**
+     * Constructor that plans the cells of a sheet, whose formulas must already be compiled.
+     * @param theVertices the vertices of the sheet
+     * @param theReferences the cells of the sheet a formula refers to, and the ranges, in the format "R#C#:R#C#"
+     */
+    CalculationPlan(Collection<GraphVertex> theVertices, Function<CompiledExpression, List<String>> theReferences) {
+        Map<String, List<GraphVertex>> dependentVertices = new HashMap<>();
+        Map<Integer, List<GraphVertex>> rangeVertices = new HashMap<>();
+        Map<GraphVertex, Integer> indegrees = new HashMap<>();
+        Map<String, GraphVertex> byRowColumn = new HashMap<>();
+        ranges = new RangeIndex();
+        for (GraphVertex vertex : theVertices) byRowColumn.put(vertex.getRowColumn(), vertex);
+
+        for (GraphVertex vertex : theVertices) {
+            int indegree = 0;
+            CompiledExpression compiled = vertex.getCell().getCompiledInstruction();
+            if (compiled != null) {
+                for (String reference : theReferences.apply(compiled)) {
+                    List<GraphVertex> list = reference.indexOf(':') < 0
+                            ? dependentVertices.computeIfAbsent(reference, key -> new ArrayList<>())
+                            : rangeVertices.computeIfAbsent(ranges.add(reference), key -> new ArrayList<>());
+                    //A formula may refer to the same cell or range more than once
+                    if (!list.isEmpty() && list.getLast() == vertex) continue;
+                    list.add(vertex);
+                    //A range holds back the formulas referring to it until every cell in it is done
+                    if (reference.indexOf(':') >= 0 || byRowColumn.containsKey(reference)) indegree++;
+                }
+            }
+            indegrees.put(vertex, indegree);
+        }
+        int[] remaining = new int[rangeVertices.size()];
+        Map<Integer, Integer> rangeSlots = new HashMap<>();
+        for (Integer range : rangeVertices.keySet()) rangeSlots.put(range, rangeSlots.size());
+        for (GraphVertex vertex : theVertices) {
+            ranges.forEachContaining(vertex.getRow(), vertex.getColumn(), range -> remaining[rangeSlots.get(range)]++);
+        }
+
+        //Kahn's algorithm, cells caught in a cycle are left out
+        List<GraphVertex> order = new ArrayList<>(theVertices.size());
+        Queue<GraphVertex> ready = new ArrayDeque<>();
+        for (Map.Entry<GraphVertex, Integer> entry : indegrees.entrySet()) {
+            if (entry.getValue() == 0) ready.add(entry.getKey());
+        }
+        for (Map.Entry<Integer, List<GraphVertex>> entry : rangeVertices.entrySet()) {
+            if (remaining[rangeSlots.get(entry.getKey())] == 0) release(entry.getValue(), indegrees, ready);
+        }
+        while (!ready.isEmpty()) {
+            GraphVertex vertex = ready.remove();
+            order.add(vertex);
+            release(dependentVertices.getOrDefault(vertex.getRowColumn(), List.of()), indegrees, ready);
+            ranges.forEachContaining(vertex.getRow(), vertex.getColumn(), range -> {
+                if (--remaining[rangeSlots.get(range)] == 0) release(rangeVertices.get(range), indegrees, ready);
+            });
+        }
+
+        cells = order.toArray(new GraphVertex[0]);
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < cells.length; i++) positions.put(cells[i].getRowColumn(), i);
+        dependents = new HashMap<>();
+        for (Map.Entry<String, List<GraphVertex>> entry : dependentVertices.entrySet()) {
+            int[] indices = positionsOf(entry.getValue(), positions);
+            if (indices.length > 0) dependents.put(entry.getKey(), indices);
+        }
+        rangeDependents = new HashMap<>();
+        for (Map.Entry<Integer, List<GraphVertex>> entry : rangeVertices.entrySet()) {
+            rangeDependents.put(entry.getKey(), positionsOf(entry.getValue(), positions));
+        }
+    }
+
+    /**
+     * Finds every formula cell that depends on any of the given cells, directly or through other cells.
+     * @param theChanged the cells that changed, in the format "R#C#", which need not exist in the sheet
+     * @return the positions of the affected cells, in ascending order, which is an order to evaluate them in
+     */
+    int[] affected(Collection<String> theChanged) {
+        boolean[] seen = new boolean[cells.length];
+        Map<Integer, Boolean> rangesSeen = new HashMap<>();
+        int[] found = new int[16];
+        int count = 0;
+        Queue<int[]> pending = new ArrayDeque<>();
+        for (String rowColumn : theChanged) {
+            pending.add(dependents.getOrDefault(rowColumn, NONE));
+            int columnMark = rowColumn.indexOf('C');
+            addRangeDependents(Integer.parseInt(rowColumn, 1, columnMark, 10) - 1,
+                    Integer.parseInt(rowColumn, columnMark + 1, rowColumn.length(), 10) - 1, rangesSeen, pending);
+        }
+        while (!pending.isEmpty()) {
+            for (int position : pending.remove()) {
+                if (seen[position]) continue;
+                seen[position] = true;
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = position;
+                pending.add(dependents.getOrDefault(cells[position].getRowColumn(), NONE));
+                addRangeDependents(cells[position].getRow(), cells[position].getColumn(), rangesSeen, pending);
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Gets the formula cells that refer directly to a cell, by itself or through a range containing it.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @return the positions of the dependent cells, which must not be changed
+     */
+    int[] dependents(String theRowColumn) {
+        int[] direct = dependents.getOrDefault(theRowColumn, NONE);
+        if (rangeDependents.isEmpty()) return direct;
+        List<int[]> found = new ArrayList<>();
+        found.add(direct);
+        int columnMark = theRowColumn.indexOf('C');
+        addRangeDependents(Integer.parseInt(theRowColumn, 1, columnMark, 10) - 1,
+                Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) - 1, new HashMap<>(), found);
+        return found.stream().flatMapToInt(Arrays::stream).distinct().toArray();
+    }
+
+    /**
+     * Gets a planned cell.
+     * @param thePosition the position of the cell in the plan
+     * @return the vertex of the cell
+     */
+    GraphVertex get(int thePosition) {
+        return cells[thePosition];
+    }
+
+    //Helper method that adds the formulas referring to the ranges containing a cell, for ranges not seen before
+    private void addRangeDependents(int theRow, int theColumn, Map<Integer, Boolean> theSeen,
+                                    Collection<int[]> thePending) {
+        ranges.forEachContaining(theRow, theColumn, range -> {
+            if (theSeen.putIfAbsent(range, true) == null) thePending.add(rangeDependents.get(range));
+        });
+    }
+
+    //Helper method that settles the formulas referring to a cell or range done, readying those left with no indegree
+    private static void release(List<GraphVertex> theDependents, Map<GraphVertex, Integer> theIndegrees,
+                                Queue<GraphVertex> theReady) {
+        for (GraphVertex dependent : theDependents) {
+            if (theIndegrees.merge(dependent, -1, Integer::sum) == 0) theReady.add(dependent);
+        }
+    }
+
+    //Helper method that gets the positions in the plan of cells, leaving out those caught in a cycle
+    private static int[] positionsOf(List<GraphVertex> theVertices, Map<String, Integer> thePositions) {
+        return theVertices.stream()
+                .map(vertex -> thePositions.get(vertex.getRowColumn()))
+                .filter(position -> position != null)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+}
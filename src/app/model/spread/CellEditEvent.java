@@ -0,0 +1,32 @@
+package app.model.spread;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for an edit to a cell, covering the recalculation it caused.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+@Name("app.CellEdit")
+@Label("Cell Edit")
+@Category({"Spreadsheet", "Engine"})
+@Description("Setting the instructions of a cell and recalculating the sheet")
+final class CellEditEvent extends jdk.jfr.Event {
+    @Label("Cell")
+    String cellRef;
+
+    @Label("Instructions")
+    String instructions;
+
+    @Label("Dependents")
+    @Description("Number of cells the edit recalculated besides the edited cell, zero if it was rejected")
+    int dependents;
+
+    @Label("Succeeded")
+    @Description("Whether the edit was kept, rather than rejected as malformed or cyclic")
+    boolean succeeded;
+}
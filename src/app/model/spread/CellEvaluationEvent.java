@@ -0,0 +1,31 @@
+package app.model.spread;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for the evaluation of one cell during a recalculation. Only evaluations
+ * slower than the threshold are recorded by default, since a recalculation evaluates every cell.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+@Name("app.CellEvaluation")
+@Label("Cell Evaluation")
+@Category({"Spreadsheet", "Engine"})
+@Description("Evaluation of a single cell, including compiling its formula when needed")
+@Threshold("1 ms")
+final class CellEvaluationEvent extends jdk.jfr.Event {
+    @Label("Cell")
+    String cellRef;
+
+    @Label("Instructions")
+    String instructions;
+
+    @Label("Dependents")
+    @Description("Number of cells that refer directly to the evaluated cell")
+    int dependents;
+}
@@ -0,0 +1,145 @@
+package app.model.spread;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recalculation listener that records how often and for how long each formula cell is evaluated,
+ * so the cells that dominate recalculation can be found. Add it to a sheet only while profiling;
+ * it is meant to be used from the thread that edits the sheet.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class CellProfiler implements RecalcListener {
+    private final Map<String, CellProfile> profiles;
+    private long maxTotalNanos;
+
+    /**
+     * Constructor for a profiler that has recorded nothing yet.
+     */
+    public CellProfiler() {
+        profiles = new HashMap<>();
+    }
+
+    @Override
+    public void formulaEvaluated(String theRowColumn, String theInstructions,
+                                 long theParseNanos, long theEvalNanos, boolean theCompileCached) {
+        CellProfile profile = profiles.computeIfAbsent(theRowColumn, CellProfile::new);
+        profile.instructions = theInstructions;
+        profile.evaluations++;
+        profile.totalNanos += theParseNanos + theEvalNanos;
+        maxTotalNanos = Math.max(maxTotalNanos, profile.totalNanos);
+    }
+
+    /**
+     * Gets the profile of a cell.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @return the profile, or null if the cell has not been evaluated as a formula while profiling
+     */
+    public CellProfile getProfile(String theRowColumn) {
+        return profiles.get(theRowColumn);
+    }
+
+    /**
+     * Gets the profiles of every cell evaluated as a formula while profiling, the hottest first: by total time,
+     * then by evaluations, then down each column.
+     * @return a copy of the profiles
+     */
+    public List<CellProfile> getProfiles() {
+        List<CellProfile> hottest = new ArrayList<>(profiles.values());
+        hottest.sort(Comparator.comparingLong(CellProfile::getTotalNanos).reversed()
+                .thenComparing(Comparator.comparingInt(CellProfile::getEvaluations).reversed())
+                .thenComparingInt(CellProfile::getColumn)
+                .thenComparingInt(CellProfile::getRow));
+        return hottest;
+    }
+
+    /**
+     * Gets the largest total evaluation time of any one cell, to scale a heat map by.
+     * @return the largest total time in nanoseconds, zero if nothing has been recorded
+     */
+    public long getMaxTotalNanos() {
+        return maxTotalNanos;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void clear() {
+        profiles.clear();
+        maxTotalNanos = 0;
+    }
+
+    /**
+     * Evaluation count and time of a single cell. Times include compiling the formula when
+     * the evaluation had to compile it.
+     */
+    public static final class CellProfile {
+        private final String rowColumn;
+        private final int row;
+        private final int column;
+        private String instructions;
+        private int evaluations;
+        private long totalNanos;
+
+        private CellProfile(String theRowColumn) {
+            rowColumn = theRowColumn;
+            int columnMark = theRowColumn.indexOf('C');
+            row = Integer.parseInt(theRowColumn.substring(1, columnMark)) - 1;
+            column = Integer.parseInt(theRowColumn.substring(columnMark + 1)) - 1;
+        }
+
+        /**
+         * @return the cell, in the format "R#C#"
+         */
+        public String getRowColumn() {
+            return rowColumn;
+        }
+
+        /**
+         * @return the row of the cell, counted from zero
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * @return the column of the cell, counted from zero
+         */
+        public int getColumn() {
+            return column;
+        }
+
+        /**
+         * @return the formula the cell held when it was last evaluated
+         */
+        public String getInstructions() {
+            return instructions;
+        }
+
+        /**
+         * @return the number of times the cell was evaluated
+         */
+        public int getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * @return the total time spent evaluating the cell, in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return the mean time of one evaluation of the cell, in nanoseconds
+         */
+        public double getMeanNanos() {
+            return (double) totalNanos / evaluations;
+        }
+    }
+}
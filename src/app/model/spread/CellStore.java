@@ -0,0 +1,411 @@
+package app.model.spread;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The cells of a sheet that are not empty, by their "R#C#" signature. Cells are held under physical rows and
+ * columns that never change, which each axis maps to the rows and columns the sheet shows in runs, so inserting or
+ * deleting rows or columns only splits and moves runs rather than moving every cell past them. A vertex held here
+ * works out its row and column from its physical ones, once after every such change.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+final class CellStore extends AbstractMap<String, GraphVertex> {
+    private final Axis rowAxis;
+    private final Axis columnAxis;
+    private final Map<Long, GraphVertex> vertices;
+    //Counts the inserts and deletes, so vertices know when to work out their row and column again
+    private int version;
+
+    /**
+     * Constructor for a store without any cells, where every row and column is where it was made.
+     */
+    CellStore() {
+        rowAxis = new Axis();
+        columnAxis = new Axis();
+        vertices = new HashMap<>();
+    }
+
+    @Override
+    public GraphVertex get(Object theRowColumn) {
+        if (!(theRowColumn instanceof String rowColumn) || vertices.isEmpty() || !rowColumn.startsWith("R")) {
+            return null;
+        }
+        int columnMark = rowColumn.indexOf('C');
+        if (columnMark < 0) return null;
+        //Signatures that are not a cell's, such as "R01C1", name no cell
+        int row = indexOf(rowColumn, 1, columnMark);
+        int column = indexOf(rowColumn, columnMark + 1, rowColumn.length());
+        return row < 0 || column < 0 ? null : get(row, column);
+    }
+
+    /**
+     * Gets the vertex of a cell.
+     * @param theRow the row, counted from zero
+     * @param theColumn the column, counted from zero
+     * @return the vertex, or null if the cell is empty
+     */
+    GraphVertex get(int theRow, int theColumn) {
+        if (theRow < 0 || theColumn < 0) return null;
+        return vertices.get(key(rowAxis.physicalOf(theRow), columnAxis.physicalOf(theColumn)));
+    }
+
+    @Override
+    public boolean containsKey(Object theRowColumn) {
+        return get(theRowColumn) != null;
+    }
+
+    /**
+     * Puts a vertex in the store at the row and column it has, which its signature must match.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @param theVertex the vertex, not held by any store
+     * @return the vertex the cell had before, which is no longer held
+     */
+    @Override
+    public GraphVertex put(String theRowColumn, GraphVertex theVertex) {
+        int physicalRow = rowAxis.physicalOf(theVertex.getRow());
+        int physicalColumn = columnAxis.physicalOf(theVertex.getColumn());
+        GraphVertex previous = vertices.put(key(physicalRow, physicalColumn), theVertex);
+        if (previous != null && previous != theVertex) previous.detach();
+        theVertex.attach(this, physicalRow, physicalColumn);
+        return previous;
+    }
+
+    @Override
+    public GraphVertex remove(Object theRowColumn) {
+        GraphVertex vertex = get(theRowColumn);
+        if (vertex != null) remove(vertex);
+        return vertex;
+    }
+
+    @Override
+    public int size() {
+        return vertices.size();
+    }
+
+    @Override
+    public Collection<GraphVertex> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<GraphVertex> iterator() {
+                return new VertexIterator();
+            }
+
+            @Override
+            public int size() {
+                return vertices.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<String, GraphVertex>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, GraphVertex>> iterator() {
+                VertexIterator iterator = new VertexIterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, GraphVertex> next() {
+                        GraphVertex vertex = iterator.next();
+                        return new SimpleImmutableEntry<>(vertex.getRowColumn(), vertex);
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return vertices.size();
+            }
+        };
+    }
+
+    /**
+     * Inserts or deletes rows or columns, moving the cells past them, and takes out the cells of deleted ones.
+     * @param theRows true for rows, false for columns
+     * @param theAt the first row or column inserted or deleted, counted from zero
+     * @param theDelta the number inserted, or minus the number deleted
+     * @param theAcross the number of columns, for rows, or of rows, for columns, the sheet has
+     * @return the vertices of deleted cells, which keep their last row and column
+     */
+    List<GraphVertex> shift(boolean theRows, int theAt, int theDelta, int theAcross) {
+        Axis axis = theRows ? rowAxis : columnAxis;
+        List<GraphVertex> deleted = theDelta < 0 ? between(theRows, theAt, theAt - theDelta, theAcross) : List.of();
+        for (GraphVertex vertex : deleted) remove(vertex);
+        if (theDelta > 0) axis.insert(theAt, theDelta);
+        else axis.delete(theAt, -theDelta);
+        version++;
+        return deleted;
+    }
+
+    /**
+     * Gets the vertices of the cells in some rows or columns.
+     * @param theRows true for rows, false for columns
+     * @param theFirst the first row or column, counted from zero
+     * @param theEnd the row or column after the last
+     * @param theAcross the number of columns, for rows, or of rows, for columns, the sheet has
+     * @return the vertices
+     */
+    List<GraphVertex> between(boolean theRows, int theFirst, int theEnd, int theAcross) {
+        List<GraphVertex> found = new ArrayList<>();
+        if (vertices.isEmpty()) return found;
+        //Looking up every cell of the rows or columns, unless there are fewer cells in the sheet
+        if ((long) (theEnd - theFirst) * theAcross <= vertices.size()) {
+            for (int index = theFirst; index < theEnd; index++) {
+                for (int across = 0; across < theAcross; across++) {
+                    GraphVertex vertex = theRows ? get(index, across) : get(across, index);
+                    if (vertex != null) found.add(vertex);
+                }
+            }
+        } else {
+            for (GraphVertex vertex : vertices.values()) {
+                int index = theRows ? vertex.getRow() : vertex.getColumn();
+                if (index >= theFirst && index < theEnd) found.add(vertex);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the vertices of the cells in a block, row by row.
+     * @param theFirstRow the first row of the block, counted from zero
+     * @param theFirstColumn the first column of the block, counted from zero
+     * @param theLastRow the last row of the block
+     * @param theLastColumn the last column of the block
+     * @return the vertices, ordered by row and then by column
+     */
+    List<GraphVertex> within(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn) {
+        List<GraphVertex> found = new ArrayList<>();
+        if (vertices.isEmpty() || theFirstRow > theLastRow || theFirstColumn > theLastColumn) return found;
+        //Looking up every cell of the block, unless there are fewer cells in the sheet
+        if ((long) (theLastRow - theFirstRow + 1) * (theLastColumn - theFirstColumn + 1) <= vertices.size()) {
+            for (int row = theFirstRow; row <= theLastRow; row++) {
+                for (int column = theFirstColumn; column <= theLastColumn; column++) {
+                    GraphVertex vertex = get(row, column);
+                    if (vertex != null) found.add(vertex);
+                }
+            }
+        } else {
+            for (GraphVertex vertex : vertices.values()) {
+                int row = vertex.getRow();
+                int column = vertex.getColumn();
+                if (row >= theFirstRow && row <= theLastRow && column >= theFirstColumn && column <= theLastColumn) {
+                    found.add(vertex);
+                }
+            }
+            found.sort(Comparator.comparingInt(GraphVertex::getRow).thenComparingInt(GraphVertex::getColumn));
+        }
+        return found;
+    }
+
+    //Helper method that gets the count of inserts and deletes so far
+    int version() {
+        return version;
+    }
+
+    //Helper method that gets the row a physical row is at, or -1 if it was deleted
+    int rowOf(int thePhysicalRow) {
+        return rowAxis.logicalOf(thePhysicalRow);
+    }
+
+    //Helper method that gets the column a physical column is at, or -1 if it was deleted
+    int columnOf(int thePhysicalColumn) {
+        return columnAxis.logicalOf(thePhysicalColumn);
+    }
+
+    //Helper method that takes a vertex out, leaving it at its last row and column
+    private void remove(GraphVertex theVertex) {
+        vertices.remove(key(theVertex.getPhysicalRow(), theVertex.getPhysicalColumn()));
+        theVertex.detach();
+    }
+
+    //Helper method that reads a row or column counted from one out of a signature, counted from zero, or gives -1
+    //if it is not written as a cell's signature writes it
+    private static int indexOf(String theRowColumn, int theStart, int theEnd) {
+        if (theStart == theEnd || theEnd - theStart > 10 || theRowColumn.charAt(theStart) == '0') return -1;
+        long number = 0;
+        for (int i = theStart; i < theEnd; i++) {
+            char digit = theRowColumn.charAt(i);
+            if (digit < '0' || digit > '9') return -1;
+            number = number * 10 + digit - '0';
+        }
+        return number > Integer.MAX_VALUE ? -1 : (int) number - 1;
+    }
+
+    //Helper method that packs a physical row and column into a long
+    private static long key(int thePhysicalRow, int thePhysicalColumn) {
+        return (long) thePhysicalRow << 32 | (thePhysicalColumn & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Iterator over the vertices, which takes out the last vertex given when asked to.
+     */
+    private final class VertexIterator implements Iterator<GraphVertex> {
+        private final Iterator<GraphVertex> iterator = vertices.values().iterator();
+        private GraphVertex last;
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public GraphVertex next() {
+            last = iterator.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+            last.detach();
+        }
+    }
+
+    /**
+     * The rows or columns of a sheet, in runs of consecutive indexes that sit at consecutive physical indexes. The
+     * last run goes on without end, and starts out as the only one, so every index starts at its own physical index.
+     * Inserted indexes get physical indexes below zero, which no run had before, and deleted physical indexes are
+     * never given out again.
+     */
+    private static final class Axis {
+        //Where each run starts, in index order, and its first physical index
+        private int[] starts;
+        private int[] physicalStarts;
+        private int runCount;
+        //The runs in order of their physical indexes, worked out again after every change
+        private int[] byPhysical;
+        private int nextInserted;
+
+        Axis() {
+            starts = new int[16];
+            physicalStarts = new int[16];
+            runCount = 1;
+        }
+
+        //Gets the physical index an index is at
+        int physicalOf(int theIndex) {
+            int run = runOf(theIndex);
+            return physicalStarts[run] + theIndex - starts[run];
+        }
+
+        //Gets the index a physical index is at, or -1 if it was deleted
+        int logicalOf(int thePhysical) {
+            if (byPhysical == null) sortByPhysical();
+            int low = 0;
+            int high = runCount - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (physicalStarts[byPhysical[middle]] <= thePhysical) {
+                    found = byPhysical[middle];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (found < 0) return -1;
+            int offset = thePhysical - physicalStarts[found];
+            return found == runCount - 1 || offset < starts[found + 1] - starts[found] ? starts[found] + offset : -1;
+        }
+
+        //Inserts indexes, in a run of their own
+        void insert(int theAt, int theCount) {
+            int run = split(theAt);
+            for (int i = run; i < runCount; i++) starts[i] += theCount;
+            nextInserted -= theCount;
+            addRun(run, theAt, nextInserted);
+            merge();
+        }
+
+        //Deletes indexes, along with the runs they were all of
+        void delete(int theAt, int theCount) {
+            int first = split(theAt);
+            int last = split(theAt + theCount);
+            int removed = last - first;
+            System.arraycopy(starts, last, starts, first, runCount - last);
+            System.arraycopy(physicalStarts, last, physicalStarts, first, runCount - last);
+            runCount -= removed;
+            for (int i = first; i < runCount; i++) starts[i] -= theCount;
+            merge();
+        }
+
+        //Helper method that finds the run an index falls in
+        private int runOf(int theIndex) {
+            int low = 0;
+            int high = runCount - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= theIndex) low = middle;
+                else high = middle - 1;
+            }
+            return low;
+        }
+
+        //Helper method that makes a run start at an index, giving the run that does
+        private int split(int theIndex) {
+            int run = runOf(theIndex);
+            if (starts[run] == theIndex) return run;
+            addRun(run + 1, theIndex, physicalStarts[run] + theIndex - starts[run]);
+            return run + 1;
+        }
+
+        //Helper method that adds a run before another
+        private void addRun(int theRun, int theStart, int thePhysicalStart) {
+            if (runCount == starts.length) {
+                starts = Arrays.copyOf(starts, runCount * 2);
+                physicalStarts = Arrays.copyOf(physicalStarts, runCount * 2);
+            }
+            System.arraycopy(starts, theRun, starts, theRun + 1, runCount - theRun);
+            System.arraycopy(physicalStarts, theRun, physicalStarts, theRun + 1, runCount - theRun);
+            starts[theRun] = theStart;
+            physicalStarts[theRun] = thePhysicalStart;
+            runCount++;
+        }
+
+        //Helper method that joins runs whose physical indexes follow on, such as those split by inserting and
+        //deleting the same indexes
+        private void merge() {
+            int kept = 0;
+            for (int run = 1; run < runCount; run++) {
+                if (physicalStarts[kept] + starts[run] - starts[kept] == physicalStarts[run]) continue;
+                kept++;
+                starts[kept] = starts[run];
+                physicalStarts[kept] = physicalStarts[run];
+            }
+            runCount = kept + 1;
+            byPhysical = null;
+        }
+
+        //Helper method that orders the runs by their physical indexes
+        private void sortByPhysical() {
+            byPhysical = new int[runCount];
+            long[] sorted = new long[runCount];
+            for (int run = 0; run < runCount; run++) sorted[run] = (long) physicalStarts[run] << 32 | run;
+            Arrays.sort(sorted);
+            for (int i = 0; i < runCount; i++) byPhysical[i] = (int) sorted[i];
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package app.model.spread;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A subscriber's interest in some cells of a sheet, made through {@link CellSubscriptions}. The subscriber is given
+ * the cells it watches that changed, one batch at a time and in the order they changed, on the subscriptions'
+ * executor. Changes that arrive while the subscriber is still busy are merged into a single pending batch, the
+ * latest value of each cell winning, so a slow subscriber is given fewer, larger batches rather than falling
+ * behind, and holds at most one value per cell it watches.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class CellSubscription implements AutoCloseable {
+    private final CellSubscriptions owner;
+    private final Consumer<Map<String, Double>> subscriber;
+    private final Executor executor;
+    private final AtomicReference<Map<String, Double>> pending;
+    private final AtomicBoolean delivering;
+    private final LongAdder delivered;
+    private final LongAdder coalesced;
+    private volatile boolean cancelled;
+
+    //Constructor for a subscription made by a subscriptions hub
+    CellSubscription(CellSubscriptions theOwner, Consumer<Map<String, Double>> theSubscriber, Executor theExecutor) {
+        owner = theOwner;
+        subscriber = theSubscriber;
+        executor = theExecutor;
+        pending = new AtomicReference<>();
+        delivering = new AtomicBoolean();
+        delivered = new LongAdder();
+        coalesced = new LongAdder();
+    }
+
+    /**
+     * Gets the number of batches given to the subscriber.
+     * @return the number of batches delivered
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * Gets the number of batches merged into one not yet given to the subscriber, as happens when it is slower than
+     * the sheet changes.
+     * @return the number of batches coalesced
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Checks if the subscription is cancelled.
+     * @return true once cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the subscription. A batch being delivered is finished, and pending changes are dropped.
+     */
+    @Override
+    public void close() {
+        if (cancelled) return;
+        cancelled = true;
+        owner.remove(this);
+        pending.set(null);
+    }
+
+    //Helper method that adds changes to the pending batch, merging them into the one already waiting if there is
+    //one, then has them delivered unless a delivery is under way, which will pick them up
+    void offer(Map<String, Double> theChanges) {
+        if (cancelled) return;
+        Map<String, Double> waiting;
+        Map<String, Double> merged;
+        do {
+            waiting = pending.get();
+            if (waiting == null) {
+                merged = theChanges;
+            } else {
+                merged = new HashMap<>(waiting);
+                merged.putAll(theChanges);
+            }
+        } while (!pending.compareAndSet(waiting, merged));
+        if (waiting != null) coalesced.increment();
+        if (!delivering.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::deliver);
+        } catch (RejectedExecutionException exc) {
+            delivering.set(false);
+        }
+    }
+
+    //Helper method run on the executor that delivers the pending batch, and any that arrives meanwhile, one at a
+    //time. A subscriber that throws is reported to the thread's handler and given later batches all the same
+    private void deliver() {
+        do {
+            Map<String, Double> batch = pending.getAndSet(null);
+            if (batch != null && !cancelled) {
+                try {
+                    subscriber.accept(Collections.unmodifiableMap(batch));
+                } catch (RuntimeException exc) {
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, exc);
+                }
+                delivered.increment();
+            }
+            delivering.set(false);
+        } while (pending.get() != null && delivering.compareAndSet(false, true));
+    }
+}
@@ -0,0 +1,245 @@
+package app.model.spread;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Subscriptions to the changes of a sheet's cells, by cell, by range or for the whole sheet, each given the cells
+ * it watches that changed in batches, after each recalculation, on an executor rather than the thread editing the
+ * sheet. That thread only hands the recalculation's changes over, without locking, so however many subscribers
+ * there are, and however slow, they cost each edit the same. The changes are matched to the subscriptions on the
+ * executor, and changes handed over before the last were matched are merged with them, as are those for a
+ * subscriber still busy with its last batch, so every subscriber holds at most one pending batch, of at most one
+ * value per cell it watches, and delivery keeps up with the sheet by skipping intermediate values rather than by
+ * queueing them.
+ *
+ * <p>Subscriptions are by cell designation, so moving cells, as sorting or inserting rows does, is told as changes
+ * to the cells moved from and to. The subscriptions are made and closed on the thread that edits the sheet, while
+ * subscribing and cancelling can be done from any thread.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class CellSubscriptions implements ValueListener, AutoCloseable {
+    private final SpreadsheetGraph sheet;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final Map<String, List<CellSubscription>> cellSubscriptions;
+    private final List<RangeSubscription> rangeSubscriptions;
+    private final List<CellSubscription> sheetSubscriptions;
+    private final AtomicReference<Map<String, Double>> undispatched;
+    private final AtomicBoolean dispatching;
+
+    /**
+     * Constructor for subscriptions delivered on virtual threads, one per subscriber with changes to deliver.
+     * @param theSheet the sheet
+     */
+    public CellSubscriptions(SpreadsheetGraph theSheet) {
+        this(theSheet, Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
+
+    /**
+     * Constructor for subscriptions delivered on an executor, such as {@code SwingUtilities::invokeLater} for
+     * subscribers in the GUI. A subscriber is never given two batches at once, whatever the executor.
+     * @param theSheet the sheet
+     * @param theExecutor the executor to match changes and deliver them on
+     */
+    public CellSubscriptions(SpreadsheetGraph theSheet, Executor theExecutor) {
+        this(theSheet, theExecutor, false);
+    }
+
+    //Constructor for subscriptions that close their executor along with themselves if they made it
+    private CellSubscriptions(SpreadsheetGraph theSheet, Executor theExecutor, boolean theOwnExecutor) {
+        sheet = theSheet;
+        executor = theExecutor;
+        ownExecutor = theOwnExecutor ? (ExecutorService) theExecutor : null;
+        cellSubscriptions = new ConcurrentHashMap<>();
+        rangeSubscriptions = new CopyOnWriteArrayList<>();
+        sheetSubscriptions = new CopyOnWriteArrayList<>();
+        undispatched = new AtomicReference<>();
+        dispatching = new AtomicBoolean();
+        sheet.addValueListener(this);
+    }
+
+    /**
+     * Subscribes to the changes of a cell.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @param theSubscriber the subscriber, given maps of the cell to its value, null for empty or not a number
+     * @return the subscription
+     * @throws IllegalArgumentException if the cell is malformed
+     */
+    public CellSubscription subscribeCell(String theRowColumn, Consumer<Map<String, Double>> theSubscriber) {
+        parseCell(theRowColumn);
+        CellSubscription subscription = new CellSubscription(this, theSubscriber, executor);
+        cellSubscriptions.compute(theRowColumn, (rowColumn, subscriptions) -> {
+            List<CellSubscription> added = subscriptions == null ? new CopyOnWriteArrayList<>() : subscriptions;
+            added.add(subscription);
+            return added;
+        });
+        return subscription;
+    }
+
+    /**
+     * Subscribes to the changes of the cells of a range.
+     * @param theCorner a corner of the range, in the format "R#C#"
+     * @param theOppositeCorner the opposite corner of the range, in the format "R#C#"
+     * @param theSubscriber the subscriber, given maps of the range's changed cells to their values, null for empty
+     *                      or not a number
+     * @return the subscription
+     * @throws IllegalArgumentException if a corner is malformed
+     */
+    public CellSubscription subscribeRange(String theCorner, String theOppositeCorner,
+                                           Consumer<Map<String, Double>> theSubscriber) {
+        int[] corner = parseCell(theCorner);
+        int[] opposite = parseCell(theOppositeCorner);
+        CellSubscription subscription = new CellSubscription(this, theSubscriber, executor);
+        rangeSubscriptions.add(new RangeSubscription(subscription,
+                Math.min(corner[0], opposite[0]), Math.max(corner[0], opposite[0]),
+                Math.min(corner[1], opposite[1]), Math.max(corner[1], opposite[1])));
+        return subscription;
+    }
+
+    /**
+     * Subscribes to the changes of every cell of the sheet.
+     * @param theSubscriber the subscriber, given maps of the changed cells to their values, null for empty or not
+     *                      a number
+     * @return the subscription
+     */
+    public CellSubscription subscribeSheet(Consumer<Map<String, Double>> theSubscriber) {
+        CellSubscription subscription = new CellSubscription(this, theSubscriber, executor);
+        sheetSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Hands the changes of a recalculation over to be matched to the subscriptions, merging them with those
+     * handed over before that are not matched yet.
+     * @param theValues the changed cells and their values
+     */
+    @Override
+    public void valuesChanged(Map<String, Double> theValues) {
+        if (sheetSubscriptions.isEmpty() && rangeSubscriptions.isEmpty() && cellSubscriptions.isEmpty()) return;
+        Map<String, Double> waiting;
+        Map<String, Double> merged;
+        do {
+            waiting = undispatched.get();
+            if (waiting == null) {
+                merged = theValues;
+            } else {
+                merged = new HashMap<>(waiting);
+                merged.putAll(theValues);
+            }
+        } while (!undispatched.compareAndSet(waiting, merged));
+        if (!dispatching.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::dispatch);
+        } catch (RejectedExecutionException exc) {
+            dispatching.set(false);
+        }
+    }
+
+    /**
+     * Stops listening to the sheet and cancels every subscription. If the subscriptions made their own executor,
+     * it is closed once the batches being delivered are.
+     */
+    @Override
+    public void close() {
+        sheet.removeValueListener(this);
+        for (List<CellSubscription> subscriptions : cellSubscriptions.values()) {
+            for (CellSubscription subscription : subscriptions) subscription.close();
+        }
+        for (RangeSubscription range : rangeSubscriptions) range.subscription().close();
+        for (CellSubscription subscription : sheetSubscriptions) subscription.close();
+        undispatched.set(null);
+        if (ownExecutor != null) ownExecutor.close();
+    }
+
+    //Helper method that forgets a cancelled subscription
+    void remove(CellSubscription theSubscription) {
+        sheetSubscriptions.remove(theSubscription);
+        rangeSubscriptions.removeIf(range -> range.subscription() == theSubscription);
+        for (String rowColumn : cellSubscriptions.keySet()) {
+            cellSubscriptions.computeIfPresent(rowColumn, (cell, subscriptions) -> {
+                subscriptions.remove(theSubscription);
+                return subscriptions.isEmpty() ? null : subscriptions;
+            });
+        }
+    }
+
+    //Helper method run on the executor that matches the changes handed over to the subscriptions, one batch at a
+    //time, and offers each subscription its share
+    private void dispatch() {
+        do {
+            Map<String, Double> batch = undispatched.getAndSet(null);
+            if (batch != null) dispatch(batch);
+            dispatching.set(false);
+        } while (undispatched.get() != null && dispatching.compareAndSet(false, true));
+    }
+
+    //Helper method that offers a batch of changes to the subscriptions watching any of them
+    private void dispatch(Map<String, Double> theBatch) {
+        for (CellSubscription subscription : sheetSubscriptions) subscription.offer(theBatch);
+
+        Map<CellSubscription, Map<String, Double>> shares = new HashMap<>();
+        if (!cellSubscriptions.isEmpty()) {
+            for (Map.Entry<String, Double> change : theBatch.entrySet()) {
+                List<CellSubscription> subscriptions = cellSubscriptions.get(change.getKey());
+                if (subscriptions == null) continue;
+                for (CellSubscription subscription : subscriptions) {
+                    shares.computeIfAbsent(subscription, share -> new HashMap<>()).put(change.getKey(), change.getValue());
+                }
+            }
+        }
+        if (!rangeSubscriptions.isEmpty()) {
+            //Each changed cell is read once, then checked against every range
+            int size = theBatch.size();
+            String[] rowColumns = new String[size];
+            int[] rowsOf = new int[size];
+            int[] columnsOf = new int[size];
+            int i = 0;
+            for (String rowColumn : theBatch.keySet()) {
+                int columnMark = rowColumn.indexOf('C');
+                rowColumns[i] = rowColumn;
+                rowsOf[i] = Integer.parseInt(rowColumn, 1, columnMark, 10);
+                columnsOf[i] = Integer.parseInt(rowColumn, columnMark + 1, rowColumn.length(), 10);
+                i++;
+            }
+            for (RangeSubscription range : rangeSubscriptions) {
+                Map<String, Double> share = null;
+                for (int j = 0; j < size; j++) {
+                    if (rowsOf[j] < range.firstRow() || rowsOf[j] > range.lastRow()
+                            || columnsOf[j] < range.firstColumn() || columnsOf[j] > range.lastColumn()) continue;
+                    if (share == null) share = shares.computeIfAbsent(range.subscription(), s -> new HashMap<>());
+                    share.put(rowColumns[j], theBatch.get(rowColumns[j]));
+                }
+            }
+        }
+        for (Map.Entry<CellSubscription, Map<String, Double>> share : shares.entrySet()) {
+            share.getKey().offer(share.getValue());
+        }
+    }
+
+    //Helper method that reads the row and column of a cell, rejecting malformed designations
+    private static int[] parseCell(String theRowColumn) {
+        if (!theRowColumn.matches("R\\d+C\\d+"))
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        int columnMark = theRowColumn.indexOf('C');
+        return new int[] {Integer.parseInt(theRowColumn, 1, columnMark, 10),
+                Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10)};
+    }
+
+    //A subscription to the cells of a range, by its rows and columns counted from one
+    private record RangeSubscription(CellSubscription subscription, int firstRow, int lastRow,
+                                     int firstColumn, int lastColumn) {
+    }
+}
@@ -0,0 +1,322 @@
+package app.model.spread;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streams comma separated values into a block of a sheet. Fields are parsed straight out of a fixed size buffer,
+ * numbers with a parser of their own rather than the expression reader, and put into the sheet's cells without
+ * evaluating anything. Once the whole file is read, the formulas that refer to the block are recalculated a single
+ * time. Fields may be quoted, with doubled quotes inside standing for one quote, and hold delimiters and line
+ * breaks. Numbers follow the sheet's own literal syntax, an optional minus sign, digits and an optional fraction.
+ * Fields starting with "=" are set as formulas, empty fields empty their cell, and anything else is kept as text.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class CsvImporter {
+    private static final int BUFFER_CHARS = 64 * 1024;
+    //Cells per edit told to the journal and edit listeners, so an import is never held in memory whole
+    private static final int EDIT_CELLS = 4096;
+    //Largest number of significant digits, and power of ten, that a double holds exactly
+    private static final int EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final SpreadsheetGraph sheet;
+    private char delimiter = ',';
+    private int firstRow;
+    private int firstColumn;
+    private boolean skipHeader;
+
+    private final StringBuilder cellRef = new StringBuilder();
+    private char[] field = new char[256];
+    private int fieldLength;
+    private boolean fieldQuoted;
+    private int row;
+    private int column;
+    private int lastColumn;
+    private long cells;
+    private Map<String, String> previous;
+    private Map<String, String> formulas;
+
+    /**
+     * Constructor for an importer into a sheet.
+     * @param theSheet the sheet to import into
+     */
+    public CsvImporter(SpreadsheetGraph theSheet) {
+        sheet = theSheet;
+    }
+
+    /**
+     * Sets the character between fields, a comma by default.
+     * @param theDelimiter the delimiter, which cannot be a quote or line break
+     * @return this importer
+     */
+    public CsvImporter setDelimiter(char theDelimiter) {
+        if (theDelimiter == '"' || theDelimiter == '\n' || theDelimiter == '\r')
+            throw new IllegalArgumentException("Delimiter cannot be a quote or line break");
+        delimiter = theDelimiter;
+        return this;
+    }
+
+    /**
+     * Sets the cell the first field goes into, R1C1 by default.
+     * @param theRowColumn the top left cell of the block, in the format "R#C#"
+     * @return this importer
+     */
+    public CsvImporter setOrigin(String theRowColumn) {
+        int columnMark = theRowColumn.indexOf('C');
+        if (!theRowColumn.startsWith("R") || columnMark < 2)
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        try {
+            firstRow = Integer.parseInt(theRowColumn, 1, columnMark, 10) - 1;
+            firstColumn = Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) - 1;
+        } catch (NumberFormatException exc) {
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        }
+        if (firstRow < 0 || firstColumn < 0)
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        return this;
+    }
+
+    /**
+     * Sets whether the first line is a header to leave out.
+     * @param theSkipHeader true to leave out the first line
+     * @return this importer
+     */
+    public CsvImporter setSkipHeader(boolean theSkipHeader) {
+        skipHeader = theSkipHeader;
+        return this;
+    }
+
+    /**
+     * Imports a UTF-8 file.
+     * @param thePath the file to import
+     * @return the number of rows imported
+     * @throws IOException if the file could not be read
+     * @throws IllegalArgumentException if a formula failed to evaluate after the import, which is kept regardless
+     */
+    public int importFile(Path thePath) throws IOException {
+        try (Reader reader = Files.newBufferedReader(thePath, StandardCharsets.UTF_8)) {
+            return importFrom(reader);
+        }
+    }
+
+    /**
+     * Imports comma separated values. The sheet grows to fit them if needed.
+     * @param theReader the values to import
+     * @return the number of rows imported
+     * @throws IOException if the values could not be read, in which case those read before are kept and the
+     *                     formulas referring to them recalculated
+     * @throws IllegalArgumentException if a formula failed to evaluate after the import, which is kept regardless
+     */
+    public int importFrom(Reader theReader) throws IOException {
+        row = skipHeader ? -1 : 0;
+        column = 0;
+        lastColumn = -1;
+        cells = 0;
+        fieldLength = 0;
+        fieldQuoted = false;
+        previous = new HashMap<>();
+        formulas = new LinkedHashMap<>();
+        boolean read = false;
+        try {
+            parse(theReader);
+            read = true;
+        } finally {
+            //A line cut short by a failed read has cells in the sheet all the same
+            int rows = column > 0 ? row + 1 : row;
+            if (!previous.isEmpty()) sheet.recordEdit(previous);
+            if (rows > 0 && lastColumn >= 0) {
+                if (firstRow + rows > sheet.getRowCount()) sheet.setRowCount(firstRow + rows);
+                if (firstColumn + lastColumn + 1 > sheet.getColumnCount()) sheet.setColumnCount(firstColumn + lastColumn + 1);
+            }
+            Map<String, String> importedFormulas = formulas;
+            previous = null;
+            formulas = null;
+            //The cells read before a failed read are recalculated too, the failure to read being the one reported
+            if (rows > 0 && lastColumn >= 0) {
+                try {
+                    sheet.finishImport(firstRow, firstColumn, firstRow + rows - 1, firstColumn + lastColumn,
+                            importedFormulas);
+                } catch (IllegalArgumentException exc) {
+                    if (read) throw exc;
+                }
+            }
+        }
+        return Math.max(row, 0);
+    }
+
+    /**
+     * Gets the number of fields the last import put into cells, empty ones included.
+     * @return the number of cells imported
+     */
+    public long getCellCount() {
+        return cells;
+    }
+
+    //Helper method that splits the values into fields, one buffer at a time
+    private void parse(Reader theReader) throws IOException {
+        char[] buffer = new char[BUFFER_CHARS];
+        boolean inQuotes = false;
+        boolean quoteSeen = false;  //A quote inside quotes, which either closes them or is doubled
+        boolean lineStarted = false;
+        boolean carriageReturn = false;
+        boolean first = true;
+        int read;
+        while ((read = theReader.read(buffer)) > 0) {
+            int start = 0;
+            if (first) {
+                first = false;
+                if (buffer[0] == '\uFEFF') start = 1;  //Byte order mark
+            }
+            for (int i = start; i < read; i++) {
+                char c = buffer[i];
+                if (carriageReturn) {
+                    carriageReturn = false;
+                    if (c == '\n') continue;
+                }
+                if (inQuotes) {
+                    if (quoteSeen) {
+                        quoteSeen = false;
+                        if (c == '"') {
+                            append(c);
+                            continue;
+                        }
+                        inQuotes = false;
+                    } else {
+                        if (c == '"') quoteSeen = true;
+                        else append(c);
+                        continue;
+                    }
+                }
+                if (c == delimiter) {
+                    endField();
+                    lineStarted = true;
+                } else if (c == '\n' || c == '\r') {
+                    carriageReturn = c == '\r';
+                    if (lineStarted || fieldLength > 0 || fieldQuoted) endField();
+                    endLine();
+                    lineStarted = false;
+                } else if (c == '"' && fieldLength == 0 && !fieldQuoted) {
+                    inQuotes = true;
+                    fieldQuoted = true;
+                    lineStarted = true;
+                } else {
+                    append(c);
+                    lineStarted = true;
+                }
+            }
+        }
+        if (lineStarted || fieldLength > 0 || fieldQuoted) {
+            endField();
+            endLine();
+        }
+    }
+
+    //Helper method that adds a character to the field, growing it as needed
+    private void append(char theChar) {
+        if (fieldLength == field.length) field = Arrays.copyOf(field, fieldLength * 2);
+        field[fieldLength++] = theChar;
+    }
+
+    //Helper method that moves on to the next line
+    private void endLine() {
+        row++;
+        column = 0;
+    }
+
+    //Helper method that puts the field into its cell
+    private void endField() {
+        int start = 0;
+        int end = fieldLength;
+        while (start < end && Character.isWhitespace(field[start])) start++;
+        while (end > start && Character.isWhitespace(field[end - 1])) end--;
+        fieldLength = 0;
+        fieldQuoted = false;
+        if (row < 0) return;  //The header
+
+        int cellRow = firstRow + row;
+        int cellColumn = firstColumn + column;
+        cellRef.setLength(0);
+        cellRef.append('R').append(cellRow + 1).append('C').append(cellColumn + 1);
+        String rowColumn = cellRef.toString();
+        lastColumn = Math.max(lastColumn, column);
+        column++;
+        cells++;
+
+        String old;
+        if (start == end) {
+            old = sheet.putEmpty(rowColumn);
+            if (old == null) return;
+        } else if (field[start] == '=') {
+            formulas.put(rowColumn, new String(field, start, end - start));
+            return;
+        } else {
+            String text = new String(field, start, end - start);
+            double value = parseNumber(field, start, end);
+            old = sheet.putLiteral(rowColumn, cellRow, cellColumn, text, Double.isNaN(value) ? null : value);
+        }
+        if (!previous.containsKey(rowColumn)) previous.put(rowColumn, old);
+        if (previous.size() >= EDIT_CELLS) {
+            sheet.recordEdit(previous);
+            previous = new HashMap<>();
+        }
+    }
+
+    /**
+     * Parses a number in the sheet's literal syntax, giving the same double as {@link Double#parseDouble}.
+     * Numbers with few enough digits are worked out exactly from their digits and a power of ten, and the
+     * rest are left to {@link Double#parseDouble}.
+     * @param theChars the characters holding the number
+     * @param theStart the index of the first character
+     * @param theEnd the index past the last character
+     * @return the number, or NaN if the characters are not a number
+     */
+    static double parseNumber(char[] theChars, int theStart, int theEnd) {
+        int i = theStart;
+        boolean negative = i < theEnd && theChars[i] == '-';
+        if (negative) i++;
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int integerStart = i;
+        while (i < theEnd && theChars[i] >= '0' && theChars[i] <= '9') {
+            if (mantissa != 0 || theChars[i] != '0') significantDigits++;
+            if (significantDigits <= EXACT_DIGITS) mantissa = mantissa * 10 + (theChars[i] - '0');
+            i++;
+        }
+        if (i == integerStart) return Double.NaN;
+
+        int fractionDigits = 0;
+        if (i < theEnd && theChars[i] == '.') {
+            i++;
+            int fractionStart = i;
+            while (i < theEnd && theChars[i] >= '0' && theChars[i] <= '9') {
+                if (mantissa != 0 || theChars[i] != '0') significantDigits++;
+                if (significantDigits <= EXACT_DIGITS) mantissa = mantissa * 10 + (theChars[i] - '0');
+                fractionDigits++;
+                i++;
+            }
+            if (i == fractionStart) return Double.NaN;
+        }
+        if (i != theEnd) return Double.NaN;
+
+        if (significantDigits > EXACT_DIGITS || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(theChars, theStart, theEnd - theStart));
+        }
+        //Both are exact doubles, so their quotient is rounded once, as parseDouble rounds
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,61 @@
+package app.model.spread;
+
+import java.util.stream.IntStream;
+
+/**
+ * Sensitivity tables, giving output cells for every value or pair of values of one or two input cells.
+ * The formulas between the inputs and the outputs are planned once, only they are evaluated per point,
+ * and the points are evaluated in parallel. The sheet itself is left unchanged.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class DataTable {
+
+    private DataTable() {
+    }
+
+    /**
+     * Computes a one-variable table.
+     * @param theSheet the evaluated sheet, which must not be edited meanwhile
+     * @param theInput the input cell, in the format "R#C#"
+     * @param theValues the values to try for the input
+     * @param theOutputs the output cells, in the format "R#C#"
+     * @return for each input value, the value of each output, NaN where an output has no value
+     */
+    public static double[][] oneVariable(SpreadsheetGraph theSheet, String theInput, double[] theValues,
+                                         String... theOutputs) {
+        DependencySlice slice = new DependencySlice(theSheet, new String[] {theInput}, theOutputs);
+        double[][] table = new double[theValues.length][];
+        IntStream.range(0, theValues.length).parallel()
+                .forEach(i -> table[i] = slice.evaluate(new double[] {theValues[i]}));
+        return table;
+    }
+
+    /**
+     * Computes a two-variable table.
+     * @param theSheet the evaluated sheet, which must not be edited meanwhile
+     * @param theRowInput the input cell varied down the table, in the format "R#C#"
+     * @param theRowValues the values to try for the row input
+     * @param theColumnInput the input cell varied across the table, in the format "R#C#"
+     * @param theColumnValues the values to try for the column input
+     * @param theOutput the output cell, in the format "R#C#"
+     * @return the value of the output for each pair, indexed by row value then column value,
+     *         NaN where the output has no value
+     */
+    public static double[][] twoVariable(SpreadsheetGraph theSheet, String theRowInput, double[] theRowValues,
+                                         String theColumnInput, double[] theColumnValues, String theOutput) {
+        if (theRowInput.equals(theColumnInput))
+            throw new IllegalArgumentException("Row and column inputs must be different cells");
+        DependencySlice slice = new DependencySlice(theSheet,
+                new String[] {theRowInput, theColumnInput}, new String[] {theOutput});
+        int columns = theColumnValues.length;
+        double[][] table = new double[theRowValues.length][columns];
+        IntStream.range(0, theRowValues.length * columns).parallel().forEach(point -> {
+            int row = point / columns;
+            int column = point % columns;
+            table[row][column] = slice.evaluate(new double[] {theRowValues[row], theColumnValues[column]})[0];
+        });
+        return table;
+    }
+}
@@ -0,0 +1,183 @@
+package app.model.spread;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries on the dependencies between the cells of a sheet: the cells a cell's formula refers to, its precedents,
+ * and the formulas that refer to it, its dependents, either directly or through other cells. Dependents are read
+ * from the index the sheet keeps up to date as it is edited, so that an edit recalculates only what depends on it,
+ * and precedents from the compiled formulas themselves. Nothing is built for a query, which reads only the cells it
+ * finds, so finding the direct precedents or dependents of a cell takes as long however big the sheet is.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class DependencyExplorer {
+    private static final int ON_PATH = -1;
+
+    private final SpreadsheetGraph sheet;
+
+    /**
+     * Constructor for queries on a sheet, which see every later edit of it.
+     * @param theSheet the sheet
+     */
+    public DependencyExplorer(SpreadsheetGraph theSheet) {
+        sheet = theSheet;
+    }
+
+    /**
+     * Gets the cells a cell's formula refers to. Every cell of a range is listed, and empty cells are too.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @return the cells referred to, each once, in the order the formula first refers to them, none if the cell
+     *         does not hold a formula
+     */
+    public List<String> getPrecedents(String theRowColumn) {
+        checkCellRef(theRowColumn);
+        return new ArrayList<>(new LinkedHashSet<>(referencesOf(theRowColumn)));
+    }
+
+    /**
+     * Gets the formula cells that refer directly to a cell.
+     * @param theRowColumn the cell, in the format "R#C#", which may be empty
+     * @return the dependent cells, in row-major order
+     */
+    public List<String> getDependents(String theRowColumn) {
+        checkCellRef(theRowColumn);
+        List<GraphVertex> vertices = new ArrayList<>(dependentsOf(theRowColumn));
+        vertices.sort(Comparator.comparingInt(GraphVertex::getRow).thenComparingInt(GraphVertex::getColumn));
+        List<String> cells = new ArrayList<>(vertices.size());
+        for (GraphVertex vertex : vertices) cells.add(vertex.getRowColumn());
+        return cells;
+    }
+
+    /**
+     * Finds the cells a cell depends on, directly or through other formulas, up to some number of levels away.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @param theMaxLevels the most levels to follow, one for only the direct precedents, or Integer.MAX_VALUE for
+     *                     every precedent
+     * @return the precedents, each with the fewest levels it is away, nearest first; the cell itself is left out
+     *         even if it refers to itself through a cycle
+     * @throws IllegalArgumentException if the cell is malformed or the number of levels is negative
+     */
+    public Map<String, Integer> tracePrecedents(String theRowColumn, int theMaxLevels) {
+        return trace(theRowColumn, theMaxLevels, true);
+    }
+
+    /**
+     * Finds the formula cells that depend on a cell, directly or through other formulas, up to some number of
+     * levels away.
+     * @param theRowColumn the cell, in the format "R#C#", which may be empty
+     * @param theMaxLevels the most levels to follow, one for only the direct dependents, or Integer.MAX_VALUE for
+     *                     every dependent
+     * @return the dependents, each with the fewest levels it is away, nearest first; the cell itself is left out
+     *         even if it depends on itself through a cycle
+     * @throws IllegalArgumentException if the cell is malformed or the number of levels is negative
+     */
+    public Map<String, Integer> traceDependents(String theRowColumn, int theMaxLevels) {
+        return trace(theRowColumn, theMaxLevels, false);
+    }
+
+    /**
+     * Counts the formula cells an edit of a cell recalculates, which are every cell depending on it.
+     * @param theRowColumn the cell, in the format "R#C#", which may be empty
+     * @return the number of cells depending on the cell, directly or through other formulas
+     */
+    public int getImpactSize(String theRowColumn) {
+        checkCellRef(theRowColumn);
+        //The walk an edit's recalculation starts with, which finds the cell itself too if it is not empty
+        return sheet.affected(List.of(theRowColumn)).size() - (sheet.getVertex(theRowColumn) == null ? 0 : 1);
+    }
+
+    /**
+     * Gets the length of the longest chain of cells a cell depends on, as the sheet is now.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @return the chain depth, zero if the cell refers to no other cell; a chain around a cycle ends where it
+     *         would repeat a cell
+     */
+    public int getDepth(String theRowColumn) {
+        checkCellRef(theRowColumn);
+        //Depth first without recursion, so long chains cannot overflow the stack, and each cell is visited once
+        Map<String, Integer> depths = new HashMap<>();
+        ArrayDeque<String> path = new ArrayDeque<>();
+        ArrayDeque<Iterator<String>> unvisited = new ArrayDeque<>();
+        depths.put(theRowColumn, ON_PATH);
+        path.push(theRowColumn);
+        unvisited.push(referencesOf(theRowColumn).iterator());
+        while (!path.isEmpty()) {
+            Iterator<String> references = unvisited.peek();
+            if (references.hasNext()) {
+                String reference = references.next();
+                if (depths.putIfAbsent(reference, ON_PATH) == null) {
+                    path.push(reference);
+                    unvisited.push(referencesOf(reference).iterator());
+                }
+                continue;
+            }
+            String rowColumn = path.pop();
+            unvisited.pop();
+            int depth = 0;
+            for (String reference : referencesOf(rowColumn)) {
+                depth = Math.max(depth, Math.max(depths.get(reference), 0) + 1);
+            }
+            depths.put(rowColumn, depth);
+        }
+        return depths.get(theRowColumn);
+    }
+
+    //Helper method that finds precedents or dependents level by level
+    private Map<String, Integer> trace(String theRowColumn, int theMaxLevels, boolean thePrecedents) {
+        checkCellRef(theRowColumn);
+        if (theMaxLevels < 0)
+            throw new IllegalArgumentException("Number of levels %d must not be negative".formatted(theMaxLevels));
+        Map<String, Integer> found = new LinkedHashMap<>();
+        List<String> level = List.of(theRowColumn);
+        for (int distance = 1; distance <= theMaxLevels && !level.isEmpty(); distance++) {
+            List<String> next = new ArrayList<>();
+            for (String rowColumn : level) {
+                if (thePrecedents) {
+                    for (String reference : referencesOf(rowColumn)) {
+                        if (!reference.equals(theRowColumn) && found.putIfAbsent(reference, distance) == null) {
+                            next.add(reference);
+                        }
+                    }
+                } else {
+                    for (GraphVertex dependent : dependentsOf(rowColumn)) {
+                        String reference = dependent.getRowColumn();
+                        if (!reference.equals(theRowColumn) && found.putIfAbsent(reference, distance) == null) {
+                            next.add(reference);
+                        }
+                    }
+                }
+            }
+            level = next;
+        }
+        return found;
+    }
+
+    //Helper method that gets the cells a cell's formula refers to, none if it is not a compiled formula
+    private List<String> referencesOf(String theRowColumn) {
+        GraphVertex vertex = sheet.getVertex(theRowColumn);
+        if (vertex == null || vertex.getCell().getCompiledInstruction() == null) return List.of();
+        return sheet.referencesOf(vertex.getCell().getCompiledInstruction());
+    }
+
+    //Helper method that gets the formula cells referring directly to a cell, once cells past the sheet are evicted
+    private List<GraphVertex> dependentsOf(String theRowColumn) {
+        sheet.getVertex(theRowColumn);
+        return sheet.dependentsOf(theRowColumn);
+    }
+
+    //Helper method that rejects malformed cell designations
+    private static void checkCellRef(String theRowColumn) {
+        if (!theRowColumn.matches("R\\d+C\\d+"))
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+    }
+}
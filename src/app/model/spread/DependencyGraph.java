@@ -0,0 +1,551 @@
+package app.model.spread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * The formulas of a sheet that refer to each cell, kept as it is edited, held in primitive arrays rather than a
+ * collection per cell. Every cell some formula refers to, empty or not, is numbered, and so is every range and every
+ * formula each time it is linked in. A range is numbered once, however many cells it covers and formulas refer to it,
+ * and the ranges containing a cell are found through a {@link RangeIndex}, so a formula over a range of a thousand
+ * cells costs one edge rather than a thousand. The formulas referring to each cell or range are then held as
+ * compressed sparse rows: one array of formula numbers, grouped by cell or range, with the start of each group in
+ * another. Formulas linked in since are added to an append buffer, chained per cell or range, and unlinking a formula
+ * only forgets its number, leaving its edges to be skipped. Once the buffer or the edges skipped outgrow the compacted
+ * edges, they are compacted again, so edits cost a constant time on average, and walking the graph reads ints from a
+ * few arrays without allocating any objects per edge.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+final class DependencyGraph {
+    private static final int NONE = -1;
+    private static final int MIN_COMPACTION = 4096;
+
+    //Cells and ranges some formula refers to, by row and column packed into a long for a cell and by the complement of
+    //the range's number for a range, and those keys by number
+    private LongIntMap positions;
+    private long[] positionKeys;
+    private int positionCount;
+    //Formulas linked in, by number, null once unlinked, with the number of cells each refers to
+    private GraphVertex[] links;
+    private int[] linkEdges;
+    private int linkCount;
+    private int liveLinks;
+    //Compacted edges: the formulas referring to cell p are numbered in targets[offsets[p]] up to targets[offsets[p + 1]]
+    private int[] offsets;
+    private int[] targets;
+    //Edges added since, as a chain per cell from the newest, which bufferNext continues
+    private int[] bufferHeads;
+    private int[] bufferTargets;
+    private int[] bufferNext;
+    private int bufferSize;
+    private int staleEdges;
+    //The last formula linked that referred to each cell, so a formula referring to a cell twice links it once
+    private int[] lastLinked;
+    //Formulas found by the last walk of the graph are marked with its generation
+    private int[] marks;
+    private int generation;
+    private final RangeIndex ranges;
+    //Ranges found by the last walk are marked with its generation as well, and listed in walked. Ordering the cells
+    //found counts for each range the cells found in it, and keeps the depth of the deepest
+    private int[] rangeMarks;
+    private int[] rangeIndegrees;
+    private int[] rangeDepths;
+    private int[] walked;
+    private int walkedCount;
+    //The cells and ranges a walk is yet to follow, and the state the walk's callbacks share
+    private int[] queue;
+    private int queueCount;
+    private List<GraphVertex> ordering;
+    private GraphVertex settling;
+    private final IntConsumer walkRange = this::walkRange;
+    private final IntConsumer countRange = this::countRange;
+    private final IntConsumer settleRange = this::settleRange;
+
+    /**
+     * Constructor for a graph without any formulas.
+     */
+    DependencyGraph() {
+        positions = new LongIntMap(16);
+        positionKeys = new long[16];
+        links = new GraphVertex[16];
+        linkEdges = new int[16];
+        offsets = new int[1];
+        targets = new int[0];
+        bufferHeads = filled(16);
+        bufferTargets = new int[16];
+        bufferNext = new int[16];
+        lastLinked = filled(16);
+        marks = new int[16];
+        ranges = new RangeIndex();
+        rangeMarks = new int[16];
+        rangeIndegrees = new int[16];
+        rangeDepths = new int[16];
+        walked = new int[16];
+        queue = new int[16];
+    }
+
+    /**
+     * Links a formula in as a dependent of every cell it refers to, unlinking it first if it was already.
+     * @param theVertex the formula's cell
+     * @param theReferences the cells the formula refers to, in the format "R#C#", and the ranges, in the format
+     *                      "R#C#:R#C#"
+     */
+    void link(GraphVertex theVertex, List<String> theReferences) {
+        unlink(theVertex);
+        if (bufferSize > Math.max(MIN_COMPACTION, targets.length)
+                || staleEdges > Math.max(MIN_COMPACTION, targets.length + bufferSize - staleEdges)) {
+            compact();
+        }
+        if (linkCount == links.length) {
+            links = Arrays.copyOf(links, linkCount * 2);
+            linkEdges = Arrays.copyOf(linkEdges, linkCount * 2);
+            marks = Arrays.copyOf(marks, linkCount * 2);
+        }
+        int link = linkCount++;
+        links[link] = theVertex;
+        theVertex.setLink(link);
+        liveLinks++;
+        int edges = 0;
+        for (String reference : theReferences) {
+            int position = positionOf(reference.indexOf(':') < 0 ? parseKey(reference) : rangeKey(reference));
+            if (lastLinked[position] == link) continue;
+            lastLinked[position] = link;
+            if (bufferSize == bufferTargets.length) {
+                bufferTargets = Arrays.copyOf(bufferTargets, bufferSize * 2);
+                bufferNext = Arrays.copyOf(bufferNext, bufferSize * 2);
+            }
+            bufferTargets[bufferSize] = link;
+            bufferNext[bufferSize] = bufferHeads[position];
+            bufferHeads[position] = bufferSize++;
+            edges++;
+        }
+        linkEdges[link] = edges;
+    }
+
+    /**
+     * Unlinks a formula, which is then a dependent of no cell.
+     * @param theVertex the formula's cell, which need not be linked
+     */
+    void unlink(GraphVertex theVertex) {
+        int link = theVertex.getLink();
+        if (link == NONE) return;
+        links[link] = null;
+        staleEdges += linkEdges[link];
+        liveLinks--;
+        theVertex.setLink(NONE);
+    }
+
+    /**
+     * Gets the formulas that refer directly to a cell, by itself or through a range containing it.
+     * @param theRow the row, counted from zero
+     * @param theColumn the column, counted from zero
+     * @return the dependent cells, each once
+     */
+    List<GraphVertex> dependentsOf(int theRow, int theColumn) {
+        Set<GraphVertex> found = new LinkedHashSet<>();
+        int position = positions.get(key(theRow, theColumn));
+        if (position != NONE) addDependents(position, found);
+        if (!ranges.isEmpty()) ranges.forEachContaining(theRow, theColumn, range -> addDependents(rangePosition(range), found));
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Checks if any formula refers to a cell, by itself or through a range containing it.
+     * @param theRow the row, counted from zero
+     * @param theColumn the column, counted from zero
+     * @return true if the cell has dependents
+     */
+    boolean hasDependents(int theRow, int theColumn) {
+        int position = positions.get(key(theRow, theColumn));
+        if (position != NONE && hasDependents(position)) return true;
+        if (ranges.isEmpty()) return false;
+        boolean[] found = new boolean[1];
+        ranges.forEachContaining(theRow, theColumn, range -> found[0] |= hasDependents(rangePosition(range)));
+        return found[0];
+    }
+
+    /**
+     * Finds cells of a block that formulas refer to, enough of them that the formulas referring to any cell of the
+     * block refer to one of them: each cell referred to by itself, and a cell of the block in each range referred to.
+     * @param theFirstRow the first row of the block, counted from zero
+     * @param theFirstColumn the first column of the block, counted from zero
+     * @param theLastRow the last row of the block
+     * @param theLastColumn the last column of the block
+     * @return the cells of the block with dependents, in the format "R#C#"
+     */
+    List<String> cellsWithDependents(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn) {
+        List<String> found = new ArrayList<>();
+        for (int position = 0; position < positionCount; position++) {
+            if (positionKeys[position] < 0) continue;
+            int row = (int) (positionKeys[position] >>> 32);
+            int column = (int) positionKeys[position];
+            if (row >= theFirstRow && row <= theLastRow && column >= theFirstColumn && column <= theLastColumn
+                    && hasDependents(position)) {
+                found.add("R" + (row + 1) + "C" + (column + 1));
+            }
+        }
+        ranges.forEachIntersecting(theFirstRow, theFirstColumn, theLastRow, theLastColumn, range -> {
+            if (hasDependents(rangePosition(range))) {
+                found.add("R" + (Math.max(theFirstRow, ranges.firstRow(range)) + 1)
+                        + "C" + (Math.max(theFirstColumn, ranges.firstColumn(range)) + 1));
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Finds the formulas that refer to any cell at or past a row or column, by itself or through a range.
+     * @param theRows true to look past a row, false past a column
+     * @param theAt the row or column, counted from zero
+     * @param theFound the collection to add the formulas' cells to
+     */
+    void collectDependentsFrom(boolean theRows, int theAt, Collection<GraphVertex> theFound) {
+        for (int position = 0; position < positionCount; position++) {
+            if (positionKeys[position] < 0) continue;
+            int index = theRows ? (int) (positionKeys[position] >>> 32) : (int) positionKeys[position];
+            if (index >= theAt) addDependents(position, theFound);
+        }
+        ranges.forEachIntersecting(theRows ? theAt : 0, theRows ? 0 : theAt, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                range -> addDependents(rangePosition(range), theFound));
+    }
+
+    /**
+     * Finds the cells an edit affects: the edited cells that are not empty, then every formula depending on any of
+     * them, directly or through other formulas, each once. The formulas found stay marked until the next walk.
+     * @param theChanged the edited cells, in the format "R#C#"
+     * @param theCells the cells of the sheet that are not empty
+     * @return the affected cells
+     */
+    List<GraphVertex> affected(Collection<String> theChanged, Map<String, GraphVertex> theCells) {
+        nextGeneration();
+        walkedCount = 0;
+        queueCount = 0;
+        List<GraphVertex> found = new ArrayList<>();
+        //Edited cells without a formula are never dependents, so only they need a set of their own
+        Set<GraphVertex> unlinked = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String rowColumn : theChanged) {
+            GraphVertex vertex = theCells.get(rowColumn);
+            if (vertex != null && (vertex.getLink() == NONE ? unlinked.add(vertex) : mark(vertex.getLink()))) {
+                found.add(vertex);
+            }
+            long key = parseKey(rowColumn);
+            walkCell((int) (key >>> 32), (int) key);
+        }
+        //Every formula found adds the cell it sits in, the queue being the tail of found from here on
+        for (int i = 0; i < queueCount; i++) {
+            int position = queue[i];
+            for (int edge = first(position); edge != NONE; edge = next(position, edge)) {
+                int link = target(edge);
+                GraphVertex dependent = links[link];
+                if (dependent == null || !mark(link)) continue;
+                found.add(dependent);
+                walkCell(dependent.getRow(), dependent.getColumn());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Orders the cells found by the last call to {@link #affected} with Kahn's algorithm, so every cell comes after
+     * the affected cells it refers to. A range found is ordered as a cell of its own, after the affected cells in it
+     * and before the formulas referring to it. Each cell's indegree is left as the number of affected cells and
+     * ranges it refers to that could not be ordered, and its depth as one more than the deepest of the affected
+     * cells it refers to, by themselves or through ranges, that could.
+     * @param theAffected the cells affected
+     * @return the cells in order, fewer than were affected if some form a cycle
+     */
+    List<GraphVertex> order(List<GraphVertex> theAffected) {
+        for (GraphVertex vertex : theAffected) {
+            vertex.setIndegree(0);
+            vertex.setDepth(0);
+        }
+        for (int i = 0; i < walkedCount; i++) {
+            rangeIndegrees[walked[i]] = 0;
+            rangeDepths[walked[i]] = NONE;
+        }
+        //A cell refers to each cell or range once as far as the edges go, and only marked formulas were affected
+        for (GraphVertex vertex : theAffected) {
+            int position = positions.get(key(vertex.getRow(), vertex.getColumn()));
+            if (position != NONE) countDependents(position);
+            if (walkedCount > 0) ranges.forEachContaining(vertex.getRow(), vertex.getColumn(), countRange);
+        }
+        for (int i = 0; i < walkedCount; i++) countDependents(walked[i]);
+
+        ordering = new ArrayList<>(theAffected.size());
+        for (GraphVertex vertex : theAffected) {
+            if (vertex.getIndegree() == 0) ordering.add(vertex);
+        }
+        //Ranges without an affected cell in them hold nothing back
+        for (int i = 0; i < walkedCount; i++) {
+            if (rangeIndegrees[walked[i]] == 0) release(walked[i]);
+        }
+        for (int i = 0; i < ordering.size(); i++) {
+            GraphVertex vertex = ordering.get(i);
+            int position = positions.get(key(vertex.getRow(), vertex.getColumn()));
+            if (position != NONE) {
+                for (int edge = first(position); edge != NONE; edge = next(position, edge)) {
+                    int link = target(edge);
+                    GraphVertex dependent = links[link];
+                    if (dependent == null || marks[link] != generation) continue;
+                    //A dependent sits one further down the chain than the deepest cell it depends on
+                    dependent.setDepth(Math.max(dependent.getDepth(), vertex.getDepth() + 1));
+                    dependent.decrementIndegree();
+                    if (dependent.getIndegree() == 0) ordering.add(dependent);
+                }
+            }
+            if (walkedCount > 0) {
+                settling = vertex;
+                ranges.forEachContaining(vertex.getRow(), vertex.getColumn(), settleRange);
+            }
+        }
+        List<GraphVertex> ordered = ordering;
+        ordering = null;
+        settling = null;
+        return ordered;
+    }
+
+    //Helper method that adds the cell of a formula found by a walk to the walk's queue, along with the ranges
+    //containing it the walk has not found yet
+    private void walkCell(int theRow, int theColumn) {
+        int position = positions.get(key(theRow, theColumn));
+        if (position != NONE) enqueue(position);
+        if (!ranges.isEmpty()) ranges.forEachContaining(theRow, theColumn, walkRange);
+    }
+
+    //Helper method that adds a range containing a cell found by a walk to the walk's queue, once
+    private void walkRange(int theRange) {
+        int position = rangePosition(theRange);
+        if (position == NONE || rangeMarks[position] == generation) return;
+        rangeMarks[position] = generation;
+        if (walkedCount == walked.length) walked = Arrays.copyOf(walked, walkedCount * 2);
+        walked[walkedCount++] = position;
+        enqueue(position);
+    }
+
+    //Helper method that adds a cell or range to the walk's queue
+    private void enqueue(int thePosition) {
+        if (queueCount == queue.length) queue = Arrays.copyOf(queue, queueCount * 2);
+        queue[queueCount++] = thePosition;
+    }
+
+    //Helper method that counts an affected cell against a range containing it that the walk found
+    private void countRange(int theRange) {
+        int position = rangePosition(theRange);
+        if (position != NONE && rangeMarks[position] == generation) rangeIndegrees[position]++;
+    }
+
+    //Helper method that counts an affected cell or range against the affected formulas referring to it
+    private void countDependents(int thePosition) {
+        for (int edge = first(thePosition); edge != NONE; edge = next(thePosition, edge)) {
+            int link = target(edge);
+            if (links[link] != null && marks[link] == generation) links[link].incrementIndegree();
+        }
+    }
+
+    //Helper method that settles an ordered cell against a range containing it that the walk found, ordering the
+    //range once every affected cell in it is
+    private void settleRange(int theRange) {
+        int position = rangePosition(theRange);
+        if (position == NONE || rangeMarks[position] != generation) return;
+        rangeDepths[position] = Math.max(rangeDepths[position], settling.getDepth());
+        if (--rangeIndegrees[position] == 0) release(position);
+    }
+
+    //Helper method that orders a range, settling the affected formulas referring to it
+    private void release(int thePosition) {
+        for (int edge = first(thePosition); edge != NONE; edge = next(thePosition, edge)) {
+            int link = target(edge);
+            GraphVertex dependent = links[link];
+            if (dependent == null || marks[link] != generation) continue;
+            dependent.setDepth(Math.max(dependent.getDepth(), rangeDepths[thePosition] + 1));
+            dependent.decrementIndegree();
+            if (dependent.getIndegree() == 0) ordering.add(dependent);
+        }
+    }
+
+    //Helper method that adds the formulas still referring to a cell or range, given its number
+    private void addDependents(int thePosition, Collection<GraphVertex> theFound) {
+        if (thePosition == NONE) return;
+        for (int edge = first(thePosition); edge != NONE; edge = next(thePosition, edge)) {
+            GraphVertex dependent = links[target(edge)];
+            if (dependent != null) theFound.add(dependent);
+        }
+    }
+
+    //Helper method that gets the number of a range as a cell or range, or NONE if no formula refers to it any more
+    private int rangePosition(int theRange) {
+        return positions.get(~(long) theRange);
+    }
+
+    //Helper method that gets the first edge of a cell: compacted edges are counted from zero, buffered edges
+    //from -2 down, and NONE ends the edges
+    private int first(int thePosition) {
+        if (thePosition + 1 < offsets.length && offsets[thePosition] < offsets[thePosition + 1]) {
+            return offsets[thePosition];
+        }
+        return buffered(bufferHeads[thePosition]);
+    }
+
+    //Helper method that gets the edge of a cell after another
+    private int next(int thePosition, int theEdge) {
+        if (theEdge < 0) return buffered(bufferNext[-2 - theEdge]);
+        if (theEdge + 1 < offsets[thePosition + 1]) return theEdge + 1;
+        return buffered(bufferHeads[thePosition]);
+    }
+
+    //Helper method that gets the formula an edge leads to
+    private int target(int theEdge) {
+        return theEdge >= 0 ? targets[theEdge] : bufferTargets[-2 - theEdge];
+    }
+
+    //Helper method that numbers a buffered edge as first and next give it
+    private static int buffered(int theIndex) {
+        return theIndex == NONE ? NONE : -2 - theIndex;
+    }
+
+    //Helper method that checks if a cell or range has an edge to a linked formula, given its number
+    private boolean hasDependents(int thePosition) {
+        if (thePosition == NONE) return false;
+        for (int edge = first(thePosition); edge != NONE; edge = next(thePosition, edge)) {
+            if (links[target(edge)] != null) return true;
+        }
+        return false;
+    }
+
+    //Helper method that gets the number of a cell or range, numbering it if no formula referred to it before
+    private int positionOf(long theKey) {
+        int position = positions.putIfAbsent(theKey, positionCount);
+        if (position != NONE) return position;
+        if (positionCount == positionKeys.length) {
+            positionKeys = Arrays.copyOf(positionKeys, positionCount * 2);
+            bufferHeads = grown(bufferHeads, positionCount * 2);
+            lastLinked = grown(lastLinked, positionCount * 2);
+            rangeMarks = Arrays.copyOf(rangeMarks, positionCount * 2);
+            rangeIndegrees = Arrays.copyOf(rangeIndegrees, positionCount * 2);
+            rangeDepths = Arrays.copyOf(rangeDepths, positionCount * 2);
+        }
+        positionKeys[positionCount] = theKey;
+        return positionCount++;
+    }
+
+    //Helper method that gets the key of a range given as "R#C#:R#C#", adding it to the ranges if it is new
+    private long rangeKey(String theRange) {
+        return ~(long) ranges.add(theRange);
+    }
+
+    //Helper method that compacts every edge to a linked formula into the compressed rows, numbering again the
+    //formulas linked and the cells they refer to, and empties the buffer
+    private void compact() {
+        int[] renumbered = new int[linkCount];
+        GraphVertex[] liveVertices = new GraphVertex[Math.max(16, liveLinks * 2)];
+        int[] liveEdges = new int[liveVertices.length];
+        int live = 0;
+        for (int link = 0; link < linkCount; link++) {
+            if (links[link] == null) continue;
+            renumbered[link] = live;
+            liveVertices[live] = links[link];
+            liveEdges[live] = linkEdges[link];
+            links[link].setLink(live++);
+        }
+
+        //Cells and ranges still referred to keep their order, and the rest are forgotten
+        int[] counts = new int[positionCount];
+        int kept = 0;
+        int edges = 0;
+        for (int position = 0; position < positionCount; position++) {
+            for (int edge = first(position); edge != NONE; edge = next(position, edge)) {
+                if (links[target(edge)] != null) counts[position]++;
+            }
+            if (counts[position] > 0) kept++;
+            else if (positionKeys[position] < 0) ranges.remove((int) ~positionKeys[position]);
+            edges += counts[position];
+        }
+        LongIntMap keptPositions = new LongIntMap(kept);
+        long[] keptKeys = new long[Math.max(16, kept * 2)];
+        int[] keptOffsets = new int[kept + 1];
+        int[] keptTargets = new int[edges];
+        int at = 0;
+        for (int position = 0; position < positionCount; position++) {
+            if (counts[position] == 0) continue;
+            int keptPosition = keptPositions.size();
+            keptPositions.putIfAbsent(positionKeys[position], keptPosition);
+            keptKeys[keptPosition] = positionKeys[position];
+            keptOffsets[keptPosition] = at;
+            for (int edge = first(position); edge != NONE; edge = next(position, edge)) {
+                int link = target(edge);
+                if (links[link] != null) keptTargets[at++] = renumbered[link];
+            }
+        }
+        keptOffsets[kept] = at;
+
+        links = liveVertices;
+        linkEdges = liveEdges;
+        linkCount = live;
+        marks = new int[liveVertices.length];
+        generation = 0;
+        positions = keptPositions;
+        positionKeys = keptKeys;
+        positionCount = kept;
+        offsets = keptOffsets;
+        targets = keptTargets;
+        bufferHeads = filled(keptKeys.length);
+        lastLinked = filled(keptKeys.length);
+        rangeMarks = new int[keptKeys.length];
+        rangeIndegrees = new int[keptKeys.length];
+        rangeDepths = new int[keptKeys.length];
+        walkedCount = 0;
+        bufferSize = 0;
+        staleEdges = 0;
+    }
+
+    //Helper method that starts a walk of the graph, so no formula is marked
+    private void nextGeneration() {
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            generation = 1;
+        }
+    }
+
+    //Helper method that marks a formula found, giving false if it already was
+    private boolean mark(int theLink) {
+        if (marks[theLink] == generation) return false;
+        marks[theLink] = generation;
+        return true;
+    }
+
+    //Helper method that packs a row and column into a long
+    private static long key(int theRow, int theColumn) {
+        return (long) theRow << 32 | theColumn;
+    }
+
+    //Helper method that packs the row and column of a cell designation into a long
+    private static long parseKey(String theRowColumn) {
+        int columnMark = theRowColumn.indexOf('C');
+        return key(Integer.parseInt(theRowColumn, 1, columnMark, 10) - 1,
+                Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) - 1);
+    }
+
+    //Helper method that makes an array of NONE
+    private static int[] filled(int theLength) {
+        int[] array = new int[theLength];
+        Arrays.fill(array, NONE);
+        return array;
+    }
+
+    //Helper method that lengthens an array, filling the new part with NONE
+    private static int[] grown(int[] theArray, int theLength) {
+        int[] array = Arrays.copyOf(theArray, theLength);
+        Arrays.fill(array, theArray.length, theLength, NONE);
+        return array;
+    }
+}
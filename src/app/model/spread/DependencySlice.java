@@ -0,0 +1,178 @@
+package app.model.spread;
+
+import app.model.expr.CompiledExpression;
+import app.model.expr.SheetCells;
+import app.model.expr.WorkbookCells;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.DoubleConsumer;
+
+/**
+ * The formulas of a sheet that lie on a path from some input cells to some output cells, in an order
+ * to evaluate them. Solvers that try many input values plan the slice once and then evaluate only it,
+ * reading every other cell from the sheet. A slice never changes the sheet, so it can be evaluated
+ * from many threads at once, as long as the sheet is not edited meanwhile.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+final class DependencySlice {
+    private final SpreadsheetGraph sheet;
+    private final String[] inputs;
+    private final String[] outputs;
+    private final String[] cells;
+    private final CompiledExpression[] formulas;
+
+    /**
+     * Constructor that plans the slice between the inputs and outputs of an evaluated sheet.
+     * @param theSheet the sheet
+     * @param theInputs the input cells, in the format "R#C#"
+     * @param theOutputs the output cells, in the format "R#C#"
+     */
+    DependencySlice(SpreadsheetGraph theSheet, String[] theInputs, String[] theOutputs) {
+        for (String rowColumn : theInputs) checkCellRef(rowColumn);
+        for (String rowColumn : theOutputs) checkCellRef(rowColumn);
+        sheet = theSheet;
+        inputs = theInputs.clone();
+        outputs = theOutputs.clone();
+
+        //Everything downstream of the inputs...
+        CalculationPlan plan = theSheet.getCalculationPlan();
+        Set<String> inputSet = new HashSet<>(Arrays.asList(theInputs));
+        int[] affected = plan.affected(inputSet);
+        Map<String, GraphVertex> downstream = new HashMap<>();
+        for (int position : affected) downstream.put(plan.get(position).getRowColumn(), plan.get(position));
+
+        //...that is also upstream of an output
+        Set<String> needed = new HashSet<>();
+        Queue<String> pending = new ArrayDeque<>();
+        for (String rowColumn : theOutputs) {
+            if (downstream.containsKey(rowColumn) && needed.add(rowColumn)) pending.add(rowColumn);
+        }
+        while (!pending.isEmpty()) {
+            for (String reference : sheet.referencesOf(downstream.get(pending.remove()).getCell().getCompiledInstruction())) {
+                if (downstream.containsKey(reference) && needed.add(reference)) pending.add(reference);
+            }
+        }
+
+        List<String> sliceCells = new ArrayList<>(needed.size());
+        List<CompiledExpression> sliceFormulas = new ArrayList<>(needed.size());
+        for (int position : affected) {
+            GraphVertex vertex = plan.get(position);
+            //Inputs hold the values tried, even if the sheet gives them a formula
+            if (needed.contains(vertex.getRowColumn()) && !inputSet.contains(vertex.getRowColumn())) {
+                sliceCells.add(vertex.getRowColumn());
+                sliceFormulas.add(vertex.getCell().getCompiledInstruction());
+            }
+        }
+        cells = sliceCells.toArray(new String[0]);
+        formulas = sliceFormulas.toArray(new CompiledExpression[0]);
+    }
+
+    /**
+     * Evaluates the slice for one set of input values.
+     * @param theInputValues the value of each input, in the order the inputs were given
+     * @return the value of each output, in the order the outputs were given, NaN where an output has no value
+     */
+    double[] evaluate(double[] theInputValues) {
+        Map<String, Double> values = new HashMap<>((inputs.length + cells.length) * 2);
+        for (int i = 0; i < inputs.length; i++) values.put(inputs[i], theInputValues[i]);
+        SliceValues view = new SliceValues(values);
+        for (int i = 0; i < cells.length; i++) {
+            Double value;
+            try {
+                value = formulas[i].evaluate(view);
+            } catch (RuntimeException exc) {
+                value = null;
+            }
+            values.put(cells[i], value);
+        }
+
+        double[] results = new double[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            Double value = view.get(outputs[i]);
+            results[i] = value == null ? Double.NaN : value;
+        }
+        return results;
+    }
+
+    /**
+     * Gets the number of formulas evaluated per evaluation.
+     * @return the size of the slice
+     */
+    int size() {
+        return cells.length;
+    }
+
+    //Helper method that rejects malformed cell designations
+    private static void checkCellRef(String theRowColumn) {
+        if (!theRowColumn.matches("R\\d+C\\d+"))
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+    }
+
+    /**
+     * View of the slice's values over the sheet's, for the slice's formulas to read. Formulas naming other sheets
+     * of the sheet's workbook read them as they are.
+     */
+    private final class SliceValues extends AbstractMap<String, Double> implements WorkbookCells, SheetCells {
+        private final Map<String, Double> values;
+
+        SliceValues(Map<String, Double> theValues) {
+            values = theValues;
+        }
+
+        @Override
+        public Double get(Object theRowColumn) {
+            return getOrDefault(theRowColumn, null);
+        }
+
+        @Override
+        public Double getOrDefault(Object theRowColumn, Double theDefault) {
+            Double value = values.get(theRowColumn);
+            if (value != null || values.containsKey(theRowColumn)) return value;
+            return sheet.getCellValues().getOrDefault(theRowColumn, theDefault);
+        }
+
+        @Override
+        public boolean containsKey(Object theRowColumn) {
+            return values.containsKey(theRowColumn) || sheet.getCellValues().containsKey(theRowColumn);
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet() {
+            Map<String, Double> merged = new HashMap<>(sheet.getCellValues());
+            merged.putAll(values);
+            return merged.entrySet();
+        }
+
+        @Override
+        public Map<String, Double> getSheetCells(String theSheet) {
+            return theSheet.equals(sheet.getSheetName()) ? this : sheet.getSheetCells(theSheet);
+        }
+
+        @Override
+        public int getRowCount() {
+            return sheet.getRowCount();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return sheet.getColumnCount();
+        }
+
+        @Override
+        public void forEachNumber(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn,
+                                  DoubleConsumer theAction) {
+            sheet.forEachNumber(theFirstRow, theFirstColumn, theLastRow, theLastColumn, values.keySet(), this, theAction);
+        }
+    }
+}
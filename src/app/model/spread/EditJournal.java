@@ -0,0 +1,337 @@
+package app.model.spread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Journal of the edits made to a sheet that can undo and redo them. Each edit, of one cell or many at once,
+ * is kept as the instructions of the cells it changed before and after, and undoing or redoing it sets them
+ * back, recalculating only the cells they affect. The journal keeps to a memory budget: past it the oldest
+ * edits are spilled to a file, if one was given, or forgotten otherwise.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class EditJournal implements Closeable {
+    //Rough cost of an object header and reference on the heap, for estimating the size of an edit
+    private static final int OBJECT_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int STRING_BYTES = 40;
+
+    private final SpreadsheetGraph sheet;
+    private final long memoryBudget;
+    private final Deque<Delta> undoEdits;
+    private final Deque<Delta> redoEdits;
+    private final Path spillPath;
+    private FileChannel spill;
+    private long[] spillOffsets;
+    private int spilledEdits;
+    private long memoryBytes;
+    private boolean replaying;
+
+    /**
+     * Constructor for a journal that forgets the oldest edits once past its memory budget.
+     * @param theSheet the sheet whose edits are journaled from now on
+     * @param theMemoryBudget the most bytes the journaled edits should take in memory
+     */
+    public EditJournal(SpreadsheetGraph theSheet, long theMemoryBudget) {
+        this(theSheet, theMemoryBudget, null);
+    }
+
+    /**
+     * Constructor for a journal that spills the oldest edits to a file once past its memory budget.
+     * @param theSheet the sheet whose edits are journaled from now on
+     * @param theMemoryBudget the most bytes the journaled edits should take in memory
+     * @param theSpillPath the file to spill edits to, replaced if it exists, or null to forget them instead
+     */
+    public EditJournal(SpreadsheetGraph theSheet, long theMemoryBudget, Path theSpillPath) {
+        if (theMemoryBudget <= 0) throw new IllegalArgumentException("Memory budget must be positive");
+        sheet = theSheet;
+        memoryBudget = theMemoryBudget;
+        undoEdits = new ArrayDeque<>();
+        redoEdits = new ArrayDeque<>();
+        spillPath = theSpillPath;
+        spillOffsets = new long[16];
+        sheet.setJournal(this);
+    }
+
+    /**
+     * Checks if there is an edit to undo.
+     * @return true if an edit can be undone
+     */
+    public boolean canUndo() {
+        return !undoEdits.isEmpty() || spilledEdits > 0;
+    }
+
+    /**
+     * Checks if there is an undone edit to redo.
+     * @return true if an edit can be redone
+     */
+    public boolean canRedo() {
+        return !redoEdits.isEmpty();
+    }
+
+    /**
+     * Gets the number of edits that can be undone, including those spilled to the file.
+     * @return the number of edits that can be undone
+     */
+    public int getUndoCount() {
+        return undoEdits.size() + spilledEdits;
+    }
+
+    /**
+     * Gets the estimated number of bytes the edits kept in memory take.
+     * @return the estimated memory use
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Undoes the last edit not yet undone, putting back the instructions of the cells it changed and
+     * recalculating the cells they affect. The edit can be redone even if a cell fails to evaluate.
+     * @return true if an edit was undone, false if there was none
+     * @throws IllegalArgumentException if a cell failed to evaluate
+     */
+    public boolean undo() {
+        Delta delta = undoEdits.pollLast();
+        if (delta == null) {
+            if (spilledEdits == 0) return false;
+            delta = unspill();
+        } else {
+            memoryBytes -= delta.bytes;
+        }
+        try {
+            replay(delta.cells, delta.before);
+        } finally {
+            redoEdits.addLast(delta);
+            memoryBytes += delta.bytes;
+            trim();
+        }
+        return true;
+    }
+
+    /**
+     * Redoes the last undone edit, setting the instructions of the cells it changed again and
+     * recalculating the cells they affect.
+     * @return true if an edit was redone, false if there was none
+     * @throws IllegalArgumentException if a cell failed to evaluate
+     */
+    public boolean redo() {
+        Delta delta = redoEdits.pollLast();
+        if (delta == null) return false;
+        try {
+            replay(delta.cells, delta.after);
+        } finally {
+            undoEdits.addLast(delta);
+        }
+        return true;
+    }
+
+    /**
+     * Forgets every journaled edit.
+     */
+    public void clear() {
+        undoEdits.clear();
+        redoEdits.clear();
+        memoryBytes = 0;
+        truncateSpill(0);
+        spilledEdits = 0;
+    }
+
+    /**
+     * Stops journaling the sheet's edits and deletes the spill file.
+     * @throws IOException if the spill file could not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        sheet.setJournal(null);
+        undoEdits.clear();
+        redoEdits.clear();
+        memoryBytes = 0;
+        spilledEdits = 0;
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            Files.deleteIfExists(spillPath);
+        }
+    }
+
+    //Helper method that records an edit made to the sheet, given the instructions of the edited cells before and
+    //the instructions of the cells it changed after, null for empty cells
+    void record(Map<String, String> theBefore, Map<String, String> theAfter) {
+        if (replaying) return;
+        String[] cells = new String[theAfter.size()];
+        String[] before = new String[cells.length];
+        String[] after = new String[cells.length];
+        int count = 0;
+        for (Map.Entry<String, String> entry : theAfter.entrySet()) {
+            cells[count] = entry.getKey();
+            before[count] = theBefore.get(entry.getKey());
+            after[count] = entry.getValue();
+            count++;
+        }
+
+        //Redoing past a new edit would lose it
+        for (Delta undone : redoEdits) memoryBytes -= undone.bytes;
+        redoEdits.clear();
+        Delta delta = new Delta(cells, before, after);
+        undoEdits.addLast(delta);
+        memoryBytes += delta.bytes;
+        trim();
+    }
+
+    //Helper method that sets the instructions of cells on the sheet without journaling it
+    private void replay(String[] theCells, String[] theInstructions) {
+        Map<String, String> instructions = new LinkedHashMap<>();
+        for (int i = 0; i < theCells.length; i++) {
+            instructions.put(theCells[i], theInstructions[i] == null ? "" : theInstructions[i]);
+        }
+        replaying = true;
+        try {
+            sheet.setCellInstructions(instructions);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    //Helper method that brings the edits in memory within budget, spilling or forgetting the oldest edits to
+    //undo first, then the furthest edits to redo
+    private void trim() {
+        while (memoryBytes > memoryBudget && !undoEdits.isEmpty()) {
+            Delta oldest = undoEdits.pollFirst();
+            memoryBytes -= oldest.bytes;
+            if (spillPath != null) spill(oldest);
+        }
+        while (memoryBytes > memoryBudget && !redoEdits.isEmpty()) {
+            memoryBytes -= redoEdits.pollFirst().bytes;
+        }
+    }
+
+    //Helper method that writes an edit to the end of the spill file, which holds the oldest edits to undo with
+    //the newest of them last
+    private void spill(Delta theDelta) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(theDelta.cells.length);
+            for (int i = 0; i < theDelta.cells.length; i++) {
+                writeString(out, theDelta.cells[i]);
+                writeString(out, theDelta.before[i]);
+                writeString(out, theDelta.after[i]);
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+
+        try {
+            if (spill == null) {
+                spill = FileChannel.open(spillPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            long offset = spill.size();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) spill.write(buffer, offset + buffer.position());
+            if (spilledEdits == spillOffsets.length) spillOffsets = Arrays.copyOf(spillOffsets, spilledEdits * 2);
+            spillOffsets[spilledEdits++] = offset;
+        } catch (IOException exc) {
+            throw new UncheckedIOException("Could not spill edits to %s".formatted(spillPath), exc);
+        }
+    }
+
+    //Helper method that reads back and removes the newest edit in the spill file
+    private Delta unspill() {
+        try {
+            long offset = spillOffsets[--spilledEdits];
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(spill.size() - offset));
+            while (buffer.hasRemaining()) {
+                if (spill.read(buffer, offset + buffer.position()) < 0) throw new IOException("Spill file was cut short");
+            }
+            truncateSpill(offset);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+            int count = in.readInt();
+            String[] cells = new String[count];
+            String[] before = new String[count];
+            String[] after = new String[count];
+            for (int i = 0; i < count; i++) {
+                cells[i] = readString(in);
+                before[i] = readString(in);
+                after[i] = readString(in);
+            }
+            return new Delta(cells, before, after);
+        } catch (IOException exc) {
+            throw new UncheckedIOException("Could not read edits back from %s".formatted(spillPath), exc);
+        }
+    }
+
+    //Helper method that cuts the spill file down to a length
+    private void truncateSpill(long theLength) {
+        if (spill == null) return;
+        try {
+            spill.truncate(theLength);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    //Helper method that writes a string that may be null or longer than writeUTF allows
+    private static void writeString(DataOutputStream theOut, String theString) throws IOException {
+        if (theString == null) {
+            theOut.writeInt(-1);
+            return;
+        }
+        byte[] bytes = theString.getBytes(StandardCharsets.UTF_8);
+        theOut.writeInt(bytes.length);
+        theOut.write(bytes);
+    }
+
+    //Helper method that reverses writeString
+    private static String readString(DataInputStream theIn) throws IOException {
+        int length = theIn.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        theIn.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One journaled edit: the cells it changed, with their instructions before and after, null where empty.
+     */
+    private static final class Delta {
+        private final String[] cells;
+        private final String[] before;
+        private final String[] after;
+        private final long bytes;
+
+        Delta(String[] theCells, String[] theBefore, String[] theAfter) {
+            cells = theCells;
+            before = theBefore;
+            after = theAfter;
+            long size = OBJECT_BYTES + 3L * REFERENCE_BYTES + 8 + 3L * (OBJECT_BYTES + (long) REFERENCE_BYTES * cells.length);
+            for (int i = 0; i < cells.length; i++) {
+                size += stringBytes(cells[i]) + stringBytes(before[i]) + stringBytes(after[i]);
+            }
+            bytes = size;
+        }
+
+        private static long stringBytes(String theString) {
+            return theString == null ? 0 : STRING_BYTES + theString.length();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package app.model.spread;
+
+import java.util.Map;
+
+/**
+ * Listens to the edits made to a {@link SpreadsheetGraph}, including those made by undoing and redoing.
+ * Listeners are called on the thread that edits the sheet, before the edited cells are recalculated,
+ * so they should return quickly.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public interface EditListener {
+
+    /**
+     * Called once per edit, of one cell or many at once, that changed the instructions of cells.
+     * @param theInstructions the instructions of the edited cells after the edit, null for cells left empty,
+     *                        keyed by row and column in the format "R#C#"
+     */
+    void cellsEdited(Map<String, String> theInstructions);
+
+    /**
+     * Called after the sheet is resized.
+     * @param theRows the number of rows in the sheet
+     * @param theColumns the number of columns in the sheet
+     */
+    default void sizeChanged(int theRows, int theColumns) {
+    }
+
+    /**
+     * Called when rows or columns are inserted or deleted, before the sheet is resized to match. The cells at or
+     * past the first of them move along, cells deleted with them are emptied, and every formula's references are
+     * rewritten as {@link app.model.expr.CompiledExpression#shiftReferences} rewrites them. None of this is told
+     * through {@link #cellsEdited}.
+     * @param theRows true if rows were inserted or deleted, false if columns were
+     * @param theAt the first row or column inserted or deleted, counted from zero
+     * @param theDelta the number inserted, or the negated number deleted
+     */
+    default void cellsShifted(boolean theRows, int theAt, int theDelta) {
+    }
+}
@@ -0,0 +1,142 @@
+package app.model.spread;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.function.BiConsumer;
+
+/**
+ * A feed of the lines appended to a file, such as a log some other program writes readings to. Each line is a key
+ * and a number, separated by a tab, comma, equals sign or space, as in "price=101.5"; other lines are skipped.
+ * Like tail, the feed starts at the end the file has when connected and a background thread polls it for lines
+ * appended since, reading only whole lines, so one written in two pieces is read once it is finished. A file
+ * that shrinks, as one truncated or replaced by a new file does, is read again from its start.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class FileTailFeed implements InputFeed {
+    private static final int MAX_READ_BYTES = 1024 * 1024;
+
+    private final Path file;
+    private final long pollNanos;
+    private BiConsumer<String, Double> receiver;
+    private Thread poller;
+    private long position;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Constructor for a feed of a file, which need not exist yet.
+     * @param theFile the file
+     * @param thePollInterval how long to wait between looking for new lines
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public FileTailFeed(Path theFile, Duration thePollInterval) {
+        if (thePollInterval.isNegative() || thePollInterval.isZero())
+            throw new IllegalArgumentException("Poll interval %s must be positive".formatted(thePollInterval));
+        file = theFile;
+        pollNanos = thePollInterval.toNanos();
+    }
+
+    @Override
+    public synchronized void connect(BiConsumer<String, Double> theReceiver) throws IOException {
+        if (receiver != null) throw new IllegalStateException("Feed is already connected");
+        receiver = theReceiver;
+        position = Files.exists(file) ? Files.size(file) : 0;
+        poller = Thread.ofPlatform().daemon().name("tail " + file.getFileName()).start(this::pollLoop);
+    }
+
+    /**
+     * Gets why the file last could not be read. Reading is tried again at the next poll all the same.
+     * @return the failure, or null if the last poll succeeded
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stops polling the file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread current;
+        synchronized (this) {
+            current = poller;
+        }
+        if (current == null) return;
+        current.interrupt();
+        try {
+            current.join();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Helper method run by the poller thread, which reads whatever was appended, then sleeps until the next poll
+    private void pollLoop() {
+        while (!closed) {
+            try {
+                poll();
+                failure = null;
+            } catch (NoSuchFileException exc) {
+                position = 0; //Between a file being moved away and the new one being created
+            } catch (IOException exc) {
+                failure = exc;
+            }
+            try {
+                Thread.sleep(Duration.ofNanos(pollNanos));
+            } catch (InterruptedException exc) {
+                return;
+            }
+        }
+    }
+
+    //Helper method that reads the whole lines appended since the last poll, leaving a line still being written for
+    //the next one
+    private void poll() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < position) position = 0;
+            while (position < size && !closed) {
+                ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(size - position, MAX_READ_BYTES));
+                while (bytes.hasRemaining() && channel.read(bytes, position + bytes.position()) >= 0) {
+                }
+                int end = bytes.position();
+                while (end > 0 && bytes.get(end - 1) != '\n') end--;
+                if (end == 0) {
+                    //A line longer than any reading is no reading at all, so skip it rather than wait on it forever
+                    if (bytes.position() < MAX_READ_BYTES) return;
+                    position += MAX_READ_BYTES;
+                    continue;
+                }
+                readLines(new String(bytes.array(), 0, end, StandardCharsets.UTF_8));
+                position += end;
+            }
+        }
+    }
+
+    //Helper method that sends the key and number of each line that has them
+    private void readLines(String theLines) {
+        int start = 0;
+        while (start < theLines.length()) {
+            int end = theLines.indexOf('\n', start);
+            String line = theLines.substring(start, end).strip();
+            start = end + 1;
+            int separator = 0;
+            while (separator < line.length() && "\t,= ".indexOf(line.charAt(separator)) < 0) separator++;
+            if (separator == 0 || separator == line.length()) continue;
+            String key = line.substring(0, separator);
+            char[] number = line.substring(separator + 1).strip().toCharArray();
+            double value = CsvImporter.parseNumber(number, 0, number.length);
+            if (!Double.isNaN(value)) receiver.accept(key, value);
+        }
+    }
+}
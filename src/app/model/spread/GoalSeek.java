@@ -0,0 +1,219 @@
+package app.model.spread;
+
+/**
+ * Finds the value of an input cell that makes an output cell reach a goal. It starts with the secant
+ * method from a guess. If that does not converge, it looks outward from the guess for a pair of inputs
+ * whose outputs straddle the goal, then closes in on the goal with Brent's method. Only the formulas
+ * between the two cells are evaluated per try, and the sheet itself is left unchanged.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class GoalSeek {
+    private static final int SECANT_ITERATIONS = 50;
+    private static final int BRACKET_STEPS = 100;
+    private static final double BRACKET_GROWTH = 1.6;
+
+    private final SpreadsheetGraph sheet;
+    private final String input;
+    private final DependencySlice slice;
+    private double tolerance = 1e-9;
+    private int maxIterations = 200;
+    private int evaluations;
+
+    /**
+     * Constructor for a goal seek, which plans the formulas between the cells once.
+     * @param theSheet the evaluated sheet, which must not be edited while seeking
+     * @param theInput the cell to change, in the format "R#C#"
+     * @param theOutput the cell to reach the goal, in the format "R#C#"
+     */
+    public GoalSeek(SpreadsheetGraph theSheet, String theInput, String theOutput) {
+        sheet = theSheet;
+        input = theInput;
+        slice = new DependencySlice(theSheet, new String[] {theInput}, new String[] {theOutput});
+    }
+
+    /**
+     * Sets how close the output must come to the goal.
+     * @param theTolerance the largest accepted difference between the output and the goal
+     * @return this goal seek
+     */
+    public GoalSeek setTolerance(double theTolerance) {
+        if (!(theTolerance > 0)) throw new IllegalArgumentException("Tolerance must be positive");
+        tolerance = theTolerance;
+        return this;
+    }
+
+    /**
+     * Sets the most evaluations Brent's method may take once it has a bracket.
+     * @param theMaxIterations the iteration limit
+     * @return this goal seek
+     */
+    public GoalSeek setMaxIterations(int theMaxIterations) {
+        if (theMaxIterations <= 0) throw new IllegalArgumentException("Iteration limit must be positive");
+        maxIterations = theMaxIterations;
+        return this;
+    }
+
+    /**
+     * Seeks the goal, starting from the input's current value, or zero if it has none.
+     * @param theGoal the value the output should reach
+     * @return the input value that brings the output within tolerance of the goal
+     * @throws IllegalArgumentException if no such value was found
+     */
+    public double seek(double theGoal) {
+        Double current = sheet.getCellValue(input);
+        return seek(theGoal, current == null ? 0 : current);
+    }
+
+    /**
+     * Seeks the goal, starting from a guess.
+     * @param theGoal the value the output should reach
+     * @param theGuess the input value to start from
+     * @return the input value that brings the output within tolerance of the goal
+     * @throws IllegalArgumentException if no such value was found
+     */
+    public double seek(double theGoal, double theGuess) {
+        evaluations = 0;
+        double x0 = theGuess;
+        double f0 = miss(x0, theGoal);
+        if (Math.abs(f0) <= tolerance) return x0;
+
+        //Secant method, quick when the output is smooth in the input
+        double x1 = theGuess + Math.max(Math.abs(theGuess) * 1e-3, 1e-3);
+        double f1 = miss(x1, theGoal);
+        for (int i = 0; i < SECANT_ITERATIONS && !Double.isNaN(f0) && !Double.isNaN(f1) && f1 != f0; i++) {
+            if (Math.abs(f1) <= tolerance) return x1;
+            double x2 = x1 - f1 * (x1 - x0) / (f1 - f0);
+            if (!Double.isFinite(x2)) break;
+            x0 = x1;
+            f0 = f1;
+            x1 = x2;
+            f1 = miss(x1, theGoal);
+        }
+        if (Math.abs(f1) <= tolerance) return x1;
+
+        //Look outward from the guess for a sign change, then use Brent's method
+        double step = Math.max(Math.abs(theGuess) * 0.1, 1);
+        double center = miss(theGuess, theGoal);
+        double low = theGuess;
+        double fLow = center;
+        double high = theGuess;
+        double fHigh = center;
+        for (int i = 0; i < BRACKET_STEPS; i++) {
+            double nextLow = theGuess - step;
+            double fNextLow = miss(nextLow, theGoal);
+            if (straddles(fLow, fNextLow)) return brent(nextLow, fNextLow, low, fLow, theGoal);
+            double nextHigh = theGuess + step;
+            double fNextHigh = miss(nextHigh, theGoal);
+            if (straddles(fHigh, fNextHigh)) return brent(high, fHigh, nextHigh, fNextHigh, theGoal);
+            if (!Double.isNaN(fNextLow)) {
+                low = nextLow;
+                fLow = fNextLow;
+            }
+            if (!Double.isNaN(fNextHigh)) {
+                high = nextHigh;
+                fHigh = fNextHigh;
+            }
+            step *= BRACKET_GROWTH;
+        }
+        throw new IllegalArgumentException("Goal seek found no value of %s that gives %s".formatted(input, theGoal));
+    }
+
+    /**
+     * Gets the number of times the last seek evaluated the formulas between the cells.
+     * @return the evaluation count
+     */
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Gets the number of formulas evaluated per try.
+     * @return the number of formulas between the cells
+     */
+    public int getSliceSize() {
+        return slice.size();
+    }
+
+    //Brent's method on a bracket [theA, theB] whose misses have opposite signs
+    private double brent(double theA, double theFA, double theB, double theFB, double theGoal) {
+        double a = theA;
+        double b = theB;
+        double fa = theFA;
+        double fb = theFB;
+        double c = a;
+        double fc = fa;
+        double d = b - a;
+        double e = d;
+        for (int i = 0; i < maxIterations; i++) {
+            if (Math.signum(fb) == Math.signum(fc)) {
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+            double step = 2 * Math.ulp(b) + 0.5 * 1e-15;
+            double half = 0.5 * (c - b);
+            if (Math.abs(fb) <= tolerance) return b;
+            if (Math.abs(half) <= step) {
+                throw new IllegalArgumentException("Goal seek narrowed %s to %s without reaching %s".formatted(input, b, theGoal));
+            }
+            if (Math.abs(e) >= step && Math.abs(fa) > Math.abs(fb)) {
+                //Inverse quadratic interpolation, or secant when only two points differ
+                double s = fb / fa;
+                double p;
+                double q;
+                if (a == c) {
+                    p = 2 * half * s;
+                    q = 1 - s;
+                } else {
+                    double r = fb / fc;
+                    double t = fa / fc;
+                    p = s * (2 * half * t * (t - r) - (b - a) * (r - 1));
+                    q = (t - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0) q = -q;
+                p = Math.abs(p);
+                if (2 * p < Math.min(3 * half * q - Math.abs(step * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                } else {
+                    d = half;
+                    e = d;
+                }
+            } else {
+                //Bisection
+                d = half;
+                e = d;
+            }
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > step ? d : Math.copySign(step, half);
+            fb = miss(b, theGoal);
+            if (Double.isNaN(fb)) {
+                throw new IllegalArgumentException("%s fails to evaluate at %s".formatted(input, b));
+            }
+        }
+        throw new IllegalArgumentException("Goal seek did not converge within %d iterations".formatted(maxIterations));
+    }
+
+    //Helper method that gives how far the output is from the goal for an input value, NaN if it has no value
+    private double miss(double theInput, double theGoal) {
+        evaluations++;
+        return slice.evaluate(new double[] {theInput})[0] - theGoal;
+    }
+
+    //Helper method that tells if two misses lie on either side of the goal
+    private static boolean straddles(double theFirst, double theSecond) {
+        return !Double.isNaN(theFirst) && !Double.isNaN(theSecond) && (theFirst <= 0) != (theSecond <= 0);
+    }
+}
@@ -1,47 +1,49 @@
 package app.model.spread;
 
-import java.util.LinkedList;
-
 /**
  * Class representing individual vertices for the spreadsheet graph,
- * containing a list of edges to other vertices, an indegree counter,
- * a row and column designation, and a SpreadsheetCell.
+ * containing an indegree counter, a row and column designation, and a SpreadsheetCell.
+ * The edges between vertices are held by the sheet's {@link DependencyGraph}, which
+ * knows a formula's vertex by the number it was linked in under.
  *
  * @author Jace Hamblin
  */
 public class GraphVertex {
     private int indegree;
     private final SpreadsheetCell thisCell;
-    private final LinkedList<GraphVertex> adjList;
-    String rowColumn;
+    private String rowColumn;
+    private int row;
+    private int column;
+    //The store holding the vertex and where in it, or null for a vertex on its own, whose row and column are fixed.
+    //The row, column and signature are worked out again once the store's rows or columns move
+    private CellStore store;
+    private int physicalRow;
+    private int physicalColumn;
+    private int version;
+    private int depth;
+    private int link = -1;
 
     /**
      * Constructor for the vertex, takes a string representation of its row/column signature in the form "R#C#".
      * @param theRowColumn string representation vertex row/column signature in the form "R#C#".
      */
     public GraphVertex(String theRowColumn) {
-        thisCell = new SpreadsheetCell();
-        indegree = 0;
-        adjList = new LinkedList<>();
-        rowColumn = theRowColumn;
-    }
-
-    /**
-     * Adds a new edge from this vertex leading to the provided vertex.
-     * @param theVertex the vertex the edge leads to.
-     */
-    public void addEdge(GraphVertex theVertex){
-        theVertex.incrementIndegree();
-        adjList.add(theVertex);
+        this(theRowColumn, Integer.parseInt(theRowColumn, 1, theRowColumn.indexOf('C'), 10) - 1,
+                Integer.parseInt(theRowColumn, theRowColumn.indexOf('C') + 1, theRowColumn.length(), 10) - 1);
     }
 
     /**
-     * Removes an edge from this vertex to the given vertex.
-     * @param theVertex the vertex the edge leads to.
+     * Constructor for the vertex when its row and column are already known.
+     * @param theRowColumn string representation vertex row/column signature in the form "R#C#".
+     * @param theRow the row, counted from zero.
+     * @param theColumn the column, counted from zero.
      */
-    public void removeEdge(GraphVertex theVertex) {
-        theVertex.decrementIndegree();
-        adjList.remove(theVertex);
+    public GraphVertex(String theRowColumn, int theRow, int theColumn) {
+        thisCell = new SpreadsheetCell();
+        indegree = 0;
+        rowColumn = theRowColumn;
+        row = theRow;
+        column = theColumn;
     }
 
     /**
@@ -87,14 +89,114 @@ public class GraphVertex {
      * @return this vertex's row/column signature.
      */
     public String getRowColumn() {
+        if (store != null && version != store.version()) locate();
+        if (rowColumn == null) rowColumn = "R" + (row + 1) + "C" + (column + 1);
         return rowColumn;
     }
 
     /**
-     * Gets this vertex's list of adjacent vertices.
-     * @return a list of adjacent vertices.
+     * Gets the row of this vertex's cell.
+     * @return the row, counted from zero.
+     */
+    public int getRow() {
+        if (store != null && version != store.version()) locate();
+        return row;
+    }
+
+    /**
+     * Gets the column of this vertex's cell.
+     * @return the column, counted from zero.
+     */
+    public int getColumn() {
+        if (store != null && version != store.version()) locate();
+        return column;
+    }
+
+    /**
+     * Moves this vertex to another row and column, while no store holds it.
+     * @param theRow the new row, counted from zero.
+     * @param theColumn the new column, counted from zero.
+     */
+    void moveTo(int theRow, int theColumn) {
+        row = theRow;
+        column = theColumn;
+        rowColumn = null;
+    }
+
+    /**
+     * Records the store holding this vertex and where in it.
+     * @param theStore the store.
+     * @param thePhysicalRow the physical row the store holds it under.
+     * @param thePhysicalColumn the physical column the store holds it under.
+     */
+    void attach(CellStore theStore, int thePhysicalRow, int thePhysicalColumn) {
+        store = theStore;
+        physicalRow = thePhysicalRow;
+        physicalColumn = thePhysicalColumn;
+        version = theStore.version();
+    }
+
+    /**
+     * Leaves this vertex on its own at the row and column it was last at, once its store no longer holds it.
+     */
+    void detach() {
+        if (store != null && version != store.version()) locate();
+        store = null;
+    }
+
+    /**
+     * Gets the physical row the store holding this vertex holds it under.
+     * @return the physical row.
+     */
+    int getPhysicalRow() {
+        return physicalRow;
+    }
+
+    /**
+     * Gets the physical column the store holding this vertex holds it under.
+     * @return the physical column.
+     */
+    int getPhysicalColumn() {
+        return physicalColumn;
+    }
+
+    //Helper method that works out the row and column again from the physical ones
+    private void locate() {
+        row = store.rowOf(physicalRow);
+        column = store.columnOf(physicalColumn);
+        rowColumn = null;
+        version = store.version();
+    }
+
+    /**
+     * Gets the length of the longest chain of cells this vertex's cell depends on, as found by the last recalculation.
+     * @return the chain depth, zero if the cell depends on no other cell.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Sets the length of the longest chain of cells this vertex's cell depends on.
+     * @param theDepth the new chain depth.
+     */
+    public void setDepth(int theDepth) {
+        depth = theDepth;
+    }
+
+    /**
+     * Gets the number this vertex's formula is linked into the dependency graph under.
+     * @return the number, or -1 if the formula is not linked.
+     */
+    int getLink() {
+        return link;
+    }
+
+    /**
+     * Sets the number this vertex's formula is linked into the dependency graph under.
+     * @param theLink the number, or -1 if the formula is not linked.
      */
-    public LinkedList<GraphVertex> getAdjList(){
-        return adjList;
+    void setLink(int theLink) {
+        link = theLink;
     }
 }
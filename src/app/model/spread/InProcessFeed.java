@@ -0,0 +1,37 @@
+package app.model.spread;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A feed of values published by other code in the same program, such as a market data client or a sensor poller.
+ * Values are handed straight to the receiver on the publishing thread; those published before the feed is
+ * connected or after it is closed are dropped.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class InProcessFeed implements InputFeed {
+    private volatile BiConsumer<String, Double> receiver;
+    private volatile boolean closed;
+
+    @Override
+    public synchronized void connect(BiConsumer<String, Double> theReceiver) {
+        if (receiver != null) throw new IllegalStateException("Feed is already connected");
+        receiver = theReceiver;
+    }
+
+    /**
+     * Publishes the latest value of a key.
+     * @param theKey the key
+     * @param theValue the value
+     */
+    public void publish(String theKey, double theValue) {
+        BiConsumer<String, Double> current = receiver;
+        if (current != null && !closed) current.accept(theKey, theValue);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,24 @@
+package app.model.spread;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.BiConsumer;
+
+/**
+ * A source of live values for input cells, such as a file something appends to or a feed published to by other
+ * code in the program. Each value comes with a key naming what it is a value of, which a {@link RefreshScheduler}
+ * binds to cells. A feed may send values from any thread, and should return quickly from sending them.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public interface InputFeed extends Closeable {
+
+    /**
+     * Starts sending values, until the feed is closed. A feed is connected once.
+     * @param theReceiver the receiver of each key and its latest value
+     * @throws IOException if the source of the values could not be opened
+     * @throws IllegalStateException if the feed is already connected
+     */
+    void connect(BiConsumer<String, Double> theReceiver) throws IOException;
+}
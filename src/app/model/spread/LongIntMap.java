@@ -0,0 +1,93 @@
+package app.model.spread;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from longs to non-negative ints, held in two primitive arrays with open addressing, so neither keys nor
+ * values are boxed. Entries can be added but not removed.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+final class LongIntMap {
+    private static final int EMPTY = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructor for an empty map.
+     * @param theExpected the number of entries expected, so the map need not grow before then
+     */
+    LongIntMap(int theExpected) {
+        int capacity = Integer.highestOneBit(Math.max(4, theExpected) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+    }
+
+    /**
+     * Gets the value of a key.
+     * @param theKey the key
+     * @return the value, or -1 if the key has none
+     */
+    int get(long theKey) {
+        int mask = keys.length - 1;
+        for (int i = slot(theKey, mask); ; i = (i + 1) & mask) {
+            if (values[i] == EMPTY || keys[i] == theKey) return values[i];
+        }
+    }
+
+    /**
+     * Gives a key a value if it has none.
+     * @param theKey the key
+     * @param theValue the value to give it, which must not be negative
+     * @return the value the key already had, or -1 if it was given the new one
+     */
+    int putIfAbsent(long theKey, int theValue) {
+        int mask = keys.length - 1;
+        int i = slot(theKey, mask);
+        while (values[i] != EMPTY) {
+            if (keys[i] == theKey) return values[i];
+            i = (i + 1) & mask;
+        }
+        keys[i] = theKey;
+        values[i] = theValue;
+        //Kept at most half full, so probes stay short
+        if (++size * 2 > keys.length) grow();
+        return EMPTY;
+    }
+
+    /**
+     * Gets the number of entries.
+     * @return the number of keys with a value
+     */
+    int size() {
+        return size;
+    }
+
+    //Helper method that spreads the bits of a key over the slots, as keys such as small ints or doubles differ
+    //mostly in a few bits
+    private static int slot(long theKey, int theMask) {
+        long hash = theKey * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & theMask;
+    }
+
+    //Helper method that doubles the slots, placing every entry again
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, EMPTY);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == EMPTY) continue;
+            int i = slot(oldKeys[j], mask);
+            while (values[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package app.model.spread;
+
+import java.util.Arrays;
+
+/**
+ * Values an output cell took over the scenarios of a {@link ScenarioRunner}. Scenarios where the cell
+ * had no value, because a formula failed or the cell holds text, count as failures and are left out of
+ * the statistics.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class OutputDistribution {
+    private final String rowColumn;
+    private final double[] samples;
+    private final double[] sorted;
+    private final int failures;
+
+    /**
+     * Constructor for a distribution.
+     * @param theRowColumn the output cell, in the format "R#C#"
+     * @param theSamples the value of each scenario in the order they were run, NaN where the cell had no value
+     */
+    OutputDistribution(String theRowColumn, double[] theSamples) {
+        rowColumn = theRowColumn;
+        samples = theSamples;
+        sorted = Arrays.stream(theSamples).filter(value -> !Double.isNaN(value)).sorted().toArray();
+        failures = theSamples.length - sorted.length;
+    }
+
+    /**
+     * @return the output cell, in the format "R#C#"
+     */
+    public String getRowColumn() {
+        return rowColumn;
+    }
+
+    /**
+     * @return the value of each scenario in the order they were run, NaN where the cell had no value
+     */
+    public double[] getSamples() {
+        return samples.clone();
+    }
+
+    /**
+     * @return the number of scenarios where the cell had a value
+     */
+    public int getCount() {
+        return sorted.length;
+    }
+
+    /**
+     * @return the number of scenarios where the cell had no value
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the mean value, or NaN if there were no values
+     */
+    public double getMean() {
+        if (sorted.length == 0) return Double.NaN;
+        double mean = 0;
+        for (int i = 0; i < sorted.length; i++) mean += (sorted[i] - mean) / (i + 1);
+        return mean;
+    }
+
+    /**
+     * @return the sample standard deviation, or NaN if there were fewer than two values
+     */
+    public double getStandardDeviation() {
+        if (sorted.length < 2) return Double.NaN;
+        //Welford's method
+        double mean = 0;
+        double squares = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            double delta = sorted[i] - mean;
+            mean += delta / (i + 1);
+            squares += delta * (sorted[i] - mean);
+        }
+        return Math.sqrt(squares / (sorted.length - 1));
+    }
+
+    /**
+     * @return the smallest value, or NaN if there were no values
+     */
+    public double getMin() {
+        return sorted.length == 0 ? Double.NaN : sorted[0];
+    }
+
+    /**
+     * @return the largest value, or NaN if there were no values
+     */
+    public double getMax() {
+        return sorted.length == 0 ? Double.NaN : sorted[sorted.length - 1];
+    }
+
+    /**
+     * Gets a percentile, interpolating between the values either side as PERCENTILE does.
+     * @param theFraction the fraction of values that fall below the percentile, from 0 to 1
+     * @return the percentile, or NaN if there were no values
+     */
+    public double getPercentile(double theFraction) {
+        if (!(theFraction >= 0 && theFraction <= 1))
+            throw new IllegalArgumentException("Percentile %s must be between 0 and 1".formatted(theFraction));
+        if (sorted.length == 0) return Double.NaN;
+        double rank = theFraction * (sorted.length - 1);
+        int below = (int) Math.floor(rank);
+        if (below == sorted.length - 1) return sorted[below];
+        return sorted[below] + (rank - below) * (sorted[below + 1] - sorted[below]);
+    }
+
+    @Override
+    public String toString() {
+        return "%s: mean %s, sd %s, p5 %s, p50 %s, p95 %s, %d failures".formatted(rowColumn, getMean(),
+                getStandardDeviation(), getPercentile(0.05), getPercentile(0.5), getPercentile(0.95), failures);
+    }
+}
@@ -0,0 +1,614 @@
+package app.model.spread;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Summarizes a block of a sheet by groups of rows, as a pivot table does: the rows are grouped by the values in
+ * some key columns, and the numbers in other columns are aggregated per group. The results are written into the
+ * sheet as literals, one row per group ordered by its keys, with a header row if the block has one.
+ * <p>
+ * The first refresh reads the block in parallel chunks, turns each row's keys into a group number through
+ * primitive hash maps, then aggregates the chunks in parallel, each into a primitive hash map of its own, and
+ * merges them. Afterwards the table listens to the sheet's edits: a refresh reads again only the rows edited since,
+ * along with rows holding formulas, whose values change without being edited, aggregates again only the groups
+ * those rows left or joined, and writes only the result cells that changed. Inserting or deleting rows or columns
+ * makes the next refresh start over, as the block keeps its place in the sheet.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class PivotTable implements EditListener, Closeable {
+    //Rows per chunk read or aggregated on one thread
+    private static final int CHUNK_ROWS = 16 * 1024;
+
+    /**
+     * Ways to aggregate the numbers of a column over a group. Cells that are empty or not numbers are skipped.
+     */
+    public enum Aggregate {
+        SUM("Sum"), COUNT("Count"), AVERAGE("Average"), MIN("Min"), MAX("Max");
+
+        private final String label;
+
+        Aggregate(String theLabel) {
+            label = theLabel;
+        }
+    }
+
+    private final SpreadsheetGraph sheet;
+    private final int firstRow;
+    private final int lastRow;
+    private final int firstColumn;
+    private final int lastColumn;
+    private boolean header;
+    private int targetRow;
+    private int targetColumn = -1;
+    private int[] keyColumns = new int[0];
+    private final List<Integer> aggregateColumns = new ArrayList<>();
+    private final List<Aggregate> aggregates = new ArrayList<>();
+
+    //What each row of the block held when last read, indexed from the first row grouped
+    private double[][] keyNumbers;
+    private String[][] keyTexts;
+    private double[][] values;
+    private int[] rowGroups;
+    private final BitSet formulaRows = new BitSet();
+    private final BitSet editedRows = new BitSet();
+    private boolean stale = true;
+
+    //Key values and aggregates per group
+    private KeyDictionary[] dictionaries;
+    private LongIntMap[] groupChains;
+    private int[][] groupCodes;
+    private int groupCount;
+    private long[] groupRows;
+    private long[][] counts;
+    private double[][] sums;
+    private double[][] mins;
+    private double[][] maxes;
+
+    //Where each group was last written, -1 for groups not written, so refreshes that keep the groups in order
+    //write only the groups that changed
+    private int[] writtenRowOf = new int[0];
+    private int writtenRows;
+    private int writtenColumns;
+
+    /**
+     * Constructor for a pivot table over a block of a sheet, which starts listening to the sheet's edits.
+     * @param theSheet the sheet holding the block
+     * @param theFirstRow the first row of the block, counted from one
+     * @param theLastRow the last row of the block, counted from one
+     * @param theFirstColumn the first column of the block, counted from one
+     * @param theLastColumn the last column of the block, counted from one
+     */
+    public PivotTable(SpreadsheetGraph theSheet, int theFirstRow, int theLastRow, int theFirstColumn,
+                      int theLastColumn) {
+        if (theFirstRow < 1 || theLastRow < theFirstRow || theFirstColumn < 1 || theLastColumn < theFirstColumn)
+            throw new IllegalArgumentException("Rows %d to %d, columns %d to %d are not a block"
+                    .formatted(theFirstRow, theLastRow, theFirstColumn, theLastColumn));
+        sheet = theSheet;
+        firstRow = theFirstRow - 1;
+        lastRow = theLastRow - 1;
+        firstColumn = theFirstColumn - 1;
+        lastColumn = theLastColumn - 1;
+        sheet.addEditListener(this);
+    }
+
+    /**
+     * Sets whether the first row of the block names its columns, in which case it is not grouped and its names
+     * head the results.
+     * @param theHeader true if the first row is a header
+     * @return this pivot table
+     */
+    public PivotTable setHeader(boolean theHeader) {
+        header = theHeader;
+        stale = true;
+        return this;
+    }
+
+    /**
+     * Sets the columns to group the rows by.
+     * @param theColumns the key columns, counted from one, within the block
+     * @return this pivot table
+     */
+    public PivotTable groupBy(int... theColumns) {
+        for (int column : theColumns) checkColumn(column);
+        keyColumns = theColumns.clone();
+        stale = true;
+        return this;
+    }
+
+    /**
+     * Adds a column of results aggregating a column of the block.
+     * @param theColumn the column to aggregate, counted from one, within the block
+     * @param theAggregate how to aggregate it
+     * @return this pivot table
+     */
+    public PivotTable aggregate(int theColumn, Aggregate theAggregate) {
+        checkColumn(theColumn);
+        aggregateColumns.add(theColumn);
+        aggregates.add(theAggregate);
+        stale = true;
+        return this;
+    }
+
+    /**
+     * Sets the cell the results start at, which must leave them clear of the block.
+     * @param theRowColumn the top left cell of the results, in the format "R#C#"
+     * @return this pivot table
+     */
+    public PivotTable setTarget(String theRowColumn) {
+        int columnMark = theRowColumn.indexOf('C');
+        if (!theRowColumn.startsWith("R") || columnMark < 2)
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        clearResults();
+        try {
+            targetRow = Integer.parseInt(theRowColumn, 1, columnMark, 10) - 1;
+            targetColumn = Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) - 1;
+        } catch (NumberFormatException exc) {
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        }
+        if (targetRow < 0 || targetColumn < 0)
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        return this;
+    }
+
+    /**
+     * Brings the results up to date with the block, growing the sheet to fit them. The first refresh, and the
+     * first after the table is set up again or rows or columns are inserted or deleted, reads the whole block;
+     * later ones read only the rows edited since and rows holding formulas.
+     * @return the number of groups
+     * @throws IllegalArgumentException if there are no key columns, no target, or the results would overlap the
+     *                                  block
+     */
+    public int refresh() {
+        if (keyColumns.length == 0) throw new IllegalArgumentException("Pivot table has no key columns");
+        if (targetColumn < 0) throw new IllegalArgumentException("Pivot table has no target");
+
+        //Reading in parallel is safe once cells left over from shrinking the sheet are evicted
+        sheet.getVertex(sheet.toCellRef(firstRow, firstColumn));
+        if (stale) {
+            rebuild();
+            write(null);
+        } else {
+            write(update());
+        }
+        return (int) Arrays.stream(groupRows, 0, groupCount).filter(rows -> rows > 0).count();
+    }
+
+    /**
+     * Stops listening to the sheet's edits. The results are left in the sheet.
+     */
+    @Override
+    public void close() {
+        sheet.removeEditListener(this);
+    }
+
+    @Override
+    public void cellsEdited(Map<String, String> theInstructions) {
+        if (stale) return;
+        int dataRow = firstRow + (header ? 1 : 0);
+        for (String rowColumn : theInstructions.keySet()) {
+            int columnMark = rowColumn.indexOf('C');
+            int row = Integer.parseInt(rowColumn, 1, columnMark, 10) - 1;
+            int column = Integer.parseInt(rowColumn, columnMark + 1, rowColumn.length(), 10) - 1;
+            if (row >= dataRow && row <= lastRow && column >= firstColumn && column <= lastColumn) {
+                editedRows.set(row - dataRow);
+            }
+        }
+    }
+
+    @Override
+    public void cellsShifted(boolean theRows, int theAt, int theDelta) {
+        stale = true;
+    }
+
+    //Helper method that reads the whole block and aggregates every group
+    private void rebuild() {
+        int rows = lastRow - firstRow + 1 - (header ? 1 : 0);
+        int keys = keyColumns.length;
+        int aggregateCount = aggregates.size();
+        keyNumbers = new double[keys][rows];
+        keyTexts = new String[keys][rows];
+        values = new double[aggregateCount][rows];
+        rowGroups = new int[rows];
+        formulaRows.clear();
+        editedRows.clear();
+        dictionaries = new KeyDictionary[keys];
+        for (int k = 0; k < keys; k++) dictionaries[k] = new KeyDictionary();
+        groupChains = new LongIntMap[keys];
+        for (int k = 1; k < keys; k++) groupChains[k] = new LongIntMap(1024);
+        groupCodes = new int[1024][];
+        groupCount = 0;
+        groupRows = new long[1024];
+        counts = new long[aggregateCount][1024];
+        sums = new double[aggregateCount][1024];
+        mins = new double[aggregateCount][1024];
+        maxes = new double[aggregateCount][1024];
+
+        BitSet[] chunkFormulas = new BitSet[(rows + CHUNK_ROWS - 1) / CHUNK_ROWS];
+        IntStream.range(0, chunkFormulas.length).parallel().forEach(chunk -> {
+            BitSet formulas = new BitSet();
+            for (int i = chunk * CHUNK_ROWS; i < Math.min(rows, (chunk + 1) * CHUNK_ROWS); i++) {
+                if (readRow(i)) formulas.set(i);
+            }
+            chunkFormulas[chunk] = formulas;
+        });
+        for (BitSet formulas : chunkFormulas) formulaRows.or(formulas);
+        //Numbering the groups is left to one thread, so every chunk numbers them alike
+        for (int i = 0; i < rows; i++) rowGroups[i] = groupOf(i);
+
+        BitSet all = new BitSet(groupCount);
+        all.set(0, groupCount);
+        aggregate(all);
+        stale = false;
+    }
+
+    //Helper method that reads again the rows edited since the last refresh and the rows holding formulas, then
+    //aggregates again the groups they left or joined, giving those groups
+    private BitSet update() {
+        BitSet changed = (BitSet) editedRows.clone();
+        changed.or(formulaRows);
+        editedRows.clear();
+        BitSet dirty = new BitSet();
+        double[] oldValues = new double[values.length];
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            int oldGroup = rowGroups[i];
+            for (int a = 0; a < values.length; a++) oldValues[a] = values[a][i];
+            formulaRows.set(i, readRow(i));
+            rowGroups[i] = groupOf(i);
+            boolean same = rowGroups[i] == oldGroup;
+            for (int a = 0; a < values.length && same; a++) same = Double.compare(oldValues[a], values[a][i]) == 0;
+            if (same) continue;
+            dirty.set(oldGroup);
+            dirty.set(rowGroups[i]);
+        }
+        if (!dirty.isEmpty()) aggregate(dirty);
+        return dirty;
+    }
+
+    //Helper method that reads the keys and values of one row, giving whether any of them is a formula
+    private boolean readRow(int theIndex) {
+        int row = firstRow + (header ? 1 : 0) + theIndex;
+        boolean formula = false;
+        for (int k = 0; k < keyColumns.length; k++) {
+            GraphVertex vertex = sheet.getVertex(sheet.toCellRef(row, keyColumns[k] - 1));
+            Double value = vertex == null ? null : vertex.getCell().getValue();
+            String instructions = vertex == null ? null : vertex.getCell().getInstruction();
+            formula |= instructions != null && instructions.startsWith("=");
+            keyNumbers[k][theIndex] = value == null ? Double.NaN : value;
+            keyTexts[k][theIndex] = value != null || instructions == null || instructions.startsWith("=")
+                    ? null : instructions;
+        }
+        for (int a = 0; a < values.length; a++) {
+            GraphVertex vertex = sheet.getVertex(sheet.toCellRef(row, aggregateColumns.get(a) - 1));
+            Double value = vertex == null ? null : vertex.getCell().getValue();
+            formula |= vertex != null && vertex.getCell().getInstruction().startsWith("=");
+            values[a][theIndex] = value == null ? Double.NaN : value;
+        }
+        return formula;
+    }
+
+    //Helper method that gives the number of a row's group, numbering a new group if it is the first of it
+    private int groupOf(int theIndex) {
+        int[] codes = new int[keyColumns.length];
+        codes[0] = dictionaries[0].codeOf(keyNumbers[0][theIndex], keyTexts[0][theIndex]);
+        int group = codes[0];
+        //Each further key is paired with the group of the keys before it, so any number of keys fit in a long
+        for (int k = 1; k < keyColumns.length; k++) {
+            codes[k] = dictionaries[k].codeOf(keyNumbers[k][theIndex], keyTexts[k][theIndex]);
+            long pair = (long) group << 32 | codes[k];
+            int next = groupChains[k].size();
+            int existing = groupChains[k].putIfAbsent(pair, next);
+            group = existing < 0 ? next : existing;
+        }
+        if (group == groupCount) addGroup(codes);
+        return group;
+    }
+
+    //Helper method that makes room for one more group, with its key codes
+    private void addGroup(int[] theCodes) {
+        if (groupCount == groupRows.length) {
+            int capacity = groupCount * 2;
+            groupCodes = Arrays.copyOf(groupCodes, capacity);
+            groupRows = Arrays.copyOf(groupRows, capacity);
+            for (int a = 0; a < counts.length; a++) {
+                counts[a] = Arrays.copyOf(counts[a], capacity);
+                sums[a] = Arrays.copyOf(sums[a], capacity);
+                mins[a] = Arrays.copyOf(mins[a], capacity);
+                maxes[a] = Arrays.copyOf(maxes[a], capacity);
+            }
+        }
+        groupCodes[groupCount++] = theCodes;
+    }
+
+    //Helper method that aggregates the given groups from scratch: the rows are split into chunks aggregated in
+    //parallel, each into a hash map of its own from group to partial results, which are then merged
+    private void aggregate(BitSet theGroups) {
+        for (int g = theGroups.nextSetBit(0); g >= 0; g = theGroups.nextSetBit(g + 1)) {
+            groupRows[g] = 0;
+            for (int a = 0; a < counts.length; a++) {
+                counts[a][g] = 0;
+                sums[a][g] = 0;
+                mins[a][g] = Double.POSITIVE_INFINITY;
+                maxes[a][g] = Double.NEGATIVE_INFINITY;
+            }
+        }
+        int rows = rowGroups.length;
+        Partial[] partials = new Partial[(rows + CHUNK_ROWS - 1) / CHUNK_ROWS];
+        IntStream.range(0, partials.length).parallel().forEach(chunk -> {
+            Partial partial = new Partial(counts.length);
+            for (int i = chunk * CHUNK_ROWS; i < Math.min(rows, (chunk + 1) * CHUNK_ROWS); i++) {
+                if (theGroups.get(rowGroups[i])) partial.add(rowGroups[i], values, i);
+            }
+            partials[chunk] = partial;
+        });
+        for (Partial partial : partials) {
+            for (int slot = 0; slot < partial.size; slot++) {
+                int g = partial.groups[slot];
+                groupRows[g] += partial.rows[slot];
+                for (int a = 0; a < counts.length; a++) {
+                    counts[a][g] += partial.counts[a][slot];
+                    sums[a][g] += partial.sums[a][slot];
+                    mins[a][g] = Math.min(mins[a][g], partial.mins[a][slot]);
+                    maxes[a][g] = Math.max(maxes[a][g], partial.maxes[a][slot]);
+                }
+            }
+        }
+    }
+
+    //Helper method that writes the results into the sheet as one edit, leaving cells that did not change alone
+    //and emptying cells the results no longer reach. Given the groups that changed, and none of them appeared or
+    //emptied, only their rows are written.
+    private void write(BitSet theChanged) {
+        if (theChanged != null && inPlace(theChanged)) {
+            Map<String, String> edit = new LinkedHashMap<>();
+            for (int g = theChanged.nextSetBit(0); g >= 0; g = theChanged.nextSetBit(g + 1)) {
+                putGroup(edit, writtenRowOf[g], g);
+            }
+            if (!edit.isEmpty()) sheet.setCellInstructions(edit);
+            return;
+        }
+
+        int[] order = orderGroups();
+        int width = keyColumns.length + aggregates.size();
+        int rows = order.length + (header ? 1 : 0);
+        if (targetColumn <= lastColumn && targetColumn + width > firstColumn
+                && targetRow <= lastRow && targetRow + rows > firstRow)
+            throw new IllegalArgumentException("Pivot table results at %s would overlap its block"
+                    .formatted(sheet.toCellRef(targetRow, targetColumn)));
+        Map<String, String> edit = new LinkedHashMap<>();
+        int row = targetRow;
+        if (header) {
+            for (int k = 0; k < keyColumns.length; k++) {
+                put(edit, row, targetColumn + k, columnName(keyColumns[k]));
+            }
+            for (int a = 0; a < aggregates.size(); a++) {
+                put(edit, row, targetColumn + keyColumns.length + a,
+                        aggregates.get(a).label + " of " + columnName(aggregateColumns.get(a)));
+            }
+            row++;
+        }
+        writtenRowOf = new int[groupCount];
+        Arrays.fill(writtenRowOf, -1);
+        for (int g : order) {
+            putGroup(edit, row, g);
+            writtenRowOf[g] = row++;
+        }
+        for (int r = 0; r < writtenRows; r++) {
+            for (int c = 0; c < writtenColumns; c++) {
+                if (r >= rows || c >= width) put(edit, targetRow + r, targetColumn + c, "");
+            }
+        }
+        writtenRows = rows;
+        writtenColumns = width;
+        if (targetRow + rows > sheet.getRowCount()) sheet.setRowCount(targetRow + rows);
+        if (targetColumn + width > sheet.getColumnCount()) sheet.setColumnCount(targetColumn + width);
+        if (!edit.isEmpty()) sheet.setCellInstructions(edit);
+    }
+
+    //Helper method that checks if the changed groups are all still where they were written, with none new and none
+    //emptied, so the order of the results holds
+    private boolean inPlace(BitSet theChanged) {
+        if (groupCount != writtenRowOf.length) return false;
+        for (int g = theChanged.nextSetBit(0); g >= 0; g = theChanged.nextSetBit(g + 1)) {
+            if ((groupRows[g] > 0) != (writtenRowOf[g] >= 0)) return false;
+        }
+        return true;
+    }
+
+    //Helper method that adds the keys and results of a group to an edit
+    private void putGroup(Map<String, String> theEdit, int theRow, int theGroup) {
+        for (int k = 0; k < keyColumns.length; k++) {
+            put(theEdit, theRow, targetColumn + k, dictionaries[k].labelOf(groupCodes[theGroup][k]));
+        }
+        for (int a = 0; a < aggregates.size(); a++) {
+            put(theEdit, theRow, targetColumn + keyColumns.length + a, format(result(a, theGroup)));
+        }
+    }
+
+    //Helper method that empties the cells last written, before the results move elsewhere
+    private void clearResults() {
+        Map<String, String> edit = new LinkedHashMap<>();
+        for (int r = 0; r < writtenRows; r++) {
+            for (int c = 0; c < writtenColumns; c++) put(edit, targetRow + r, targetColumn + c, "");
+        }
+        writtenRows = 0;
+        writtenColumns = 0;
+        writtenRowOf = new int[0];
+        if (!edit.isEmpty()) sheet.setCellInstructions(edit);
+    }
+
+    //Helper method that adds a cell to an edit if its instructions would change
+    private void put(Map<String, String> theEdit, int theRow, int theColumn, String theInstructions) {
+        String rowColumn = sheet.toCellRef(theRow, theColumn);
+        GraphVertex vertex = sheet.getVertex(rowColumn);
+        String current = vertex == null ? "" : vertex.getCell().getInstruction();
+        if (!current.equals(theInstructions)) theEdit.put(rowColumn, theInstructions);
+    }
+
+    //Helper method that orders the groups that have rows by their keys, as sortRows orders rows
+    private int[] orderGroups() {
+        int[] groups = IntStream.range(0, groupCount).filter(g -> groupRows[g] > 0).toArray();
+        RowSort sort = new RowSort(groups.length);
+        double[] numbers = new double[groups.length];
+        String[] texts = new String[groups.length];
+        for (int k = 0; k < keyColumns.length; k++) {
+            for (int i = 0; i < groups.length; i++) {
+                numbers[i] = dictionaries[k].numberOf(groupCodes[groups[i]][k]);
+                texts[i] = dictionaries[k].textOf(groupCodes[groups[i]][k]);
+            }
+            sort.addKey(numbers, texts, true);
+        }
+        int[] positions = sort.newRows();
+        int[] order = new int[groups.length];
+        for (int i = 0; i < groups.length; i++) order[positions[i]] = groups[i];
+        return order;
+    }
+
+    //Helper method that gives the result of an aggregate for a group, NaN if it has none
+    private double result(int theAggregate, int theGroup) {
+        long count = counts[theAggregate][theGroup];
+        return switch (aggregates.get(theAggregate)) {
+            case SUM -> sums[theAggregate][theGroup];
+            case COUNT -> count;
+            case AVERAGE -> count == 0 ? Double.NaN : sums[theAggregate][theGroup] / count;
+            case MIN -> count == 0 ? Double.NaN : mins[theAggregate][theGroup];
+            case MAX -> count == 0 ? Double.NaN : maxes[theAggregate][theGroup];
+        };
+    }
+
+    //Helper method that gives the name of a column, from the header row if there is one
+    private String columnName(int theColumn) {
+        String name = header ? sheet.getCellInstructions(sheet.toCellRef(firstRow, theColumn - 1)) : null;
+        return name == null || name.startsWith("=") ? "C" + theColumn : name;
+    }
+
+    //Helper method that writes a number in the sheet's literal syntax, without trailing zeros, or nothing if it is
+    //not finite
+    private static String format(double theNumber) {
+        if (!Double.isFinite(theNumber)) return "";
+        return theNumber == 0 ? "0" : BigDecimal.valueOf(theNumber).stripTrailingZeros().toPlainString();
+    }
+
+    //Helper method that rejects key and aggregate columns outside the block
+    private void checkColumn(int theColumn) {
+        if (theColumn - 1 < firstColumn || theColumn - 1 > lastColumn)
+            throw new IllegalArgumentException("Column %d is outside columns %d to %d"
+                    .formatted(theColumn, firstColumn + 1, lastColumn + 1));
+    }
+
+    /**
+     * The distinct values of one key column, each numbered in the order it was first seen. Numbers are told apart
+     * by their bits, text ignoring case, and empty cells share one number.
+     */
+    private static final class KeyDictionary {
+        private final LongIntMap numbers = new LongIntMap(1024);
+        private final Map<String, Integer> texts = new HashMap<>();
+        private final List<Object> labels = new ArrayList<>();
+        private int emptyCode = -1;
+
+        //Helper method that gives the number of a value, numbering it if it is new
+        int codeOf(double theNumber, String theText) {
+            if (!Double.isNaN(theNumber)) {
+                //Zero and negative zero are the same key
+                int existing = numbers.putIfAbsent(Double.doubleToLongBits(theNumber + 0d), labels.size());
+                if (existing >= 0) return existing;
+                labels.add(theNumber + 0d);
+                return labels.size() - 1;
+            } else if (theText != null) {
+                Integer existing = texts.putIfAbsent(theText.toLowerCase(Locale.ROOT), labels.size());
+                if (existing != null) return existing;
+                labels.add(theText);
+                return labels.size() - 1;
+            } else {
+                if (emptyCode < 0) {
+                    emptyCode = labels.size();
+                    labels.add(null);
+                }
+                return emptyCode;
+            }
+        }
+
+        double numberOf(int theCode) {
+            return labels.get(theCode) instanceof Double number ? number : Double.NaN;
+        }
+
+        String textOf(int theCode) {
+            return labels.get(theCode) instanceof String text ? text : null;
+        }
+
+        String labelOf(int theCode) {
+            Object label = labels.get(theCode);
+            if (label instanceof Double number) return format(number);
+            return label == null ? "" : (String) label;
+        }
+    }
+
+    /**
+     * The results of one chunk of rows, per group it reached, found through a primitive hash map from group
+     * to slot.
+     */
+    private static final class Partial {
+        private final LongIntMap slots = new LongIntMap(256);
+        private int[] groups = new int[256];
+        private long[] rows = new long[256];
+        private final long[][] counts;
+        private final double[][] sums;
+        private final double[][] mins;
+        private final double[][] maxes;
+        private int size;
+
+        Partial(int theAggregates) {
+            counts = new long[theAggregates][256];
+            sums = new double[theAggregates][256];
+            mins = new double[theAggregates][256];
+            maxes = new double[theAggregates][256];
+        }
+
+        //Helper method that adds a row to the results of its group
+        void add(int theGroup, double[][] theValues, int theRow) {
+            int slot = slots.putIfAbsent(theGroup, size);
+            if (slot < 0) slot = newSlot(theGroup);
+            rows[slot]++;
+            for (int a = 0; a < counts.length; a++) {
+                double value = theValues[a][theRow];
+                if (Double.isNaN(value)) continue;
+                counts[a][slot]++;
+                sums[a][slot] += value;
+                mins[a][slot] = Math.min(mins[a][slot], value);
+                maxes[a][slot] = Math.max(maxes[a][slot], value);
+            }
+        }
+
+        //Helper method that starts the results of a group, growing the arrays as needed
+        private int newSlot(int theGroup) {
+            if (size == groups.length) {
+                int capacity = size * 2;
+                groups = Arrays.copyOf(groups, capacity);
+                rows = Arrays.copyOf(rows, capacity);
+                for (int a = 0; a < counts.length; a++) {
+                    counts[a] = Arrays.copyOf(counts[a], capacity);
+                    sums[a] = Arrays.copyOf(sums[a], capacity);
+                    mins[a] = Arrays.copyOf(mins[a], capacity);
+                    maxes[a] = Arrays.copyOf(maxes[a], capacity);
+                }
+            }
+            groups[size] = theGroup;
+            for (int a = 0; a < counts.length; a++) {
+                mins[a][size] = Double.POSITIVE_INFINITY;
+                maxes[a][size] = Double.NEGATIVE_INFINITY;
+            }
+            return size++;
+        }
+    }
+}
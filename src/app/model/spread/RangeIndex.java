@@ -0,0 +1,322 @@
+package app.model.spread;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * The ranges formulas refer to, each held once however many cells it covers or formulas refer to it, so that the
+ * ranges containing a cell can be found without listing the cells of every range. A range is filed by the size of
+ * its rows and columns, each rounded down to a power of two, into a grid of buckets as large as that size, by the
+ * bucket its first cell falls in. A range containing a cell then starts at most two buckets before the cell in each
+ * direction, so finding the ranges containing a cell looks into nine buckets of each size there are ranges of,
+ * and most ranges in those buckets contain the cell.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+final class RangeIndex {
+    private static final int NONE = -1;
+    private static final int SIZES = 32;
+
+    //Each range by number: its corners, the bucket it is filed in and where in the bucket, or NONE once removed
+    private int[] firstRows;
+    private int[] firstColumns;
+    private int[] lastRows;
+    private int[] lastColumns;
+    private int[] buckets;
+    private int[] slots;
+    private int rangeCount;
+    private int live;
+    //Numbers of removed ranges, given out again
+    private int[] free;
+    private int freeCount;
+    private final Map<Corners, Integer> numbers;
+    //For each size, by row size times SIZES plus column size, the buckets filed by their row and column, with the
+    //number of ranges filed under the size. Sizes with ranges are listed in sizesUsed
+    private final LongIntMap[] bucketsBySize;
+    private final int[] rangesOfSize;
+    private int[] sizesUsed;
+    private int sizesUsedCount;
+    //The ranges of each bucket, by bucket number
+    private int[][] members;
+    private int[] memberCounts;
+    private int bucketCount;
+
+    /**
+     * Constructor for an index without any ranges.
+     */
+    RangeIndex() {
+        firstRows = new int[16];
+        firstColumns = new int[16];
+        lastRows = new int[16];
+        lastColumns = new int[16];
+        buckets = new int[16];
+        slots = new int[16];
+        free = new int[16];
+        numbers = new HashMap<>();
+        bucketsBySize = new LongIntMap[SIZES * SIZES];
+        rangesOfSize = new int[SIZES * SIZES];
+        sizesUsed = new int[16];
+        members = new int[16][];
+        memberCounts = new int[16];
+    }
+
+    /**
+     * Adds a range, unless the index already has it.
+     * @param theFirstRow the first row, counted from zero
+     * @param theFirstColumn the first column, counted from zero
+     * @param theLastRow the last row, not before the first
+     * @param theLastColumn the last column, not before the first
+     * @return the number of the range, which is the same for the same corners until the range is removed
+     */
+    int add(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn) {
+        Corners corners = new Corners(theFirstRow, theFirstColumn, theLastRow, theLastColumn);
+        Integer known = numbers.get(corners);
+        if (known != null) return known;
+
+        int range;
+        if (freeCount > 0) {
+            range = free[--freeCount];
+        } else {
+            if (rangeCount == firstRows.length) grow(rangeCount * 2);
+            range = rangeCount++;
+        }
+        numbers.put(corners, range);
+        firstRows[range] = theFirstRow;
+        firstColumns[range] = theFirstColumn;
+        lastRows[range] = theLastRow;
+        lastColumns[range] = theLastColumn;
+        buckets[range] = NONE;
+        live++;
+        //Buckets emptied by removals are kept, until they outnumber the ranges
+        if (bucketCount > Math.max(64, live * 4)) refile();
+        file(range);
+        return range;
+    }
+
+    //Helper method that files a range into the bucket of its size its first cell falls in
+    private void file(int theRange) {
+        int firstRow = firstRows[theRange];
+        int firstColumn = firstColumns[theRange];
+        int size = sizeOf(firstRow, firstColumn, lastRows[theRange], lastColumns[theRange]);
+        if (bucketsBySize[size] == null) bucketsBySize[size] = new LongIntMap(16);
+        if (rangesOfSize[size]++ == 0) {
+            if (sizesUsedCount == sizesUsed.length) sizesUsed = Arrays.copyOf(sizesUsed, sizesUsedCount * 2);
+            sizesUsed[sizesUsedCount++] = size;
+        }
+        long key = bucketKey(firstRow >>> (size / SIZES), firstColumn >>> (size % SIZES));
+        int bucket = bucketsBySize[size].putIfAbsent(key, bucketCount);
+        if (bucket == NONE) {
+            bucket = bucketCount++;
+            if (bucket == members.length) {
+                members = Arrays.copyOf(members, bucket * 2);
+                memberCounts = Arrays.copyOf(memberCounts, bucket * 2);
+            }
+            members[bucket] = new int[4];
+        }
+        if (memberCounts[bucket] == members[bucket].length) {
+            members[bucket] = Arrays.copyOf(members[bucket], memberCounts[bucket] * 2);
+        }
+        buckets[theRange] = bucket;
+        slots[theRange] = memberCounts[bucket];
+        members[bucket][memberCounts[bucket]++] = theRange;
+    }
+
+    //Helper method that files every range again into new buckets, forgetting the empty ones
+    private void refile() {
+        Arrays.fill(bucketsBySize, null);
+        Arrays.fill(rangesOfSize, 0);
+        sizesUsedCount = 0;
+        members = new int[Math.max(16, live * 2)][];
+        memberCounts = new int[members.length];
+        bucketCount = 0;
+        for (int range = 0; range < rangeCount; range++) {
+            if (buckets[range] != NONE) file(range);
+        }
+    }
+
+    /**
+     * Adds a range given as "R#C#:R#C#", unless the index already has it.
+     * @param theRange the range, its corners in either order
+     * @return the number of the range
+     */
+    int add(String theRange) {
+        int[] corners = corners(theRange);
+        return add(corners[0], corners[1], corners[2], corners[3]);
+    }
+
+    /**
+     * Finds a range given as "R#C#:R#C#".
+     * @param theRange the range, its corners in either order
+     * @return the number of the range, or -1 if the index does not have it
+     */
+    int find(String theRange) {
+        int[] corners = corners(theRange);
+        Integer range = numbers.get(new Corners(corners[0], corners[1], corners[2], corners[3]));
+        return range == null ? NONE : range;
+    }
+
+    /**
+     * Removes a range, whose number may then be given to another.
+     * @param theRange the number of the range
+     */
+    void remove(int theRange) {
+        if (buckets[theRange] == NONE) return;
+        numbers.remove(new Corners(firstRows[theRange], firstColumns[theRange], lastRows[theRange],
+                lastColumns[theRange]));
+        //The last range of the bucket takes the removed range's slot
+        int bucket = buckets[theRange];
+        int last = members[bucket][--memberCounts[bucket]];
+        members[bucket][slots[theRange]] = last;
+        slots[last] = slots[theRange];
+        buckets[theRange] = NONE;
+
+        int size = sizeOf(firstRows[theRange], firstColumns[theRange], lastRows[theRange], lastColumns[theRange]);
+        if (--rangesOfSize[size] == 0) {
+            for (int i = 0; i < sizesUsedCount; i++) {
+                if (sizesUsed[i] == size) {
+                    sizesUsed[i] = sizesUsed[--sizesUsedCount];
+                    break;
+                }
+            }
+        }
+        if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = theRange;
+        live--;
+    }
+
+    /**
+     * Checks if the index has no ranges.
+     * @return true if it is empty
+     */
+    boolean isEmpty() {
+        return live == 0;
+    }
+
+    /**
+     * Gives the number of every range containing a cell.
+     * @param theRow the row of the cell, counted from zero
+     * @param theColumn the column of the cell, counted from zero
+     * @param theAction what to do with each range's number
+     */
+    void forEachContaining(int theRow, int theColumn, IntConsumer theAction) {
+        for (int i = 0; i < sizesUsedCount; i++) {
+            int size = sizesUsed[i];
+            LongIntMap bucketsOfSize = bucketsBySize[size];
+            int row = theRow >>> (size / SIZES);
+            int column = theColumn >>> (size % SIZES);
+            //A range is shorter than twice the size its bucket is for, so it starts at most two buckets before
+            for (int bucketRow = Math.max(0, row - 2); bucketRow <= row; bucketRow++) {
+                for (int bucketColumn = Math.max(0, column - 2); bucketColumn <= column; bucketColumn++) {
+                    int bucket = bucketsOfSize.get(bucketKey(bucketRow, bucketColumn));
+                    if (bucket == NONE) continue;
+                    int[] ranges = members[bucket];
+                    for (int m = 0; m < memberCounts[bucket]; m++) {
+                        int range = ranges[m];
+                        if (firstRows[range] <= theRow && theRow <= lastRows[range]
+                                && firstColumns[range] <= theColumn && theColumn <= lastColumns[range]) {
+                            theAction.accept(range);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives the number of every range sharing a cell with a block.
+     * @param theFirstRow the first row of the block, counted from zero
+     * @param theFirstColumn the first column of the block, counted from zero
+     * @param theLastRow the last row of the block
+     * @param theLastColumn the last column of the block
+     * @param theAction what to do with each range's number
+     */
+    void forEachIntersecting(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn,
+                             IntConsumer theAction) {
+        for (int range = 0; range < rangeCount; range++) {
+            if (buckets[range] != NONE && firstRows[range] <= theLastRow && theFirstRow <= lastRows[range]
+                    && firstColumns[range] <= theLastColumn && theFirstColumn <= lastColumns[range]) {
+                theAction.accept(range);
+            }
+        }
+    }
+
+    /**
+     * Gets the first row of a range.
+     * @param theRange the number of the range
+     * @return the row, counted from zero
+     */
+    int firstRow(int theRange) {
+        return firstRows[theRange];
+    }
+
+    /**
+     * Gets the first column of a range.
+     * @param theRange the number of the range
+     * @return the column, counted from zero
+     */
+    int firstColumn(int theRange) {
+        return firstColumns[theRange];
+    }
+
+    /**
+     * Gets the last row of a range.
+     * @param theRange the number of the range
+     * @return the row, counted from zero
+     */
+    int lastRow(int theRange) {
+        return lastRows[theRange];
+    }
+
+    /**
+     * Gets the last column of a range.
+     * @param theRange the number of the range
+     * @return the column, counted from zero
+     */
+    int lastColumn(int theRange) {
+        return lastColumns[theRange];
+    }
+
+    //Helper method that reads the first row, first column, last row and last column, counted from zero, of a range
+    //given as "R#C#:R#C#"
+    private static int[] corners(String theRange) {
+        int colon = theRange.indexOf(':');
+        int firstMark = theRange.indexOf('C');
+        int lastMark = theRange.indexOf('C', colon);
+        int row = Integer.parseInt(theRange, 1, firstMark, 10) - 1;
+        int column = Integer.parseInt(theRange, firstMark + 1, colon, 10) - 1;
+        int otherRow = Integer.parseInt(theRange, colon + 2, lastMark, 10) - 1;
+        int otherColumn = Integer.parseInt(theRange, lastMark + 1, theRange.length(), 10) - 1;
+        return new int[] {Math.min(row, otherRow), Math.min(column, otherColumn),
+                Math.max(row, otherRow), Math.max(column, otherColumn)};
+    }
+
+    //Helper method that lengthens the arrays kept per range
+    private void grow(int theLength) {
+        firstRows = Arrays.copyOf(firstRows, theLength);
+        firstColumns = Arrays.copyOf(firstColumns, theLength);
+        lastRows = Arrays.copyOf(lastRows, theLength);
+        lastColumns = Arrays.copyOf(lastColumns, theLength);
+        buckets = Arrays.copyOf(buckets, theLength);
+        slots = Arrays.copyOf(slots, theLength);
+    }
+
+    //Helper method that gets the size a range is filed under: the power of two its rows round down to, times SIZES,
+    //plus the power of two its columns round down to
+    private static int sizeOf(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn) {
+        int rowSize = 31 - Integer.numberOfLeadingZeros(theLastRow - theFirstRow + 1);
+        int columnSize = 31 - Integer.numberOfLeadingZeros(theLastColumn - theFirstColumn + 1);
+        return rowSize * SIZES + columnSize;
+    }
+
+    //Helper method that packs the row and column of a bucket into a long
+    private static long bucketKey(int theRow, int theColumn) {
+        return (long) theRow << 32 | theColumn;
+    }
+
+    //The corners of a range, by which a range added twice is found
+    private record Corners(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+    }
+}
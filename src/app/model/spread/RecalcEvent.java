@@ -0,0 +1,25 @@
+package app.model.spread;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a recalculation of the whole sheet.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+@Name("app.Recalc")
+@Label("Recalculation")
+@Category({"Spreadsheet", "Engine"})
+@Description("Sorting and evaluating every cell of the sheet")
+final class RecalcEvent extends jdk.jfr.Event {
+    @Label("Cells Evaluated")
+    int cellsEvaluated;
+
+    @Label("Chain Depth")
+    @Description("Length of the longest chain of dependent cells")
+    int chainDepth;
+}
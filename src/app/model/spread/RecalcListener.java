@@ -0,0 +1,40 @@
+package app.model.spread;
+
+/**
+ * Listens to the recalculations of a {@link SpreadsheetGraph}. A sheet with no listeners does not
+ * time anything, so instrumentation only costs while a listener is added. Listeners are called on the
+ * thread that edits the sheet, in the middle of the recalculation, so they should return quickly.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public interface RecalcListener {
+
+    /**
+     * Called before the cells are sorted for a recalculation.
+     */
+    default void recalcStarted() {
+    }
+
+    /**
+     * Called after a formula cell is evaluated, whether or not the evaluation succeeded.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @param theInstructions the formula of the cell, including the leading "="
+     * @param theParseNanos the time spent compiling the formula, zero if it was already compiled
+     * @param theEvalNanos the time spent evaluating the compiled formula
+     * @param theCompileCached whether the compiled formula was reused from an earlier recalculation
+     */
+    default void formulaEvaluated(String theRowColumn, String theInstructions,
+                                  long theParseNanos, long theEvalNanos, boolean theCompileCached) {
+    }
+
+    /**
+     * Called after a recalculation, whether or not it succeeded.
+     * @param theCellsEvaluated the number of cells evaluated, formulas and literals alike
+     * @param theChainDepth the length of the longest chain of dependent cells, zero if no cell depends on another
+     * @param theSortNanos the time spent ordering the cells
+     * @param theTotalNanos the time spent on the whole recalculation, sorting included
+     */
+    default void recalcFinished(int theCellsEvaluated, int theChainDepth, long theSortNanos, long theTotalNanos) {
+    }
+}
@@ -0,0 +1,239 @@
+package app.model.spread;
+
+import app.model.expr.LookupIndexCache;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Recalculation listener that aggregates the recalculations of a sheet into counters,
+ * published as an MBean so they can be read with JConsole or any other JMX client.
+ * Counters are written by the thread editing the sheet and may be read from any thread.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class RecalcMetrics implements RecalcListener, RecalcMetricsMBean {
+    private static final int SLOWEST_KEPT = 10;
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final LookupIndexCache lookupIndexes;
+    private final AtomicLong recalcCount = new AtomicLong();
+    private final LongAdder totalCellsEvaluated = new LongAdder();
+    private final LongAdder totalSortNanos = new LongAdder();
+    private final LongAdder totalParseNanos = new LongAdder();
+    private final LongAdder totalEvalNanos = new LongAdder();
+    private final LongAdder compileHits = new LongAdder();
+    private final LongAdder compileMisses = new LongAdder();
+    private volatile int lastCellsEvaluated;
+    private volatile int lastChainDepth;
+    private volatile int maxChainDepth;
+    private volatile long lastRecalcNanos;
+    private volatile long lastSortNanos;
+    private volatile String[] slowestFormulas = new String[0];
+    private volatile long lookupHitsAtReset;
+    private volatile long lookupMissesAtReset;
+
+    // Slowest formulas of the recalculation in progress, fastest on top so it can be evicted
+    private final PriorityQueue<Timing> slowest = new PriorityQueue<>(SLOWEST_KEPT + 1);
+
+    private SpreadsheetGraph sheet;
+    private ObjectName name;
+
+    /**
+     * Constructor for metrics that are not yet listening to any sheet.
+     * @param theLookupIndexes the lookup index cache to report the hit rate of, or null to report none
+     */
+    public RecalcMetrics(LookupIndexCache theLookupIndexes) {
+        lookupIndexes = theLookupIndexes;
+    }
+
+    /**
+     * Creates metrics for a sheet, adds them as a listener and registers them with the platform MBean server
+     * under "app.model.spread:type=RecalcMetrics,name=theName".
+     * @param theSheet the sheet to measure
+     * @param theName the name to tell this sheet's metrics apart from others
+     * @return the registered metrics
+     * @throws IllegalStateException if the MBean could not be registered
+     */
+    public static RecalcMetrics register(SpreadsheetGraph theSheet, String theName) {
+        RecalcMetrics metrics = new RecalcMetrics(theSheet.getLookupIndexCache());
+        try {
+            metrics.name = ObjectName.getInstance("app.model.spread:type=RecalcMetrics,name=" + ObjectName.quote(theName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metrics.name);
+        } catch (JMException exc) {
+            throw new IllegalStateException("Could not register recalculation metrics " + theName, exc);
+        }
+        metrics.sheet = theSheet;
+        theSheet.addRecalcListener(metrics);
+        return metrics;
+    }
+
+    /**
+     * Stops listening to the sheet and removes the MBean, if these metrics were registered.
+     */
+    public void unregister() {
+        if (sheet != null) {
+            sheet.removeRecalcListener(this);
+            sheet = null;
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException exc) {
+                // already gone, nothing left to remove
+            }
+            name = null;
+        }
+    }
+
+    @Override
+    public void recalcStarted() {
+        slowest.clear();
+    }
+
+    @Override
+    public void formulaEvaluated(String theRowColumn, String theInstructions,
+                                 long theParseNanos, long theEvalNanos, boolean theCompileCached) {
+        totalParseNanos.add(theParseNanos);
+        totalEvalNanos.add(theEvalNanos);
+        if (theCompileCached) compileHits.increment();
+        else compileMisses.increment();
+
+        long nanos = theParseNanos + theEvalNanos;
+        if (slowest.size() < SLOWEST_KEPT || slowest.peek().nanos < nanos) {
+            slowest.add(new Timing(theRowColumn, theInstructions, nanos));
+            if (slowest.size() > SLOWEST_KEPT) slowest.remove();
+        }
+    }
+
+    @Override
+    public void recalcFinished(int theCellsEvaluated, int theChainDepth, long theSortNanos, long theTotalNanos) {
+        recalcCount.incrementAndGet();
+        totalCellsEvaluated.add(theCellsEvaluated);
+        totalSortNanos.add(theSortNanos);
+        lastCellsEvaluated = theCellsEvaluated;
+        lastChainDepth = theChainDepth;
+        maxChainDepth = Math.max(maxChainDepth, theChainDepth);
+        lastSortNanos = theSortNanos;
+        lastRecalcNanos = theTotalNanos;
+
+        List<Timing> timings = new ArrayList<>(slowest);
+        timings.sort(null);
+        String[] formatted = new String[timings.size()];
+        for (int i = 0; i < formatted.length; i++) {
+            Timing timing = timings.get(formatted.length - 1 - i);
+            formatted[i] = "%s %s (%.3f ms)".formatted(timing.rowColumn, timing.instructions, timing.nanos / NANOS_PER_MILLI);
+        }
+        slowestFormulas = formatted;
+        slowest.clear();
+    }
+
+    @Override
+    public long getRecalcCount() {
+        return recalcCount.get();
+    }
+
+    @Override
+    public int getLastCellsEvaluated() {
+        return lastCellsEvaluated;
+    }
+
+    @Override
+    public long getTotalCellsEvaluated() {
+        return totalCellsEvaluated.sum();
+    }
+
+    @Override
+    public int getLastChainDepth() {
+        return lastChainDepth;
+    }
+
+    @Override
+    public int getMaxChainDepth() {
+        return maxChainDepth;
+    }
+
+    @Override
+    public double getLastRecalcMillis() {
+        return lastRecalcNanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLastSortMillis() {
+        return lastSortNanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getTotalSortMillis() {
+        return totalSortNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getTotalParseMillis() {
+        return totalParseNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getTotalEvalMillis() {
+        return totalEvalNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getCompileCacheHitRate() {
+        return rate(compileHits.sum(), compileMisses.sum());
+    }
+
+    @Override
+    public double getLookupIndexHitRate() {
+        if (lookupIndexes == null) return Double.NaN;
+        return rate(lookupIndexes.getHitCount() - lookupHitsAtReset,
+                lookupIndexes.getMissCount() - lookupMissesAtReset);
+    }
+
+    @Override
+    public String[] getSlowestFormulas() {
+        return slowestFormulas.clone();
+    }
+
+    @Override
+    public synchronized void reset() {
+        recalcCount.set(0);
+        totalCellsEvaluated.reset();
+        totalSortNanos.reset();
+        totalParseNanos.reset();
+        totalEvalNanos.reset();
+        compileHits.reset();
+        compileMisses.reset();
+        lastCellsEvaluated = 0;
+        lastChainDepth = 0;
+        maxChainDepth = 0;
+        lastRecalcNanos = 0;
+        lastSortNanos = 0;
+        slowestFormulas = new String[0];
+        if (lookupIndexes != null) {
+            lookupHitsAtReset = lookupIndexes.getHitCount();
+            lookupMissesAtReset = lookupIndexes.getMissCount();
+        }
+    }
+
+    //Helper method that gives the fraction of hits, or NaN if nothing was counted
+    private static double rate(long theHits, long theMisses) {
+        long total = theHits + theMisses;
+        return total == 0 ? Double.NaN : (double) theHits / total;
+    }
+
+    //Time spent on one formula, ordered fastest first
+    private record Timing(String rowColumn, String instructions, long nanos) implements Comparable<Timing> {
+        @Override
+        public int compareTo(Timing theOther) {
+            return Long.compare(nanos, theOther.nanos);
+        }
+    }
+}
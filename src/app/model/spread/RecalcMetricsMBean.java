@@ -0,0 +1,80 @@
+package app.model.spread;
+
+/**
+ * Management interface of {@link RecalcMetrics}, as seen through JMX.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public interface RecalcMetricsMBean {
+
+    /**
+     * @return the number of recalculations since the last reset
+     */
+    long getRecalcCount();
+
+    /**
+     * @return the number of cells evaluated by the last recalculation
+     */
+    int getLastCellsEvaluated();
+
+    /**
+     * @return the number of cells evaluated since the last reset
+     */
+    long getTotalCellsEvaluated();
+
+    /**
+     * @return the length of the longest chain of dependent cells in the last recalculation
+     */
+    int getLastChainDepth();
+
+    /**
+     * @return the length of the longest chain of dependent cells since the last reset
+     */
+    int getMaxChainDepth();
+
+    /**
+     * @return the time the last recalculation took, in milliseconds
+     */
+    double getLastRecalcMillis();
+
+    /**
+     * @return the time the last recalculation spent ordering the cells, in milliseconds
+     */
+    double getLastSortMillis();
+
+    /**
+     * @return the time spent ordering cells since the last reset, in milliseconds
+     */
+    double getTotalSortMillis();
+
+    /**
+     * @return the time spent compiling formulas since the last reset, in milliseconds
+     */
+    double getTotalParseMillis();
+
+    /**
+     * @return the time spent evaluating compiled formulas since the last reset, in milliseconds
+     */
+    double getTotalEvalMillis();
+
+    /**
+     * @return the fraction of formula evaluations that reused a compiled formula, or NaN if there were none
+     */
+    double getCompileCacheHitRate();
+
+    /**
+     * @return the fraction of lookups that reused a lookup index, or NaN if there were none
+     */
+    double getLookupIndexHitRate();
+
+    /**
+     * @return the slowest formulas of the last recalculation, slowest first, as "R#C# =formula (time ms)"
+     */
+    String[] getSlowestFormulas();
+
+    /**
+     * Resets every counter.
+     */
+    void reset();
+}
@@ -0,0 +1,257 @@
+package app.model.spread;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps live cells of a sheet up to date: input cells bound to the keys of {@link InputFeed}s, and formulas calling
+ * volatile functions such as NOW and RAND. Values arriving from the feeds are only noted, the latest for each cell
+ * replacing any not yet applied, and at each tick those noted since the last are applied to the sheet as one edit,
+ * which recalculates only the cells depending on them, along with the volatile ones. A tick with nothing new
+ * recalculates only the volatile cells. However fast values arrive, the sheet is thus recalculated at most once per
+ * tick, and a tick that comes while the last one is still being applied is skipped, its values kept for the next.
+ *
+ * <p>A sheet is edited on one thread, so batches are applied through an executor, which for a sheet shown in the
+ * GUI runs them on the event dispatch thread. Applied values are ordinary edits, undone and logged like any other,
+ * and bindings are by cell designation, so they do not follow cells moved by inserting or sorting rows.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class RefreshScheduler implements Closeable {
+    private final SpreadsheetGraph sheet;
+    private final Executor applier;
+    private final ScheduledExecutorService timer;
+    private final Map<InputFeed, Map<String, Set<String>>> feedKeys;
+    private final Map<String, Binding> bindings;
+    private final Map<String, Double> pending;
+    private final AtomicBoolean applying;
+    private final LongAdder updatesReceived;
+    private final LongAdder cellsApplied;
+    private final LongAdder batchesApplied;
+    private volatile boolean refreshingVolatile;
+    private volatile IllegalArgumentException failure;
+    private boolean closed;
+
+    /**
+     * Constructor for a scheduler that applies batches on its own thread, for a sheet nothing else edits meanwhile.
+     * @param theSheet the sheet
+     * @param theTick the time between ticks
+     * @throws IllegalArgumentException if the tick is not positive
+     */
+    public RefreshScheduler(SpreadsheetGraph theSheet, Duration theTick) {
+        this(theSheet, theTick, Runnable::run);
+    }
+
+    /**
+     * Constructor for a scheduler that starts ticking at once.
+     * @param theSheet the sheet
+     * @param theTick the time between ticks
+     * @param theApplier the executor applying each batch on the thread that edits the sheet
+     * @throws IllegalArgumentException if the tick is not positive
+     */
+    public RefreshScheduler(SpreadsheetGraph theSheet, Duration theTick, Executor theApplier) {
+        if (theTick.isNegative() || theTick.isZero())
+            throw new IllegalArgumentException("Tick %s must be positive".formatted(theTick));
+        sheet = theSheet;
+        applier = theApplier;
+        feedKeys = new ConcurrentHashMap<>();
+        bindings = new ConcurrentHashMap<>();
+        pending = new ConcurrentHashMap<>();
+        applying = new AtomicBoolean();
+        updatesReceived = new LongAdder();
+        cellsApplied = new LongAdder();
+        batchesApplied = new LongAdder();
+        refreshingVolatile = true;
+        timer = Executors.newSingleThreadScheduledExecutor(
+                runnable -> Thread.ofPlatform().daemon().name("refresh scheduler").unstarted(runnable));
+        long tickNanos = theTick.toNanos();
+        timer.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Binds a cell to a key of a feed, so each value of the key becomes the cell's instructions, replacing any
+     * other binding of the cell. The feed is connected the first time a cell is bound to it, and closed along with
+     * the scheduler.
+     * @param theRowColumn the cell, in the format "R#C#"
+     * @param theFeed the feed
+     * @param theKey the key
+     * @throws IOException if the feed could not be connected
+     * @throws IllegalArgumentException if the cell is malformed
+     */
+    public synchronized void bind(String theRowColumn, InputFeed theFeed, String theKey) throws IOException {
+        if (!theRowColumn.matches("R\\d+C\\d+"))
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        if (closed) throw new IllegalStateException("Scheduler is closed");
+        Map<String, Set<String>> keys = feedKeys.get(theFeed);
+        if (keys == null) {
+            Map<String, Set<String>> connected = new ConcurrentHashMap<>();
+            theFeed.connect((key, value) -> receive(connected, key, value));
+            feedKeys.put(theFeed, connected);
+            keys = connected;
+        }
+        unbind(theRowColumn);
+        keys.computeIfAbsent(theKey, key -> ConcurrentHashMap.newKeySet()).add(theRowColumn);
+        bindings.put(theRowColumn, new Binding(theFeed, theKey));
+    }
+
+    /**
+     * Unbinds a cell, which keeps the last value applied to it. A value it was sent but not yet given is dropped.
+     * @param theRowColumn the cell, in the format "R#C#"
+     */
+    public synchronized void unbind(String theRowColumn) {
+        Binding binding = bindings.remove(theRowColumn);
+        if (binding == null) return;
+        Set<String> cells = feedKeys.get(binding.feed()).get(binding.key());
+        cells.remove(theRowColumn);
+        if (cells.isEmpty()) feedKeys.get(binding.feed()).remove(binding.key());
+        pending.remove(theRowColumn);
+    }
+
+    /**
+     * Sets whether ticks recalculate the sheet's volatile cells, which they do unless told not to. Edits of the
+     * sheet recalculate them either way.
+     * @param theRefreshing whether to recalculate volatile cells at each tick
+     */
+    public void setRefreshingVolatile(boolean theRefreshing) {
+        refreshingVolatile = theRefreshing;
+    }
+
+    /**
+     * Gets the number of values received from the feeds for bound keys, including those replaced before they were
+     * applied.
+     * @return the number of values received
+     */
+    public long getUpdatesReceived() {
+        return updatesReceived.sum();
+    }
+
+    /**
+     * Gets the number of cells given values, counting a cell once per batch.
+     * @return the number of cells applied
+     */
+    public long getCellsApplied() {
+        return cellsApplied.sum();
+    }
+
+    /**
+     * Gets the number of batches of values applied.
+     * @return the number of batches
+     */
+    public long getBatchesApplied() {
+        return batchesApplied.sum();
+    }
+
+    /**
+     * Gets why values of the last batch with any could not be applied, as when a bound cell lies past the sheet,
+     * whose values are dropped while the rest of the batch is applied.
+     * @return the failure, or null if the last batch was applied whole
+     */
+    public IllegalArgumentException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stops ticking and closes the feeds bound through the scheduler. Values not yet applied are dropped.
+     * @throws IOException if a feed could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+        }
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        IOException feedFailure = null;
+        for (InputFeed feed : feedKeys.keySet()) {
+            try {
+                feed.close();
+            } catch (IOException exc) {
+                feedFailure = exc;
+            }
+        }
+        if (feedFailure != null) throw feedFailure;
+    }
+
+    //Helper method that notes the latest value sent to each cell bound to a key, from whichever thread a feed sends
+    //it on. Values that are not finite cannot be written as instructions, so they are dropped
+    private void receive(Map<String, Set<String>> theKeys, String theKey, double theValue) {
+        Set<String> cells = theKeys.get(theKey);
+        if (cells == null || !Double.isFinite(theValue)) return;
+        updatesReceived.increment();
+        for (String rowColumn : cells) pending.put(rowColumn, theValue);
+    }
+
+    //Helper method run by the timer at each tick, which hands the values noted since the last tick to the applier,
+    //unless it is still applying the last ones
+    private void tick() {
+        if (!applying.compareAndSet(false, true)) return;
+        try {
+            applier.execute(this::apply);
+        } catch (RejectedExecutionException exc) {
+            applying.set(false);
+        }
+    }
+
+    //Helper method that applies the values noted so far as a single edit, or recalculates the volatile cells if
+    //there are none
+    private void apply() {
+        try {
+            Map<String, String> batch = new HashMap<>();
+            IllegalArgumentException outside = null;
+            for (String rowColumn : pending.keySet()) {
+                Double value = pending.remove(rowColumn);
+                if (value == null) continue;
+                //A cell left outside by shrinking the sheet is skipped, so the rest of the batch is still applied
+                int columnMark = rowColumn.indexOf('C');
+                long row = Long.parseLong(rowColumn, 1, columnMark, 10);
+                long column = Long.parseLong(rowColumn, columnMark + 1, rowColumn.length(), 10);
+                if (row < 1 || row > sheet.getRowCount() || column < 1 || column > sheet.getColumnCount()) {
+                    outside = new IllegalArgumentException("Cell %s is outside the %dx%d sheet"
+                            .formatted(rowColumn, sheet.getRowCount(), sheet.getColumnCount()));
+                } else {
+                    batch.put(rowColumn, format(value));
+                }
+            }
+            if (!batch.isEmpty()) {
+                cellsApplied.add(batch.size());
+                batchesApplied.increment();
+                sheet.setCellInstructions(batch);
+            } else if (refreshingVolatile) {
+                sheet.recalculateVolatile();
+            }
+            if (outside != null) failure = outside;
+            else if (!batch.isEmpty()) failure = null;
+        } catch (IllegalArgumentException exc) {
+            failure = exc;
+        } finally {
+            applying.set(false);
+        }
+    }
+
+    //Helper method that writes a number as a literal, without trailing zeros or an exponent
+    private static String format(double theNumber) {
+        return theNumber == 0 ? "0" : BigDecimal.valueOf(theNumber).stripTrailingZeros().toPlainString();
+    }
+
+    //A cell's binding to a key of a feed
+    private record Binding(InputFeed feed, String key) {
+    }
+}
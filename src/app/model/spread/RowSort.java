@@ -0,0 +1,116 @@
+package app.model.spread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Works out the order of the rows of a block by the values in some of its columns. Each key column is turned
+ * into an int rank per row, from primitive arrays sorted in parallel, and the rows are then ordered by packing
+ * rank and position into longs and sorting those in parallel, one pass per key, least significant key first.
+ * Numbers come before text, text is compared ignoring case, and empty cells come last whichever way a key goes.
+ * Rows that tie on every key keep their order.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+final class RowSort {
+    private final int rows;
+    private final List<int[]> ranks = new ArrayList<>();
+
+    /**
+     * Constructor for ordering a number of rows.
+     * @param theRows the number of rows to order
+     */
+    RowSort(int theRows) {
+        rows = theRows;
+    }
+
+    /**
+     * Adds the next most significant key.
+     * @param theNumbers for each row, the number in the key column, NaN where it holds no number
+     * @param theTexts for each row, the text in the key column, null where it holds a number or nothing
+     * @param theAscending true to put smaller values first, false for larger values first
+     */
+    void addKey(double[] theNumbers, String[] theTexts, boolean theAscending) {
+        int numberCount = 0;
+        int textCount = 0;
+        for (int i = 0; i < rows; i++) {
+            if (!Double.isNaN(theNumbers[i])) numberCount++;
+            else if (theTexts[i] != null) textCount++;
+        }
+        double[] numbers = new double[numberCount];
+        String[] texts = new String[textCount];
+        numberCount = 0;
+        textCount = 0;
+        for (int i = 0; i < rows; i++) {
+            if (!Double.isNaN(theNumbers[i])) numbers[numberCount++] = theNumbers[i];
+            else if (theTexts[i] != null) texts[textCount++] = theTexts[i];
+        }
+        Arrays.parallelSort(numbers);
+        Arrays.parallelSort(texts, String.CASE_INSENSITIVE_ORDER);
+        int distinctNumbers = distinct(numbers);
+        int distinctTexts = distinct(texts);
+        int distinct = distinctNumbers + distinctTexts;
+
+        int[] rank = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            if (!Double.isNaN(theNumbers[i])) {
+                rank[i] = Arrays.binarySearch(numbers, 0, distinctNumbers, theNumbers[i]);
+            } else if (theTexts[i] != null) {
+                rank[i] = distinctNumbers
+                        + Arrays.binarySearch(texts, 0, distinctTexts, theTexts[i], String.CASE_INSENSITIVE_ORDER);
+            } else {
+                rank[i] = distinct;
+                continue;
+            }
+            if (!theAscending) rank[i] = distinct - 1 - rank[i];
+        }
+        ranks.add(rank);
+    }
+
+    /**
+     * Orders the rows by the keys added.
+     * @return for each row, in order, the position it moves to
+     */
+    int[] newRows() {
+        int[] order = new int[rows];
+        for (int i = 0; i < rows; i++) order[i] = i;
+        long[] packed = new long[rows];
+        int[] nextOrder = new int[rows];
+        for (int key = ranks.size() - 1; key >= 0; key--) {
+            int[] rank = ranks.get(key);
+            //Ties on the rank fall back on the position, which keeps the order of the previous pass
+            for (int i = 0; i < rows; i++) packed[i] = (long) rank[order[i]] << 32 | i;
+            Arrays.parallelSort(packed);
+            for (int i = 0; i < rows; i++) nextOrder[i] = order[(int) packed[i]];
+            int[] swap = order;
+            order = nextOrder;
+            nextOrder = swap;
+        }
+        int[] newRows = nextOrder;
+        for (int i = 0; i < rows; i++) newRows[order[i]] = i;
+        return newRows;
+    }
+
+    //Helper method that moves the distinct values of a sorted array to its front, giving how many there are
+    private static int distinct(double[] theSorted) {
+        int count = 0;
+        for (int i = 0; i < theSorted.length; i++) {
+            if (count == 0 || Double.compare(theSorted[count - 1], theSorted[i]) != 0) theSorted[count++] = theSorted[i];
+        }
+        return count;
+    }
+
+    //Helper method that moves the distinct texts of a sorted array to its front, ignoring case, giving how many
+    //there are
+    private static int distinct(String[] theSorted) {
+        int count = 0;
+        for (int i = 0; i < theSorted.length; i++) {
+            if (count == 0 || String.CASE_INSENSITIVE_ORDER.compare(theSorted[count - 1], theSorted[i]) != 0) {
+                theSorted[count++] = theSorted[i];
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,72 @@
+package app.model.spread;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Distribution an input cell is drawn from for each scenario of a {@link ScenarioRunner}.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+@FunctionalInterface
+public interface ScenarioInput {
+
+    /**
+     * Draws a value.
+     * @param theRandom the source of randomness, which is the only one the input should use so that runs repeat
+     * @return the value for one scenario
+     */
+    double sample(RandomGenerator theRandom);
+
+    /**
+     * Creates a uniform distribution.
+     * @param theLow the smallest value
+     * @param theHigh the bound the values stay below
+     * @return the distribution
+     */
+    static ScenarioInput uniform(double theLow, double theHigh) {
+        if (!(theLow < theHigh)) throw new IllegalArgumentException("Low %s must be below high %s".formatted(theLow, theHigh));
+        return random -> random.nextDouble(theLow, theHigh);
+    }
+
+    /**
+     * Creates a normal distribution.
+     * @param theMean the mean
+     * @param theStandardDeviation the standard deviation
+     * @return the distribution
+     */
+    static ScenarioInput normal(double theMean, double theStandardDeviation) {
+        if (!(theStandardDeviation >= 0)) throw new IllegalArgumentException("Standard deviation must not be negative");
+        return random -> random.nextGaussian(theMean, theStandardDeviation);
+    }
+
+    /**
+     * Creates a triangular distribution.
+     * @param theLow the smallest value
+     * @param theMode the most likely value
+     * @param theHigh the largest value
+     * @return the distribution
+     */
+    static ScenarioInput triangular(double theLow, double theMode, double theHigh) {
+        if (!(theLow <= theMode && theMode <= theHigh && theLow < theHigh))
+            throw new IllegalArgumentException("Triangle needs low <= mode <= high and low < high");
+        double split = (theMode - theLow) / (theHigh - theLow);
+        return random -> {
+            double u = random.nextDouble();
+            return u < split
+                    ? theLow + Math.sqrt(u * (theHigh - theLow) * (theMode - theLow))
+                    : theHigh - Math.sqrt((1 - u) * (theHigh - theLow) * (theHigh - theMode));
+        };
+    }
+
+    /**
+     * Creates a distribution that picks one of the given values, each as likely as the others.
+     * @param theValues the values to pick from
+     * @return the distribution
+     */
+    static ScenarioInput choice(double... theValues) {
+        if (theValues.length == 0) throw new IllegalArgumentException("Nothing to choose from");
+        double[] values = theValues.clone();
+        return random -> values[random.nextInt(values.length)];
+    }
+}
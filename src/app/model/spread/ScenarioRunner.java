@@ -0,0 +1,86 @@
+package app.model.spread;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Monte Carlo driver that runs randomized scenarios against one base sheet. Each scenario draws every
+ * input, sets the draws on its own {@link SheetOverlay}, and records the output cells, so only the cells
+ * depending on the inputs are recalculated and scenarios run in parallel without copying the sheet.
+ * The inputs are drawn up front from one seeded generator, so the same seed gives the same results
+ * however the scenarios are spread over threads.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class ScenarioRunner {
+    private final SpreadsheetGraph base;
+    private final Map<String, ScenarioInput> inputs;
+
+    /**
+     * Constructor for a runner with no inputs yet.
+     * @param theBase the evaluated sheet to run scenarios against, which must not be edited during a run
+     */
+    public ScenarioRunner(SpreadsheetGraph theBase) {
+        base = theBase;
+        inputs = new LinkedHashMap<>();
+    }
+
+    /**
+     * Draws a cell from a distribution in every scenario, replacing any distribution it had.
+     * @param theRowColumn the input cell, in the format "R#C#"
+     * @param theInput the distribution to draw from
+     * @return this runner
+     */
+    public ScenarioRunner setInput(String theRowColumn, ScenarioInput theInput) {
+        if (!theRowColumn.matches("R\\d+C\\d+"))
+            throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(theRowColumn));
+        inputs.put(theRowColumn, theInput);
+        return this;
+    }
+
+    /**
+     * Runs the scenarios.
+     * @param theScenarios the number of scenarios to run
+     * @param theSeed the seed of the draws
+     * @param theOutputs the output cells to record, in the format "R#C#"
+     * @return the distribution of each output cell, in the order given
+     */
+    public Map<String, OutputDistribution> run(int theScenarios, long theSeed, String... theOutputs) {
+        if (theScenarios <= 0) throw new IllegalArgumentException("Number of scenarios must be positive");
+        String[] cells = inputs.keySet().toArray(new String[0]);
+        ScenarioInput[] distributions = inputs.values().toArray(new ScenarioInput[0]);
+
+        //Draw everything first so the results do not depend on how the scenarios are scheduled
+        SplittableRandom random = new SplittableRandom(theSeed);
+        double[][] draws = new double[theScenarios][cells.length];
+        for (double[] draw : draws) {
+            for (int i = 0; i < cells.length; i++) draw[i] = distributions[i].sample(random);
+        }
+
+        double[][] samples = new double[theOutputs.length][theScenarios];
+        new SheetOverlay(base); // plans the base once, before the scenarios race for it
+        IntStream.range(0, theScenarios).parallel().forEach(scenario -> {
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (int i = 0; i < cells.length; i++) values.put(cells[i], draws[scenario][i]);
+            SheetOverlay overlay = new SheetOverlay(base);
+            try {
+                overlay.setCellValues(values);
+            } catch (IllegalArgumentException exc) {
+                //The failed cells have no value and are counted as failures
+            }
+            for (int i = 0; i < theOutputs.length; i++) {
+                Double value = overlay.getCellValue(theOutputs[i]);
+                samples[i][scenario] = value == null ? Double.NaN : value;
+            }
+        });
+
+        Map<String, OutputDistribution> distributionsByCell = new LinkedHashMap<>();
+        for (int i = 0; i < theOutputs.length; i++) {
+            distributionsByCell.put(theOutputs[i], new OutputDistribution(theOutputs[i], samples[i]));
+        }
+        return distributionsByCell;
+    }
+}
@@ -0,0 +1,202 @@
+package app.model.spread;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes the instructions of a sheet as plain text. The first line holds the size of
+ * the sheet, as "SHEET rows columns", and every following line holds one cell, as its row and column
+ * in the format "R#C#", a tab, then its instructions. Backslashes and line breaks in instructions are
+ * escaped as "\\", "\n" and "\r". Blank lines and lines starting with "#" are ignored.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class SheetFile {
+    private static final String HEADER = "SHEET";
+
+    private final int rows;
+    private final int columns;
+    private final Map<String, String> instructions;
+
+    /**
+     * Constructor for sheet contents.
+     * @param theRows the number of rows in the sheet
+     * @param theColumns the number of columns in the sheet
+     * @param theInstructions the instructions of each cell, keyed by row and column in the format "R#C#"
+     */
+    public SheetFile(int theRows, int theColumns, Map<String, String> theInstructions) {
+        if (theRows <= 0 || theColumns <= 0)
+            throw new IllegalArgumentException("Sheet size %dx%d must be positive".formatted(theRows, theColumns));
+        rows = theRows;
+        columns = theColumns;
+        instructions = new LinkedHashMap<>(theInstructions);
+    }
+
+    /**
+     * Reads sheet contents from a file.
+     * @param thePath the file to read, in UTF-8
+     * @return the sheet contents
+     * @throws IOException if the file could not be read
+     * @throws IllegalArgumentException if the file is not a sheet file
+     */
+    public static SheetFile read(Path thePath) throws IOException {
+        try (Reader reader = Files.newBufferedReader(thePath, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Reads sheet contents.
+     * @param theReader the text to read
+     * @return the sheet contents
+     * @throws IOException if the text could not be read
+     * @throws IllegalArgumentException if the text is not a sheet file
+     */
+    public static SheetFile read(Reader theReader) throws IOException {
+        BufferedReader reader = theReader instanceof BufferedReader buffered ? buffered : new BufferedReader(theReader);
+        int rows = -1;
+        int columns = -1;
+        Map<String, String> instructions = new LinkedHashMap<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) continue;
+
+            if (rows < 0) {
+                String[] header = line.trim().split("\\s+");
+                if (header.length != 3 || !header[0].equals(HEADER))
+                    throw new IllegalArgumentException("Line %d: expected \"%s rows columns\"".formatted(lineNumber, HEADER));
+                try {
+                    rows = Integer.parseInt(header[1]);
+                    columns = Integer.parseInt(header[2]);
+                } catch (NumberFormatException exc) {
+                    throw new IllegalArgumentException("Line %d: sheet size is not a number".formatted(lineNumber));
+                }
+            } else {
+                int tab = line.indexOf('\t');
+                if (tab < 0) throw new IllegalArgumentException("Line %d: expected a cell, a tab and instructions".formatted(lineNumber));
+                instructions.put(line.substring(0, tab).trim(), unescape(line.substring(tab + 1)));
+            }
+        }
+        if (rows < 0) throw new IllegalArgumentException("Missing \"%s rows columns\" header".formatted(HEADER));
+        return new SheetFile(rows, columns, instructions);
+    }
+
+    /**
+     * Captures the instructions of every cell of a sheet.
+     * @param theSheet the sheet to capture
+     * @return the sheet contents, cells in row-major order
+     */
+    public static SheetFile of(Spreadsheet theSheet) {
+        //A graph knows its filled cells, which saves visiting every empty one
+        if (theSheet instanceof SpreadsheetGraph graph)
+            return new SheetFile(graph.getRowCount(), graph.getColumnCount(), graph.getInstructions());
+        Map<String, String> instructions = new LinkedHashMap<>();
+        for (int row = 0; row < theSheet.getRowCount(); row++) {
+            for (int col = 0; col < theSheet.getColumnCount(); col++) {
+                String cellInstructions = theSheet.getCellInstructions(row, col);
+                if (cellInstructions != null) instructions.put(theSheet.toCellRef(row, col), cellInstructions);
+            }
+        }
+        return new SheetFile(theSheet.getRowCount(), theSheet.getColumnCount(), instructions);
+    }
+
+    /**
+     * Writes the sheet contents to a file, replacing it.
+     * @param thePath the file to write, in UTF-8
+     * @throws IOException if the file could not be written
+     */
+    public void write(Path thePath) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(thePath, StandardCharsets.UTF_8)) {
+            write(writer);
+        }
+    }
+
+    /**
+     * Writes the sheet contents.
+     * @param theWriter where to write the text
+     * @throws IOException if the text could not be written
+     */
+    public void write(Writer theWriter) throws IOException {
+        BufferedWriter writer = theWriter instanceof BufferedWriter buffered ? buffered : new BufferedWriter(theWriter);
+        writer.write(HEADER + " " + rows + " " + columns);
+        writer.newLine();
+        for (Map.Entry<String, String> entry : instructions.entrySet()) {
+            writer.write(entry.getKey());
+            writer.write('\t');
+            writer.write(escape(entry.getValue()));
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Creates a sheet holding these contents, evaluated once.
+     * @return the sheet
+     * @throws IllegalArgumentException if a cell failed to evaluate or the instructions form a cycle;
+     *                                  use {@link SpreadsheetGraph#setCellInstructions(Map)} to keep
+     *                                  the sheet regardless
+     */
+    public SpreadsheetGraph toSpreadsheet() {
+        SpreadsheetGraph sheet = new SpreadsheetGraph(rows, columns);
+        sheet.setCellInstructions(instructions);
+        return sheet;
+    }
+
+    /**
+     * Gets the number of rows in the sheet.
+     * @return the number of rows.
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of columns in the sheet.
+     * @return the number of columns.
+     */
+    public int getColumnCount() {
+        return columns;
+    }
+
+    /**
+     * Gets the instructions of each cell, which may be changed before creating a sheet from them.
+     * @return the instructions keyed by row and column in the format "R#C#"
+     */
+    public Map<String, String> getInstructions() {
+        return instructions;
+    }
+
+    //Helper method that escapes backslashes and line breaks so instructions fit on one line
+    private static String escape(String theInstructions) {
+        if (theInstructions.indexOf('\\') < 0 && theInstructions.indexOf('\n') < 0 && theInstructions.indexOf('\r') < 0)
+            return theInstructions;
+        return theInstructions.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    //Helper method that reverses escape
+    private static String unescape(String theEscaped) {
+        if (theEscaped.indexOf('\\') < 0) return theEscaped;
+        StringBuilder unescaped = new StringBuilder(theEscaped.length());
+        for (int i = 0; i < theEscaped.length(); i++) {
+            char c = theEscaped.charAt(i);
+            if (c == '\\' && i + 1 < theEscaped.length()) {
+                char next = theEscaped.charAt(++i);
+                unescaped.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
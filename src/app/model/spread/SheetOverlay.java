@@ -0,0 +1,406 @@
+package app.model.spread;
+
+import app.model.expr.CompiledExpression;
+import app.model.expr.ExpressionReader;
+import app.model.expr.GrammarExpressionReader;
+import app.model.expr.SheetCells;
+import app.model.expr.WorkbookCells;
+
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Spreadsheet that layers changes over a base sheet without copying it. The overlay shares the base
+ * sheet's formulas and values and stores only the cells it overrides and the cells it recalculates,
+ * and an edit recalculates only the cells that depend on what changed. Many overlays may share one base
+ * from different threads, as long as the base is not edited while they are in use. An overlay itself
+ * is meant to be used by one thread at a time.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class SheetOverlay implements Spreadsheet {
+    private final SpreadsheetGraph base;
+    private final CalculationPlan plan;
+    private final ExpressionReader reader;
+    private final Map<String, String> instructions;
+    private final Map<String, Double> values;
+    private final Map<String, CompiledExpression> formulas;
+    private final Map<String, List<String>> formulaDependents;
+    private final OverlayValues overlayValues;
+
+    /**
+     * Constructor for an overlay with no changes yet.
+     * @param theBase the sheet to layer over, which should be left unedited while the overlay is in use
+     */
+    public SheetOverlay(SpreadsheetGraph theBase) {
+        base = theBase;
+        plan = theBase.getCalculationPlan();
+        reader = new GrammarExpressionReader();
+        instructions = new HashMap<>();
+        values = new HashMap<>();
+        formulas = new HashMap<>();
+        formulaDependents = new HashMap<>();
+        overlayValues = new OverlayValues();
+    }
+
+    @Override
+    public Double getCellValue(String theRowColumn) {
+        if (values.containsKey(theRowColumn)) return values.get(theRowColumn);
+        if (instructions.containsKey(theRowColumn)) return null; // cleared by the overlay
+        return base.getCellValue(theRowColumn);
+    }
+
+    @Override
+    public String getCellInstructions(String theRowColumn) {
+        theRowColumn = theRowColumn.trim();
+        if (!reader.isCellRef(theRowColumn))
+            throw new IllegalArgumentException("Row and column designation is not properly formatted");
+        String overridden = instructions.get(theRowColumn);
+        if (overridden != null) return overridden.isEmpty() ? null : overridden;
+        return base.getCellInstructions(theRowColumn);
+    }
+
+    @Override
+    public String getCellInstructions(final int theRow, final int theColumn) {
+        return this.getCellInstructions(this.toCellRef(theRow, theColumn));
+    }
+
+    /**
+     * Overrides a cell and recalculates the cells that depend on it.
+     * @param theInstructions the instructions to be provided to the cell, as for {@link SpreadsheetGraph}
+     * @param theRowColumn the row and column of the desired cell, as a string, in the format "R#C#"
+     */
+    @Override
+    public void setCellInstructions(String theInstructions, String theRowColumn) {
+        setCellInstructions(Map.of(theRowColumn, theInstructions));
+    }
+
+    @Override
+    public void setCellInstructions(final String theInstructions, final int theRow, final int theColumn) {
+        this.setCellInstructions(theInstructions, this.toCellRef(theRow, theColumn));
+    }
+
+    /**
+     * Overrides many cells at once, then recalculates the cells that depend on any of them once.
+     * @param theInstructions the instructions to be provided to each cell, keyed by row and column in the
+     *                        format "R#C#". Empty instructions clear the cell.
+     * @throws IllegalArgumentException if a cell designation is malformed or outside the sheet, a formula does
+     *                                  not compile or the formulas would form a cycle, in which case nothing is
+     *                                  set, or if a dependent cell failed to evaluate
+     */
+    public void setCellInstructions(Map<String, String> theInstructions) {
+        Map<String, CompiledExpression> compiled = new HashMap<>();
+        for (Map.Entry<String, String> entry : theInstructions.entrySet()) {
+            if (!reader.isCellRef(entry.getKey()))
+                throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(entry.getKey()));
+            base.checkInRange(entry.getKey());
+            String cellInstructions = entry.getValue().trim();
+            if (cellInstructions.startsWith("=")) {
+                compiled.put(entry.getKey(), reader.compile(cellInstructions.substring(1).toUpperCase()));
+            }
+        }
+
+        //Kept to undo the batch if its formulas turn out to be cyclic
+        Map<String, String> oldInstructions = new HashMap<>();
+        Map<String, CompiledExpression> oldFormulas = new HashMap<>();
+        Map<String, Double> oldValues = new HashMap<>();
+        for (String rowColumn : theInstructions.keySet()) {
+            oldInstructions.put(rowColumn, instructions.get(rowColumn));
+            oldFormulas.put(rowColumn, formulas.get(rowColumn));
+            if (values.containsKey(rowColumn)) oldValues.put(rowColumn, values.get(rowColumn));
+        }
+
+        for (Map.Entry<String, String> entry : theInstructions.entrySet()) {
+            String rowColumn = entry.getKey();
+            String cellInstructions = entry.getValue().trim();
+            CompiledExpression formula = compiled.get(rowColumn);
+            if (formula != null) cellInstructions = cellInstructions.toUpperCase();
+            setFormula(rowColumn, formula);
+            instructions.put(rowColumn, cellInstructions);
+            if (formula == null) {
+                if (cellInstructions.isEmpty()) values.remove(rowColumn);
+                else values.put(rowColumn, reader.isNumber(cellInstructions) ? Double.parseDouble(cellInstructions) : null);
+            }
+        }
+
+        try {
+            recalculate(theInstructions.keySet());
+        } catch (CycleException exc) {
+            for (String rowColumn : theInstructions.keySet()) {
+                setFormula(rowColumn, oldFormulas.get(rowColumn));
+                if (oldInstructions.get(rowColumn) == null) instructions.remove(rowColumn);
+                else instructions.put(rowColumn, oldInstructions.get(rowColumn));
+                if (oldValues.containsKey(rowColumn)) values.put(rowColumn, oldValues.get(rowColumn));
+                else values.remove(rowColumn);
+            }
+            throw new IllegalArgumentException("Cycle detected, cyclic instructions invalid");
+        }
+    }
+
+    /**
+     * Overrides many cells with numbers at once, then recalculates the cells that depend on any of them once.
+     * This skips reading the numbers from text, for drivers that set many inputs over many overlays.
+     * @param theValues the value to be given to each cell, keyed by row and column in the format "R#C#"
+     * @throws IllegalArgumentException if a cell designation is malformed or outside the sheet, in which case
+     *                                  nothing is set, or if a dependent cell failed to evaluate
+     */
+    public void setCellValues(Map<String, Double> theValues) {
+        for (String rowColumn : theValues.keySet()) {
+            if (!reader.isCellRef(rowColumn))
+                throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(rowColumn));
+            base.checkInRange(rowColumn);
+        }
+        for (Map.Entry<String, Double> entry : theValues.entrySet()) {
+            double value = entry.getValue();
+            setFormula(entry.getKey(), null);
+            //Written out in full, as the reader takes no exponents
+            instructions.put(entry.getKey(), Double.isFinite(value) ? plainNumber(value) : Double.toString(value));
+            values.put(entry.getKey(), value);
+        }
+        recalculate(theValues.keySet());
+    }
+
+    //Helper method that writes a number without an exponent
+    private static String plainNumber(double theNumber) {
+        return theNumber == 0 ? "0" : BigDecimal.valueOf(theNumber).stripTrailingZeros().toPlainString();
+    }
+
+    //Helper method that sets or removes the formula a cell is overridden with, keeping track of what refers to what
+    private void setFormula(String theRowColumn, CompiledExpression theFormula) {
+        CompiledExpression old = theFormula == null ? formulas.remove(theRowColumn) : formulas.put(theRowColumn, theFormula);
+        if (old != null) {
+            for (String rowColumn : base.referencesOf(old)) {
+                List<String> list = formulaDependents.get(rowColumn);
+                list.remove(theRowColumn);
+                if (list.isEmpty()) formulaDependents.remove(rowColumn);
+            }
+        }
+        if (theFormula != null) {
+            for (String rowColumn : base.referencesOf(theFormula)) {
+                formulaDependents.computeIfAbsent(rowColumn, key -> new ArrayList<>()).add(theRowColumn);
+            }
+        }
+    }
+
+    //Helper method that evaluates every formula depending on the changed cells, in dependency order
+    private void recalculate(Set<String> theChanged) {
+        RuntimeException failure = null;
+        if (formulas.isEmpty()) {
+            //The base's plan still holds, so its order can be used directly
+            for (int position : plan.affected(theChanged)) {
+                GraphVertex vertex = plan.get(position);
+                //Cells the overlay overrides hold their own literal
+                if (instructions.containsKey(vertex.getRowColumn())) continue;
+                failure = evaluate(vertex.getRowColumn(), vertex.getCell().getCompiledInstruction(), failure);
+            }
+        } else {
+            for (String rowColumn : orderAffected(theChanged)) {
+                failure = evaluate(rowColumn, formulaOf(rowColumn), failure);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    //Helper method that evaluates one formula into the overlay, giving the first failure seen so far
+    private RuntimeException evaluate(String theRowColumn, CompiledExpression theFormula, RuntimeException theFailure) {
+        if (theFormula == null) return theFailure; // a literal, or a formula the base could not compile
+        try {
+            values.put(theRowColumn, theFormula.evaluate(overlayValues));
+            return theFailure;
+        } catch (RuntimeException exc) {
+            values.put(theRowColumn, null);
+            return theFailure == null ? exc : theFailure;
+        }
+    }
+
+    //Helper method that gets the formula a cell currently holds, or null if it holds a literal
+    private CompiledExpression formulaOf(String theRowColumn) {
+        CompiledExpression formula = formulas.get(theRowColumn);
+        if (formula != null || instructions.containsKey(theRowColumn)) return formula;
+        GraphVertex vertex = base.getVertex(theRowColumn);
+        return vertex == null ? null : vertex.getCell().getCompiledInstruction();
+    }
+
+    //Helper method that finds the formulas depending on the changed cells, including changed formulas, and orders
+    //them so each comes after the cells it refers to. With formulas overridden, the base's order may not hold.
+    private List<String> orderAffected(Set<String> theChanged) {
+        Set<String> affected = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        for (String rowColumn : theChanged) {
+            if (formulas.containsKey(rowColumn)) affected.add(rowColumn);
+            pending.add(rowColumn);
+        }
+        while (!pending.isEmpty()) {
+            String rowColumn = pending.remove();
+            for (int position : plan.dependents(rowColumn)) {
+                String dependent = plan.get(position).getRowColumn();
+                if (affected.add(dependent)) pending.add(dependent);
+            }
+            for (String dependent : formulaDependents.getOrDefault(rowColumn, List.of())) {
+                if (affected.add(dependent)) pending.add(dependent);
+            }
+        }
+        //Literal overrides keep their value, so nothing flows through them
+        affected.removeIf(rowColumn -> formulaOf(rowColumn) == null);
+
+        Map<String, Integer> indegrees = new HashMap<>();
+        Map<String, List<String>> edges = new HashMap<>();
+        for (String rowColumn : affected) {
+            int indegree = 0;
+            for (String reference : new LinkedHashSet<>(base.referencesOf(formulaOf(rowColumn)))) {
+                if (affected.contains(reference)) {
+                    edges.computeIfAbsent(reference, key -> new ArrayList<>()).add(rowColumn);
+                    indegree++;
+                }
+            }
+            indegrees.put(rowColumn, indegree);
+        }
+        List<String> order = new ArrayList<>(affected.size());
+        Deque<String> ready = new ArrayDeque<>();
+        for (String rowColumn : affected) {
+            if (indegrees.get(rowColumn) == 0) ready.add(rowColumn);
+        }
+        while (!ready.isEmpty()) {
+            String rowColumn = ready.remove();
+            order.add(rowColumn);
+            for (String dependent : edges.getOrDefault(rowColumn, List.of())) {
+                if (indegrees.merge(dependent, -1, Integer::sum) == 0) ready.add(dependent);
+            }
+        }
+        if (order.size() < affected.size()) throw new CycleException();
+        return order;
+    }
+
+    /**
+     * Gets the cells the overlay holds values for, overridden and recalculated alike.
+     * @return the changed cells, in the format "R#C#"
+     */
+    public Set<String> getChangedCells() {
+        return Stream.concat(values.keySet().stream(), instructions.keySet().stream()).collect(Collectors.toSet());
+    }
+
+    /**
+     * Gets the sheet this overlay is layered over.
+     * @return the base sheet
+     */
+    public SpreadsheetGraph getBase() {
+        return base;
+    }
+
+    @Override
+    public int getRowCount() {
+        return base.getRowCount();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return base.getColumnCount();
+    }
+
+    /**
+     * Overlays keep the size of their base.
+     * @param theCount ignored
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setRowCount(final int theCount) {
+        throw new UnsupportedOperationException("Overlays keep the size of their base sheet");
+    }
+
+    /**
+     * Overlays keep the size of their base.
+     * @param theCount ignored
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setColumnCount(final int theCount) {
+        throw new UnsupportedOperationException("Overlays keep the size of their base sheet");
+    }
+
+    @Override
+    public int size() {
+        return base.size();
+    }
+
+    @Override
+    public String toCellRef(final int pRow, final int pCol) {
+        return base.toCellRef(pRow, pCol);
+    }
+
+    /**
+     * View of the overlay's values over the base sheet's, for formulas to read. Lookups scan rather than
+     * use the base sheet's lookup indexes, since those do not know about the overlay's values. Formulas naming
+     * other sheets of the base sheet's workbook read them as they are.
+     */
+    private final class OverlayValues extends AbstractMap<String, Double> implements WorkbookCells, SheetCells {
+        @Override
+        public Double get(Object theRowColumn) {
+            return getOrDefault(theRowColumn, null);
+        }
+
+        @Override
+        public Double getOrDefault(Object theRowColumn, Double theDefault) {
+            Double value = values.get(theRowColumn);
+            if (value != null || values.containsKey(theRowColumn)) return value;
+            if (instructions.containsKey(theRowColumn)) return theDefault; // cleared by the overlay
+            return base.getCellValues().getOrDefault(theRowColumn, theDefault);
+        }
+
+        @Override
+        public boolean containsKey(Object theRowColumn) {
+            if (values.containsKey(theRowColumn)) return true;
+            if (instructions.containsKey(theRowColumn)) return false;
+            return base.getCellValues().containsKey(theRowColumn);
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet() {
+            Map<String, Double> merged = new HashMap<>(base.getCellValues());
+            merged.keySet().removeAll(instructions.keySet());
+            merged.putAll(values);
+            return merged.entrySet();
+        }
+
+        @Override
+        public Map<String, Double> getSheetCells(String theSheet) {
+            return theSheet.equals(base.getSheetName()) ? this : base.getSheetCells(theSheet);
+        }
+
+        @Override
+        public int getRowCount() {
+            return base.getRowCount();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return base.getColumnCount();
+        }
+
+        @Override
+        public void forEachNumber(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn,
+                                  DoubleConsumer theAction) {
+            base.forEachNumber(theFirstRow, theFirstColumn, theLastRow, theLastColumn, instructions.keySet(), this, theAction);
+        }
+    }
+
+    //Thrown within the overlay when a batch of formulas would form a cycle
+    private static final class CycleException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CycleException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package app.model.spread;
 
+import app.model.expr.CompiledExpression;
+
 /**
  * Class representing a single spreadsheet cell
  * @author Jace Hamblin
@@ -7,6 +9,7 @@ package app.model.spread;
 public class SpreadsheetCell {
     private Double value;
     private String instruction;
+    private CompiledExpression compiled;
 
     /**
      * Constructor for spreadsheet cell.
@@ -37,6 +40,7 @@ public class SpreadsheetCell {
      * @param theInstruction the equation to be inputted, as a string
      */
     public void setInstruction(String theInstruction) {
+        if (!theInstruction.equals(instruction)) compiled = null;
         instruction = theInstruction;
     }
 
@@ -47,4 +51,20 @@ public class SpreadsheetCell {
     public String getInstruction() {
         return instruction;
     }
+
+    /**
+     * Sets the compiled form of the cell's equation, kept until the equation changes
+     * @param theCompiled the compiled equation
+     */
+    public void setCompiledInstruction(CompiledExpression theCompiled) {
+        compiled = theCompiled;
+    }
+
+    /**
+     * Gets the compiled form of the cell's equation
+     * @return the compiled equation, or null if it has not been compiled since it last changed
+     */
+    public CompiledExpression getCompiledInstruction() {
+        return compiled;
+    }
 }
@@ -1,31 +1,69 @@
 package app.model.spread;
 
+import app.model.expr.ColumnEvaluator;
+import app.model.expr.CompiledExpression;
 import app.model.expr.ExpressionReader;
 import app.model.expr.GrammarExpressionReader;
+import app.model.expr.IndexedCells;
+import app.model.expr.LookupIndexCache;
+import app.model.expr.SheetCells;
+import app.model.expr.WorkbookCells;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Objects;
 import java.util.List;
-import java.util.ArrayDeque;
-import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleConsumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
 
 /**
  * Spreadsheet ADT that holds all data about cells and their relation to other cells in
- * a graph, implemented as an adjacency list.
+ * a graph. Alongside the cells it keeps, for every cell, the formulas that refer to it, as a
+ * {@link DependencyGraph}, so that an edit only recalculates the cells that depend on it. A sheet may belong
+ * to a {@link Workbook}, whose other sheets its formulas can then refer to by name.
  *
  * @author Jace Hamblin
  * @author Roman Bureacov
  */
 public class SpreadsheetGraph implements Spreadsheet {
-    private final int size;
+    //The fewest cells of one formula down a column worth evaluating at once with a ColumnEvaluator
+    private static final int MIN_BATCH = 32;
+
     private int rows;
     private int columns;
-    private final Map<String, GraphVertex> adjList;
-    private boolean cycle;
+    private final CellStore adjList;
+    private final DependencyGraph dependencies;
+    private final Set<GraphVertex> volatileCells;
+    //Formulas that failed to compile, which refer to nothing as far as the dependencies go, but whose text is
+    //rewritten all the same when cells move
+    private final Set<GraphVertex> uncompiledFormulas;
     private final ExpressionReader mainReader;
+    private final LookupIndexCache lookupIndexes;
+    private final CellValues cellValues;
+    private final List<RecalcListener> recalcListeners;
+    private final List<EditListener> editListeners;
+    private final List<ValueListener> valueListeners;
+    //Cells whose values may have changed since the value listeners were last told, or null without listeners
+    private Set<String> changedCells;
+    private volatile CalculationPlan plan;
+    private EditJournal journal;
+    //The workbook the sheet belongs to and its name there in upper case, or null for a sheet on its own
+    private Workbook workbook;
+    private String sheetName;
 
     /**
      * Constructor for the spreadsheet with the given number of rows and columns
@@ -36,8 +74,15 @@ public class SpreadsheetGraph implements Spreadsheet {
         mainReader = new GrammarExpressionReader();
         rows = theRowNum;
         columns = theColumnNum;
-        size = rows * columns;
-        adjList = new HashMap<>();
+        adjList = new CellStore();
+        dependencies = new DependencyGraph();
+        volatileCells = new LinkedHashSet<>();
+        uncompiledFormulas = new LinkedHashSet<>();
+        lookupIndexes = new LookupIndexCache();
+        cellValues = new CellValues();
+        recalcListeners = new CopyOnWriteArrayList<>();
+        editListeners = new CopyOnWriteArrayList<>();
+        valueListeners = new CopyOnWriteArrayList<>();
     }
 
     /**
@@ -93,30 +138,48 @@ public class SpreadsheetGraph implements Spreadsheet {
      */
     @Override
     public void setCellInstructions(String theInstructions, String theRowColumn) {
-        theInstructions = theInstructions.trim();
-        if (!mainReader.isCellRef(theRowColumn))
-            throw new IllegalArgumentException("Row and column designation is not properly formatted");
-
-        if (theInstructions.isEmpty()) {
-            adjList.remove(theRowColumn);
-            evaluateInstructions();
-        } else {
-            if (theInstructions.startsWith("=")) theInstructions = theInstructions.toUpperCase();
-            adjList.putIfAbsent(theRowColumn, new GraphVertex(theRowColumn));
-
-            GraphVertex temp = adjList.get(theRowColumn);
-            String oldInstructions = temp.getCell().getInstruction();
-            temp.getCell().setInstruction(theInstructions);
-            evaluateInstructions();
-            //In case of cycle
-            if(cycle) {
-                temp.getCell().setInstruction(oldInstructions);
-                cycle = false;
-                throw new IllegalArgumentException("Cycle detected, cyclic instructions invalid");
+        CellEditEvent event = new CellEditEvent();
+        event.begin();
+        boolean succeeded = false;
+        try {
+            if (!mainReader.isCellRef(theRowColumn))
+                throw new IllegalArgumentException("Row and column designation is not properly formatted");
+            checkInRange(theRowColumn);
+            Map<String, String> change = new HashMap<>(2);
+            change.put(theRowColumn, theInstructions);
+            //Counted by the recalculation, so a rejected edit, whose cell may not even exist, is never looked up
+            event.dependents = apply(change, List.of(), false);
+            succeeded = true;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.cellRef = theRowColumn;
+                event.instructions = theInstructions;
+                event.succeeded = succeeded;
+                event.commit();
             }
         }
     }
 
+    /**
+     * Sets the instructions of many cells at once and evaluates the cells they affect a single time, rather than
+     * once per cell. Every instruction is kept even if some fail to evaluate, or form a cycle, in which case those
+     * cells have no value and the first failure is thrown once the rest of the affected cells are evaluated.
+     * @param theInstructions the instructions to be provided to each cell, keyed by row and column in the
+     *                        format "R#C#". Empty instructions clear the cell.
+     * @throws IllegalArgumentException if a cell designation is malformed or outside the sheet, in which case
+     *                                  nothing is set, if the
+     *                                  instructions form a cycle, or if a cell failed to evaluate.
+     */
+    public void setCellInstructions(Map<String, String> theInstructions) {
+        for (String rowColumn : theInstructions.keySet()) {
+            if (!mainReader.isCellRef(rowColumn))
+                throw new IllegalArgumentException("Row and column designation %s is not properly formatted".formatted(rowColumn));
+            checkInRange(rowColumn);
+        }
+        apply(theInstructions, List.of(), true);
+    }
+
     /**
      * Sets cell instructions and evaluates cell values with provided instructions, cell is found using int row and column.
      * @param theInstructions the instruction to be provided to the cell, must begin with "=" to be evaluated
@@ -149,30 +212,168 @@ public class SpreadsheetGraph implements Spreadsheet {
     }
 
     /**
-     * Sets the number of rows in the spreadsheet.
+     * Sets the number of rows in the spreadsheet. Cells in rows cut off by shrinking are emptied at once, in one
+     * edit, recalculating the cells that depend on them, and the undo journal is cleared, as its edits may name
+     * those cells.
      * @param theCount the number of rows to resize to
+     * @throws IllegalArgumentException if the count is not positive
      */
     @Override
     public void setRowCount(final int theCount) {
+        if (theCount <= 0) throw new IllegalArgumentException("Row count %d must be positive".formatted(theCount));
+        int previous = rows;
         rows = theCount;
+        if (theCount < previous) evictOutOfRange(true, theCount, previous);
+        for (EditListener listener : editListeners) listener.sizeChanged(rows, columns);
     }
 
     /**
-     * Sets the number of columns in the spreadsheet.
+     * Sets the number of columns in the spreadsheet. Cells in columns cut off by shrinking are emptied as with
+     * {@link #setRowCount}.
      * @param theCount the number of columns to resize to
+     * @throws IllegalArgumentException if the count is not positive
      */
     @Override
     public void setColumnCount(final int theCount) {
+        if (theCount <= 0) throw new IllegalArgumentException("Column count %d must be positive".formatted(theCount));
+        int previous = columns;
         columns = theCount;
+        if (theCount < previous) evictOutOfRange(false, theCount, previous);
+        for (EditListener listener : editListeners) listener.sizeChanged(rows, columns);
+    }
+
+    /**
+     * Inserts empty rows, moving the rows from there on down and growing the sheet to fit. Formulas that refer to
+     * moved cells are rewritten to follow them, ranges spanning the inserted rows grow, and only those formulas
+     * are recalculated. The undo journal is cleared, as its edits name cells by where they were.
+     * @param theRow the row, counted from one, the first inserted row becomes, at most one past the last row
+     * @param theCount the number of rows to insert
+     * @throws IllegalArgumentException if the row or count is out of range, in which case nothing changes, or if
+     *                                  a rewritten formula failed to evaluate, in which case the rows are inserted
+     *                                  regardless
+     */
+    public void insertRows(int theRow, int theCount) {
+        if (theRow < 1 || theRow > rows + 1 || theCount <= 0 || theCount > Integer.MAX_VALUE - rows)
+            throw new IllegalArgumentException("Cannot insert %d rows at row %d of %d".formatted(theCount, theRow, rows));
+        shift(true, theRow - 1, theCount);
+    }
+
+    /**
+     * Deletes rows, moving the rows after them up and shrinking the sheet to match. Formulas that refer to moved
+     * cells are rewritten to follow them and ranges spanning deleted rows shrink, while references to deleted
+     * cells are rewritten as "#REF!", which fails to compile. Only those formulas are recalculated. The undo
+     * journal is cleared, as its edits name cells by where they were.
+     * @param theRow the first row to delete, counted from one
+     * @param theCount the number of rows to delete, fewer than the rows in the sheet
+     * @throws IllegalArgumentException if the rows are out of range, in which case nothing changes, or if
+     *                                  a rewritten formula failed to evaluate, in which case the rows are deleted
+     *                                  regardless
+     */
+    public void deleteRows(int theRow, int theCount) {
+        if (theRow < 1 || theCount <= 0 || theCount > rows - theRow + 1 || theCount == rows)
+            throw new IllegalArgumentException("Cannot delete %d rows at row %d of %d".formatted(theCount, theRow, rows));
+        shift(true, theRow - 1, -theCount);
+    }
+
+    /**
+     * Inserts empty columns, as {@link #insertRows} inserts rows.
+     * @param theColumn the column, counted from one, the first inserted column becomes, at most one past the last
+     * @param theCount the number of columns to insert
+     * @throws IllegalArgumentException as {@link #insertRows} does
+     */
+    public void insertColumns(int theColumn, int theCount) {
+        if (theColumn < 1 || theColumn > columns + 1 || theCount <= 0 || theCount > Integer.MAX_VALUE - columns)
+            throw new IllegalArgumentException("Cannot insert %d columns at column %d of %d".formatted(theCount, theColumn, columns));
+        shift(false, theColumn - 1, theCount);
+    }
+
+    /**
+     * Deletes columns, as {@link #deleteRows} deletes rows.
+     * @param theColumn the first column to delete, counted from one
+     * @param theCount the number of columns to delete, fewer than the columns in the sheet
+     * @throws IllegalArgumentException as {@link #deleteRows} does
+     */
+    public void deleteColumns(int theColumn, int theCount) {
+        if (theColumn < 1 || theCount <= 0 || theCount > columns - theColumn + 1 || theCount == columns)
+            throw new IllegalArgumentException("Cannot delete %d columns at column %d of %d".formatted(theCount, theColumn, columns));
+        shift(false, theColumn - 1, -theCount);
+    }
+
+    /**
+     * Sorts the rows of a block of cells by the values in some of its columns, moving each row's cells within the
+     * block as a whole. Numbers come before text, text is compared ignoring case, empty cells and formulas without
+     * a value come last, and rows that tie on every key keep their order. Formulas that refer to moved cells are
+     * rewritten to follow them, while ranges are left as they are. The sort is a single edit, which can be undone.
+     * @param theFirstRow the first row of the block, counted from one
+     * @param theLastRow the last row of the block, counted from one
+     * @param theFirstColumn the first column of the block, counted from one
+     * @param theLastColumn the last column of the block, counted from one
+     * @param theKeyColumns the columns to sort by, counted from one, most significant first
+     * @param theAscending for each key column, true to put smaller values first, false for larger values first
+     * @throws IllegalArgumentException if the block or keys are out of range, in which case nothing changes, or if
+     *                                  a moved formula failed to evaluate, in which case the rows are sorted
+     *                                  regardless
+     */
+    public void sortRows(int theFirstRow, int theLastRow, int theFirstColumn, int theLastColumn,
+                         int[] theKeyColumns, boolean[] theAscending) {
+        if (theFirstRow < 1 || theLastRow < theFirstRow || theLastRow > rows
+                || theFirstColumn < 1 || theLastColumn < theFirstColumn || theLastColumn > columns)
+            throw new IllegalArgumentException("Cannot sort rows %d to %d, columns %d to %d of the %dx%d sheet"
+                    .formatted(theFirstRow, theLastRow, theFirstColumn, theLastColumn, rows, columns));
+        if (theKeyColumns.length == 0 || theKeyColumns.length != theAscending.length)
+            throw new IllegalArgumentException("Sort needs one direction for each of at least one key column");
+        for (int keyColumn : theKeyColumns) {
+            if (keyColumn < theFirstColumn || keyColumn > theLastColumn)
+                throw new IllegalArgumentException("Key column %d is outside columns %d to %d"
+                        .formatted(keyColumn, theFirstColumn, theLastColumn));
+        }
+
+        int firstRow = theFirstRow - 1;
+        int count = theLastRow - theFirstRow + 1;
+        RowSort sort = new RowSort(count);
+        double[] numbers = new double[count];
+        String[] texts = new String[count];
+        for (int k = 0; k < theKeyColumns.length; k++) {
+            for (int i = 0; i < count; i++) {
+                GraphVertex vertex = adjList.get(toCellRef(firstRow + i, theKeyColumns[k] - 1));
+                Double value = vertex == null ? null : vertex.getCell().getValue();
+                numbers[i] = value == null ? Double.NaN : value;
+                texts[i] = vertex == null || value != null || vertex.getCell().getInstruction().startsWith("=")
+                        ? null : vertex.getCell().getInstruction();
+            }
+            sort.addKey(numbers, texts, theAscending[k]);
+        }
+        permuteRows(firstRow, theFirstColumn - 1, theLastColumn - 1, sort.newRows());
+    }
+
+    /**
+     * Evaluates again every formula calling a volatile function, such as RAND or NOW, along with the cells that
+     * depend on them, in a single recalculation. Edits already do so; this is for refreshing the sheet when
+     * nothing was edited. No edit is recorded, as no instructions change.
+     * @throws IllegalArgumentException if a cell failed to evaluate, in which case the rest are evaluated regardless
+     */
+    public void recalculateVolatile() {
+        if (volatileCells.isEmpty()) return;
+        Recalculation recalculation = new Recalculation();
+        List<GraphVertex> ordering = recalculation.sort(volatileRowColumns());
+        recalculation.evaluate(ordering == null ? recalculation.sortAcyclic() : ordering);
+    }
+
+    /**
+     * Counts the formulas calling a volatile function.
+     * @return the number of volatile cells
+     */
+    public int getVolatileCount() {
+        return volatileCells.size();
     }
 
     /**
      * Gets the size of the spreadsheet by number of cells.
-     * @return the size of the spreadsheet in number of cells.
+     * @return the size of the spreadsheet in number of cells, at most Integer.MAX_VALUE.
      */
     @Override
     public int size() {
-        return size;
+        return (int) Math.min(Integer.MAX_VALUE, (long) rows * columns);
     }
 
     /**
@@ -186,110 +387,973 @@ public class SpreadsheetGraph implements Spreadsheet {
         return "R" + (pRow + 1) + "C" + (pCol + 1);
     }
 
-    //Method to evaluate each cells function and set its value to the result
-    private void evaluateInstructions() {
-        Queue<GraphVertex> ordering = topSort();
-        //Cycle checker, ordering should always contain all values unless cycle
-        if (!ordering.containsAll(adjList.values())) {
-            cycle = true;
-            return;
+    /**
+     * Adds a listener to be told about every recalculation. While no listener is added, recalculations
+     * are not timed at all.
+     * @param theListener the listener to add
+     */
+    public void addRecalcListener(RecalcListener theListener) {
+        recalcListeners.add(Objects.requireNonNull(theListener));
+    }
+
+    /**
+     * Removes a recalculation listener.
+     * @param theListener the listener to remove
+     */
+    public void removeRecalcListener(RecalcListener theListener) {
+        recalcListeners.remove(theListener);
+    }
+
+    /**
+     * Adds a listener to be told of every edit to the sheet's cells and size.
+     * @param theListener the listener to add
+     */
+    public void addEditListener(EditListener theListener) {
+        editListeners.add(Objects.requireNonNull(theListener));
+    }
+
+    /**
+     * Removes an edit listener.
+     * @param theListener the listener to remove
+     */
+    public void removeEditListener(EditListener theListener) {
+        editListeners.remove(theListener);
+    }
+
+    /**
+     * Adds a listener to be told of the cells changed by every recalculation. While no listener is added, changed
+     * cells are not kept track of at all.
+     * @param theListener the listener to add
+     */
+    public void addValueListener(ValueListener theListener) {
+        valueListeners.add(Objects.requireNonNull(theListener));
+        if (changedCells == null) changedCells = new LinkedHashSet<>();
+    }
+
+    /**
+     * Removes a value listener.
+     * @param theListener the listener to remove
+     */
+    public void removeValueListener(ValueListener theListener) {
+        valueListeners.remove(theListener);
+        if (valueListeners.isEmpty()) changedCells = null;
+    }
+
+    /**
+     * Gets the cache of lookup indexes built over this sheet's cells.
+     * @return the lookup index cache
+     */
+    public LookupIndexCache getLookupIndexCache() {
+        return lookupIndexes;
+    }
+
+    /**
+     * Gets the name of the sheet in the workbook it belongs to, by which formulas of other sheets refer to it.
+     * @return the name, in upper case, or null if the sheet does not belong to a workbook
+     */
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    //Helper method that gets the dependencies of the evaluated sheet, planned again after every edit
+    synchronized CalculationPlan getCalculationPlan() {
+        if (plan == null) plan = new CalculationPlan(adjList.values(), this::wholeReferencesOf);
+        return plan;
+    }
+
+    //Helper method that gets the vertex of a cell, or null if the cell is empty
+    GraphVertex getVertex(String theRowColumn) {
+        return adjList.get(theRowColumn);
+    }
+
+    //Helper method that copies the instructions of every cell that has any, in row-major order
+    Map<String, String> getInstructions() {
+        List<GraphVertex> vertices = new ArrayList<>(adjList.values());
+        vertices.sort(Comparator.comparingInt(GraphVertex::getRow).thenComparingInt(GraphVertex::getColumn));
+        Map<String, String> instructions = new LinkedHashMap<>();
+        for (GraphVertex vertex : vertices) instructions.put(vertex.getRowColumn(), vertex.getCell().getInstruction());
+        return instructions;
+    }
+
+    //Helper method that gets the live view of the cell values that formulas read
+    Map<String, Double> getCellValues() {
+        return cellValues;
+    }
+
+    //Helper method that gives the numbers of a block of cells row by row, as a view over the sheet that sets some
+    //cells of its own reads them, looking only at the cells the sheet holds or the view sets, within the sheet
+    void forEachNumber(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn,
+                       Collection<String> theSetCells, Map<String, Double> theView, DoubleConsumer theAction) {
+        int lastRow = Math.min(theLastRow, rows - 1);
+        int lastColumn = Math.min(theLastColumn, columns - 1);
+        List<GraphVertex> held = adjList.within(theFirstRow, theFirstColumn, lastRow, lastColumn);
+        //Positions of the cells to read, as the row in the high half and the column in the low half
+        long[] positions = new long[held.size() + theSetCells.size()];
+        int count = 0;
+        for (GraphVertex vertex : held) positions[count++] = (long) vertex.getRow() << 32 | vertex.getColumn();
+        for (String rowColumn : theSetCells) {
+            int columnMark = rowColumn.indexOf('C');
+            int row = Integer.parseInt(rowColumn, 1, columnMark, 10) - 1;
+            int column = Integer.parseInt(rowColumn, columnMark + 1, rowColumn.length(), 10) - 1;
+            if (row >= theFirstRow && row <= lastRow && column >= theFirstColumn && column <= lastColumn) {
+                positions[count++] = (long) row << 32 | column;
+            }
+        }
+        Arrays.sort(positions, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && positions[i] == positions[i - 1]) continue;
+            Double value = theView.get(toCellRef((int) (positions[i] >>> 32), (int) positions[i]));
+            if (value != null) theAction.accept(value);
         }
+    }
 
-        while (!ordering.isEmpty()) {
-            //Construct a valid map of values for the expression reader to read
-            Map<String, Double> readerInput = new HashMap<>();
-            Collection<GraphVertex> vertices = adjList.values();
-            for (GraphVertex tempStorage : vertices) {
-                readerInput.put(tempStorage.getRowColumn(), tempStorage.getCell().getValue());
+    //Helper method that gets the cells of a sheet of the workbook the sheet belongs to, this one included, for
+    //formulas that name it
+    Map<String, Double> getSheetCells(String theSheet) {
+        return cellValues.getSheetCells(theSheet);
+    }
+
+    //Helper method that puts the sheet into a workbook under a name, or takes it out of its workbook given nulls,
+    //linking again the formulas that name sheets. Gives the cells holding them, which need recalculating
+    List<String> setWorkbook(Workbook theWorkbook, String theName) {
+        if (theWorkbook != null && workbook != null) throw new IllegalStateException("Sheet already belongs to a workbook");
+        List<GraphVertex> naming = new ArrayList<>();
+        for (GraphVertex vertex : adjList.values()) {
+            CompiledExpression compiled = vertex.getCell().getCompiledInstruction();
+            if (compiled != null && !compiled.getSheetReferences().isEmpty()) naming.add(vertex);
+        }
+        for (GraphVertex vertex : naming) unlink(vertex);
+        workbook = theWorkbook;
+        sheetName = theName;
+        plan = null;
+        List<String> rowColumns = new ArrayList<>(naming.size());
+        for (GraphVertex vertex : naming) {
+            link(vertex);
+            rowColumns.add(vertex.getRowColumn());
+        }
+        return rowColumns;
+    }
+
+    //Helper method that lists the cells of this sheet a formula refers to: its unqualified references, along with
+    //those naming this sheet in its workbook
+    List<String> referencesOf(CompiledExpression theCompiled) {
+        List<String> sheetRefs = theCompiled.getSheetCellRefs();
+        if (sheetName == null || sheetRefs.isEmpty()) return theCompiled.getCellRefs();
+        List<String> references = new ArrayList<>(theCompiled.getCellRefs());
+        String qualifier = sheetName + "!";
+        for (String reference : sheetRefs) {
+            if (reference.startsWith(qualifier)) references.add(reference.substring(qualifier.length()));
+        }
+        return references;
+    }
+
+    //Helper method that lists the cells and ranges of this sheet a formula refers to, as referencesOf does, but with
+    //each range whole, in the format "R#C#:R#C#", rather than cell by cell
+    List<String> wholeReferencesOf(CompiledExpression theCompiled) {
+        List<String> sheetRefs = theCompiled.getSheetReferences();
+        if (sheetName == null || sheetRefs.isEmpty()) return theCompiled.getReferences();
+        List<String> references = new ArrayList<>(theCompiled.getReferences());
+        String qualifier = sheetName + "!";
+        for (String reference : sheetRefs) {
+            if (reference.startsWith(qualifier)) references.add(reference.substring(qualifier.length()));
+        }
+        return references;
+    }
+
+    //Helper method that rewrites the references of formulas on this sheet to another sheet of the workbook whose
+    //cells moved, recording the rewrite as one edit, without recalculating anything. A formula left referring to
+    //a deleted cell no longer compiles. Gives the cells rewritten
+    List<String> rewriteReferences(Collection<GraphVertex> theVertices, UnaryOperator<CompiledExpression> theMove,
+                                   UnaryOperator<String> theTextMove) {
+        Map<String, String> previous = new LinkedHashMap<>();
+        for (GraphVertex vertex : theVertices) {
+            SpreadsheetCell cell = vertex.getCell();
+            CompiledExpression compiled = cell.getCompiledInstruction();
+            CompiledExpression moved = theMove.apply(compiled);
+            if (moved == compiled) continue;
+            previous.put(vertex.getRowColumn(), cell.getInstruction());
+            unlink(vertex);
+            if (moved == null) {
+                cell.setInstruction("=" + theTextMove.apply(cell.getInstruction().substring(1)));
+                uncompiledFormulas.add(vertex);
+            } else {
+                cell.setInstruction("=" + moved.getExpression());
+                cell.setCompiledInstruction(moved);
+                link(vertex);
             }
+        }
+        if (previous.isEmpty()) return List.of();
+        plan = null;
+        recordEdit(previous);
+        return new ArrayList<>(previous.keySet());
+    }
 
-            GraphVertex nextToCalc = ordering.remove();
-            String expression = nextToCalc.getCell().getInstruction();
-            if (expression.startsWith("=")) {
-                // is an expression
+    //Helper method that recalculates cells of this sheet along with the cells depending on them, for the workbook,
+    //which carries the recalculation on to other sheets itself. Gives the cells recalculated and the first failure
+    Workbook.Recalculated recalculateReferences(Collection<String> theCells) {
+        Recalculation recalculation = new Recalculation(false);
+        RuntimeException failure = null;
+        try {
+            List<GraphVertex> ordering = recalculation.sort(theCells);
+            recalculation.evaluate(ordering == null ? recalculation.sortAcyclic() : ordering);
+        } catch (RuntimeException exc) {
+            failure = exc;
+        }
+        List<String> recalculated = new ArrayList<>(recalculation.affected.size());
+        for (GraphVertex vertex : recalculation.affected) recalculated.add(vertex.getRowColumn());
+        return new Workbook.Recalculated(recalculated, failure);
+    }
 
-                //Strip "=" so the expression reader can read the expression
-                expression = expression.substring(1);
-                List<String> cellRefs = mainReader.getCellRefsOf(expression);
-                while (!cellRefs.isEmpty()) {
-                    //Any nonexistent cell refs are treated as empty cells, thus 0
-                    if (adjList.get(cellRefs.getFirst()) == null) {
-                        expression = expression.replaceAll(cellRefs.getFirst(), "0");
-                    }
-                    cellRefs.removeFirst();
+    //Helper method that empties the values of cells of this sheet along with the cells depending on them, for the
+    //workbook, once they are found caught in a cycle across sheets. Gives the cells emptied
+    List<String> emptyReferences(Collection<String> theCells) {
+        Recalculation recalculation = new Recalculation(false);
+        List<String> emptied = new ArrayList<>();
+        try {
+            recalculation.sort(theCells);
+            for (GraphVertex vertex : recalculation.affected) {
+                setValue(vertex, null);
+                emptied.add(vertex.getRowColumn());
+            }
+        } finally {
+            recalculation.finish();
+        }
+        return emptied;
+    }
+
+    //Helper method that lists every cell of the sheet
+    List<String> getRowColumns() {
+        return new ArrayList<>(adjList.keySet());
+    }
+
+    //Helper method that sets the journal to record edits to, or null to stop recording them
+    void setJournal(EditJournal theJournal) {
+        if (theJournal != null && journal != null) throw new IllegalStateException("Sheet already has an edit journal");
+        journal = theJournal;
+    }
+
+    //Helper method that gets the formula cells referring directly to a cell
+    List<GraphVertex> dependentsOf(String theRowColumn) {
+        int columnMark = theRowColumn.indexOf('C');
+        return dependencies.dependentsOf(Integer.parseInt(theRowColumn, 1, columnMark, 10) - 1,
+                Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) - 1);
+    }
+
+    //Helper method that finds the cells an edit of some cells recalculates, themselves included if not empty
+    List<GraphVertex> affected(Collection<String> theChanged) {
+        return dependencies.affected(theChanged, adjList);
+    }
+
+    //Helper method that checks if any formula refers to a cell
+    private boolean hasDependents(String theRowColumn) {
+        int columnMark = theRowColumn.indexOf('C');
+        return dependencies.hasDependents(Integer.parseInt(theRowColumn, 1, columnMark, 10) - 1,
+                Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) - 1);
+    }
+
+    //Helper method that rejects cells outside the sheet
+    void checkInRange(String theRowColumn) {
+        int columnMark = theRowColumn.indexOf('C');
+        long row = Long.parseLong(theRowColumn, 1, columnMark, 10);
+        long column = Long.parseLong(theRowColumn, columnMark + 1, theRowColumn.length(), 10);
+        if (row < 1 || row > rows || column < 1 || column > columns)
+            throw new IllegalArgumentException("Cell %s is outside the %dx%d sheet".formatted(theRowColumn, rows, columns));
+    }
+
+    //Helper method that empties the cells left outside the sheet by shrinking it, in one edit, so the cells that
+    //depended on them are recalculated once
+    private void evictOutOfRange(boolean theRows, int theFrom, int theTo) {
+        Map<String, String> evicted = new LinkedHashMap<>();
+        for (GraphVertex vertex : adjList.between(theRows, theFrom, theTo, theRows ? columns : rows)) {
+            evicted.put(vertex.getRowColumn(), "");
+        }
+        if (evicted.isEmpty()) return;
+        //Undoing past a resize would bring back cells outside the sheet, so the journal starts over instead
+        EditJournal savedJournal = journal;
+        journal = null;
+        try {
+            apply(evicted, List.of(), true);
+        } catch (IllegalArgumentException exc) {
+            //Cells that depended on the evicted cells and now fail are left without a value, as after any edit
+        } finally {
+            journal = savedJournal;
+            if (journal != null) journal.clear();
+        }
+    }
+
+    //Helper method that inserts or deletes rows or columns. The cells past them move with the rows or columns of
+    //the cell store without being visited, the compiled formulas that referred to moved or deleted cells are
+    //shifted rather than read again, and only those formulas are recalculated, along with the cells that depend
+    //on them.
+    private void shift(boolean theRows, int theAt, int theDelta) {
+        plan = null;
+        lookupIndexes.clear();
+        for (EditListener listener : editListeners) listener.cellsShifted(theRows, theAt, theDelta);
+        //Formulas of other sheets are rewritten by the workbook, and recalculated once this sheet is
+        if (workbook != null) workbook.sheetShifted(this, theRows, theAt, theDelta);
+
+        //Every formula referring to a cell from theAt on is listed under that cell
+        Set<GraphVertex> rewritten = new HashSet<>();
+        dependencies.collectDependentsFrom(theRows, theAt, rewritten);
+        for (GraphVertex vertex : rewritten) unlink(vertex);
+
+        //Cells only move with the rows or columns they are in, so they are only visited for the value listeners
+        List<GraphVertex> moved = new ArrayList<>();
+        if (changedCells != null) {
+            for (GraphVertex vertex : adjList.values()) {
+                if ((theRows ? vertex.getRow() : vertex.getColumn()) >= theAt) {
+                    changedCells.add(vertex.getRowColumn());
+                    moved.add(vertex);
+                }
+            }
+        }
+        for (GraphVertex vertex : adjList.shift(theRows, theAt, theDelta, theRows ? columns : rows)) {
+            unlink(vertex);
+            rewritten.remove(vertex);
+            uncompiledFormulas.remove(vertex);
+        }
+        if (changedCells != null) {
+            for (GraphVertex vertex : moved) {
+                if (adjList.get(vertex.getRow(), vertex.getColumn()) == vertex) changedCells.add(vertex.getRowColumn());
+            }
+        }
+        if (theRows) rows += theDelta;
+        else columns += theDelta;
+        if (journal != null) journal.clear();
+        for (EditListener listener : editListeners) listener.sizeChanged(rows, columns);
+
+        Recalculation recalculation = new Recalculation();
+        List<String> changed = new ArrayList<>();
+        for (GraphVertex vertex : rewritten) {
+            SpreadsheetCell cell = vertex.getCell();
+            CompiledExpression shifted = cell.getCompiledInstruction().shift(sheetName, true, theRows, theAt, theDelta);
+            if (shifted == null) {
+                cell.setInstruction("=" + CompiledExpression.shiftReferences(cell.getInstruction().substring(1),
+                        sheetName, true, theRows, theAt, theDelta));
+                recalculation.compileFailures.put(vertex, new IllegalArgumentException(
+                        "Formula in %s refers to a deleted cell".formatted(vertex.getRowColumn())));
+                uncompiledFormulas.add(vertex);
+            } else {
+                cell.setInstruction("=" + shifted.getExpression());
+                cell.setCompiledInstruction(shifted);
+                link(vertex);
+            }
+            changed.add(vertex.getRowColumn());
+        }
+        for (GraphVertex vertex : List.copyOf(uncompiledFormulas)) {
+            if (rewritten.contains(vertex)) continue;
+            String instructions = vertex.getCell().getInstruction();
+            String shifted = "=" + CompiledExpression.shiftReferences(instructions.substring(1), sheetName, true,
+                    theRows, theAt, theDelta);
+            if (shifted.equals(instructions)) continue;
+            //Still failing to compile, as it almost always will, it keeps having no value and is not reported again
+            setInstructions(vertex.getRowColumn(), shifted, null);
+            if (vertex.getCell().getCompiledInstruction() != null) changed.add(vertex.getRowColumn());
+        }
+
+        List<GraphVertex> ordering = recalculation.sort(changed);
+        recalculation.evaluate(ordering == null ? recalculation.sortAcyclic() : ordering);
+    }
+
+    //Helper method that moves the rows of a block into another order. The moved cells keep their vertices, the
+    //compiled formulas that referred to them are rewritten rather than read again, and the whole move is recorded
+    //as one edit, so the journal can undo it and the edit listeners can replay it cell by cell.
+    private void permuteRows(int theFirstRow, int theFirstColumn, int theLastColumn, int[] theNewRows) {
+        Map<String, String> previous = new LinkedHashMap<>();
+        List<GraphVertex> moved = new ArrayList<>();
+        Set<GraphVertex> rewritten = new HashSet<>();
+        for (int i = 0; i < theNewRows.length; i++) {
+            if (theNewRows[i] == i) continue;
+            for (int column = theFirstColumn; column <= theLastColumn; column++) {
+                String rowColumn = toCellRef(theFirstRow + i, column);
+                rewritten.addAll(dependentsOf(rowColumn));
+                GraphVertex vertex = adjList.get(rowColumn);
+                if (vertex == null) continue;
+                moved.add(vertex);
+                previous.put(rowColumn, vertex.getCell().getInstruction());
+            }
+        }
+        if (moved.isEmpty() && rewritten.isEmpty()) return;
+        plan = null;
+        lookupIndexes.clear();
+        for (GraphVertex vertex : rewritten) {
+            if (!previous.containsKey(vertex.getRowColumn())) {
+                previous.put(vertex.getRowColumn(), vertex.getCell().getInstruction());
+            }
+            unlink(vertex);
+        }
+
+        //Formulas that failed to compile refer to nothing yet, so only their text can be rewritten
+        List<GraphVertex> uncompiled = List.copyOf(uncompiledFormulas);
+        for (GraphVertex vertex : moved) adjList.remove(vertex.getRowColumn());
+        for (GraphVertex vertex : moved) {
+            vertex.moveTo(theFirstRow + theNewRows[vertex.getRow() - theFirstRow], vertex.getColumn());
+            adjList.put(vertex.getRowColumn(), vertex);
+            //Cells landed on were either moved themselves, and so already listed, or empty
+            if (!previous.containsKey(vertex.getRowColumn())) previous.put(vertex.getRowColumn(), null);
+        }
+
+        //Moved cells keep their values, so only formulas rewritten and those referring to the block are recalculated
+        List<String> changed = new ArrayList<>();
+        for (GraphVertex vertex : rewritten) {
+            SpreadsheetCell cell = vertex.getCell();
+            CompiledExpression permuted = cell.getCompiledInstruction()
+                    .permuteRows(sheetName, true, theFirstRow, theFirstColumn, theLastColumn, theNewRows);
+            cell.setInstruction("=" + permuted.getExpression());
+            cell.setCompiledInstruction(permuted);
+            link(vertex);
+            changed.add(vertex.getRowColumn());
+        }
+        for (GraphVertex vertex : uncompiled) {
+            String instructions = vertex.getCell().getInstruction();
+            String permuted = "=" + CompiledExpression.permuteReferences(instructions.substring(1), sheetName, true,
+                    theFirstRow, theFirstColumn, theLastColumn, theNewRows);
+            if (permuted.equals(instructions)) continue;
+            if (!previous.containsKey(vertex.getRowColumn())) previous.put(vertex.getRowColumn(), instructions);
+            //Still failing to compile, as it almost always will, it keeps having no value and is not reported again
+            setInstructions(vertex.getRowColumn(), permuted, null);
+            if (vertex.getCell().getCompiledInstruction() != null) changed.add(vertex.getRowColumn());
+        }
+        for (String rowColumn : previous.keySet()) {
+            if (hasDependents(rowColumn)) changed.add(rowColumn);
+        }
+
+        Recalculation recalculation = new Recalculation();
+        if (changedCells != null) changedCells.addAll(previous.keySet());
+        recordEdit(previous);
+        //Formulas of other sheets are rewritten by the workbook, and recalculated once this sheet is
+        if (workbook != null) {
+            workbook.rowsPermuted(this, previous.keySet(), theFirstRow, theFirstColumn, theLastColumn, theNewRows);
+        }
+        List<GraphVertex> ordering = recalculation.sort(changed);
+        //Ranges stay where they are while the cells in them move, so a formula can be moved into its own range
+        recalculation.evaluate(ordering == null ? recalculation.sortAcyclic() : ordering);
+    }
+
+    //Helper method that sets the instructions of cells and recalculates the cells they affect, along with those
+    //affected by other cells already changed. Cycles are either undone, or kept with the cells caught in them left
+    //without a value. Gives the number of cells recalculated besides the edited ones.
+    private int apply(Map<String, String> theInstructions, Collection<String> theAlsoChanged, boolean keepCycles) {
+        plan = null;
+        Recalculation recalculation = new Recalculation();
+        Map<String, String> previous = new LinkedHashMap<>();
+        int edited = 0;
+        for (Map.Entry<String, String> entry : theInstructions.entrySet()) {
+            previous.put(entry.getKey(), getInstructionsOrNull(entry.getKey()));
+            setInstructions(entry.getKey(), entry.getValue(), recalculation);
+            //Edited cells left with instructions are recalculated along with the cells depending on them
+            if (adjList.get(entry.getKey()) != null) edited++;
+        }
+
+        //Volatile formulas are evaluated again by every edit, as in other spreadsheets
+        Collection<String> changed = theInstructions.keySet();
+        if (!theAlsoChanged.isEmpty() || !volatileCells.isEmpty()) {
+            changed = new ArrayList<>(changed);
+            changed.addAll(theAlsoChanged);
+            changed.addAll(volatileRowColumns());
+        }
+        List<GraphVertex> ordering = recalculation.sort(changed);
+        if (ordering == null) {
+            if (!keepCycles) {
+                //Put the cells back as they were, which was free of cycles
+                for (Map.Entry<String, String> entry : previous.entrySet()) {
+                    setInstructions(entry.getKey(), entry.getValue() == null ? "" : entry.getValue(), null);
                 }
+                recalculation.finish();
+                throw new IllegalArgumentException("Cycle detected, cyclic instructions invalid");
+            }
+            ordering = recalculation.sortAcyclic();
+        }
+        if (changedCells != null) changedCells.addAll(theInstructions.keySet());
+        recordEdit(previous);
+        recalculation.evaluate(ordering);
+        return recalculation.affected.size() - edited;
+    }
+
+    //Helper method that tells the journal and edit listeners of an edit, given the instructions the edited cells
+    //had before
+    void recordEdit(Map<String, String> thePrevious) {
+        if (journal == null && editListeners.isEmpty()) return;
+        Map<String, String> current = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : thePrevious.entrySet()) {
+            String instructions = getInstructionsOrNull(entry.getKey());
+            if (!Objects.equals(entry.getValue(), instructions)) current.put(entry.getKey(), instructions);
+        }
+        if (current.isEmpty()) return;
+        if (journal != null) journal.record(thePrevious, current);
+        Map<String, String> edited = Collections.unmodifiableMap(current);
+        for (EditListener listener : editListeners) listener.cellsEdited(edited);
+    }
+
+    //Helper method that sets a cell to a literal and its value without evaluating anything, for importers that
+    //recalculate once they are done. Gives the instructions the cell had before.
+    String putLiteral(String theRowColumn, int theRow, int theColumn, String theText, Double theValue) {
+        GraphVertex vertex = adjList.get(theRowColumn);
+        String previous = null;
+        if (vertex == null) {
+            vertex = new GraphVertex(theRowColumn, theRow, theColumn);
+            adjList.put(theRowColumn, vertex);
+        } else {
+            previous = vertex.getCell().getInstruction();
+            unlink(vertex);
+        }
+        vertex.getCell().setInstruction(theText);
+        vertex.getCell().setValue(theValue);
+        uncompiledFormulas.remove(vertex);
+        if (changedCells != null) changedCells.add(theRowColumn);
+        return previous;
+    }
+
+    //Helper method that sets a cell to a formula with a value worked out elsewhere, such as the value a file was
+    //saved with, without evaluating anything. A formula that fails to compile has no value.
+    void putFormula(String theRowColumn, String theInstructions, Double theValue) {
+        setInstructions(theRowColumn, theInstructions, null);
+        GraphVertex vertex = adjList.get(theRowColumn);
+        if (vertex != null) vertex.getCell().setValue(vertex.getCell().getCompiledInstruction() == null ? null : theValue);
+        if (changedCells != null) changedCells.add(theRowColumn);
+    }
+
+    //Helper method that empties a cell without evaluating anything, for importers that recalculate once they are
+    //done. Gives the instructions the cell had before.
+    String putEmpty(String theRowColumn) {
+        GraphVertex vertex = adjList.remove(theRowColumn);
+        if (vertex == null) return null;
+        unlink(vertex);
+        uncompiledFormulas.remove(vertex);
+        if (changedCells != null) changedCells.add(theRowColumn);
+        return vertex.getCell().getInstruction();
+    }
+
+    //Helper method that finishes an import into a block of cells: sets the formulas it held the usual way, then
+    //recalculates them along with the formulas that refer to any cell in the block, all at once
+    void finishImport(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn,
+                      Map<String, String> theFormulas) {
+        plan = null;
+        lookupIndexes.clear();
+        apply(theFormulas, dependencies.cellsWithDependents(theFirstRow, theFirstColumn, theLastRow, theLastColumn), true);
+    }
+
+    //Helper method that gets the instructions of a cell, or null if the cell is empty
+    private String getInstructionsOrNull(String theRowColumn) {
+        GraphVertex vertex = adjList.get(theRowColumn);
+        return vertex == null ? null : vertex.getCell().getInstruction();
+    }
+
+    //Helper method that sets the instructions of one cell and links its formula into the dependents,
+    //without evaluating anything
+    private void setInstructions(String theRowColumn, String theInstructions, Recalculation theRecalculation) {
+        String instructions = theInstructions.trim();
+        if (instructions.startsWith("=")) instructions = instructions.toUpperCase();
+
+        GraphVertex vertex = adjList.get(theRowColumn);
+        if (vertex != null) unlink(vertex);
+        if (instructions.isEmpty()) {
+            if (vertex != null) {
+                adjList.remove(theRowColumn);
+                uncompiledFormulas.remove(vertex);
+                lookupIndexes.invalidate(vertex.getRow(), vertex.getColumn());
+            }
+            return;
+        }
+        if (vertex == null) {
+            vertex = new GraphVertex(theRowColumn);
+            adjList.put(theRowColumn, vertex);
+        }
+        vertex.getCell().setInstruction(instructions);
+        if (instructions.startsWith("=")) {
+            //Compiled here, since the cells a formula refers to come from its compiled form
+            if (vertex.getCell().getCompiledInstruction() == null) {
+                long startTime = theRecalculation != null && theRecalculation.timed ? System.nanoTime() : 0;
                 try {
-                    nextToCalc.getCell().setValue(mainReader.evaluate(expression, readerInput));
-                } catch (Exception exc) {
-                    nextToCalc.getCell().setValue(null);
-                    throw exc;
+                    //Strip "=" so the expression reader can read the expression
+                    vertex.getCell().setCompiledInstruction(mainReader.compile(instructions.substring(1)));
+                } catch (RuntimeException exc) {
+                    if (theRecalculation != null) theRecalculation.compileFailures.put(vertex, exc);
+                } finally {
+                    if (startTime != 0) theRecalculation.parseTimes.put(vertex, System.nanoTime() - startTime);
                 }
+            }
+            if (vertex.getCell().getCompiledInstruction() == null) uncompiledFormulas.add(vertex);
+            else uncompiledFormulas.remove(vertex);
+            link(vertex);
+        } else {
+            uncompiledFormulas.remove(vertex);
+        }
+    }
+
+    //Helper method that records a formula cell as a dependent of every cell and range it refers to, leaving
+    //references to other sheets of the workbook to the workbook
+    private void link(GraphVertex theVertex) {
+        CompiledExpression compiled = theVertex.getCell().getCompiledInstruction();
+        if (compiled == null) return;
+        dependencies.link(theVertex, wholeReferencesOf(compiled));
+        if (workbook != null && !compiled.getSheetReferences().isEmpty()) {
+            List<String> external = new ArrayList<>();
+            String qualifier = sheetName + "!";
+            for (String reference : compiled.getSheetReferences()) {
+                if (!reference.startsWith(qualifier)) external.add(reference);
+            }
+            if (!external.isEmpty()) workbook.link(this, theVertex, external);
+        }
+        if (compiled.isVolatile()) volatileCells.add(theVertex);
+    }
+
+    //Helper method that reverses link
+    private void unlink(GraphVertex theVertex) {
+        dependencies.unlink(theVertex);
+        if (workbook != null) workbook.unlink(theVertex);
+        if (!volatileCells.isEmpty()) volatileCells.remove(theVertex);
+    }
+
+    //Helper method that lists the cells holding volatile formulas
+    private List<String> volatileRowColumns() {
+        List<String> rowColumns = new ArrayList<>(volatileCells.size());
+        for (GraphVertex vertex : volatileCells) rowColumns.add(vertex.getRowColumn());
+        return rowColumns;
+    }
+
+    //Helper method that evaluates a single cell and sets its value to the result
+    private void evaluate(GraphVertex nextToCalc, RuntimeException theCompileFailure) {
+        String expression = nextToCalc.getCell().getInstruction();
+        if (expression.startsWith("=")) {
+            // is an expression
+            CompiledExpression compiled = nextToCalc.getCell().getCompiledInstruction();
+            if (compiled == null) {
+                setValue(nextToCalc, null);
+                if (theCompileFailure != null) throw theCompileFailure;
+                return;
+            }
+            try {
+                //Any nonexistent cell refs are treated as empty cells, thus 0
+                setValue(nextToCalc, compiled.evaluate(cellValues));
+            } catch (Exception exc) {
+                setValue(nextToCalc, null);
+                throw exc;
+            }
+        } else {
+            // is some literal
+            if (mainReader.isNumber(expression)) {
+                double literal = Double.parseDouble(expression);
+                setValue(nextToCalc, literal);
             } else {
-                // is some literal
-                expression = expression.trim();
-                nextToCalc.getCell().setInstruction(expression);
-                if (mainReader.isNumber(expression)) {
-                    double literal = Double.parseDouble(nextToCalc.getCell().getInstruction());
-                    nextToCalc.getCell().setValue(literal);
-                } else {
-                    nextToCalc.getCell().setValue(null);
-                }
+                setValue(nextToCalc, null);
             }
         }
     }
 
-    //Helper method that performs topological sort on the spreadsheet and returns a queue with the order to evaluate
-    private Queue<GraphVertex> topSort() {
-        setIndegree();
-        Queue<GraphVertex> ordering = new ArrayDeque<>();
-        Queue<GraphVertex> noDegree = noDegreeQueue();
-        while (!noDegree.isEmpty()) {
-            GraphVertex temp = noDegree.remove();
-            temp.decrementIndegree();
-            ordering.add(temp);
-            List<GraphVertex> vertexEdgeList = temp.getAdjList();
-            while (!vertexEdgeList.isEmpty()) {
-                temp.removeEdge(vertexEdgeList.removeFirst());
-            }
-            noDegree = noDegreeQueue();
-        }
-        return ordering;
-    }
-
-    //Helper method that finds all vertices with indegree equal to 0, and returns them in a queue
-    private Queue<GraphVertex> noDegreeQueue() {
-        Collection<GraphVertex> vertices = adjList.values();
-        Iterator<GraphVertex> verIterator = vertices.iterator();
-        Queue<GraphVertex> noDegree = new ArrayDeque<>();
-        while (verIterator.hasNext()) {
-            GraphVertex tempVertex = verIterator.next();
-            if (tempVertex.getIndegree() == 0) {
-                noDegree.add(tempVertex);
-            }
-        }
-        return noDegree;
-    }
-
-    //Helper method that sets the indegree of each vertex according to how many cell references are in the cell function
-    //Automatically sets edges for these references
-    private void setIndegree() {
-        Collection<GraphVertex> vertices = adjList.values();
-        for (GraphVertex tempVertex : vertices) {
-            //Reset indegree, since values are not necessarily 0 after evaluation
-            tempVertex.setIndegree(0);
-            //If not an expression then no indegree, so do nothing, otherwise:
-            if (tempVertex.getCell().getInstruction().startsWith("=")) {
-                String cleanedString = tempVertex.getCell().getInstruction().substring(1);
-                List<String> CellRefs = mainReader.getCellRefsOf(cleanedString);
-                while (!CellRefs.isEmpty()) {
-                    if (adjList.get(CellRefs.getFirst()) != null) {
-                        //Check to ensure cell being referenced doesn't already have an edge to this cell
-                        if (!adjList.get(CellRefs.getFirst()).getAdjList().contains(tempVertex)) {
-                            adjList.get(CellRefs.getFirst()).addEdge(tempVertex);
-                        }
+    //Helper method that sets a cell's value, dropping the lookup indexes that covered the old value and noting the
+    //change for the value listeners
+    private void setValue(GraphVertex theVertex, Double theValue) {
+        if (!Objects.equals(theVertex.getCell().getValue(), theValue)) {
+            lookupIndexes.invalidate(theVertex.getRow(), theVertex.getColumn());
+            if (changedCells != null) changedCells.add(theVertex.getRowColumn());
+        }
+        theVertex.getCell().setValue(theValue);
+    }
+
+    /**
+     * One recalculation of the cells affected by an edit: finds them, orders them, and evaluates them,
+     * reporting to the listeners and the flight recorder along the way.
+     */
+    private final class Recalculation {
+        //Only time the recalculation when someone is listening
+        private final boolean timed = !recalcListeners.isEmpty();
+        private final Map<GraphVertex, Long> parseTimes = new HashMap<>();
+        private final Map<GraphVertex, RuntimeException> compileFailures = new HashMap<>();
+        private final RecalcEvent recalcEvent = new RecalcEvent();
+        //Whether the workbook is asked to carry the recalculation on to other sheets once this one is done
+        private final boolean propagating;
+        private final long startTime;
+        private long sortTime;
+        private int evaluated;
+        private int depth;
+        private List<GraphVertex> affected;
+        private List<GraphVertex> cyclic = List.of();
+        private Collection<String> changed = List.of();
+        private RuntimeException failure;
+
+        Recalculation() {
+            this(true);
+        }
+
+        Recalculation(boolean thePropagating) {
+            propagating = thePropagating;
+            if (timed) {
+                for (RecalcListener listener : recalcListeners) listener.recalcStarted();
+            }
+            startTime = timed ? System.nanoTime() : 0;
+            recalcEvent.begin();
+        }
+
+        //Finds the cells that changed or depend on changed cells, and orders them so every cell comes after
+        //the cells it refers to, or gives null if some of them form a cycle
+        List<GraphVertex> sort(Collection<String> theChanged) {
+            changed = theChanged;
+            affected = dependencies.affected(theChanged, adjList);
+            //Kahn's algorithm over the affected cells, counting only references among them
+            List<GraphVertex> ordering = dependencies.order(affected);
+            if (timed) sortTime = System.nanoTime() - startTime;
+            return ordering.size() == affected.size() ? ordering : null;
+        }
+
+        //Orders the affected cells that are not caught in a cycle, leaving the rest to be emptied
+        List<GraphVertex> sortAcyclic() {
+            List<GraphVertex> ordering = new ArrayList<>(affected.size());
+            cyclic = new ArrayList<>();
+            for (GraphVertex vertex : affected) {
+                if (vertex.getIndegree() > 0) cyclic.add(vertex);
+            }
+            //Ordered cells were left with no indegree by sort, and their order is kept
+            Set<GraphVertex> blocked = new HashSet<>(cyclic);
+            for (GraphVertex vertex : affected) {
+                if (!blocked.contains(vertex)) ordering.add(vertex);
+            }
+            ordering.sort(Comparator.comparingInt(GraphVertex::getDepth));
+            return ordering;
+        }
+
+        //Evaluates the ordered cells, then reports the first failure
+        void evaluate(List<GraphVertex> theOrdering) {
+            try {
+                //Cells that fail are left empty of a value and the rest are still evaluated,
+                //then the first failure is reported
+                for (GraphVertex cyclicVertex : cyclic) setValue(cyclicVertex, null);
+                if (!cyclic.isEmpty()) failure = new IllegalArgumentException("Cycle detected, cyclic instructions invalid");
+                //Runs of one formula down a column are evaluated at once, unless each cell is being timed
+                boolean batching = !timed && theOrdering.size() >= MIN_BATCH && !new CellEvaluationEvent().isEnabled();
+                List<GraphVertex> ordering = batching ? byColumn(theOrdering) : theOrdering;
+                int next = 0;
+                while (next < ordering.size()) {
+                    int end = batching ? runEnd(ordering, next) : next + 1;
+                    List<GraphVertex> run = ordering.subList(next, end);
+                    if (run.size() < MIN_BATCH || !evaluateRun(run)) {
+                        for (GraphVertex nextToCalc : run) evaluateCell(nextToCalc);
                     }
-                    CellRefs.removeFirst();
+                    next = end;
                 }
+            } finally {
+                finish();
+            }
+            if (workbook != null && propagating) {
+                RuntimeException sheetsFailure = workbook.recalculateDependents(SpreadsheetGraph.this, changed, affected);
+                if (failure == null) failure = sheetsFailure;
+            }
+            if (failure != null) throw failure;
+        }
+
+        //Helper method that evaluates a cell, keeping its failure if it is the first
+        private void evaluateCell(GraphVertex theVertex) {
+            evaluated++;
+            depth = Math.max(depth, theVertex.getDepth());
+            CellEvaluationEvent cellEvent = new CellEvaluationEvent();
+            cellEvent.begin();
+            try {
+                if (timed) evaluateTimed(theVertex);
+                else SpreadsheetGraph.this.evaluate(theVertex, compileFailures.get(theVertex));
+            } catch (RuntimeException exc) {
+                if (failure == null) failure = exc;
+            } finally {
+                cellEvent.end();
+                if (cellEvent.shouldCommit()) {
+                    cellEvent.cellRef = theVertex.getRowColumn();
+                    cellEvent.instructions = theVertex.getCell().getInstruction();
+                    cellEvent.dependents = dependentsOf(theVertex.getRowColumn()).size();
+                    cellEvent.commit();
+                }
+            }
+        }
+
+        //Helper method that orders cells by depth, then down each column. Cells of one depth do not refer to each
+        //other, so this is still an order where every cell comes after the cells it refers to
+        private List<GraphVertex> byColumn(List<GraphVertex> theOrdering) {
+            List<GraphVertex> ordering = new ArrayList<>(theOrdering);
+            ordering.sort(Comparator.comparingInt(GraphVertex::getDepth)
+                    .thenComparingInt(GraphVertex::getColumn)
+                    .thenComparingInt(GraphVertex::getRow));
+            return ordering;
+        }
+
+        //Helper method that finds where the run of formulas starting at a cell ends: the cells of one depth in the
+        //rows below it, whose formulas are the same but for rows shifted along with the cell's own
+        private int runEnd(List<GraphVertex> theOrdering, int theStart) {
+            GraphVertex first = theOrdering.get(theStart);
+            String template = relativeTemplateOf(first);
+            int end = theStart + 1;
+            if (template == null) return end;
+            while (end < theOrdering.size()) {
+                GraphVertex vertex = theOrdering.get(end);
+                if (vertex.getDepth() != first.getDepth() || vertex.getColumn() != first.getColumn()
+                        || vertex.getRow() != first.getRow() + end - theStart
+                        || !template.equals(relativeTemplateOf(vertex))) {
+                    break;
+                }
+                end++;
+            }
+            return end;
+        }
+
+        //Helper method that gets a compiled formula written relative to its cell's row, or null for other cells
+        private String relativeTemplateOf(GraphVertex theVertex) {
+            String expression = theVertex.getCell().getInstruction();
+            if (!expression.startsWith("=") || theVertex.getCell().getCompiledInstruction() == null) return null;
+            return ColumnEvaluator.relativeTemplate(expression.substring(1), theVertex.getRow());
+        }
+
+        //Helper method that evaluates a run of one arithmetic formula down a column at once, then the rows that
+        //did not give a number one at a time for their failure, or gives false if the formula is not arithmetic
+        private boolean evaluateRun(List<GraphVertex> theRun) {
+            GraphVertex first = theRun.getFirst();
+            ColumnEvaluator evaluator;
+            try {
+                evaluator = ColumnEvaluator.compile(first.getCell().getInstruction().substring(1), first.getRow());
+            } catch (IllegalArgumentException exc) {
+                return false;
+            }
+            int[] offsets = evaluator.getRowOffsetRange();
+            //Formulas reading far from their rows would read more cells than the run saves evaluating
+            if (!evaluator.isVectorized() || offsets[1] - offsets[0] > theRun.size()) return false;
+
+            //The columns hold the rows read by the run, from the furthest up the first cell reads
+            int top = first.getRow() + offsets[0];
+            int[] read = evaluator.getColumns();
+            double[][] columns = new double[read.length == 0 ? 0 : read[read.length - 1] + 1][];
+            for (int column : read) {
+                columns[column] = new double[theRun.size() - offsets[0] + offsets[1]];
+                for (int i = 0; i < columns[column].length; i++) {
+                    GraphVertex vertex = top + i < 0 ? null : adjList.get(top + i, column);
+                    Double value = vertex == null ? Double.valueOf(0) : vertex.getCell().getValue();
+                    columns[column][i] = value == null ? Double.NaN : value;
+                }
+            }
+            double[] results = new double[theRun.size() - offsets[0]];
+            evaluator.evaluate(columns, results);
+
+            for (int i = 0; i < theRun.size(); i++) {
+                GraphVertex vertex = theRun.get(i);
+                double result = results[i - offsets[0]];
+                if (Double.isNaN(result)) {
+                    evaluateCell(vertex);
+                } else {
+                    evaluated++;
+                    depth = Math.max(depth, vertex.getDepth());
+                    setValue(vertex, result);
+                }
+            }
+            return true;
+        }
+
+        //Helper method that evaluates a cell, telling the listeners how long formulas took
+        private void evaluateTimed(GraphVertex theVertex) {
+            String expression = theVertex.getCell().getInstruction();
+            if (!expression.startsWith("=")) {
+                SpreadsheetGraph.this.evaluate(theVertex, null);
+                return;
+            }
+
+            Long parseTime = parseTimes.get(theVertex);
+            long evalStart = System.nanoTime();
+            try {
+                SpreadsheetGraph.this.evaluate(theVertex, compileFailures.get(theVertex));
+            } finally {
+                long evalTime = System.nanoTime() - evalStart;
+                for (RecalcListener listener : recalcListeners) {
+                    listener.formulaEvaluated(theVertex.getRowColumn(), expression,
+                            parseTime == null ? 0 : parseTime, evalTime, parseTime == null);
+                }
+            }
+        }
+
+        //Reports the end of the recalculation, and the cells it changed
+        void finish() {
+            recalcEvent.end();
+            if (recalcEvent.shouldCommit()) {
+                recalcEvent.cellsEvaluated = evaluated;
+                recalcEvent.chainDepth = depth;
+                recalcEvent.commit();
+            }
+            if (timed) {
+                long totalTime = System.nanoTime() - startTime;
+                for (RecalcListener listener : recalcListeners) {
+                    listener.recalcFinished(evaluated, depth, sortTime, totalTime);
+                }
+            }
+            if (changedCells != null && !changedCells.isEmpty()) {
+                //Read once every cell is done, so a cell changed twice is told with its last value
+                Map<String, Double> values = new HashMap<>(changedCells.size() * 2);
+                for (String rowColumn : changedCells) {
+                    GraphVertex vertex = adjList.get(rowColumn);
+                    values.put(rowColumn, vertex == null ? null : vertex.getCell().getValue());
+                }
+                changedCells.clear();
+                Map<String, Double> changed = Collections.unmodifiableMap(values);
+                for (ValueListener listener : valueListeners) listener.valuesChanged(changed);
+            }
+        }
+    }
+
+    /**
+     * Live view of the cell values for the expression reader to read, so no copy of the sheet
+     * is made per evaluation. Empty cells are absent, and cells that are not numbers map to null.
+     */
+    private final class CellValues extends AbstractMap<String, Double>
+            implements IndexedCells, WorkbookCells, SheetCells {
+        @Override
+        public Double get(Object theRowColumn) {
+            GraphVertex vertex = adjList.get(theRowColumn);
+            return vertex == null ? null : vertex.getCell().getValue();
+        }
+
+        @Override
+        public Double getOrDefault(Object theRowColumn, Double theDefault) {
+            GraphVertex vertex = adjList.get(theRowColumn);
+            return vertex == null ? theDefault : vertex.getCell().getValue();
+        }
+
+        @Override
+        public boolean containsKey(Object theRowColumn) {
+            return adjList.containsKey(theRowColumn);
+        }
+
+        @Override
+        public int size() {
+            return adjList.size();
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet() {
+            return adjList.values().stream()
+                    .map(vertex -> new SimpleImmutableEntry<>(vertex.getRowColumn(), vertex.getCell().getValue()))
+                    .collect(Collectors.toSet());
+        }
+
+        @Override
+        public LookupIndexCache getLookupIndexCache() {
+            return lookupIndexes;
+        }
+
+        @Override
+        public Map<String, Double> getSheetCells(String theSheet) {
+            if (workbook == null) return null;
+            return theSheet.equals(sheetName) ? this : workbook.getCellValuesOf(theSheet);
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns;
+        }
+
+        @Override
+        public void forEachNumber(int theFirstRow, int theFirstColumn, int theLastRow, int theLastColumn,
+                                  DoubleConsumer theAction) {
+            for (GraphVertex vertex : adjList.within(theFirstRow, theFirstColumn,
+                    Math.min(theLastRow, rows - 1), Math.min(theLastColumn, columns - 1))) {
+                Double value = vertex.getCell().getValue();
+                if (value != null) theAction.accept(value);
             }
         }
     }
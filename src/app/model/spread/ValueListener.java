@@ -0,0 +1,21 @@
+package app.model.spread;
+
+import java.util.Map;
+
+/**
+ * Listens to the values of a {@link SpreadsheetGraph}'s cells as they change. A sheet with no listeners does not
+ * keep track of which cells changed. Listeners are called on the thread that edits the sheet, once after each
+ * recalculation, so they should return quickly; {@link CellSubscriptions} hands the changes to other threads.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public interface ValueListener {
+
+    /**
+     * Called after a recalculation that changed cells, whether or not it succeeded.
+     * @param theValues the value of each cell that was edited, moved, emptied or recalculated to a new value, null
+     *                  for cells left empty or without a number, keyed by row and column in the format "R#C#"
+     */
+    void valuesChanged(Map<String, Double> theValues);
+}
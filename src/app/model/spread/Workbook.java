@@ -0,0 +1,476 @@
+package app.model.spread;
+
+import app.model.expr.CompiledExpression;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * A workbook of named sheets, whose formulas can refer to the cells of other sheets by the sheet's name, as in
+ * "=INPUTS!R1C1*2" or "=SUM(INPUTS!R1C1:R10C1)". Each sheet keeps its own dependency graph, and the workbook keeps
+ * the references between sheets: for every cell, the formulas of other sheets referring to it, and for every sheet,
+ * the sheets referring to it. An edit of a sheet recalculates the cells depending on it within the sheet, as on a
+ * sheet of its own, then the formulas of other sheets referring to the cells it recalculated, along with the cells
+ * depending on those, and so on, so an edit recalculates only what it affects across the workbook.
+ *
+ * <p>The sheets a recalculation reaches are taken in levels, each sheet after the sheets it refers to, and the
+ * sheets of a level, which do not refer to each other, are recalculated in parallel, each reading the sheets of
+ * earlier levels, which are done. Sheets referring to each other in a cycle are instead recalculated one after the
+ * other, in rounds that carry the changes one step further from sheet to sheet, and a cycle running through the
+ * cells of several sheets is detected as the rounds fail to settle, leaving its cells, and the cells depending on
+ * them, empty of a value, as a cycle within a sheet does.
+ *
+ * <p>The sheets of a workbook are edited on one thread, as a single sheet is. Listeners of a sheet recalculated in
+ * parallel with others are called on the thread recalculating it. Inserting or deleting rows or columns of a sheet,
+ * and sorting its rows, rewrites the references other sheets make to its cells, as it does its own, and the
+ * rewrite is an edit of those sheets. Names are case-insensitive, made of letters, digits and underscores, and
+ * cannot start with a digit or contain a cell designation.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public class Workbook {
+    private final Map<String, SpreadsheetGraph> sheets;
+    //For each sheet's name, the formulas of other sheets referring to its cells and ranges. Formulas may name a sheet
+    //the workbook does not have, and read it once it is added
+    private final Map<String, Referrers> dependents;
+    //For each formula referring to other sheets, its sheet and the cells and ranges it refers to
+    private final Map<GraphVertex, Link> links;
+    //For each sheet's name, the sheets with formulas referring to it, and how many such formulas each has
+    private final Map<String, Map<SpreadsheetGraph, Integer>> sheetDependents;
+    //Formulas of other sheets to recalculate once the sheet being edited is done, such as those rewritten to follow
+    //its cells
+    private final Map<SpreadsheetGraph, Set<String>> pending;
+
+    /**
+     * Constructor for an empty workbook.
+     */
+    public Workbook() {
+        sheets = new LinkedHashMap<>();
+        dependents = new HashMap<>();
+        links = new HashMap<>();
+        sheetDependents = new HashMap<>();
+        pending = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds an empty sheet.
+     * @param theName the name of the sheet
+     * @param theRows the number of rows of the sheet
+     * @param theColumns the number of columns of the sheet
+     * @return the sheet
+     * @throws IllegalArgumentException if the name is malformed or taken
+     */
+    public SpreadsheetGraph addSheet(String theName, int theRows, int theColumns) {
+        SpreadsheetGraph sheet = new SpreadsheetGraph(theRows, theColumns);
+        addSheet(theName, sheet);
+        return sheet;
+    }
+
+    /**
+     * Adds a sheet, such as one read from a file. Its formulas naming sheets of the workbook are recalculated, as
+     * are the formulas of other sheets that named it before it was added.
+     * @param theName the name of the sheet
+     * @param theSheet the sheet
+     * @throws IllegalArgumentException if the name is malformed or taken, in which case nothing changes, or if a
+     *                                  cell failed to evaluate, in which case the sheet is added regardless
+     * @throws IllegalStateException if the sheet already belongs to a workbook
+     */
+    public void addSheet(String theName, SpreadsheetGraph theSheet) {
+        String name = checkName(theName);
+        if (sheets.containsKey(name))
+            throw new IllegalArgumentException("Workbook already has a sheet named %s".formatted(name));
+        List<String> naming = theSheet.setWorkbook(this, name);
+        sheets.put(name, theSheet);
+
+        Map<SpreadsheetGraph, Set<String>> seeds = new LinkedHashMap<>();
+        if (!naming.isEmpty()) seeds.put(theSheet, new LinkedHashSet<>(naming));
+        forEachDependent(name, (sheet, rowColumn) -> seed(seeds, sheet, rowColumn));
+        run(seeds);
+    }
+
+    /**
+     * Gets a sheet by name.
+     * @param theName the name of the sheet, in any case
+     * @return the sheet, or null if the workbook has no such sheet
+     */
+    public SpreadsheetGraph getSheet(String theName) {
+        return sheets.get(theName.toUpperCase());
+    }
+
+    /**
+     * Gets the names of the sheets, in the order they were added.
+     * @return the names, in upper case
+     */
+    public List<String> getSheetNames() {
+        return List.copyOf(sheets.keySet());
+    }
+
+    /**
+     * Removes a sheet, which keeps its cells and can be added again. Formulas of other sheets naming it are
+     * recalculated, and fail to evaluate until a sheet of that name is added.
+     * @param theName the name of the sheet, in any case
+     * @return the sheet removed
+     * @throws IllegalArgumentException if the workbook has no such sheet, or if a cell failed to evaluate, in which
+     *                                  case the sheet is removed regardless
+     */
+    public SpreadsheetGraph removeSheet(String theName) {
+        String name = theName.toUpperCase();
+        SpreadsheetGraph sheet = sheets.remove(name);
+        if (sheet == null) throw new IllegalArgumentException("Workbook has no sheet named %s".formatted(name));
+        sheet.setWorkbook(null, null);
+        pending.remove(sheet);
+
+        Map<SpreadsheetGraph, Set<String>> seeds = new LinkedHashMap<>();
+        forEachDependent(name, (dependent, rowColumn) -> seed(seeds, dependent, rowColumn));
+        run(seeds);
+        return sheet;
+    }
+
+    /**
+     * Recalculates every cell of every sheet, each sheet once, sheets that do not refer to each other in parallel.
+     * @throws IllegalArgumentException if a cell failed to evaluate, in which case the rest are evaluated regardless
+     */
+    public void recalculate() {
+        Map<SpreadsheetGraph, Set<String>> seeds = new LinkedHashMap<>();
+        for (SpreadsheetGraph sheet : sheets.values()) seeds.put(sheet, new LinkedHashSet<>(sheet.getRowColumns()));
+        run(seeds);
+    }
+
+    //Helper method that gets the live view of a sheet's cell values, or null if the workbook has no such sheet
+    Map<String, Double> getCellValuesOf(String theName) {
+        SpreadsheetGraph sheet = sheets.get(theName);
+        return sheet == null ? null : sheet.getCellValues();
+    }
+
+    //Helper method that records a formula as a dependent of every cell and range of other sheets it refers to,
+    //given as "NAME!R#C#" or "NAME!R#C#:R#C#"
+    void link(SpreadsheetGraph theSheet, GraphVertex theVertex, List<String> theReferences) {
+        Set<String> named = new HashSet<>();
+        for (String reference : theReferences) {
+            int mark = reference.indexOf('!');
+            String name = reference.substring(0, mark);
+            dependents.computeIfAbsent(name, key -> new Referrers()).add(reference.substring(mark + 1), theVertex);
+            named.add(name);
+        }
+        for (String name : named) sheetDependents.computeIfAbsent(name, key -> new HashMap<>()).merge(theSheet, 1, Integer::sum);
+        links.put(theVertex, new Link(theSheet, theReferences));
+    }
+
+    //Helper method that reverses link, for a formula that may not be linked
+    void unlink(GraphVertex theVertex) {
+        if (links.isEmpty()) return;
+        Link link = links.remove(theVertex);
+        if (link == null) return;
+        Set<String> named = new HashSet<>();
+        for (String reference : link.references()) {
+            int mark = reference.indexOf('!');
+            String name = reference.substring(0, mark);
+            named.add(name);
+            Referrers referrers = dependents.get(name);
+            if (referrers == null) continue;
+            referrers.remove(reference.substring(mark + 1), theVertex);
+            if (referrers.isEmpty()) dependents.remove(name);
+        }
+        for (String name : named) {
+            Map<SpreadsheetGraph, Integer> counts = sheetDependents.get(name);
+            counts.computeIfPresent(link.sheet(), (sheet, count) -> count == 1 ? null : count - 1);
+            if (counts.isEmpty()) sheetDependents.remove(name);
+        }
+    }
+
+    //Helper method called as rows or columns of a sheet are inserted or deleted, before its cells move, that
+    //rewrites the formulas of other sheets referring to cells that move, to follow them, and has them recalculated
+    //once the sheet is
+    void sheetShifted(SpreadsheetGraph theSheet, boolean theRows, int theAt, int theDelta) {
+        String name = theSheet.getSheetName();
+        Referrers referrers = dependents.get(name);
+        if (referrers == null) return;
+        Map<SpreadsheetGraph, Set<GraphVertex>> referring = new LinkedHashMap<>();
+        referrers.forEachReferringFrom(theRows, theAt, vertex ->
+                referring.computeIfAbsent(links.get(vertex).sheet(), sheet -> new LinkedHashSet<>()).add(vertex));
+        for (Map.Entry<SpreadsheetGraph, Set<GraphVertex>> entry : referring.entrySet()) {
+            List<String> rewritten = entry.getKey().rewriteReferences(entry.getValue(),
+                    compiled -> compiled.shift(name, false, theRows, theAt, theDelta),
+                    expression -> CompiledExpression.shiftReferences(expression, name, false,
+                            theRows, theAt, theDelta));
+            for (String rowColumn : rewritten) seed(pending, entry.getKey(), rowColumn);
+        }
+    }
+
+    //Helper method called as the rows of a block of a sheet are moved into another order, once they have moved,
+    //that rewrites the formulas of other sheets referring to moved cells, to follow them, and has those and every
+    //other formula referring to the cells of the moved rows recalculated once the sheet is
+    void rowsPermuted(SpreadsheetGraph theSheet, Collection<String> theCells, int theFirstRow, int theFirstColumn,
+                      int theLastColumn, int[] theNewRows) {
+        String name = theSheet.getSheetName();
+        Referrers referrers = dependents.get(name);
+        if (referrers == null) return;
+        Map<SpreadsheetGraph, Set<GraphVertex>> referring = new LinkedHashMap<>();
+        for (String rowColumn : theCells) {
+            referrers.forEachReferring(rowColumn, vertex ->
+                    referring.computeIfAbsent(links.get(vertex).sheet(), sheet -> new LinkedHashSet<>()).add(vertex));
+        }
+        for (Map.Entry<SpreadsheetGraph, Set<GraphVertex>> entry : referring.entrySet()) {
+            entry.getKey().rewriteReferences(entry.getValue(),
+                    compiled -> compiled.permuteRows(name, false, theFirstRow, theFirstColumn, theLastColumn, theNewRows),
+                    expression -> CompiledExpression.permuteReferences(expression, name, false,
+                            theFirstRow, theFirstColumn, theLastColumn, theNewRows));
+            //Ranges over the block are not rewritten, but the cells in them moved
+            for (GraphVertex vertex : entry.getValue()) seed(pending, entry.getKey(), vertex.getRowColumn());
+        }
+    }
+
+    //Helper method called once a sheet is recalculated that recalculates the formulas of other sheets referring to
+    //the cells it changed or recalculated, along with those waiting for it, and the cells depending on them across
+    //the workbook. Gives the first failure
+    RuntimeException recalculateDependents(SpreadsheetGraph theSheet, Collection<String> theChanged,
+                                           List<GraphVertex> theRecalculated) {
+        if (links.isEmpty() && pending.isEmpty()) return null;
+        Map<SpreadsheetGraph, Set<String>> seeds = new LinkedHashMap<>(pending);
+        pending.clear();
+        Referrers referrers = dependents.get(theSheet.getSheetName());
+        if (referrers != null) {
+            for (String rowColumn : theChanged) referrers.forEachReferring(rowColumn, vertex -> seed(seeds, vertex));
+            for (GraphVertex vertex : theRecalculated) {
+                referrers.forEachReferring(vertex.getRowColumn(), dependent -> seed(seeds, dependent));
+            }
+        }
+        return seeds.isEmpty() ? null : recalculate(seeds);
+    }
+
+    //Helper method that recalculates cells of sheets, along with the cells depending on them across the workbook,
+    //and throws the first failure
+    private void run(Map<SpreadsheetGraph, Set<String>> theSeeds) {
+        if (theSeeds.isEmpty()) return;
+        RuntimeException failure = recalculate(theSeeds);
+        if (failure != null) throw failure;
+    }
+
+    //Helper method that recalculates cells of sheets, along with the cells depending on them across the workbook,
+    //the sheets in levels where every sheet comes after the sheets it refers to, or in rounds if they refer to each
+    //other in a cycle. Gives the first failure
+    private RuntimeException recalculate(Map<SpreadsheetGraph, Set<String>> theSeeds) {
+        //The sheets the recalculation can reach, following references from sheet to sheet
+        Set<SpreadsheetGraph> involved = new LinkedHashSet<>(theSeeds.keySet());
+        Deque<SpreadsheetGraph> reaching = new ArrayDeque<>(involved);
+        while (!reaching.isEmpty()) {
+            for (SpreadsheetGraph dependent : dependentSheetsOf(reaching.remove())) {
+                if (involved.add(dependent)) reaching.add(dependent);
+            }
+        }
+
+        //Kahn's algorithm over the sheets, a level at a time
+        Map<SpreadsheetGraph, Integer> indegrees = new HashMap<>();
+        for (SpreadsheetGraph sheet : involved) {
+            for (SpreadsheetGraph dependent : dependentSheetsOf(sheet)) indegrees.merge(dependent, 1, Integer::sum);
+        }
+        List<List<SpreadsheetGraph>> levels = new ArrayList<>();
+        List<SpreadsheetGraph> level = new ArrayList<>();
+        for (SpreadsheetGraph sheet : involved) {
+            if (!indegrees.containsKey(sheet)) level.add(sheet);
+        }
+        int ordered = 0;
+        while (!level.isEmpty()) {
+            levels.add(level);
+            ordered += level.size();
+            List<SpreadsheetGraph> next = new ArrayList<>();
+            for (SpreadsheetGraph sheet : level) {
+                for (SpreadsheetGraph dependent : dependentSheetsOf(sheet)) {
+                    if (indegrees.merge(dependent, -1, Integer::sum) == 0) next.add(dependent);
+                }
+            }
+            level = next;
+        }
+        if (ordered < involved.size()) return recalculateInRounds(theSeeds);
+
+        RuntimeException failure = null;
+        for (List<SpreadsheetGraph> sheetsOfLevel : levels) {
+            List<SpreadsheetGraph> seeded = new ArrayList<>(sheetsOfLevel.size());
+            for (SpreadsheetGraph sheet : sheetsOfLevel) {
+                if (theSeeds.containsKey(sheet)) seeded.add(sheet);
+            }
+            Recalculated[] results = new Recalculated[seeded.size()];
+            if (seeded.size() == 1) {
+                results[0] = seeded.getFirst().recalculateReferences(theSeeds.get(seeded.getFirst()));
+            } else {
+                IntStream.range(0, results.length).parallel().forEach(i ->
+                        results[i] = seeded.get(i).recalculateReferences(theSeeds.get(seeded.get(i))));
+            }
+            //The sheets of later levels are seeded here, on one thread, once the level is done
+            for (int i = 0; i < results.length; i++) {
+                if (failure == null) failure = results[i].failure();
+                seedDependents(theSeeds, seeded.get(i), results[i].cells());
+            }
+        }
+        return failure;
+    }
+
+    //Helper method that recalculates cells of sheets that refer to each other in a cycle, one sheet at a time, in
+    //rounds that each carry the changes one step further from sheet to sheet. Gives the first failure
+    private RuntimeException recalculateInRounds(Map<SpreadsheetGraph, Set<String>> theSeeds) {
+        RuntimeException failure = null;
+        Map<SpreadsheetGraph, Set<String>> round = theSeeds;
+        //Each round after the first recalculates formulas further along a chain of references between sheets, and
+        //unless the cells form a cycle no chain is longer than the formulas referring to other sheets
+        for (int rounds = 0; !round.isEmpty(); rounds++) {
+            if (rounds > links.size()) {
+                emptyCycle(round);
+                return new IllegalArgumentException("Cycle detected across sheets");
+            }
+            Map<SpreadsheetGraph, Set<String>> next = new LinkedHashMap<>();
+            for (Map.Entry<SpreadsheetGraph, Set<String>> entry : round.entrySet()) {
+                Recalculated result = entry.getKey().recalculateReferences(entry.getValue());
+                if (failure == null) failure = result.failure();
+                seedDependents(next, entry.getKey(), result.cells());
+            }
+            round = next;
+        }
+        return failure;
+    }
+
+    //Helper method that empties the values of cells still changing after the rounds ran out, which are caught in a
+    //cycle or depend on one, and of every cell depending on them across the workbook, as a sheet empties the cells
+    //of a cycle within it rather than leave them with the values of the last round
+    private void emptyCycle(Map<SpreadsheetGraph, Set<String>> theCells) {
+        Map<SpreadsheetGraph, Set<String>> emptied = new HashMap<>();
+        Map<SpreadsheetGraph, Set<String>> round = theCells;
+        while (!round.isEmpty()) {
+            Map<SpreadsheetGraph, Set<String>> next = new LinkedHashMap<>();
+            for (Map.Entry<SpreadsheetGraph, Set<String>> entry : round.entrySet()) {
+                Set<String> done = emptied.computeIfAbsent(entry.getKey(), sheet -> new HashSet<>());
+                List<String> cells = entry.getValue().stream().filter(rowColumn -> !done.contains(rowColumn)).toList();
+                if (cells.isEmpty()) continue;
+                List<String> cleared = entry.getKey().emptyReferences(cells);
+                done.addAll(cleared);
+                seedDependents(next, entry.getKey(), cleared);
+            }
+            round = next;
+        }
+    }
+
+    //Helper method that gets the sheets with formulas referring to a sheet
+    private Set<SpreadsheetGraph> dependentSheetsOf(SpreadsheetGraph theSheet) {
+        Map<SpreadsheetGraph, Integer> counts = sheetDependents.get(theSheet.getSheetName());
+        return counts == null ? Set.of() : counts.keySet();
+    }
+
+    //Helper method that adds the formulas of other sheets referring to cells of a sheet to the cells to recalculate
+    private void seedDependents(Map<SpreadsheetGraph, Set<String>> theSeeds, SpreadsheetGraph theSheet,
+                                Collection<String> theCells) {
+        Referrers referrers = dependents.get(theSheet.getSheetName());
+        if (referrers == null) return;
+        for (String rowColumn : theCells) referrers.forEachReferring(rowColumn, vertex -> seed(theSeeds, vertex));
+    }
+
+    //Helper method that adds a formula referring to a cell of another sheet to the cells to recalculate
+    private void seed(Map<SpreadsheetGraph, Set<String>> theSeeds, GraphVertex theVertex) {
+        seed(theSeeds, links.get(theVertex).sheet(), theVertex.getRowColumn());
+    }
+
+    //Helper method that adds a cell of a sheet to the cells to recalculate
+    private static void seed(Map<SpreadsheetGraph, Set<String>> theSeeds, SpreadsheetGraph theSheet,
+                             String theRowColumn) {
+        theSeeds.computeIfAbsent(theSheet, sheet -> new LinkedHashSet<>()).add(theRowColumn);
+    }
+
+    //Helper method that gives the sheet and cell of every formula referring to a sheet
+    private void forEachDependent(String theName, BiConsumer<SpreadsheetGraph, String> theAction) {
+        Referrers referrers = dependents.get(theName);
+        if (referrers == null) return;
+        referrers.forEachReferringFrom(true, 0, vertex -> theAction.accept(links.get(vertex).sheet(), vertex.getRowColumn()));
+    }
+
+    //Helper method that checks a sheet's name, giving it in upper case
+    private static String checkName(String theName) {
+        if (!theName.matches("[A-Za-z_]\\w*") || theName.toUpperCase().matches(".*R\\d+C\\d+.*"))
+            throw new IllegalArgumentException("Sheet name %s is not properly formatted".formatted(theName));
+        return theName.toUpperCase();
+    }
+
+    //The sheet of a formula referring to other sheets, and the cells and ranges it refers to
+    private record Link(SpreadsheetGraph sheet, List<String> references) {
+    }
+
+    /**
+     * The formulas of other sheets referring to the cells of one sheet: under each cell they refer to by itself, and
+     * under each range they refer to, which is held once in a {@link RangeIndex} however many cells it covers.
+     */
+    private static final class Referrers {
+        private final Map<String, Set<GraphVertex>> cells = new HashMap<>();
+        private final RangeIndex ranges = new RangeIndex();
+        private final Map<Integer, Set<GraphVertex>> byRange = new HashMap<>();
+
+        //Records a formula as referring to a cell "R#C#" or range "R#C#:R#C#"
+        void add(String theReference, GraphVertex theVertex) {
+            if (theReference.indexOf(':') < 0) {
+                cells.computeIfAbsent(theReference, key -> new HashSet<>()).add(theVertex);
+            } else {
+                byRange.computeIfAbsent(ranges.add(theReference), key -> new HashSet<>()).add(theVertex);
+            }
+        }
+
+        //Reverses add
+        void remove(String theReference, GraphVertex theVertex) {
+            if (theReference.indexOf(':') < 0) {
+                Set<GraphVertex> vertices = cells.get(theReference);
+                if (vertices == null) return;
+                vertices.remove(theVertex);
+                if (vertices.isEmpty()) cells.remove(theReference);
+            } else {
+                int range = ranges.find(theReference);
+                Set<GraphVertex> vertices = byRange.get(range);
+                if (vertices == null) return;
+                vertices.remove(theVertex);
+                if (vertices.isEmpty()) {
+                    byRange.remove(range);
+                    ranges.remove(range);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return cells.isEmpty() && byRange.isEmpty();
+        }
+
+        //Gives the formulas referring to a cell, by itself or through a range, a formula once for each
+        void forEachReferring(String theRowColumn, Consumer<GraphVertex> theAction) {
+            Set<GraphVertex> vertices = cells.get(theRowColumn);
+            if (vertices != null) vertices.forEach(theAction);
+            if (byRange.isEmpty()) return;
+            int columnMark = theRowColumn.indexOf('C');
+            ranges.forEachContaining(Integer.parseInt(theRowColumn, 1, columnMark, 10) - 1,
+                    Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) - 1,
+                    range -> byRange.get(range).forEach(theAction));
+        }
+
+        //Gives the formulas referring to any cell at or past a row or column, a formula once for each reference
+        void forEachReferringFrom(boolean theRows, int theAt, Consumer<GraphVertex> theAction) {
+            for (Map.Entry<String, Set<GraphVertex>> entry : cells.entrySet()) {
+                String rowColumn = entry.getKey();
+                int columnMark = rowColumn.indexOf('C');
+                int index = theRows ? Integer.parseInt(rowColumn, 1, columnMark, 10) - 1
+                        : Integer.parseInt(rowColumn, columnMark + 1, rowColumn.length(), 10) - 1;
+                if (index >= theAt) entry.getValue().forEach(theAction);
+            }
+            ranges.forEachIntersecting(theRows ? theAt : 0, theRows ? 0 : theAt, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                    range -> byRange.get(range).forEach(theAction));
+        }
+    }
+
+    //The cells a recalculation of a sheet for the workbook recalculated, and its first failure, if any
+    record Recalculated(List<String> cells, RuntimeException failure) {
+    }
+}
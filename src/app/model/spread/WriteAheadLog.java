@@ -0,0 +1,460 @@
+package app.model.spread;
+
+import app.model.expr.CompiledExpression;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Crash-safe autosave of a sheet into a directory, as a snapshot of the whole sheet plus an append-only log of the
+ * edits made since. An edit is encoded on the editing thread, which costs as much as the edit, and written by a
+ * background thread that forces the log to disk once per group of edits that queued up meanwhile, so the editing
+ * thread never waits on the disk. Once the log outgrows the snapshot, the sheet is captured and written as the new
+ * snapshot and the log starts over. {@link #recover} rebuilds the sheet from the snapshot and the log, evaluating it
+ * a single time.
+ *
+ * <p>Each log record is its length, a CRC-32C checksum and the record, so a record torn by a crash is recognized
+ * and dropped along with anything after it. A snapshot and the log started with it share a generation number, kept
+ * in a comment of the snapshot and the first record of the log, so a log whose records the snapshot already holds,
+ * as after a crash in the middle of compacting, is recognized and not replayed a second time.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class WriteAheadLog implements EditListener, Closeable {
+    /** Name of the snapshot file in the directory. */
+    public static final String SNAPSHOT_FILE = "snapshot.sheet";
+    /** Name of the log file in the directory. */
+    public static final String LOG_FILE = "edits.log";
+
+    private static final byte EDIT_RECORD = 'E';
+    private static final byte SIZE_RECORD = 'S';
+    private static final byte SHIFT_RECORD = 'T';
+    private static final byte GENERATION_RECORD = 'G';
+    private static final String GENERATION_COMMENT = "# generation ";
+    private static final int RECORD_HEADER = 8;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    private final SpreadsheetGraph sheet;
+    private final Path directory;
+    private final FileChannel log;
+    private final ByteBuffer buffer;
+    private final ByteArrayOutputStream recordBytes;
+    private final DataOutputStream record;
+    private final ReentrantLock lock;
+    private final Condition queued;
+    private final Condition written;
+    private final Thread writer;
+    private List<Object> pending;
+    private long queuedCount;
+    private long writtenCount;
+    private long loggedBytes;
+    private long compactionBytes;
+    private IOException failure;
+    private boolean closed;
+    private long generation;
+
+    /**
+     * Constructor for an autosave of a sheet, which writes a fresh snapshot of the sheet, starts an empty log and
+     * logs every edit from then on.
+     * @param theSheet the sheet to save, normally the one {@link #recover} gave for the same directory
+     * @param theDirectory the directory to save into, created if missing
+     * @throws IOException if the snapshot or log could not be written
+     */
+    public WriteAheadLog(SpreadsheetGraph theSheet, Path theDirectory) throws IOException {
+        sheet = theSheet;
+        directory = theDirectory;
+        Files.createDirectories(directory);
+        //Unlike any generation a log left in the directory could have
+        generation = ThreadLocalRandom.current().nextLong();
+        compactionBytes = Math.max(MIN_COMPACTION_BYTES, writeSnapshot(SheetFile.of(sheet)));
+        log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        append(generationRecord());
+        writeBuffer();
+        log.force(true);
+        recordBytes = new ByteArrayOutputStream();
+        record = new DataOutputStream(recordBytes);
+        lock = new ReentrantLock();
+        queued = lock.newCondition();
+        written = lock.newCondition();
+        pending = new ArrayList<>();
+        writer = Thread.ofPlatform().daemon().name("autosave-" + directory.getFileName()).start(this::writeLoop);
+        sheet.addEditListener(this);
+    }
+
+    /**
+     * Rebuilds a sheet from the snapshot and log in a directory, replaying the logged edits onto the snapshot and
+     * evaluating the sheet once. Cells that fail to evaluate are kept, without a value.
+     * @param theDirectory the directory saved into
+     * @param theRows the number of rows of the sheet if nothing was saved
+     * @param theColumns the number of columns of the sheet if nothing was saved
+     * @return the rebuilt sheet, empty if nothing was saved
+     * @throws IOException if the snapshot or log could not be read
+     */
+    public static SpreadsheetGraph recover(Path theDirectory, int theRows, int theColumns) throws IOException {
+        Path snapshotPath = theDirectory.resolve(SNAPSHOT_FILE);
+        SheetFile snapshot = Files.exists(snapshotPath)
+                ? SheetFile.read(snapshotPath)
+                : new SheetFile(theRows, theColumns, Map.of());
+        int rows = snapshot.getRowCount();
+        int columns = snapshot.getColumnCount();
+        Map<String, String> instructions = snapshot.getInstructions();
+        Long snapshotGeneration = Files.exists(snapshotPath) ? readGeneration(snapshotPath) : null;
+
+        Path logPath = theDirectory.resolve(LOG_FILE);
+        if (Files.exists(logPath)) {
+            long remaining = Files.size(logPath);
+            try (InputStream in = Files.newInputStream(logPath)) {
+                DataInputStream records = new DataInputStream(new BufferedInputStream(in, BUFFER_BYTES));
+                byte[] payload;
+                while ((payload = readRecord(records, remaining)) != null) {
+                    remaining -= RECORD_HEADER + payload.length;
+                    DataInputStream fields = new DataInputStream(new ByteArrayInputStream(payload));
+                    byte type = fields.readByte();
+                    if (type == GENERATION_RECORD) {
+                        //The snapshot was written after this log started, so it already holds the log's records
+                        if (snapshotGeneration != null && fields.readLong() != snapshotGeneration) break;
+                    } else if (type == SIZE_RECORD) {
+                        rows = fields.readInt();
+                        columns = fields.readInt();
+                    } else if (type == SHIFT_RECORD) {
+                        instructions = shift(instructions, fields.readBoolean(), fields.readInt(), fields.readInt());
+                    } else if (type == EDIT_RECORD) {
+                        int count = fields.readInt();
+                        for (int i = 0; i < count; i++) {
+                            String rowColumn = readString(fields);
+                            String cellInstructions = readString(fields);
+                            //Kept in the map while empty, so the edit order stays that of the log
+                            instructions.put(rowColumn, cellInstructions == null ? "" : cellInstructions);
+                        }
+                    }
+                }
+            }
+        }
+        instructions.values().removeIf(String::isEmpty);
+        //Cells cut off by a shrink the sheet had not yet evicted when it stopped
+        int lastRow = rows;
+        int lastColumn = columns;
+        instructions.keySet().removeIf(rowColumn -> !isInside(rowColumn, lastRow, lastColumn));
+
+        SpreadsheetGraph sheet = new SpreadsheetGraph(rows, columns);
+        try {
+            sheet.setCellInstructions(instructions);
+        } catch (IllegalArgumentException exc) {
+            //The failing cells are kept as they were saved
+        }
+        return sheet;
+    }
+
+    /**
+     * Logs an edit, to be written in the background.
+     * @param theInstructions the instructions of the edited cells after the edit
+     */
+    @Override
+    public void cellsEdited(Map<String, String> theInstructions) {
+        try {
+            recordBytes.reset();
+            record.writeByte(EDIT_RECORD);
+            record.writeInt(theInstructions.size());
+            for (Map.Entry<String, String> entry : theInstructions.entrySet()) {
+                writeString(record, entry.getKey());
+                writeString(record, entry.getValue());
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+        enqueue(recordBytes.toByteArray());
+    }
+
+    /**
+     * Logs a resize, to be written in the background.
+     * @param theRows the number of rows in the sheet
+     * @param theColumns the number of columns in the sheet
+     */
+    @Override
+    public void sizeChanged(int theRows, int theColumns) {
+        ByteBuffer size = ByteBuffer.allocate(9).put(SIZE_RECORD).putInt(theRows).putInt(theColumns);
+        enqueue(size.array());
+    }
+
+    /**
+     * Logs rows or columns inserted or deleted, to be written in the background.
+     * @param theRows true if rows were inserted or deleted, false if columns were
+     * @param theAt the first row or column inserted or deleted, counted from zero
+     * @param theDelta the number inserted, or the negated number deleted
+     */
+    @Override
+    public void cellsShifted(boolean theRows, int theAt, int theDelta) {
+        ByteBuffer shift = ByteBuffer.allocate(10).put(SHIFT_RECORD).put((byte) (theRows ? 1 : 0))
+                .putInt(theAt).putInt(theDelta);
+        enqueue(shift.array());
+    }
+
+    /**
+     * Waits until every edit logged so far is forced to disk.
+     * @throws IOException if the log could not be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            long target = queuedCount;
+            while (writtenCount < target && failure == null) written.await();
+            if (failure != null) throw failure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops logging the sheet's edits once those logged so far are forced to disk. The snapshot and log stay
+     * behind, to be recovered from.
+     * @throws IOException if the log could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        sheet.removeEditListener(this);
+        lock.lock();
+        try {
+            closed = true;
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        if (failure != null) throw failure;
+    }
+
+    //Helper method that queues a record for the writer, along with a capture of the sheet once the log has grown
+    //past the size of the snapshot, so compaction costs no more than the edits that led to it
+    private void enqueue(byte[] theRecord) {
+        lock.lock();
+        try {
+            if (closed) return;
+            pending.add(theRecord);
+            queuedCount++;
+            loggedBytes += RECORD_HEADER + theRecord.length;
+            if (loggedBytes > compactionBytes) {
+                pending.add(SheetFile.of(sheet));
+                loggedBytes = 0;
+                compactionBytes = Long.MAX_VALUE; //Until the writer tells the size of the new snapshot
+            }
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Helper method run by the writer thread, which writes whatever queued up while it last wrote, then forces it
+    //to disk all at once
+    private void writeLoop() {
+        while (true) {
+            List<Object> group;
+            long groupCount;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) queued.awaitUninterruptibly();
+                if (pending.isEmpty()) return;
+                group = pending;
+                groupCount = queuedCount;
+                pending = new ArrayList<>();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException groupFailure = null;
+            long snapshotBytes = -1;
+            try {
+                for (Object item : group) {
+                    if (item instanceof byte[] bytes) {
+                        append(bytes);
+                    } else {
+                        //Every record before the capture is in the snapshot, so the log can start over
+                        writeBuffer();
+                        generation++;
+                        snapshotBytes = writeSnapshot((SheetFile) item);
+                        log.truncate(0);
+                        log.position(0);
+                        append(generationRecord());
+                    }
+                }
+                writeBuffer();
+                log.force(false);
+            } catch (IOException exc) {
+                groupFailure = exc;
+            } catch (RuntimeException exc) {
+                groupFailure = new IOException("Could not autosave to %s".formatted(directory), exc);
+            }
+
+            lock.lock();
+            try {
+                if (groupFailure != null && failure == null) failure = groupFailure;
+                if (snapshotBytes >= 0) compactionBytes = Math.max(MIN_COMPACTION_BYTES, snapshotBytes);
+                writtenCount = groupCount;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //Helper method that adds a framed record to the write buffer, writing the buffer out when it fills
+    private void append(byte[] theRecord) throws IOException {
+        CRC32C checksum = new CRC32C();
+        checksum.update(theRecord);
+        if (buffer.remaining() < RECORD_HEADER + theRecord.length) writeBuffer();
+        if (buffer.remaining() < RECORD_HEADER + theRecord.length) {
+            //Too large to buffer, so written directly
+            ByteBuffer large = ByteBuffer.allocate(RECORD_HEADER + theRecord.length);
+            large.putInt(theRecord.length).putInt((int) checksum.getValue()).put(theRecord).flip();
+            while (large.hasRemaining()) log.write(large);
+            return;
+        }
+        buffer.putInt(theRecord.length).putInt((int) checksum.getValue()).put(theRecord);
+    }
+
+    //Helper method that writes out the write buffer
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) log.write(buffer);
+        buffer.clear();
+    }
+
+    //Helper method that writes a snapshot to a temporary file and moves it over the last one, so a crash leaves
+    //one whole snapshot or the other. Gives the size of the snapshot.
+    private long writeSnapshot(SheetFile theSnapshot) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            writer.write(GENERATION_COMMENT + generation + "\n");
+            theSnapshot.write(writer);
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(directory.resolve(SNAPSHOT_FILE));
+    }
+
+    //Helper method that gives the record starting a log of the current generation
+    private byte[] generationRecord() {
+        return ByteBuffer.allocate(9).put(GENERATION_RECORD).putLong(generation).array();
+    }
+
+    //Helper method that reads the generation from the comment opening a snapshot, or null if it has none
+    private static Long readGeneration(Path theSnapshot) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(theSnapshot, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(GENERATION_COMMENT)) return null;
+            try {
+                return Long.parseLong(line.substring(GENERATION_COMMENT.length()).trim());
+            } catch (NumberFormatException exc) {
+                return null;
+            }
+        }
+    }
+
+    //Helper method that reads the next whole record, or null at the end of the log or at a torn record
+    private static byte[] readRecord(DataInputStream theIn, long theRemaining) throws IOException {
+        try {
+            int length = theIn.readInt();
+            int expected = theIn.readInt();
+            if (length < 0 || length > theRemaining - RECORD_HEADER) return null;
+            byte[] payload = new byte[length];
+            theIn.readFully(payload);
+            CRC32C checksum = new CRC32C();
+            checksum.update(payload);
+            return (int) checksum.getValue() == expected ? payload : null;
+        } catch (EOFException exc) {
+            return null;
+        }
+    }
+
+    //Helper method that replays rows or columns inserted or deleted onto recovered instructions, moving the cells
+    //and rewriting the formulas the way the sheet did
+    private static Map<String, String> shift(Map<String, String> theInstructions, boolean theRows, int theAt,
+                                             int theDelta) {
+        Map<String, String> shifted = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : theInstructions.entrySet()) {
+            String rowColumn = entry.getKey();
+            int columnMark = rowColumn.indexOf('C');
+            int row = Integer.parseInt(rowColumn, 1, columnMark, 10) - 1;
+            int column = Integer.parseInt(rowColumn, columnMark + 1, rowColumn.length(), 10) - 1;
+            int index = theRows ? row : column;
+            if (index >= theAt) {
+                if (theDelta < 0 && index < theAt - theDelta) continue;  //Deleted
+                if (theRows) row += theDelta;
+                else column += theDelta;
+                rowColumn = "R" + (row + 1) + "C" + (column + 1);
+            }
+            String cellInstructions = entry.getValue();
+            if (cellInstructions.startsWith("=")) {
+                cellInstructions = "=" + CompiledExpression.shiftReferences(cellInstructions.substring(1), theRows,
+                        theAt, theDelta);
+            }
+            shifted.put(rowColumn, cellInstructions);
+        }
+        return shifted;
+    }
+
+    //Helper method that checks if a cell is within a sheet of the given size
+    private static boolean isInside(String theRowColumn, int theRows, int theColumns) {
+        int columnMark = theRowColumn.indexOf('C');
+        return Integer.parseInt(theRowColumn, 1, columnMark, 10) <= theRows
+                && Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) <= theColumns;
+    }
+
+    //Helper method that writes a string that may be null
+    private static void writeString(DataOutputStream theOut, String theString) throws IOException {
+        if (theString == null) {
+            theOut.writeInt(-1);
+            return;
+        }
+        byte[] bytes = theString.getBytes(StandardCharsets.UTF_8);
+        theOut.writeInt(bytes.length);
+        theOut.write(bytes);
+    }
+
+    //Helper method that reverses writeString
+    private static String readString(DataInputStream theIn) throws IOException {
+        int length = theIn.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        theIn.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,576 @@
+package app.model.spread;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads and writes the first worksheet of Excel workbooks (.xlsx), keeping the numbers, text and formulas of its
+ * cells. Worksheets are read a cell at a time with a streaming XML reader and written a row at a time, so only the
+ * cells themselves, and the workbook's shared strings, are held in memory. A1 references such as $B$2 or A1:C3 are
+ * translated to and from the sheet's "R#C#" format. Formulas are kept with the values Excel last worked out for
+ * them, so a read sheet is not evaluated, except for formulas saved without a value. Formulas that cannot be read
+ * here, such as those naming other worksheets or functions the sheet does not know, have no value.
+ *
+ * @author Jace Hamblin
+ * @author Roman Bureacov
+ */
+public final class XlsxFile {
+    private static final String MAIN_NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String RELATIONSHIPS_NAMESPACE =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_RELATIONSHIPS_NAMESPACE =
+            "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String DEFAULT_WORKSHEET = "xl/worksheets/sheet1.xml";
+    //Largest sheet Excel opens
+    private static final int MAX_ROWS = 1_048_576;
+    private static final int MAX_COLUMNS = 16_384;
+
+    private XlsxFile() {
+        super();
+    }
+
+    /**
+     * Reads the first worksheet of a workbook into a new sheet, sized to fit its cells.
+     * @param thePath the workbook to read
+     * @return the sheet, its formulas holding the values saved with them
+     * @throws IOException if the workbook could not be read
+     * @throws IllegalArgumentException if the file is not a workbook
+     */
+    public static SpreadsheetGraph read(Path thePath) throws IOException {
+        try (ZipFile zip = new ZipFile(thePath.toFile(), StandardCharsets.UTF_8)) {
+            List<String> sharedStrings = readSharedStrings(zip);
+            ZipEntry worksheet = zip.getEntry(findFirstWorksheet(zip));
+            if (worksheet == null) throw new IllegalArgumentException("%s holds no worksheet".formatted(thePath));
+            try (InputStream in = zip.getInputStream(worksheet)) {
+                return new WorksheetReader(sharedStrings).read(in);
+            }
+        } catch (XMLStreamException exc) {
+            throw new IllegalArgumentException("%s is not a readable workbook: %s".formatted(thePath, exc.getMessage()));
+        } catch (ZipException exc) {
+            throw new IllegalArgumentException("%s is not a workbook".formatted(thePath));
+        }
+    }
+
+    /**
+     * Writes a sheet as a workbook with one worksheet, replacing the file. Formulas are written with their values,
+     * so Excel shows them without recalculating.
+     * @param theSheet the sheet to write
+     * @param thePath the workbook to write
+     * @throws IOException if the workbook could not be written
+     * @throws IllegalArgumentException if the sheet holds cells beyond what Excel can open
+     */
+    public static void write(SpreadsheetGraph theSheet, Path thePath) throws IOException {
+        try (OutputStream out = Files.newOutputStream(thePath)) {
+            write(theSheet, out);
+        }
+    }
+
+    /**
+     * Writes a sheet as a workbook with one worksheet.
+     * @param theSheet the sheet to write
+     * @param theOut where to write the workbook, left open
+     * @throws IOException if the workbook could not be written
+     * @throws IllegalArgumentException if the sheet holds cells beyond what Excel can open
+     */
+    public static void write(SpreadsheetGraph theSheet, OutputStream theOut) throws IOException {
+        Map<String, String> instructions = theSheet.getInstructions();
+        int lastRow = 0;
+        int lastColumn = 0;
+        for (String rowColumn : instructions.keySet()) {
+            int[] cell = parseRowColumn(rowColumn);
+            lastRow = Math.max(lastRow, cell[0]);
+            lastColumn = Math.max(lastColumn, cell[1]);
+        }
+        if (lastRow >= MAX_ROWS || lastColumn >= MAX_COLUMNS)
+            throw new IllegalArgumentException("Cells past row %d or column %d do not fit a workbook".formatted(MAX_ROWS, MAX_COLUMNS));
+
+        ZipOutputStream zip = new ZipOutputStream(theOut, StandardCharsets.UTF_8);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+        writePart(zip, writer, "[Content_Types].xml", XML_DECLARATION
+                + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                + "<Override PartName=\"/" + DEFAULT_WORKSHEET + "\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                + "</Types>");
+        writePart(zip, writer, "_rels/.rels", XML_DECLARATION
+                + "<Relationships xmlns=\"" + PACKAGE_RELATIONSHIPS_NAMESPACE + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIPS_NAMESPACE + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        writePart(zip, writer, "xl/workbook.xml", XML_DECLARATION
+                + "<workbook xmlns=\"" + MAIN_NAMESPACE + "\" xmlns:r=\"" + RELATIONSHIPS_NAMESPACE + "\">"
+                + "<sheets><sheet name=\"Sheet1\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+        writePart(zip, writer, "xl/_rels/workbook.xml.rels", XML_DECLARATION
+                + "<Relationships xmlns=\"" + PACKAGE_RELATIONSHIPS_NAMESPACE + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIPS_NAMESPACE + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                + "</Relationships>");
+
+        zip.putNextEntry(new ZipEntry(DEFAULT_WORKSHEET));
+        writer.write(XML_DECLARATION);
+        writer.write("<worksheet xmlns=\"" + MAIN_NAMESPACE + "\">");
+        writer.write("<dimension ref=\"A1:" + toA1(lastRow, lastColumn) + "\"/><sheetData>");
+        int openRow = -1;
+        for (Map.Entry<String, String> entry : instructions.entrySet()) {
+            int[] cell = parseRowColumn(entry.getKey());
+            if (cell[0] != openRow) {
+                if (openRow >= 0) writer.write("</row>");
+                openRow = cell[0];
+                writer.write("<row r=\"" + (openRow + 1) + "\">");
+            }
+            writeCell(writer, toA1(cell[0], cell[1]), entry.getValue(), theSheet.getCellValue(entry.getKey()));
+        }
+        if (openRow >= 0) writer.write("</row>");
+        writer.write("</sheetData></worksheet>");
+        writer.flush();
+        zip.closeEntry();
+        zip.finish();
+    }
+
+    //Helper method that writes one cell: a formula with its value, a number, or text
+    private static void writeCell(Writer theWriter, String theA1, String theInstructions, Double theValue)
+            throws IOException {
+        boolean finite = theValue != null && Double.isFinite(theValue);
+        if (theInstructions.startsWith("=")) {
+            theWriter.write("<c r=\"" + theA1 + "\"><f>");
+            theWriter.write(escape(toA1Formula(theInstructions.substring(1))));
+            theWriter.write("</f>");
+            if (finite) theWriter.write("<v>" + theValue + "</v>");
+            theWriter.write("</c>");
+        } else if (finite) {
+            //A number is written as the sheet's literal, which Excel reads, so it reads back as written
+            char[] literal = theInstructions.toCharArray();
+            boolean asWritten = !Double.isNaN(CsvImporter.parseNumber(literal, 0, literal.length));
+            theWriter.write("<c r=\"" + theA1 + "\"><v>" + (asWritten ? theInstructions : theValue) + "</v></c>");
+        } else {
+            theWriter.write("<c r=\"" + theA1 + "\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+            theWriter.write(escape(theInstructions));
+            theWriter.write("</t></is></c>");
+        }
+    }
+
+    //Helper method that writes a small part of the workbook whole
+    private static void writePart(ZipOutputStream theZip, Writer theWriter, String theName, String theContents)
+            throws IOException {
+        theZip.putNextEntry(new ZipEntry(theName));
+        theWriter.write(theContents);
+        theWriter.flush();
+        theZip.closeEntry();
+    }
+
+    //Helper method that finds the part holding the first worksheet, through the workbook and its relationships
+    private static String findFirstWorksheet(ZipFile theZip) throws IOException, XMLStreamException {
+        ZipEntry workbook = theZip.getEntry("xl/workbook.xml");
+        ZipEntry relationships = theZip.getEntry("xl/_rels/workbook.xml.rels");
+        if (workbook == null || relationships == null) return DEFAULT_WORKSHEET;
+
+        String id = null;
+        try (InputStream in = theZip.getInputStream(workbook)) {
+            XMLStreamReader reader = newReader(in);
+            while (id == null && reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("sheet")) {
+                    id = reader.getAttributeValue(RELATIONSHIPS_NAMESPACE, "id");
+                }
+            }
+            reader.close();
+        }
+        if (id == null) return DEFAULT_WORKSHEET;
+
+        try (InputStream in = theZip.getInputStream(relationships)) {
+            XMLStreamReader reader = newReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("Relationship")
+                        && id.equals(reader.getAttributeValue(null, "Id"))) {
+                    String target = reader.getAttributeValue(null, "Target");
+                    reader.close();
+                    return target.startsWith("/") ? target.substring(1) : "xl/" + target;
+                }
+            }
+            reader.close();
+        }
+        return DEFAULT_WORKSHEET;
+    }
+
+    //Helper method that reads the workbook's table of strings that cells refer to by index
+    private static List<String> readSharedStrings(ZipFile theZip) throws IOException, XMLStreamException {
+        List<String> strings = new ArrayList<>();
+        ZipEntry entry = theZip.getEntry("xl/sharedStrings.xml");
+        if (entry == null) return strings;
+        try (InputStream in = theZip.getInputStream(entry)) {
+            XMLStreamReader reader = newReader(in);
+            StringBuilder text = new StringBuilder();
+            boolean phonetic = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "si" -> text.setLength(0);
+                        case "rPh" -> phonetic = true;
+                        case "t" -> {
+                            String runText = reader.getElementText();
+                            if (!phonetic) text.append(runText);
+                        }
+                        default -> { }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (reader.getLocalName().equals("rPh")) phonetic = false;
+                    else if (reader.getLocalName().equals("si")) strings.add(text.toString());
+                }
+            }
+            reader.close();
+        }
+        return strings;
+    }
+
+    //Helper method that creates a streaming reader that ignores any document type, so files cannot pull in others
+    private static XMLStreamReader newReader(InputStream theIn) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory.createXMLStreamReader(theIn);
+    }
+
+    /**
+     * Streams the cells of a worksheet into a new sheet.
+     */
+    private static final class WorksheetReader {
+        private final List<String> sharedStrings;
+        private final SpreadsheetGraph sheet = new SpreadsheetGraph(1, 1);
+        //Formulas without a saved value, evaluated once every cell is in
+        private final Map<String, String> uncached = new LinkedHashMap<>();
+        //Shared formulas by index: their formula as written, and the row and column it was written for
+        private final Map<String, Object[]> shared = new HashMap<>();
+        private int rows = 1;
+        private int columns = 1;
+        private int row = -1;
+        private int column = -1;
+
+        WorksheetReader(List<String> theSharedStrings) {
+            sharedStrings = theSharedStrings;
+        }
+
+        SpreadsheetGraph read(InputStream theIn) throws XMLStreamException {
+            XMLStreamReader reader = newReader(theIn);
+            String type = null;
+            String formula = null;
+            String value = null;
+            StringBuilder inline = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "row" -> {
+                            String rowNumber = reader.getAttributeValue(null, "r");
+                            row = rowNumber == null ? row + 1 : Integer.parseInt(rowNumber) - 1;
+                            column = -1;
+                        }
+                        case "c" -> {
+                            String a1 = reader.getAttributeValue(null, "r");
+                            if (a1 == null) {
+                                column++;
+                            } else {
+                                int[] cell = parseA1(a1);
+                                row = cell[0];
+                                column = cell[1];
+                            }
+                            type = reader.getAttributeValue(null, "t");
+                            formula = null;
+                            value = null;
+                            inline = null;
+                        }
+                        case "dimension" -> {
+                            //The cells the worksheet uses, so the sheet is at least that large
+                            String range = reader.getAttributeValue(null, "ref");
+                            if (range != null) {
+                                int[] last = parseA1(range.substring(range.indexOf(':') + 1));
+                                rows = Math.max(rows, last[0] + 1);
+                                columns = Math.max(columns, last[1] + 1);
+                            }
+                        }
+                        case "f" -> formula = readFormula(reader);
+                        case "v" -> value = reader.getElementText();
+                        case "is" -> inline = new StringBuilder();
+                        case "t" -> {
+                            String text = reader.getElementText();
+                            if (inline != null) inline.append(text);
+                        }
+                        default -> { }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("c")) {
+                    putCell(type, formula, value, inline == null ? null : inline.toString());
+                }
+            }
+            reader.close();
+
+            sheet.setRowCount(rows);
+            sheet.setColumnCount(columns);
+            try {
+                sheet.finishImport(0, 0, -1, -1, uncached);
+            } catch (IllegalArgumentException exc) {
+                //The failing cells are kept without a value, as Excel keeps its errors
+            }
+            return sheet;
+        }
+
+        //Helper method that reads a formula, working out shared formulas from the cell they were written for
+        private String readFormula(XMLStreamReader theReader) throws XMLStreamException {
+            boolean isShared = "shared".equals(theReader.getAttributeValue(null, "t"));
+            String index = theReader.getAttributeValue(null, "si");
+            String text = theReader.getElementText();
+            if (!isShared || index == null) return toRowColumnFormula(text, 0, 0);
+            if (!text.isEmpty()) {
+                shared.put(index, new Object[] {text, row, column});
+                return toRowColumnFormula(text, 0, 0);
+            }
+            Object[] master = shared.get(index);
+            if (master == null) return null;
+            return toRowColumnFormula((String) master[0], row - (int) master[1], column - (int) master[2]);
+        }
+
+        //Helper method that puts a read cell into the sheet
+        private void putCell(String theType, String theFormula, String theValue, String theInline) {
+            if (row < 0 || column < 0) return;
+            rows = Math.max(rows, row + 1);
+            columns = Math.max(columns, column + 1);
+            String rowColumn = "R" + (row + 1) + "C" + (column + 1);
+
+            if (theFormula != null) {
+                String instructions = "=" + theFormula;
+                Double cached = null;
+                if (theValue != null && (theType == null || theType.equals("n") || theType.equals("b"))) {
+                    try {
+                        cached = Double.valueOf(theValue);
+                    } catch (NumberFormatException exc) {
+                        cached = null;
+                    }
+                }
+                if (theValue == null) uncached.put(rowColumn, instructions);
+                else sheet.putFormula(rowColumn, instructions, cached);
+                return;
+            }
+
+            String text;
+            if (theType == null || theType.equals("n") || theType.equals("b")) {
+                if (theValue == null) return;
+                Double number = parseNumber(theValue);
+                if (number != null) {
+                    sheet.putLiteral(rowColumn, row, column, theValue, number);
+                } else {
+                    //Excel writes numbers in forms the sheet does not read, such as 1E-3, so they are rewritten
+                    try {
+                        number = Double.valueOf(theValue);
+                        sheet.putLiteral(rowColumn, row, column, BigDecimal.valueOf(number).toPlainString(), number);
+                    } catch (NumberFormatException exc) {
+                        sheet.putLiteral(rowColumn, row, column, theValue, null);
+                    }
+                }
+                return;
+            } else if (theType.equals("s")) {
+                text = theValue == null ? null : sharedStrings.get(Integer.parseInt(theValue.trim()));
+            } else if (theType.equals("inlineStr")) {
+                text = theInline;
+            } else {
+                //Plain strings and errors
+                text = theValue;
+            }
+            if (text == null || text.isBlank()) return;
+            text = text.trim();
+            if (text.startsWith("=")) uncached.put(rowColumn, text);
+            else sheet.putLiteral(rowColumn, row, column, text, parseNumber(text));
+        }
+
+        //Helper method that gives the value the sheet would give a literal, null for text
+        private static Double parseNumber(String theText) {
+            char[] chars = theText.toCharArray();
+            double value = CsvImporter.parseNumber(chars, 0, chars.length);
+            return Double.isNaN(value) ? null : value;
+        }
+    }
+
+    /**
+     * Translates the A1 references of an Excel formula, written without its leading "=", into "R#C#" references.
+     * References without a "$" before their row or column are moved by the given offsets, as Excel moves shared
+     * formulas to each cell they are shared with. Text in quotes is left alone.
+     * @param theFormula the formula
+     * @param theRowOffset the rows to move relative references down by
+     * @param theColumnOffset the columns to move relative references right by
+     * @return the formula with "R#C#" references
+     */
+    static String toRowColumnFormula(String theFormula, int theRowOffset, int theColumnOffset) {
+        StringBuilder translated = new StringBuilder(theFormula.length() + 8);
+        int length = theFormula.length();
+        int i = 0;
+        while (i < length) {
+            char c = theFormula.charAt(i);
+            if (c == '"') {
+                int close = theFormula.indexOf('"', i + 1);
+                int end = close < 0 ? length : close + 1;
+                translated.append(theFormula, i, end);
+                i = end;
+                continue;
+            }
+            boolean startsWord = i == 0 || !isWordChar(theFormula.charAt(i - 1));
+            if (startsWord && (c == '$' || isLetter(c))) {
+                int j = i;
+                boolean absoluteColumn = theFormula.charAt(j) == '$';
+                if (absoluteColumn) j++;
+                int lettersStart = j;
+                while (j < length && isLetter(theFormula.charAt(j)) && j - lettersStart < 3) j++;
+                int lettersEnd = j;
+                boolean absoluteRow = j < length && theFormula.charAt(j) == '$';
+                if (absoluteRow) j++;
+                int digitsStart = j;
+                while (j < length && Character.isDigit(theFormula.charAt(j))) j++;
+                boolean isReference = lettersEnd > lettersStart && j > digitsStart
+                        && (j == length || !isWordChar(theFormula.charAt(j)) && theFormula.charAt(j) != '(');
+                if (isReference) {
+                    int cellRow = Integer.parseInt(theFormula, digitsStart, j, 10) - 1;
+                    int cellColumn = toColumn(theFormula.substring(lettersStart, lettersEnd));
+                    if (!absoluteRow) cellRow += theRowOffset;
+                    if (!absoluteColumn) cellColumn += theColumnOffset;
+                    translated.append('R').append(cellRow + 1).append('C').append(cellColumn + 1);
+                    i = j;
+                    continue;
+                }
+                //Not a reference, so copy the whole word
+                while (j < length && isWordChar(theFormula.charAt(j))) j++;
+                j = Math.max(j, i + 1);
+                translated.append(theFormula, i, j);
+                i = j;
+                continue;
+            }
+            translated.append(c);
+            i++;
+        }
+        return translated.toString();
+    }
+
+    /**
+     * Translates the "R#C#" references of a formula, written without its leading "=", into A1 references.
+     * @param theFormula the formula
+     * @return the formula with A1 references
+     */
+    static String toA1Formula(String theFormula) {
+        StringBuilder translated = new StringBuilder(theFormula.length());
+        int length = theFormula.length();
+        int i = 0;
+        while (i < length) {
+            char c = theFormula.charAt(i);
+            boolean startsWord = i == 0 || !isWordChar(theFormula.charAt(i - 1));
+            if (startsWord && c == 'R') {
+                int j = i + 1;
+                int rowStart = j;
+                while (j < length && Character.isDigit(theFormula.charAt(j))) j++;
+                int rowEnd = j;
+                if (rowEnd > rowStart && j < length && theFormula.charAt(j) == 'C') {
+                    j++;
+                    int columnStart = j;
+                    while (j < length && Character.isDigit(theFormula.charAt(j))) j++;
+                    if (j > columnStart && (j == length || !isWordChar(theFormula.charAt(j)))) {
+                        translated.append(toA1(Integer.parseInt(theFormula, rowStart, rowEnd, 10) - 1,
+                                Integer.parseInt(theFormula, columnStart, j, 10) - 1));
+                        i = j;
+                        continue;
+                    }
+                }
+            }
+            if (isWordChar(c)) {
+                //Copy the rest of the word, so references are only found at the start of one
+                int j = i;
+                while (j < length && isWordChar(theFormula.charAt(j))) j++;
+                translated.append(theFormula, i, j);
+                i = j;
+                continue;
+            }
+            translated.append(c);
+            i++;
+        }
+        return translated.toString();
+    }
+
+    //Helper method that gives the A1 name of a cell
+    private static String toA1(int theRow, int theColumn) {
+        StringBuilder letters = new StringBuilder();
+        for (int column = theColumn + 1; column > 0; column = (column - 1) / 26) {
+            letters.append((char) ('A' + (column - 1) % 26));
+        }
+        return letters.reverse().append(theRow + 1).toString();
+    }
+
+    //Helper method that gives the row and column, from zero, of an A1 name
+    private static int[] parseA1(String theA1) {
+        int i = 0;
+        while (i < theA1.length() && isLetter(theA1.charAt(i))) i++;
+        if (i == 0 || i == theA1.length())
+            throw new IllegalArgumentException("Cell name %s is not properly formatted".formatted(theA1));
+        return new int[] {Integer.parseInt(theA1, i, theA1.length(), 10) - 1, toColumn(theA1.substring(0, i))};
+    }
+
+    //Helper method that gives the column, from zero, of column letters
+    private static int toColumn(String theLetters) {
+        int column = 0;
+        for (int i = 0; i < theLetters.length(); i++) {
+            column = column * 26 + (Character.toUpperCase(theLetters.charAt(i)) - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    //Helper method that gives the row and column, from zero, of an "R#C#" cell
+    private static int[] parseRowColumn(String theRowColumn) {
+        int columnMark = theRowColumn.indexOf('C');
+        return new int[] {Integer.parseInt(theRowColumn, 1, columnMark, 10) - 1,
+                Integer.parseInt(theRowColumn, columnMark + 1, theRowColumn.length(), 10) - 1};
+    }
+
+    private static boolean isLetter(char theChar) {
+        return theChar >= 'A' && theChar <= 'Z' || theChar >= 'a' && theChar <= 'z';
+    }
+
+    private static boolean isWordChar(char theChar) {
+        return Character.isLetterOrDigit(theChar) || theChar == '_' || theChar == '.' || theChar == '!';
+    }
+
+    //Helper method that escapes text for XML
+    private static String escape(String theText) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < theText.length(); i++) {
+            char c = theText.charAt(i);
+            String replacement = switch (c) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                default -> null;
+            };
+            if (replacement == null && (c >= 0x20 || c == '\t' || c == '\n' || c == '\r')) {
+                if (escaped != null) escaped.append(c);
+                continue;
+            }
+            if (escaped == null) escaped = new StringBuilder(theText.length() + 16).append(theText, 0, i);
+            //Other control characters cannot appear in XML at all
+            if (replacement != null) escaped.append(replacement);
+        }
+        return escaped == null ? theText : escaped.toString();
+    }
+}
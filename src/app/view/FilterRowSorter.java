@@ -0,0 +1,150 @@
+package app.view;
+
+import java.util.BitSet;
+import java.util.List;
+import javax.swing.RowSorter;
+import javax.swing.table.TableModel;
+
+/**
+ * Row sorter that hides the rows a filter leaves out, keeping the rest in the
+ * order of the model. The rows shown are held as the words of a bitset along
+ * with a running count of the rows shown before each word, so converting a row
+ * either way takes a binary search and a few bit counts, and no list of the
+ * rows shown is ever made. Rows added to the model after the filter was applied
+ * are shown until it is applied again.
+ *
+ * @author David Norman
+ * @author Roman Bureacov
+ * @version Spring 2025
+ */
+class FilterRowSorter extends RowSorter<TableModel> {
+    private final TableModel myModel;  // Model whose rows are filtered
+    private long[] myWords;            // Rows shown, one bit per row
+    private int[] myCounts;            // Rows shown before each word
+    private int myFilteredRows;        // Rows the filter was applied to
+    private int myShownRows;           // Rows shown among the filtered rows
+
+    /**
+     * Creates a sorter showing every row of a model.
+     *
+     * @param theModel the model to filter
+     */
+    FilterRowSorter(TableModel theModel) {
+        myModel = theModel;
+        setVisibleRows(null, 0);
+    }
+
+    /**
+     * Changes which rows are shown, telling the table to redraw.
+     *
+     * @param theVisible the rows shown, counted from zero, or null to show every row
+     * @param theRows the number of rows the filter was applied to
+     */
+    public void setVisibleRows(BitSet theVisible, int theRows) {
+        myFilteredRows = theVisible == null ? 0 : theRows;
+        myWords = theVisible == null ? new long[0] : theVisible.get(0, theRows).toLongArray();
+        myCounts = new int[myWords.length + 1];
+        for (int i = 0; i < myWords.length; i++) myCounts[i + 1] = myCounts[i] + Long.bitCount(myWords[i]);
+        myShownRows = myCounts[myWords.length];
+        fireRowSorterChanged(null);
+    }
+
+    @Override
+    public TableModel getModel() {
+        return myModel;
+    }
+
+    @Override
+    public void toggleSortOrder(int theColumn) {
+        // rows keep the order of the model
+    }
+
+    @Override
+    public int convertRowIndexToModel(int theIndex) {
+        if (theIndex < 0 || theIndex >= getViewRowCount()) throw new IndexOutOfBoundsException(theIndex);
+        if (theIndex >= myShownRows) return myFilteredRows + theIndex - myShownRows;
+
+        // find the word holding the row, then the row within the word
+        int low = 0;
+        int high = myWords.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (myCounts[middle] <= theIndex) low = middle;
+            else high = middle - 1;
+        }
+        long word = myWords[low];
+        for (int skip = theIndex - myCounts[low]; skip > 0; skip--) word &= word - 1;
+        return (low << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    public int convertRowIndexToView(int theIndex) {
+        if (theIndex < 0 || theIndex >= myModel.getRowCount()) throw new IndexOutOfBoundsException(theIndex);
+        if (theIndex >= myFilteredRows) return myShownRows + theIndex - myFilteredRows;
+        long word = myWords.length > theIndex >>> 6 ? myWords[theIndex >>> 6] : 0;
+        if ((word & 1L << theIndex) == 0) return -1;
+        return myCounts[theIndex >>> 6] + Long.bitCount(word & (1L << theIndex) - 1);
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> theKeys) {
+        // rows keep the order of the model
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return List.of();
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return myModel.getRowCount() - Math.min(myFilteredRows, myModel.getRowCount())
+                + Math.min(myShownRows, myModel.getRowCount());
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return myModel.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        clampToModel();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        clampToModel();
+    }
+
+    @Override
+    public void rowsInserted(int theFirstRow, int theEndRow) {
+        clampToModel();
+    }
+
+    @Override
+    public void rowsDeleted(int theFirstRow, int theEndRow) {
+        clampToModel();
+    }
+
+    @Override
+    public void rowsUpdated(int theFirstRow, int theEndRow) {
+        // values changing does not apply the filter again
+    }
+
+    @Override
+    public void rowsUpdated(int theFirstRow, int theEndRow, int theColumn) {
+        // values changing does not apply the filter again
+    }
+
+    /**
+     * Forgets the rows the filter was applied to that the model no longer has.
+     */
+    private void clampToModel() {
+        int rows = myModel.getRowCount();
+        if (rows < myFilteredRows) {
+            BitSet visible = BitSet.valueOf(myWords);
+            setVisibleRows(visible, rows);
+        }
+    }
+}
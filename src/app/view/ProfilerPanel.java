@@ -0,0 +1,184 @@
+package app.view;
+
+import app.model.spread.CellProfiler;
+import app.model.spread.CellProfiler.CellProfile;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+
+/**
+ * Side panel of the profiling mode, listing the cells recorded by a {@link CellProfiler}
+ * with the most expensive first. Also supplies the renderer that shades the spreadsheet
+ * table as a heat map of the same times.
+ *
+ * @author David Norman
+ * @author Roman Bureacov
+ * @version Spring 2025
+ */
+public final class ProfilerPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+    private static final Color HOT = new Color(235, 60, 40); // Color of the most expensive cell
+
+    private final transient CellProfiler myProfiler; // Source of the evaluation times
+    private final JTable mySheetTable;               // Spreadsheet table to select hot cells in
+    private final HotCellsModel myHotCells;          // Rows of the hot cells table
+    private final JTable myHotCellsTable;            // Sortable table of hot cells
+
+    /**
+     * Creates the panel for a profiler.
+     *
+     * @param theProfiler the profiler whose recordings to show
+     * @param theSheetTable the spreadsheet table, which selects a cell when its row is picked here
+     */
+    public ProfilerPanel(final CellProfiler theProfiler, final JTable theSheetTable) {
+        super(new BorderLayout());
+        myProfiler = theProfiler;
+        mySheetTable = theSheetTable;
+        myHotCells = new HotCellsModel();
+        myHotCellsTable = new JTable(myHotCells);
+
+        // sort by total time, most expensive first, until the user picks another column
+        final TableRowSorter<HotCellsModel> lSorter = new TableRowSorter<>(myHotCells);
+        lSorter.setSortKeys(List.of(new RowSorter.SortKey(HotCellsModel.TOTAL, SortOrder.DESCENDING)));
+        myHotCellsTable.setRowSorter(lSorter);
+        myHotCellsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        // picking a hot cell selects it in the spreadsheet
+        myHotCellsTable.getSelectionModel().addListSelectionListener(e -> {
+            final int lViewRow = myHotCellsTable.getSelectedRow();
+            if (e.getValueIsAdjusting() || lViewRow < 0) return;
+            final CellProfile lProfile = myHotCells.getProfile(myHotCellsTable.convertRowIndexToModel(lViewRow));
+            if (lProfile.getRow() >= mySheetTable.getModel().getRowCount()
+                    || lProfile.getColumn() >= mySheetTable.getColumnCount()) return;
+            // cells in rows hidden by the filter cannot be selected
+            final int lSheetRow = mySheetTable.convertRowIndexToView(lProfile.getRow());
+            if (lSheetRow >= 0) mySheetTable.changeSelection(lSheetRow, lProfile.getColumn(), false, false);
+        });
+
+        final JScrollPane lScrollPane = new JScrollPane(myHotCellsTable);
+        lScrollPane.setPreferredSize(new Dimension(380, 0));
+        add(new JLabel("Hot cells"), BorderLayout.NORTH);
+        add(lScrollPane, BorderLayout.CENTER);
+    }
+
+    /**
+     * Reloads the hot cells from the profiler, keeping the current sort.
+     */
+    public void refresh() {
+        myHotCells.setProfiles(myProfiler.getProfiles());
+    }
+
+    /**
+     * Creates a renderer for the spreadsheet table that shades each cell by its share of
+     * the largest evaluation time, and gives its times as a tooltip.
+     *
+     * @return the heat map renderer
+     */
+    public DefaultTableCellRenderer createHeatMapRenderer() {
+        return new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(final JTable table, final Object value,
+                                                           final boolean isSelected, final boolean hasFocus,
+                                                           final int row, final int column) {
+                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                final int lModelRow = table.convertRowIndexToModel(row);
+                final CellProfile lProfile = myProfiler.getProfile(String.format("R%dC%d", lModelRow + 1, column + 1));
+                if (lProfile == null || myProfiler.getMaxTotalNanos() == 0) {
+                    setToolTipText(null);
+                    if (!isSelected) setBackground(table.getBackground());
+                } else {
+                    setToolTipText(String.format("%d evaluations, %.3f ms total",
+                            lProfile.getEvaluations(), lProfile.getTotalNanos() / NANOS_PER_MILLI));
+                    // square root so that cells well below the hottest still show
+                    final double lHeat = Math.sqrt((double) lProfile.getTotalNanos() / myProfiler.getMaxTotalNanos());
+                    if (!isSelected) setBackground(blend(table.getBackground(), HOT, lHeat));
+                }
+                return this;
+            }
+        };
+    }
+
+    /**
+     * Mixes two colors.
+     *
+     * @param theCold the color at no heat
+     * @param theHot the color at full heat
+     * @param theHeat the heat, from 0 to 1
+     * @return the mixed color
+     */
+    private static Color blend(final Color theCold, final Color theHot, final double theHeat) {
+        return new Color(
+                (int) Math.round(theCold.getRed() + (theHot.getRed() - theCold.getRed()) * theHeat),
+                (int) Math.round(theCold.getGreen() + (theHot.getGreen() - theCold.getGreen()) * theHeat),
+                (int) Math.round(theCold.getBlue() + (theHot.getBlue() - theCold.getBlue()) * theHeat)
+        );
+    }
+
+    /**
+     * Table model listing one profiled cell per row.
+     */
+    private static class HotCellsModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final int TOTAL = 3;
+        private static final String[] COLUMNS = {"Cell", "Formula", "Evaluations", "Total (ms)", "Mean (ms)"};
+        private static final Class<?>[] CLASSES = {String.class, String.class, Integer.class, Double.class, Double.class};
+
+        private transient List<CellProfile> myProfiles = new ArrayList<>();
+
+        void setProfiles(final List<CellProfile> theProfiles) {
+            myProfiles = theProfiles;
+            fireTableDataChanged();
+        }
+
+        CellProfile getProfile(final int theRow) {
+            return myProfiles.get(theRow);
+        }
+
+        @Override
+        public int getRowCount() {
+            return myProfiles.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(final int theCol) {
+            return COLUMNS[theCol];
+        }
+
+        @Override
+        public Class<?> getColumnClass(final int theCol) {
+            return CLASSES[theCol];
+        }
+
+        @Override
+        public Object getValueAt(final int theRow, final int theCol) {
+            final CellProfile lProfile = myProfiles.get(theRow);
+            return switch (theCol) {
+                case 0 -> lProfile.getRowColumn();
+                case 1 -> lProfile.getInstructions();
+                case 2 -> lProfile.getEvaluations();
+                case TOTAL -> lProfile.getTotalNanos() / NANOS_PER_MILLI;
+                default -> lProfile.getMeanNanos() / NANOS_PER_MILLI;
+            };
+        }
+    }
+}
@@ -1,13 +1,28 @@
 package app.view;
 
+import app.model.spread.AutoFilter;
+import app.model.spread.CellProfiler;
+import app.model.spread.CsvImporter;
+import app.model.spread.DependencyExplorer;
+import app.model.spread.EditJournal;
+import app.model.spread.RecalcMetrics;
 import app.model.spread.Spreadsheet;
 import app.model.spread.SpreadsheetGraph;
+import app.model.spread.WriteAheadLog;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 import javax.swing.*;
 import javax.swing.border.*;
 import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
 import java.awt.*;
 
 /**
@@ -22,6 +37,7 @@ import java.awt.*;
 public class SpreadsheetGUI {
     private static Font MONOSPACE_FORMULA_BAR = new Font(Font.MONOSPACED, Font.PLAIN, 14);
     private static Font MONOSPACE_CELL = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final long JOURNAL_MEMORY_BYTES = 16L * 1024 * 1024; // Memory kept for undoing edits
 
     private Spreadsheet myModel;             // The spreadsheet data model
     private JTable myTable;                  // Table component displaying the spreadsheet
@@ -30,6 +46,16 @@ public class SpreadsheetGUI {
     private SpreadsheetTableModel myTableModel; // Table model wrapping the spreadsheet data
     private JFrame myFrame;                  // Main application window
     private JScrollPane myScrollPane;       // Scroll pane containing the spreadsheet table
+    private SpreadsheetGraph myGraph;        // The data model, for attaching recalculation listeners
+    private CellProfiler myProfiler;         // Records evaluation times while profiling
+    private ProfilerPanel myProfilerPanel;   // Hot cells panel shown while profiling
+    private TableCellRenderer myDefaultRenderer; // Table renderer to restore when profiling stops
+    private EditJournal myJournal;           // Edits that can be undone and redone
+    private WriteAheadLog myAutosave;        // Saves every edit, to recover the sheet after a crash
+    private RowHeaderModel myRowHeaderModel; // Row labels, made as they are drawn
+    private AutoFilter myAutoFilter;         // Conditions picking out the rows shown
+    private FilterRowSorter myRowSorter;     // Hides the rows the filter leaves out
+    private TraceArrows myTraceArrows;       // Arrows between the selected cell and its precedents or dependents
 
     /**
      * Constructor initializes the UI with given rows and columns.
@@ -45,10 +71,26 @@ public class SpreadsheetGUI {
      * @param theCols Number of columns in the spreadsheet
      */
     private void initUI(int theRows, int theCols) {
-        myModel = new SpreadsheetGraph(theRows, theCols);  // Initialize spreadsheet data model
+        myGraph = openAutosave(theRows, theCols);
+        if (Boolean.getBoolean("app.metrics")) RecalcMetrics.register(myGraph, "SpreadsheetGUI"); // expose over JMX
+        myModel = myGraph;  // Initialize spreadsheet data model
+        myJournal = new EditJournal(myGraph, JOURNAL_MEMORY_BYTES);
         myTableModel = new SpreadsheetTableModel();
-        myTable = new JTable(myTableModel);
+        myTable = new JTable(myTableModel) {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                if (myTraceArrows != null) myTraceArrows.paint((Graphics2D) g); // arrows go over the cells
+            }
+        };
         myTable.setCellSelectionEnabled(true);
+        myAutoFilter = new AutoFilter(myGraph, 1);
+        myRowSorter = new FilterRowSorter(myTableModel);
+        myTable.setRowSorter(myRowSorter);
+        myTraceArrows = new TraceArrows(myTable, new DependencyExplorer(myGraph));
+        myDefaultRenderer = myTable.getDefaultRenderer(Object.class);
+        myProfiler = new CellProfiler();
+        myProfilerPanel = new ProfilerPanel(myProfiler, myTable);
 
         // Configure custom cell editor to show formulas on edit
         this.setCellEditor();
@@ -56,11 +98,17 @@ public class SpreadsheetGUI {
         // Setup main application window
         myFrame = new JFrame("Spreadsheet App");
         myFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        myFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeAutosave();
+            }
+        });
         myFrame.setLayout(new BorderLayout());
 
         // Add spreadsheet table inside a scroll pane with row headers
         myScrollPane = new JScrollPane(myTable);
-        updateRowHeader(theRows); // Setup row headers on the left
+        createRowHeader(myModel.getRowCount()); // Setup row headers on the left
         myFrame.add(myScrollPane, BorderLayout.CENTER);
 
         // Create input panel for cell reference and formula entry
@@ -69,6 +117,10 @@ public class SpreadsheetGUI {
         myInstructionField = new JTextField("=5+3", 30);
         JButton applyButton = new JButton("Apply");
         JButton resizeButton = new JButton("Resize");
+        JButton importButton = new JButton("Import CSV");
+        JToggleButton profileButton = new JToggleButton("Profile");
+        JButton undoButton = new JButton("Undo");
+        JButton redoButton = new JButton("Redo");
 
         // When 'Apply' clicked, update the cell formula and refresh table
         applyButton.addActionListener(e -> {
@@ -76,7 +128,7 @@ public class SpreadsheetGUI {
             String formula = myInstructionField.getText().trim();
             try {
                 myModel.setCellInstructions(formula, cell);
-                myTableModel.fireTableDataChanged();
+                refreshTable();
             } catch (IllegalArgumentException ex) {
                 JOptionPane.showMessageDialog(myFrame, String.format("Error: %s", ex.getMessage()));
             }
@@ -85,18 +137,93 @@ public class SpreadsheetGUI {
         // When 'Resize' clicked, open dialog to resize spreadsheet
         resizeButton.addActionListener(e -> resizeSpreadsheet());
 
+        // When 'Import CSV' clicked, choose a file to load into the selected cell onwards
+        importButton.addActionListener(e -> importCsv());
+
+        // When 'Undo' or 'Redo' clicked, or Ctrl+Z or Ctrl+Y pressed, step through the edit journal
+        Action undoAction = new AbstractAction("Undo") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stepJournal(true);
+            }
+        };
+        Action redoAction = new AbstractAction("Redo") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stepJournal(false);
+            }
+        };
+        undoButton.setAction(undoAction);
+        redoButton.setAction(redoAction);
+        JRootPane rootPane = myFrame.getRootPane();
+        rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        rootPane.getActionMap().put("undo", undoAction);
+        rootPane.getActionMap().put("redo", redoAction);
+
+        // When 'Profile' toggled, start or stop recording evaluation times
+        profileButton.addActionListener(e -> setProfiling(profileButton.isSelected()));
+
         // listener for to update the formula bar when clicking on a cell
         myTable.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseReleased(final MouseEvent e) {
                 final Point lMousePoint = e.getPoint();
-                final int lRow = myTable.rowAtPoint(lMousePoint);
+                final int lViewRow = myTable.rowAtPoint(lMousePoint);
                 final int lCol = myTable.columnAtPoint(lMousePoint);
+                if (lViewRow < 0 || lCol < 0) return;
+                final int lRow = myTable.convertRowIndexToModel(lViewRow);
                 myCellField.setText(myModel.toCellRef(lRow, lCol));
                 myInstructionField.setText(myModel.getCellInstructions(lRow, lCol));
             }
         });
 
+        // right-click menu to insert or delete rows and columns at the selected cell, sort and filter by its column,
+        // or trace the cells it depends on and the cells depending on it
+        JPopupMenu shiftMenu = new JPopupMenu();
+        JMenuItem insertRowItem = new JMenuItem("Insert Row");
+        JMenuItem deleteRowItem = new JMenuItem("Delete Row");
+        JMenuItem insertColumnItem = new JMenuItem("Insert Column");
+        JMenuItem deleteColumnItem = new JMenuItem("Delete Column");
+        JMenuItem sortAscendingItem = new JMenuItem("Sort Ascending");
+        JMenuItem sortDescendingItem = new JMenuItem("Sort Descending");
+        JMenuItem filterItem = new JMenuItem("Filter Column...");
+        JMenuItem clearFiltersItem = new JMenuItem("Clear Filters");
+        JMenuItem tracePrecedentsItem = new JMenuItem("Trace Precedents");
+        JMenuItem traceDependentsItem = new JMenuItem("Trace Dependents");
+        JMenuItem removeArrowsItem = new JMenuItem("Remove Arrows");
+        insertRowItem.addActionListener(e -> shiftCells(true, true));
+        deleteRowItem.addActionListener(e -> shiftCells(true, false));
+        insertColumnItem.addActionListener(e -> shiftCells(false, true));
+        deleteColumnItem.addActionListener(e -> shiftCells(false, false));
+        sortAscendingItem.addActionListener(e -> sortRows(true));
+        sortDescendingItem.addActionListener(e -> sortRows(false));
+        filterItem.addActionListener(e -> filterColumn());
+        clearFiltersItem.addActionListener(e -> {
+            myAutoFilter.clear();
+            refreshTable();
+        });
+        tracePrecedentsItem.addActionListener(e -> traceCell(true));
+        traceDependentsItem.addActionListener(e -> traceCell(false));
+        removeArrowsItem.addActionListener(e -> myTraceArrows.clear());
+        shiftMenu.add(insertRowItem);
+        shiftMenu.add(deleteRowItem);
+        shiftMenu.addSeparator();
+        shiftMenu.add(insertColumnItem);
+        shiftMenu.add(deleteColumnItem);
+        shiftMenu.addSeparator();
+        shiftMenu.add(sortAscendingItem);
+        shiftMenu.add(sortDescendingItem);
+        shiftMenu.add(filterItem);
+        shiftMenu.add(clearFiltersItem);
+        shiftMenu.addSeparator();
+        shiftMenu.add(tracePrecedentsItem);
+        shiftMenu.add(traceDependentsItem);
+        shiftMenu.add(removeArrowsItem);
+        myTable.setComponentPopupMenu(shiftMenu);
+
         // set fonts
         myCellField.setFont(MONOSPACE_FORMULA_BAR);
         myInstructionField.setFont(MONOSPACE_FORMULA_BAR);
@@ -108,6 +235,10 @@ public class SpreadsheetGUI {
         inputPanel.add(myInstructionField);
         inputPanel.add(applyButton);
         inputPanel.add(resizeButton);
+        inputPanel.add(importButton);
+        inputPanel.add(undoButton);
+        inputPanel.add(redoButton);
+        inputPanel.add(profileButton);
 
         myFrame.add(inputPanel, BorderLayout.SOUTH);
 
@@ -136,8 +267,8 @@ public class SpreadsheetGUI {
                                                          final boolean isSelected,
                                                          final int row, final int column) {
 
-                // Construct cell reference string like "R1C1"
-                final String lCellRef = String.format("R%dC%d", row + 1, column + 1);
+                // Construct cell reference string like "R1C1", for the row of the model rather than the view
+                final String lCellRef = String.format("R%dC%d", table.convertRowIndexToModel(row) + 1, column + 1);
                 String lExpression;
                 // Get the formula/instruction from the model for this cell
                 lExpression = myModel.getCellInstructions(lCellRef);
@@ -156,6 +287,91 @@ public class SpreadsheetGUI {
         myTable.setDefaultEditor(Object.class, lEditor);
     }
 
+    /**
+     * Turns the profiling mode on or off. While on, every recalculation is timed per cell,
+     * the table is shaded as a heat map and the hot cells panel is shown beside it.
+     *
+     * @param theProfiling whether to profile
+     */
+    private void setProfiling(boolean theProfiling) {
+        if (theProfiling) {
+            myProfiler.clear();
+            myGraph.addRecalcListener(myProfiler);
+            myTable.setDefaultRenderer(Object.class, myProfilerPanel.createHeatMapRenderer());
+            myProfilerPanel.refresh();
+            myFrame.add(myProfilerPanel, BorderLayout.EAST);
+        } else {
+            myGraph.removeRecalcListener(myProfiler);
+            myTable.setDefaultRenderer(Object.class, myDefaultRenderer);
+            myFrame.remove(myProfilerPanel);
+        }
+        myFrame.revalidate();
+        myFrame.repaint();
+    }
+
+    /**
+     * Recovers the sheet saved in the autosave directory, given by the "app.autosave" system property
+     * ("none" to turn autosave off), and starts saving it again.
+     *
+     * @param theRows Number of rows in the spreadsheet if nothing was saved
+     * @param theCols Number of columns in the spreadsheet if nothing was saved
+     * @return the recovered spreadsheet, or an empty one
+     */
+    private SpreadsheetGraph openAutosave(int theRows, int theCols) {
+        String directory = System.getProperty("app.autosave",
+                Path.of(System.getProperty("user.home"), ".spreadsheet", "autosave").toString());
+        if (directory.equals("none")) return new SpreadsheetGraph(theRows, theCols);
+        try {
+            SpreadsheetGraph graph = WriteAheadLog.recover(Path.of(directory), theRows, theCols);
+            myAutosave = new WriteAheadLog(graph, Path.of(directory));
+            return graph;
+        } catch (IOException | IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(null, String.format("Autosave is off, could not open %s: %s",
+                    directory, ex.getMessage()));
+            return new SpreadsheetGraph(theRows, theCols);
+        }
+    }
+
+    /**
+     * Waits for the autosave to write the last edits before the application exits.
+     */
+    private void closeAutosave() {
+        if (myAutosave == null) return;
+        try {
+            myAutosave.close();
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(myFrame, String.format("Error: could not autosave: %s", ex.getMessage()));
+        }
+    }
+
+    /**
+     * Undoes or redoes an edit and redraws the table, showing any cell that failed to evaluate.
+     *
+     * @param theUndo true to undo the last edit, false to redo the last undone edit
+     */
+    private void stepJournal(boolean theUndo) {
+        try {
+            if (theUndo) myJournal.undo();
+            else myJournal.redo();
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(myFrame, String.format("Error: %s", ex.getMessage()));
+        }
+        refreshTable();
+    }
+
+    /**
+     * Redraws the table after an edit, along with the hot cells while profiling.
+     * The filter is applied again, as the edit may have changed which rows it shows.
+     */
+    private void refreshTable() {
+        myRowSorter.setVisibleRows(myAutoFilter.isActive() ? myAutoFilter.apply() : null, myModel.getRowCount());
+        myRowHeaderModel.setSize(myTable.getRowCount());
+        myRowHeaderModel.relabel();
+        myTraceArrows.refresh();
+        myTableModel.fireTableDataChanged();
+        if (myProfilerPanel.isShowing()) myProfilerPanel.refresh();
+    }
+
     /**
      * Opens a dialog box allowing the user to resize
      * the spreadsheet (change rows and columns).
@@ -178,11 +394,13 @@ public class SpreadsheetGUI {
                 int newCols = Integer.parseInt(colsField.getText());
                 if (newRows <= 0 || newCols <= 0) throw new NumberFormatException();
 
-                // Create new spreadsheet model with new size
+                // Resize the model in place, then tell the view only what changed
+                int oldRows = myModel.getRowCount();
+                int oldCols = myModel.getColumnCount();
                 myModel.setRowCount(newRows);
                 myModel.setColumnCount(newCols);
-                updateRowHeader(newRows);
-                myTableModel.fireTableStructureChanged();
+                updateTableSize(oldRows, oldCols);
+                refreshTable();
             } catch (NumberFormatException ex) {
                 // Show error if user inputs invalid sizes
                 JOptionPane.showMessageDialog(myFrame, "Please enter valid positive integers.");
@@ -191,13 +409,129 @@ public class SpreadsheetGUI {
     }
 
     /**
-     * Updates the row header JList on the left of the table
+     * Inserts or deletes the row or column of the selected cell, or the first
+     * row or column if none is selected. The cells past it move along and
+     * the formulas referring to them are rewritten to follow.
+     *
+     * @param theRows true to insert or delete a row, false for a column
+     * @param theInsert true to insert before the selected cell, false to delete it
+     */
+    private void shiftCells(boolean theRows, boolean theInsert) {
+        int index = Math.max(0, theRows ? selectedModelRow() : myTable.getSelectedColumn()) + 1;
+        int oldRows = myModel.getRowCount();
+        int oldCols = myModel.getColumnCount();
+        try {
+            if (theRows && theInsert) myGraph.insertRows(index, 1);
+            else if (theRows) myGraph.deleteRows(index, 1);
+            else if (theInsert) myGraph.insertColumns(index, 1);
+            else myGraph.deleteColumns(index, 1);
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(myFrame, String.format("Error: %s", ex.getMessage()));
+        }
+        updateTableSize(oldRows, oldCols);
+        refreshTable();
+    }
+
+    /**
+     * Sorts the rows by the column of the selected cell, or the first column if
+     * none is selected. Only the selected rows are sorted if several are selected,
+     * otherwise every row is, and whole rows move either way. Rows hidden by the
+     * filter are sorted along with the rest. The sort can be undone.
+     *
+     * @param theAscending true to put smaller values first, false for larger values first
+     */
+    private void sortRows(boolean theAscending) {
+        int column = Math.max(0, myTable.getSelectedColumn()) + 1;
+        int[] selected = myTable.getSelectedRows();
+        int firstRow = 1;
+        int lastRow = myModel.getRowCount();
+        if (selected.length > 1) {
+            firstRow = myTable.convertRowIndexToModel(selected[0]) + 1;
+            lastRow = myTable.convertRowIndexToModel(selected[selected.length - 1]) + 1;
+        }
+        try {
+            myGraph.sortRows(firstRow, lastRow, 1, myModel.getColumnCount(),
+                    new int[] {column}, new boolean[] {theAscending});
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(myFrame, String.format("Error: %s", ex.getMessage()));
+        }
+        refreshTable();
+    }
+
+    /**
+     * Opens a dialog box for the condition rows must meet in the column of the
+     * selected cell to be shown, such as ">5", "<>done" or "done". Leaving it
+     * empty shows the rows again.
+     */
+    private void filterColumn() {
+        int column = Math.max(0, myTable.getSelectedColumn()) + 1;
+        Object criterion = JOptionPane.showInputDialog(myFrame,
+                String.format("Show rows where C%d is (for example >5, <>done or done):", column),
+                "Filter Column", JOptionPane.PLAIN_MESSAGE, null, null, myAutoFilter.getCondition(column));
+        if (criterion == null) return;
+        try {
+            myAutoFilter.setCondition(column, criterion.toString());
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(myFrame, String.format("Error: %s", ex.getMessage()));
+        }
+        refreshTable();
+    }
+
+    /**
+     * Draws arrows one level further from the selected cell to the cells its
+     * formula refers to, or to the formulas referring to it. Tracing another
+     * cell removes the arrows of the last one.
+     *
+     * @param thePrecedents true to trace the cells it refers to, false for the formulas referring to it
+     */
+    private void traceCell(boolean thePrecedents) {
+        int row = selectedModelRow();
+        int column = myTable.getSelectedColumn();
+        if (row < 0 || column < 0) return;
+        String cell = myModel.toCellRef(row, column);
+        if (thePrecedents) myTraceArrows.tracePrecedents(cell);
+        else myTraceArrows.traceDependents(cell);
+    }
+
+    /**
+     * Gets the row of the model the selected cell is in.
+     *
+     * @return the selected row of the model, or -1 if no cell is selected
+     */
+    private int selectedModelRow() {
+        int row = myTable.getSelectedRow();
+        return row < 0 ? -1 : myTable.convertRowIndexToModel(row);
+    }
+
+    /**
+     * Opens a file chooser and imports the chosen CSV file, with its first value
+     * going into the cell named in the cell field. The sheet grows to fit it.
+     */
+    private void importCsv() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(myFrame) != JFileChooser.APPROVE_OPTION) return;
+        int oldRows = myModel.getRowCount();
+        int oldCols = myModel.getColumnCount();
+        try {
+            new CsvImporter(myGraph)
+                    .setOrigin(myCellField.getText().toUpperCase().trim())
+                    .importFile(chooser.getSelectedFile().toPath());
+        } catch (IOException | IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(myFrame, String.format("Error: %s", ex.getMessage()));
+        }
+        updateTableSize(oldRows, oldCols);
+        refreshTable();
+    }
+
+    /**
+     * Sets up the row header JList on the left of the table
      * to show row labels (R1, R2, etc.) according to row count.
      *
      * @param theRows Number of rows in the spreadsheet
      */
-    private void updateRowHeader(int theRows) {
-        JList<String> rowHeader = new JList<>(createRowHeaders(theRows));
+    private void createRowHeader(int theRows) {
+        myRowHeaderModel = new RowHeaderModel(myTable, theRows);
+        JList<String> rowHeader = new JList<>(myRowHeaderModel);
         rowHeader.setFixedCellWidth(40);
         rowHeader.setFixedCellHeight(myTable.getRowHeight());
         rowHeader.setCellRenderer(new RowHeaderRenderer(myTable));
@@ -205,18 +539,23 @@ public class SpreadsheetGUI {
     }
 
     /**
-     * Creates an array of row header strings ("R1", "R2", etc.)
-     * based on the number of rows.
+     * Tells the table and row header how the spreadsheet's size changed.
+     * Added or removed rows are announced as such, so the view does not
+     * rebuild itself; the columns are only rebuilt if their count changed.
      *
-     * @param theRows Number of rows
-     * @return Array of row header labels
+     * @param theOldRows Number of rows before the change
+     * @param theOldCols Number of columns before the change
      */
-    private String[] createRowHeaders(int theRows) {
-        String[] headers = new String[theRows];
-        for (int i = 0; i < theRows; i++) {
-            headers[i] = String.format("R%d", i + 1);
+    private void updateTableSize(int theOldRows, int theOldCols) {
+        int newRows = myModel.getRowCount();
+        myRowHeaderModel.setSize(myTable.getRowCount());
+        if (myModel.getColumnCount() != theOldCols) {
+            myTableModel.fireTableStructureChanged();
+        } else if (newRows > theOldRows) {
+            myTableModel.fireTableRowsInserted(theOldRows, newRows - 1);
+        } else if (newRows < theOldRows) {
+            myTableModel.fireTableRowsDeleted(newRows, theOldRows - 1);
         }
-        return headers;
     }
 
     /**
@@ -276,13 +615,61 @@ public class SpreadsheetGUI {
                 // Set new formula/instruction in the model
                 myModel.setCellInstructions(input, cellName);
                 myInstructionField.setText(input);
-                this.fireTableDataChanged();
+                refreshTable();
             } catch (IllegalArgumentException ex) {
                 JOptionPane.showMessageDialog(null, String.format("Error: %s", ex.getMessage()));
             }
         }
     }
 
+    /**
+     * Row header labels ("R1", "R2", etc.), made when drawn
+     * rather than held for every row. Rows hidden by the filter
+     * are skipped, so each label names the row of the model.
+     */
+    private static class RowHeaderModel extends AbstractListModel<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final JTable myTable; // Table whose rows are labeled
+        private int mySize;           // Number of rows labeled
+
+        public RowHeaderModel(JTable theTable, int theSize) {
+            myTable = theTable;
+            mySize = theSize;
+        }
+
+        /**
+         * Changes the number of rows labeled, telling the list
+         * only about the rows added or removed.
+         *
+         * @param theSize Number of rows
+         */
+        public void setSize(int theSize) {
+            int oldSize = mySize;
+            mySize = theSize;
+            if (theSize > oldSize) fireIntervalAdded(this, oldSize, theSize - 1);
+            else if (theSize < oldSize) fireIntervalRemoved(this, theSize, oldSize - 1);
+        }
+
+        /**
+         * Tells the list every label may have changed, as when
+         * the filter hides or shows rows.
+         */
+        public void relabel() {
+            if (mySize > 0) fireContentsChanged(this, 0, mySize - 1);
+        }
+
+        @Override
+        public int getSize() {
+            return mySize;
+        }
+
+        @Override
+        public String getElementAt(int theIndex) {
+            return "R" + (myTable.convertRowIndexToModel(theIndex) + 1);
+        }
+    }
+
     /**
      * Renderer for row headers shown to the left of the spreadsheet.
      * Matches the style of the table header.
@@ -0,0 +1,195 @@
+package app.view;
+
+import app.model.spread.DependencyExplorer;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JTable;
+
+/**
+ * Arrows drawn over the spreadsheet table from the cells a formula refers to
+ * into the formula's cell. Tracing the precedents or dependents of the same
+ * cell again reaches one level further each time, as the arrows of a cell in
+ * other spreadsheets do, and the arrows are traced again after every edit so
+ * they follow cells that move. Arrows to cells in rows hidden by the filter
+ * are not drawn.
+ *
+ * @author David Norman
+ * @author Roman Bureacov
+ * @version Spring 2025
+ */
+class TraceArrows {
+    private static final Color ARROW = new Color(40, 90, 220); // Color of the arrows
+    private static final int MAX_ARROWS = 10_000;               // Most arrows drawn, as ranges can be huge
+    private static final int HEAD = 7;                          // Length of an arrow head
+
+    private final JTable myTable;              // Table the arrows are drawn over
+    private final DependencyExplorer myExplorer; // Source of the dependencies
+    private String myCell;                     // Cell traced from, or null without arrows
+    private int myPrecedentLevels;             // Levels of precedents traced
+    private int myDependentLevels;             // Levels of dependents traced
+    private final List<int[]> myArrows;        // Rows and columns each arrow leads from and to
+
+    /**
+     * Creates the arrows for a table, with none shown.
+     *
+     * @param theTable the table to draw over
+     * @param theExplorer the dependencies of the table's sheet
+     */
+    TraceArrows(final JTable theTable, final DependencyExplorer theExplorer) {
+        myTable = theTable;
+        myExplorer = theExplorer;
+        myArrows = new ArrayList<>();
+    }
+
+    /**
+     * Traces one more level of the cells a cell depends on, starting over if
+     * another cell was traced.
+     *
+     * @param theCell the cell, in the format "R#C#"
+     */
+    void tracePrecedents(final String theCell) {
+        restartFor(theCell);
+        myPrecedentLevels++;
+        refresh();
+    }
+
+    /**
+     * Traces one more level of the formulas depending on a cell, starting over
+     * if another cell was traced.
+     *
+     * @param theCell the cell, in the format "R#C#"
+     */
+    void traceDependents(final String theCell) {
+        restartFor(theCell);
+        myDependentLevels++;
+        refresh();
+    }
+
+    /**
+     * Removes every arrow.
+     */
+    void clear() {
+        myCell = null;
+        myPrecedentLevels = 0;
+        myDependentLevels = 0;
+        myArrows.clear();
+        myTable.repaint();
+    }
+
+    /**
+     * Traces the arrows again, for the sheet as it is now.
+     */
+    void refresh() {
+        myArrows.clear();
+        if (myCell != null) {
+            // an arrow leads into every cell found short of the last level from each of its precedents
+            final Map<String, Integer> lPrecedents = myExplorer.tracePrecedents(myCell, myPrecedentLevels);
+            if (myPrecedentLevels > 0) addArrows(myCell, true);
+            for (final Map.Entry<String, Integer> lEntry : lPrecedents.entrySet()) {
+                if (lEntry.getValue() < myPrecedentLevels) addArrows(lEntry.getKey(), true);
+            }
+            final Map<String, Integer> lDependents = myExplorer.traceDependents(myCell, myDependentLevels);
+            if (myDependentLevels > 0) addArrows(myCell, false);
+            for (final Map.Entry<String, Integer> lEntry : lDependents.entrySet()) {
+                if (lEntry.getValue() < myDependentLevels) addArrows(lEntry.getKey(), false);
+            }
+        }
+        myTable.repaint();
+    }
+
+    /**
+     * Draws the arrows, from a dot at the cell referred to to a head at the
+     * formula's cell.
+     *
+     * @param theGraphics the graphics of the table
+     */
+    void paint(final Graphics2D theGraphics) {
+        if (myArrows.isEmpty()) return;
+        final Graphics2D lGraphics = (Graphics2D) theGraphics.create();
+        lGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        lGraphics.setColor(ARROW);
+        lGraphics.setStroke(new BasicStroke(1.5f));
+        for (final int[] lArrow : myArrows) {
+            final Rectangle lFrom = cellRect(lArrow[0], lArrow[1]);
+            final Rectangle lTo = cellRect(lArrow[2], lArrow[3]);
+            if (lFrom == null || lTo == null) continue;
+            final int lX1 = (int) lFrom.getCenterX();
+            final int lY1 = (int) lFrom.getCenterY();
+            final int lX2 = (int) lTo.getCenterX();
+            final int lY2 = (int) lTo.getCenterY();
+            lGraphics.fillOval(lX1 - 3, lY1 - 3, 6, 6);
+            lGraphics.drawLine(lX1, lY1, lX2, lY2);
+            final double lAngle = Math.atan2(lY2 - lY1, lX2 - lX1);
+            final int[] lHeadX = {lX2, (int) (lX2 - HEAD * Math.cos(lAngle - 0.4)),
+                    (int) (lX2 - HEAD * Math.cos(lAngle + 0.4))};
+            final int[] lHeadY = {lY2, (int) (lY2 - HEAD * Math.sin(lAngle - 0.4)),
+                    (int) (lY2 - HEAD * Math.sin(lAngle + 0.4))};
+            lGraphics.fillPolygon(lHeadX, lHeadY, 3);
+        }
+        lGraphics.dispose();
+    }
+
+    /**
+     * Forgets the levels traced if another cell is traced from now on.
+     *
+     * @param theCell the cell traced from now on
+     */
+    private void restartFor(final String theCell) {
+        if (theCell.equals(myCell)) return;
+        myCell = theCell;
+        myPrecedentLevels = 0;
+        myDependentLevels = 0;
+    }
+
+    /**
+     * Adds the arrows into a formula from its precedents, or out of a cell
+     * into its dependents.
+     *
+     * @param theCell the cell, in the format "R#C#"
+     * @param thePrecedents true for arrows into the cell, false for arrows out of it
+     */
+    private void addArrows(final String theCell, final boolean thePrecedents) {
+        final List<String> lCells = thePrecedents
+                ? myExplorer.getPrecedents(theCell) : myExplorer.getDependents(theCell);
+        final int[] lCell = parseCell(theCell);
+        for (final String lOther : lCells) {
+            if (myArrows.size() == MAX_ARROWS) return;
+            final int[] lOtherCell = parseCell(lOther);
+            myArrows.add(thePrecedents
+                    ? new int[] {lOtherCell[0], lOtherCell[1], lCell[0], lCell[1]}
+                    : new int[] {lCell[0], lCell[1], lOtherCell[0], lOtherCell[1]});
+        }
+    }
+
+    /**
+     * Gets where a cell is drawn.
+     *
+     * @param theRow the row of the model, counted from zero
+     * @param theColumn the column, counted from zero
+     * @return the bounds of the cell in the table, or null if it is not drawn
+     */
+    private Rectangle cellRect(final int theRow, final int theColumn) {
+        if (theRow >= myTable.getModel().getRowCount() || theColumn >= myTable.getColumnCount()) return null;
+        final int lViewRow = myTable.convertRowIndexToView(theRow);
+        return lViewRow < 0 ? null : myTable.getCellRect(lViewRow, theColumn, false);
+    }
+
+    /**
+     * Reads the row and column of a cell.
+     *
+     * @param theCell the cell, in the format "R#C#"
+     * @return the row and column, counted from zero
+     */
+    private static int[] parseCell(final String theCell) {
+        final int lColumnMark = theCell.indexOf('C');
+        return new int[] {Integer.parseInt(theCell, 1, lColumnMark, 10) - 1,
+                Integer.parseInt(theCell, lColumnMark + 1, theCell.length(), 10) - 1};
+    }
+}
@@ -0,0 +1,174 @@
+package app.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import app.model.spread.SheetFile;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the batch calculator: reading the command line, overriding cells, and writing the results of each
+ * workbook.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class BatchCalculatorTest {
+    private Path iDirectory;
+    private Path iWorkbook;
+    private ByteArrayOutputStream iOut;
+    private ByteArrayOutputStream iErr;
+
+    /**
+     * Sets up the testing environment
+     * @throws IOException if the workbook could not be written
+     */
+    @BeforeEach
+    public void setup() throws IOException {
+        this.iDirectory = Files.createTempDirectory("batch");
+        this.iWorkbook = this.iDirectory.resolve("prices.sheet");
+        final Map<String, String> lInstructions = new LinkedHashMap<>();
+        lInstructions.put("R1C1", "2");
+        lInstructions.put("R2C1", "3");
+        lInstructions.put("R3C1", "=R1C1*R2C1");
+        lInstructions.put("R1C2", "label");
+        new SheetFile(3, 2, lInstructions).write(this.iWorkbook);
+        this.iOut = new ByteArrayOutputStream();
+        this.iErr = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Deletes the directory the workbooks are in
+     * @throws IOException if the directory could not be deleted
+     */
+    @AfterEach
+    public void cleanup() throws IOException {
+        try (Stream<Path> lPaths = Files.walk(this.iDirectory)) {
+            for (final Path path : lPaths.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+
+    /**
+     * Tests that every cell that is not empty is written, in the order of the file
+     */
+    @Test
+    public void testEveryCell() {
+        assertEquals(0, this.run(this.iWorkbook.toString()), "status");
+        assertEquals("R1C1\t2.0\nR2C1\t3.0\nR3C1\t6.0\nR1C2\tlabel\n", this.out(), "output");
+        assertEquals("", this.err(), "errors");
+    }
+
+    /**
+     * Tests that overrides are applied before recalculating, and that only the asked for cells are written
+     */
+    @Test
+    public void testOverridesAndOutputs() {
+        assertEquals(0, this.run("-s", "R1C1=5", "--set", "r2c1 = 10", "-o", "R3C1,r1c2"), "status");
+        assertEquals("R3C1\t50.0\nR1C2\tlabel\n", this.out(), "output");
+    }
+
+    /**
+     * Tests that an override outside the sheet is reported, while the other overrides and the output still go ahead
+     */
+    @Test
+    public void testOverrideOutsideSheet() {
+        assertEquals(1, this.run("-s", "R1C1=5", "-s", "R99C1=1", "-o", "R3C1"), "status");
+        assertEquals("R3C1\t15.0\n", this.out(), "output");
+        assertTrue(this.err().contains("R99C1"), "override reported: " + this.err());
+    }
+
+    /**
+     * Tests that a formula that fails is written as #ERR and reported, and the rest of the sheet still evaluates
+     */
+    @Test
+    public void testFailingCell() {
+        assertEquals(1, this.run("-s", "R2C1==R1C2*2", "-s", "R1C1=4"), "status");
+        assertEquals("R1C1\t4.0\nR2C1\t#ERR\nR3C1\t#ERR\nR1C2\tlabel\n", this.out(), "output");
+        assertTrue(this.err().startsWith(this.iWorkbook.toString()), "failure reported: " + this.err());
+    }
+
+    /**
+     * Tests that many workbooks are written in the order given, to standard output or to a directory
+     * @throws IOException if a workbook could not be written or a result read
+     */
+    @Test
+    public void testManyWorkbooks() throws IOException {
+        final Path lOther = this.iDirectory.resolve("other.sheet");
+        new SheetFile(1, 1, Map.of("R1C1", "=2+2")).write(lOther);
+        assertEquals(0, this.run("-j", "1", this.iWorkbook.toString(), lOther.toString()), "status");
+        assertEquals("==> " + this.iWorkbook + " <==\nR1C1\t2.0\nR2C1\t3.0\nR3C1\t6.0\nR1C2\tlabel\n"
+                + "==> " + lOther + " <==\nR1C1\t4.0\n", this.out(), "output");
+
+        final Path lResults = Files.createDirectory(this.iDirectory.resolve("results"));
+        this.iOut.reset();
+        assertEquals(0, this.run("-d", lResults.toString(), "-o", "R1C1", lOther.toString()), "status to a directory");
+        assertEquals("", this.out(), "nothing on standard output");
+        assertEquals("R1C1\t4.0\n", Files.readString(lResults.resolve("other.out")), "result file");
+    }
+
+    /**
+     * Tests that a workbook that cannot be read is reported without stopping the others
+     */
+    @Test
+    public void testMissingWorkbook() {
+        final String lMissing = this.iDirectory.resolve("missing.sheet").toString();
+        assertEquals(1, this.run("-o", "R3C1", lMissing, this.iWorkbook.toString()), "status");
+        assertTrue(this.out().endsWith("R3C1\t6.0\n"), "other workbook written: " + this.out());
+        assertTrue(this.err().startsWith(lMissing), "missing workbook reported: " + this.err());
+    }
+
+    /**
+     * Tests that malformed command lines are refused
+     */
+    @Test
+    public void testBadUsage() {
+        final String lWorkbook = this.iWorkbook.toString();
+        for (final String[] lArgs : new String[][] {
+                {},
+                {"-s", "R1C1", lWorkbook},
+                {"-s", "=5", lWorkbook},
+                {"-s", "A1=5", lWorkbook},
+                {"-o", "R1C1,A1", lWorkbook},
+                {"-j", "0", lWorkbook},
+                {"-j", "many", lWorkbook},
+                {"-d", lWorkbook, lWorkbook},
+                {"--unknown", lWorkbook},
+                {lWorkbook, "-o"}}) {
+            assertThrows(IllegalArgumentException.class, () -> new BatchCalculator().parseArguments(lArgs),
+                    "arguments " + String.join(" ", lArgs));
+        }
+    }
+
+    //Helper method that runs the calculator over the workbook, unless others are given, and gives its status
+    private int run(final String... pArgs) {
+        final boolean lHasWorkbook = pArgs.length > 0 && pArgs[pArgs.length - 1].endsWith(".sheet");
+        final String[] lArgs = lHasWorkbook ? pArgs : Stream.concat(Stream.of(pArgs),
+                Stream.of(this.iWorkbook.toString())).toArray(String[]::new);
+        final BatchCalculator lCalculator = new BatchCalculator();
+        lCalculator.parseArguments(lArgs);
+        return lCalculator.run(new PrintStream(this.iOut, true, StandardCharsets.UTF_8),
+                new PrintStream(this.iErr, true, StandardCharsets.UTF_8));
+    }
+
+    //Helper method that gets what was written to standard output
+    private String out() {
+        return this.iOut.toString(StandardCharsets.UTF_8);
+    }
+
+    //Helper method that gets what was written to standard error
+    private String err() {
+        return this.iErr.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,124 @@
+package app.model.expr;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Times the column evaluator against evaluating the same formula row by row, so its speedup can be reproduced.
+ * It is a plain main rather than a test, as the tree has no JMH, but follows the same shape: each path is run for
+ * a few warm up iterations, so the JIT compiles it, then timed over several more, and the median is reported.
+ * <pre>
+ * usage: ColumnEvaluatorBenchmark [rows [iterations]]
+ * </pre>
+ * The paths timed are
+ * <ul>
+ *     <li>batched: {@link ColumnEvaluator#evaluate} over the whole column,</li>
+ *     <li>compiled rows: each row's formula compiled beforehand, then evaluated against a table of cells,</li>
+ *     <li>reader rows: each row's formula read and evaluated by the reader, as a sheet without the
+ *     evaluator does on a full recalculation.</li>
+ * </ul>
+ * The reader path is timed over a tenth of the rows, as it is far slower, and scaled up.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public final class ColumnEvaluatorBenchmark {
+    private static final String TEMPLATE = "R1C1*R1C2+R1C3/2-R1C1^2"; // arithmetic over three columns
+    private static final int DEFAULT_ROWS = 1_000_000; // as many rows as a large column of one formula
+    private static final int DEFAULT_ITERATIONS = 5; // timed iterations, after as many to warm up
+
+    private final int iRows;
+    private final double[][] iColumns;
+    private final Map<String, Double> iCells;
+    private final String[] iExpressions;
+    private final CompiledExpression[] iCompiled;
+    private final ExpressionReader iReader;
+    private double iSink; // kept so the JIT cannot drop work whose result is unused
+
+    private ColumnEvaluatorBenchmark(final int pRows) {
+        super();
+        this.iRows = pRows;
+        this.iReader = new GrammarExpressionReader();
+        this.iColumns = new double[3][pRows];
+        this.iCells = new HashMap<>(pRows * 4);
+        this.iExpressions = new String[pRows];
+        this.iCompiled = new CompiledExpression[pRows];
+        for (int row = 0; row < pRows; row++) {
+            this.iColumns[0][row] = row % 100 * 0.25d;
+            this.iColumns[1][row] = row % 7 + 1d;
+            this.iColumns[2][row] = 3d - row % 11;
+            for (int col = 0; col < 3; col++) {
+                this.iCells.put(AbstractExpressionReader.toCellRef(row, col), this.iColumns[col][row]);
+            }
+            this.iExpressions[row] = "R%1$dC1*R%1$dC2+R%1$dC3/2-R%1$dC1^2".formatted(row + 1);
+            this.iCompiled[row] = this.iReader.compile(this.iExpressions[row]);
+        }
+    }
+
+    /**
+     * Runs the benchmark and prints the median time of each path.
+     * @param args the number of rows, and the number of timed iterations
+     */
+    public static void main(final String[] args) {
+        final int lRows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        final int lIterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        final ColumnEvaluatorBenchmark lBenchmark = new ColumnEvaluatorBenchmark(lRows);
+        final ColumnEvaluator lEvaluator = ColumnEvaluator.compile(TEMPLATE, 0);
+        if (!lEvaluator.isVectorized()) throw new IllegalStateException("Template is not batched");
+        lBenchmark.check(lEvaluator);
+
+        System.out.printf("%d rows of %s, median of %d iterations%n", lRows, TEMPLATE, lIterations);
+        final double lBatched = lBenchmark.time(lIterations, () -> lBenchmark.batched(lEvaluator));
+        final double lCompiled = lBenchmark.time(lIterations, lBenchmark::compiledRows);
+        final double lRead = lBenchmark.time(lIterations, lBenchmark::readerRows) * 10;
+        System.out.printf("batched        %10.2f ms%n", lBatched);
+        System.out.printf("compiled rows  %10.2f ms  (%.1fx the batched time)%n", lCompiled, lCompiled / lBatched);
+        System.out.printf("reader rows    %10.2f ms  (%.1fx the batched time)%n", lRead, lRead / lBatched);
+        System.out.println("checksum " + lBenchmark.iSink);
+    }
+
+    //Helper method that runs a path to warm it up, then times it and gives the median in milliseconds
+    private double time(final int pIterations, final Runnable pPath) {
+        for (int i = 0; i < pIterations; i++) pPath.run();
+        final double[] lTimes = new double[pIterations];
+        for (int i = 0; i < pIterations; i++) {
+            final long lStart = System.nanoTime();
+            pPath.run();
+            lTimes[i] = (System.nanoTime() - lStart) / 1e6;
+        }
+        Arrays.sort(lTimes);
+        return lTimes[pIterations / 2];
+    }
+
+    //Helper method that evaluates the whole column at once
+    private void batched(final ColumnEvaluator pEvaluator) {
+        final double[] lResults = new double[this.iRows];
+        pEvaluator.evaluate(this.iColumns, lResults);
+        this.iSink += lResults[this.iRows - 1];
+    }
+
+    //Helper method that evaluates each row's compiled formula
+    private void compiledRows() {
+        double lSum = 0;
+        for (int row = 0; row < this.iRows; row++) lSum += this.iCompiled[row].evaluate(this.iCells);
+        this.iSink += lSum;
+    }
+
+    //Helper method that reads and evaluates the formula of every tenth row
+    private void readerRows() {
+        double lSum = 0;
+        for (int row = 0; row < this.iRows; row += 10) lSum += this.iReader.evaluate(this.iExpressions[row], this.iCells);
+        this.iSink += lSum;
+    }
+
+    //Helper method that checks the batched path gives what the rows give, so the paths time the same work
+    private void check(final ColumnEvaluator pEvaluator) {
+        final double[] lResults = new double[this.iRows];
+        pEvaluator.evaluate(this.iColumns, lResults);
+        for (int row = 0; row < this.iRows; row += Math.max(1, this.iRows / 1000)) {
+            if (Double.compare(lResults[row], this.iCompiled[row].evaluate(this.iCells)) != 0)
+                throw new IllegalStateException("Row %d differs between the paths".formatted(row));
+        }
+    }
+}
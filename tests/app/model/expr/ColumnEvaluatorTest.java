@@ -0,0 +1,187 @@
+package app.model.expr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the column evaluator against the grammar expression reader, row by row.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class ColumnEvaluatorTest {
+    private static final int ROWS = 2500; // spans several blocks plus a partial one
+
+    private ExpressionReader iReader;
+    private double[][] iColumns;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iReader = new GrammarExpressionReader();
+        this.iColumns = new double[4][ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            this.iColumns[0][row] = row * 0.5d;
+            this.iColumns[1][row] = row % 7; // contains zeros to divide by
+            this.iColumns[2][row] = 3d - row;
+            this.iColumns[3][row] = row % 5 == 0 ? Double.NaN : row % 3; // cells that are not a number, and zeros
+        }
+    }
+
+    /**
+     * Tests if arithmetic templates are vectorized and agree with the reader
+     */
+    @Test
+    public void arithmeticTemplateTest() {
+        final String[] lTemplates = {
+                "R1C1*R1C2+3",
+                "-R1C1+R1C3^2",
+                "(R1C1-R1C3)/R1C2",
+                "R1C1%R1C2",
+                "R2C1-R1C1",
+                "5-(4-3)-2-1",
+                "R1C3^(-1)",
+        };
+
+        for (final String template : lTemplates) {
+            final ColumnEvaluator lEvaluator = ColumnEvaluator.compile(template, 0);
+            assertTrue(lEvaluator.isVectorized(), "Template %s was not vectorized".formatted(template));
+            this.compareWithReader(lEvaluator);
+        }
+    }
+
+    /**
+     * Tests if rows reading cells that are not a number fail as in the reader, whatever the operator
+     */
+    @Test
+    public void notANumberTest() {
+        final String[] lTemplates = {
+                "R1C4^0",
+                "1^R1C4",
+                "R1C4*0",
+                "R1C4-R1C4",
+                "R1C4^(-1)",
+                "R1C4/R1C4",
+                "R1C4%2",
+        };
+
+        for (final String template : lTemplates) {
+            final ColumnEvaluator lEvaluator = ColumnEvaluator.compile(template, 0);
+            assertTrue(lEvaluator.isVectorized(), "Template %s was not vectorized".formatted(template));
+            this.compareWithReader(lEvaluator);
+        }
+    }
+
+    /**
+     * Tests if expressions are written the same exactly when they are one template shifted down a column
+     */
+    @Test
+    public void relativeTemplateTest() {
+        assertEquals(ColumnEvaluator.relativeTemplate("R1C1*R2C2+3", 0),
+                ColumnEvaluator.relativeTemplate("R11C1*R12C2+3", 10), "Template shifted down");
+        assertEquals(ColumnEvaluator.relativeTemplate("SUM(R1C1:R3C1)", 0),
+                ColumnEvaluator.relativeTemplate("SUM(R2C1:R4C1)", 1), "Range shifted down");
+        assertFalse(ColumnEvaluator.relativeTemplate("R1C1*2", 0)
+                .equals(ColumnEvaluator.relativeTemplate("R1C1*2", 1)), "Same cell from another row");
+        assertFalse(ColumnEvaluator.relativeTemplate("S!R1C1+R1C1", 0)
+                .equals(ColumnEvaluator.relativeTemplate("S!R2C1+R2C1", 1)), "Cell of another sheet");
+        assertFalse(ColumnEvaluator.relativeTemplate("R1C1+R[0]C1", 0)
+                .equals(ColumnEvaluator.relativeTemplate("R1C1+R1C1", 0)), "Brackets as written");
+        assertFalse(ColumnEvaluator.relativeTemplate("XR1C1", 0)
+                .equals(ColumnEvaluator.relativeTemplate("XR2C1", 1)), "Word rather than a cellref");
+    }
+
+    /**
+     * Tests if templates with functions fall back to the reader
+     */
+    @Test
+    public void fallbackTest() {
+        final ColumnEvaluator lEvaluator = ColumnEvaluator.compile("SUM(R1C1, R1C2)*2", 0);
+        assertFalse(lEvaluator.isVectorized(), "Function template should not be vectorized");
+        this.compareWithReader(lEvaluator);
+    }
+
+    /**
+     * Tests if the anchor row shifts the cellrefs and if rows outside the columns read as zero
+     */
+    @Test
+    public void anchorTest() {
+        final ColumnEvaluator lEvaluator = ColumnEvaluator.compile("R5C1+R4C1", 4);
+        final double[] lResults = new double[ROWS + 1];
+        lEvaluator.evaluate(this.iColumns, lResults);
+
+        assertEquals(this.iColumns[0][0], lResults[0], "Row above the column should read as zero");
+        assertEquals(this.iColumns[0][10] + this.iColumns[0][9], lResults[10], "Cellrefs were not shifted");
+        assertEquals(this.iColumns[0][ROWS - 1], lResults[ROWS], "Row below the column should read as zero");
+    }
+
+    /**
+     * Tests if malformed arithmetic templates are rejected when compiled
+     */
+    @Test
+    public void badTemplateTest() {
+        final String[] lBadTemplates = {"R1C1+", "(R1C1", "R1C1)", "3 4", "R1C1,3", "5+-R1C1"};
+        for (final String template : lBadTemplates) {
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> ColumnEvaluator.compile(template, 0),
+                    "Expected IllegalArgumentException for template %s".formatted(template)
+            );
+        }
+    }
+
+    /**
+     * evaluates the template with the evaluator and compares every row with the reader
+     * @param pEvaluator the compiled template
+     */
+    private void compareWithReader(final ColumnEvaluator pEvaluator) {
+        final double[] lResults = new double[ROWS];
+        pEvaluator.evaluate(this.iColumns, lResults);
+
+        final Map<String, Double> lCells = new HashMap<>();
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < this.iColumns.length; col++) {
+                final double lValue = this.iColumns[col][row];
+                lCells.put("R%dC%d".formatted(row + 1, col + 1), Double.isNaN(lValue) ? null : lValue);
+            }
+        }
+
+        for (int row = 0; row < ROWS; row++) {
+            final String lExpression = shift(pEvaluator.getTemplate(), row);
+
+            double lExpected;
+            try {
+                lExpected = this.iReader.evaluate(lExpression, lCells);
+            } catch (final IllegalArgumentException lException) {
+                lExpected = Double.NaN;
+            }
+            assertEquals(lExpected, lResults[row], "Row %d of %s".formatted(row, lExpression));
+        }
+    }
+
+    /**
+     * moves every cellref in the template down by the given number of rows
+     * @param pTemplate the template to shift
+     * @param pRows the number of rows to shift by
+     * @return the shifted expression
+     */
+    private static String shift(final String pTemplate, final int pRows) {
+        final StringBuilder lShifted = new StringBuilder();
+        final Matcher lMatcher = Pattern.compile("R(\\d+)C").matcher(pTemplate);
+        while (lMatcher.find()) {
+            lMatcher.appendReplacement(lShifted, "R" + (Integer.parseInt(lMatcher.group(1)) + pRows) + "C");
+        }
+        lMatcher.appendTail(lShifted);
+        return lShifted.toString();
+    }
+}
@@ -0,0 +1,187 @@
+package app.model.expr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the function registry: registering functions and synonyms, the names allowed, libraries found by the
+ * service loader, and the number of arguments checked as an expression is compiled.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class FunctionRegistryTest {
+    private ExpressionReader iReader;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iReader = new GrammarExpressionReader();
+    }
+
+    /**
+     * Tests that a registered function is looked up, called from expressions, and refused a second time
+     */
+    @Test
+    public void testRegister() {
+        final SpreadsheetFunction lHalf = new Half();
+        assertFalse(FunctionRegistry.isRegistered("TEST_HALF"), "before registering");
+        FunctionRegistry.register("TEST_HALF", lHalf);
+        assertTrue(FunctionRegistry.isRegistered("TEST_HALF"), "after registering");
+        assertSame(lHalf, FunctionRegistry.lookup("TEST_HALF"), "function looked up");
+        assertEquals(5d, this.iReader.compile("TEST_HALF(8)+1").evaluate(Map.of()), "function called");
+        assertEquals(2d, this.iReader.compile("test_half(R1C1)").evaluate(Map.of("R1C1", 4d)), "name in lowercase");
+
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register("TEST_HALF", new Half()),
+                "name taken");
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register("SUM", new Half()),
+                "name of a built-in function");
+        assertSame(lHalf, FunctionRegistry.lookup("TEST_HALF"), "first function kept");
+    }
+
+    /**
+     * Tests that a synonym calls the very same function, and is refused for a missing function or a taken name
+     */
+    @Test
+    public void testSynonym() {
+        FunctionRegistry.register("TEST_HALF_OF", new Half());
+        FunctionRegistry.registerSynonym("TEST_HALVE", "TEST_HALF_OF");
+        assertSame(FunctionRegistry.lookup("TEST_HALF_OF"), FunctionRegistry.lookup("TEST_HALVE"), "same function");
+        assertEquals(3d, this.iReader.compile("TEST_HALVE(6)").evaluate(Map.of()), "synonym called");
+
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.registerSynonym("TEST_NONE", "TEST_MISSING"),
+                "synonym of a missing function");
+        assertNull(FunctionRegistry.lookup("TEST_NONE"), "synonym of a missing function not registered");
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.registerSynonym("TEST_HALVE", "SUM"),
+                "synonym taken");
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.registerSynonym("bad name", "SUM"),
+                "invalid synonym");
+    }
+
+    /**
+     * Tests that names that are not single uppercase words, or that read as cells, are refused
+     */
+    @Test
+    public void testNames() {
+        for (final String lName : new String[] {null, "", "lower", "Mixed", "1ST", "_UNDER", "TWO WORDS", "A-B",
+                "R1C1", "R12C345"}) {
+            assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register(lName, new Half()),
+                    "name " + lName);
+            if (lName != null) assertFalse(FunctionRegistry.isRegistered(lName), "name " + lName + " not registered");
+        }
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register("TEST_NULL", null),
+                "null function");
+        assertFalse(FunctionRegistry.isRegistered("TEST_NULL"), "null function not registered");
+
+        FunctionRegistry.register("R2D2", new Half());
+        assertEquals(1d, this.iReader.compile("R2D2(2)").evaluate(Map.of()), "name that starts like a cell");
+    }
+
+    /**
+     * Tests that a library listed for the service loader registers its functions
+     * @throws IOException if the service listing could not be written
+     */
+    @Test
+    public void testLibraries() throws IOException {
+        final Path lDirectory = Files.createTempDirectory("library");
+        try {
+            final Path lServices = Files.createDirectories(lDirectory.resolve("META-INF/services"));
+            Files.writeString(lServices.resolve(FunctionLibrary.class.getName()),
+                    "# functions for the test\n" + Library.class.getName() + "\n");
+            try (URLClassLoader lLoader = new URLClassLoader(new URL[] {lDirectory.toUri().toURL()},
+                    FunctionRegistryTest.class.getClassLoader())) {
+                FunctionRegistry.registerLibraries(ServiceLoader.load(FunctionLibrary.class, lLoader));
+            }
+        } finally {
+            try (Stream<Path> lPaths = Files.walk(lDirectory)) {
+                for (final Path path : lPaths.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+            }
+        }
+        assertTrue(FunctionRegistry.isRegistered("TEST_TWICE"), "library function");
+        assertTrue(FunctionRegistry.isRegistered("TEST_DOUBLE"), "library synonym");
+        assertEquals(14d, this.iReader.compile("TEST_TWICE(3)+TEST_DOUBLE(4)").evaluate(Map.of()), "library called");
+    }
+
+    /**
+     * Tests that calls with too few or too many arguments are refused as the expression is compiled, before
+     * anything is evaluated
+     */
+    @Test
+    public void testArityAtCompile() {
+        FunctionRegistry.register("TEST_HALF_ONE", new Half());
+        for (final String lExpression : new String[] {"TEST_HALF_ONE()", "TEST_HALF_ONE(1, 2)", "1+TEST_HALF_ONE()",
+                "IF(1)", "IF(1, 2, 3, 4)", "NOT(1, 2)", "VLOOKUP(1, R1C1:R2C2)", "TEST_NO_SUCH_FUNCTION(1)"}) {
+            assertThrows(IllegalArgumentException.class, () -> this.iReader.compile(lExpression),
+                    "Expected IllegalArgumentException for expression %s".formatted(lExpression));
+        }
+        assertEquals(0.5, this.iReader.compile("TEST_HALF_ONE(1)").evaluate(Map.of()), "one argument");
+    }
+
+    /**
+     * Halves its only argument.
+     */
+    private static final class Half implements SpreadsheetFunction {
+        @Override
+        public double apply(final double[] pArgs) {
+            return pArgs[0] / 2;
+        }
+
+        @Override
+        public double apply(final double pFirst) {
+            return pFirst / 2;
+        }
+
+        @Override
+        public int getMinArgs() {
+            return 1;
+        }
+
+        @Override
+        public int getMaxArgs() {
+            return 1;
+        }
+    }
+
+    /**
+     * A library of one function and a synonym for it, found through the service loader.
+     */
+    public static final class Library implements FunctionLibrary {
+        @Override
+        public void registerFunctions() {
+            FunctionRegistry.register("TEST_TWICE", new SpreadsheetFunction() {
+                @Override
+                public double apply(final double[] pArgs) {
+                    return pArgs[0] * 2;
+                }
+
+                @Override
+                public int getMinArgs() {
+                    return 1;
+                }
+
+                @Override
+                public int getMaxArgs() {
+                    return 1;
+                }
+            });
+            FunctionRegistry.registerSynonym("TEST_DOUBLE", "TEST_TWICE");
+        }
+    }
+}
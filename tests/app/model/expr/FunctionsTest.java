@@ -0,0 +1,361 @@
+package app.model.expr;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the built-in functions through the grammar expression reader,
+ * including range arguments and comparisons.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class FunctionsTest {
+    private static final double TOLERANCE = 1e-9;
+
+    private ExpressionReader iReader;
+    private Map<String, Double> iCells; // (cellref, valueAtLocation)
+
+    /**
+     * Sets up a table in R1C1:R5C3, where column 1 is sorted ascending, column 4 beside it
+     * is sorted descending, and R6C1 holds something that is not a number
+     */
+    @BeforeEach
+    public void setup() {
+        this.iReader = new GrammarExpressionReader();
+        this.iCells = new HashMap<>();
+        final double[][] lTable = {
+                {10, 1, 100},
+                {20, 4, 200},
+                {30, 2, 300},
+                {40, 8, 400},
+                {50, 5, 500},
+        };
+        for (int row = 0; row < lTable.length; row++) {
+            for (int col = 0; col < lTable[row].length; col++) {
+                this.iCells.put("R%dC%d".formatted(row + 1, col + 1), lTable[row][col]);
+            }
+        }
+        this.iCells.put("R6C1", null);
+        for (int row = 0; row < 5; row++) this.iCells.put("R%dC4".formatted(row + 1), 9d - 2 * row); // descending
+    }
+
+    /**
+     * Tests if comparisons evaluate to one or zero and work with IF
+     */
+    @Test
+    public void comparisonTest() {
+        assertAll(
+                "Tests for comparisons",
+                () -> assertEquals(1d, this.evaluate("3<4")),
+                () -> assertEquals(0d, this.evaluate("3>4")),
+                () -> assertEquals(1d, this.evaluate("4<=4")),
+                () -> assertEquals(1d, this.evaluate("4>=4")),
+                () -> assertEquals(1d, this.evaluate("2+2=4")),
+                () -> assertEquals(1d, this.evaluate("3<>4")),
+                () -> assertEquals(1d, this.evaluate("-1 < -(-1)")),
+                () -> assertEquals(200d, this.evaluate("IF(R2C1>15, R2C3, R1C3)")),
+                () -> assertEquals(0d, this.evaluate("IF(R1C1>15, 1)")),
+                () -> assertEquals(2d, this.evaluate("(1<2)+(3<4)"))
+        );
+
+        for (final String expression : new String[] {"1<2<3", "<3", "3<", "3=<4", "IF(1)"}) {
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> this.evaluate(expression),
+                    "Expected IllegalArgumentException for expression %s".formatted(expression)
+            );
+        }
+    }
+
+    /**
+     * Tests if the conditional functions only evaluate the arguments they need
+     */
+    @Test
+    public void conditionalTest() {
+        assertAll(
+                "Tests for short-circuiting conditionals",
+                () -> assertEquals(5d, this.evaluate("IF(1, 5, 1/0)")),
+                () -> assertEquals(5d, this.evaluate("IF(0, 1/0, 5)")),
+                () -> assertEquals(0d, this.evaluate("AND(R1C1>10, 1/0)")),
+                () -> assertEquals(1d, this.evaluate("AND(R1C1=10, R2C1=20)")),
+                () -> assertEquals(1d, this.evaluate("OR(R1C1=10, R6C1)")),
+                () -> assertEquals(0d, this.evaluate("OR(0, R1C1<>10)")),
+                () -> assertEquals(300d, this.evaluate("CHOOSE(3, 1/0, R6C1, R3C3)")),
+                () -> assertEquals(1d, this.evaluate("NOT(R1C1>10)")),
+                () -> assertEquals(0d, Functions.apply("AND", 1d, 0d))
+        );
+
+        for (final String expression : new String[] {"IF(0, 1/0, 1/0)", "AND(1, R6C1)", "CHOOSE(0, 1)", "CHOOSE(2, 1)"}) {
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> this.evaluate(expression),
+                    "Expected IllegalArgumentException for expression %s".formatted(expression)
+            );
+        }
+
+        // the branch that was not taken is still a dependency
+        assertEquals(
+                List.of("R1C1", "R2C2", "R3C3"),
+                this.iReader.compile("IF(R1C1, R2C2, R3C3)").getCellRefs(),
+                "Untaken branch was not listed as a dependency"
+        );
+    }
+
+    /**
+     * Tests if ranges spread into their numbers and skip cells that are empty or not numbers
+     */
+    @Test
+    public void rangeTest() {
+        assertAll(
+                "Tests for ranges",
+                () -> assertEquals(150d, this.evaluate("SUM(R1C1:R5C1)")),
+                () -> assertEquals(150d, this.evaluate("SUM(R5C1:R1C1)")),
+                () -> assertEquals(150d, this.evaluate("SUM(R1C1:R9C1)")),
+                () -> assertEquals(30d, this.evaluate("AVERAGE(R1C1:R9C1)")),
+                () -> assertEquals(5d, this.evaluate("COUNT(R1C1:R9C1)")),
+                () -> assertEquals(15d, this.evaluate("COUNT(R1C1:R5C3)")),
+                () -> assertEquals(160d, this.evaluate("SUM(R1C1:R5C1, 10)"))
+        );
+
+        assertEquals(
+                List.of("R1C1", "R1C2", "R2C1", "R2C2", "R5C5"),
+                this.iReader.getCellRefsOf("SUM(R1C1:R2C2)+R5C5"),
+                "Range was not expanded into its cellrefs"
+        );
+        assertEquals(
+                List.of("R1C1", "R1C2", "R2C1", "R2C2", "R5C5"),
+                this.iReader.compile("SUM(R1C1:R2C2)+R5C5").getCellRefs(),
+                "Compiled range did not list its cellrefs"
+        );
+
+        for (final String expression : new String[] {"R1C1:R2C1", "SUM(R1C1:)", "SUM(R1C1:5)", "SUM(R1C1:R2C1+1)"}) {
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> this.evaluate(expression),
+                    "Expected IllegalArgumentException for expression %s".formatted(expression)
+            );
+        }
+    }
+
+    /**
+     * Tests the aggregate functions, including their precision over many values
+     */
+    @Test
+    public void aggregateTest() {
+        assertAll(
+                "Tests for aggregates",
+                () -> assertEquals(10d, this.evaluate("MIN(R1C1:R5C1)")),
+                () -> assertEquals(500d, this.evaluate("MAX(R1C1:R5C3)")),
+                () -> assertEquals(250d, this.evaluate("VAR(R1C1:R5C1)"), TOLERANCE),
+                () -> assertEquals(200d, this.evaluate("VARP(R1C1:R5C1)"), TOLERANCE),
+                () -> assertEquals(Math.sqrt(250d), this.evaluate("STDEV(R1C1:R5C1)"), TOLERANCE),
+                () -> assertEquals(Math.sqrt(200d), this.evaluate("STDEVP(R1C1:R5C1)"), TOLERANCE),
+                () -> assertEquals(1d + 16d + 4d + 64d + 25d, this.evaluate("SUMSQ(R1C2:R5C2)")),
+                () -> assertEquals(24d, this.evaluate("PRODUCT(1, 2, 3, 4)"))
+        );
+
+        // one large value followed by many small ones loses every small one without compensation
+        final double[] lValues = new double[10_001];
+        lValues[0] = 1e16;
+        Arrays.fill(lValues, 1, lValues.length, 1d);
+        assertEquals(1e16 + 10_000d, Functions.apply("SUM", lValues), "SUM lost precision");
+
+        // values with a large offset and a tiny spread break the naive variance formula
+        final double[] lShifted = {1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16};
+        assertEquals(30d, Functions.apply("VAR", lShifted), TOLERANCE, "VAR lost precision");
+
+        assertThrows(IllegalArgumentException.class, () -> this.evaluate("VAR(1)"));
+        assertThrows(IllegalArgumentException.class, () -> this.evaluate("AVERAGE()"));
+    }
+
+    /**
+     * Tests the order statistics against sorting
+     */
+    @Test
+    public void orderStatisticTest() {
+        assertAll(
+                "Tests for order statistics",
+                () -> assertEquals(4d, this.evaluate("MEDIAN(R1C2:R5C2)")),
+                () -> assertEquals(3d, this.evaluate("MEDIAN(1, 2, 4, 5)")),
+                () -> assertEquals(8d, this.evaluate("LARGE(R1C2:R5C2, 1)")),
+                () -> assertEquals(2d, this.evaluate("SMALL(R1C2:R5C2, 2)")),
+                () -> assertEquals(20d, this.evaluate("PERCENTILE(R1C1:R5C1, 0.25)")),
+                () -> assertEquals(46d, this.evaluate("PERCENTILE(R1C1:R5C1, 0.9)"), TOLERANCE),
+                () -> assertEquals(40d, this.evaluate("QUARTILE(R1C1:R5C1, 3)"))
+        );
+
+        final Random lRandom = new Random(342);
+        for (int trial = 0; trial < 50; trial++) {
+            final double[] lValues = new double[1 + lRandom.nextInt(200)];
+            for (int i = 0; i < lValues.length; i++) lValues[i] = lRandom.nextInt(20); // many duplicates
+            final double[] lSorted = lValues.clone();
+            Arrays.sort(lSorted);
+
+            final double lExpectedMedian = lSorted.length % 2 == 1
+                    ? lSorted[lSorted.length / 2]
+                    : (lSorted[lSorted.length / 2 - 1] + lSorted[lSorted.length / 2]) / 2d;
+            assertEquals(lExpectedMedian, Functions.apply("MEDIAN", lValues), TOLERANCE, "MEDIAN disagreed with sort");
+
+            final double[] lWithRank = Arrays.copyOf(lValues, lValues.length + 1);
+            lWithRank[lValues.length] = 1 + lRandom.nextInt(lValues.length);
+            assertEquals(
+                    lSorted[(int) lWithRank[lValues.length] - 1],
+                    Functions.apply("SMALL", lWithRank),
+                    "SMALL disagreed with sort"
+            );
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> this.evaluate("PERCENTILE(R1C1:R5C1, 2)"));
+        assertThrows(IllegalArgumentException.class, () -> this.evaluate("LARGE(R1C1:R5C1, 6)"));
+    }
+
+    /**
+     * Tests the volatile functions and how compiled expressions calling them are marked
+     */
+    @Test
+    public void volatileTest() {
+        for (int trial = 0; trial < 1000; trial++) {
+            final double lRandom = this.evaluate("RAND()");
+            assertTrue(lRandom >= 0d && lRandom < 1d, "RAND out of range");
+            final double lBetween = this.evaluate("RANDBETWEEN(-2.5, 3)");
+            assertTrue(lBetween >= -2d && lBetween <= 3d && lBetween == Math.rint(lBetween),
+                    "RANDBETWEEN out of range");
+        }
+        assertEquals(4d, this.evaluate("RANDBETWEEN(4, 4)"));
+        assertThrows(IllegalArgumentException.class, () -> this.evaluate("RANDBETWEEN(1.2, 1.8)"));
+
+        final double lNow = this.evaluate("NOW()");
+        assertEquals(Math.floor(lNow), this.evaluate("TODAY()"), 1d, "TODAY is not the day of NOW");
+        assertTrue(lNow > 45_000d, "NOW is not a serial date"); // 2023-03-15
+
+        assertAll(
+                "Tests for volatility",
+                () -> assertTrue(this.iReader.compile("IF(R1C1 > 0, SUM(R1C1:R2C1) + RAND(), 0)").isVolatile()),
+                () -> assertTrue(this.iReader.compile("-TODAY()").isVolatile()),
+                () -> assertFalse(this.iReader.compile("SUM(R1C1:R5C1) * 2").isVolatile())
+        );
+    }
+
+    /**
+     * Tests the lookup functions
+     */
+    @Test
+    public void lookupTest() {
+        assertAll(
+                "Tests for lookups",
+                () -> assertEquals(4d, this.evaluate("VLOOKUP(20, R1C1:R5C3, 2, 0)")),
+                () -> assertEquals(300d, this.evaluate("VLOOKUP(35, R1C1:R5C3, 3)")),
+                () -> assertEquals(500d, this.evaluate("VLOOKUP(99, R1C1:R9C3, 3)")),
+                () -> assertEquals(300d, this.evaluate("HLOOKUP(100, R1C1:R5C3, 3, 0)")),
+                () -> assertEquals(3d, this.evaluate("MATCH(30, R1C1:R5C1, 0)")),
+                () -> assertEquals(4d, this.evaluate("MATCH(45, R1C1:R5C1)")),
+                () -> assertEquals(3d, this.evaluate("MATCH(4, R1C4:R5C4, -1)")),
+                () -> assertEquals(8d, this.evaluate("INDEX(R1C1:R5C3, 4, 2)")),
+                () -> assertEquals(40d, this.evaluate("INDEX(R1C1:R5C1, MATCH(8, R1C2:R5C2, 0))")),
+                () -> assertEquals(
+                        10d * 1 + 20d * 4 + 30d * 2 + 40d * 8 + 50d * 5,
+                        this.evaluate("SUMPRODUCT(R1C1:R5C1, R1C2:R5C2)")
+                )
+        );
+
+        for (final String expression : new String[] {
+                "VLOOKUP(5, R1C1:R5C3, 2)",     // below the first value
+                "VLOOKUP(25, R1C1:R5C3, 2, 0)", // no exact match
+                "VLOOKUP(20, R1C1:R5C3, 4)",    // column outside the table
+                "VLOOKUP(20, R1C1:R5C3)",
+                "MATCH(20, R1C1:R5C3)",
+                "SUMPRODUCT(R1C1:R5C1, R1C1:R4C1)",
+        }) {
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> this.evaluate(expression),
+                    "Expected IllegalArgumentException for expression %s".formatted(expression)
+            );
+        }
+    }
+
+    /**
+     * Tests if lookups through a lookup index agree with scanning, and if the index is invalidated
+     */
+    @Test
+    public void indexedLookupTest() {
+        final IndexedTable lIndexed = new IndexedTable();
+        final Random lRandom = new Random(342);
+        for (int row = 1; row <= 1000; row++) {
+            final double lKey = lRandom.nextInt(500); // unsorted with duplicates
+            lIndexed.put("R%dC1".formatted(row), lKey);
+            lIndexed.put("R%dC2".formatted(row), (double) row);
+        }
+        final Map<String, Double> lScanned = new HashMap<>(lIndexed);
+
+        final CompiledExpression lExact = this.iReader.compile("VLOOKUP(R1C5, R1C1:R1000C2, 2, 0)");
+        final CompiledExpression lApproximate = this.iReader.compile("VLOOKUP(R1C5, R1C1:R1000C2, 2)");
+        final CompiledExpression lMatch = this.iReader.compile("MATCH(R1C5, R1C1:R1000C1, -1)");
+        for (int trial = 0; trial < 200; trial++) {
+            final double lKey = lRandom.nextInt(520);
+            lIndexed.put("R1C5", lKey);
+            lScanned.put("R1C5", lKey);
+            for (final CompiledExpression expression : List.of(lExact, lApproximate, lMatch)) {
+                assertEquals(
+                        evaluateOrNaN(expression, lScanned),
+                        evaluateOrNaN(expression, lIndexed),
+                        "Indexed lookup disagreed with scan for %s".formatted(lKey)
+                );
+            }
+        }
+
+        lIndexed.put("R1C5", 1000d);
+        assertThrows(IllegalArgumentException.class, () -> lExact.evaluate(lIndexed));
+        lIndexed.put("R7C1", 1000d);
+        lIndexed.getLookupIndexCache().invalidate(6, 0);
+        assertEquals(7d, lExact.evaluate(lIndexed), "Lookup index was not invalidated");
+    }
+
+    /**
+     * evaluates an expression, turning a failed evaluation into NaN
+     * @param pExpression the expression to evaluate
+     * @param pCells the table of cells
+     * @return the value of the expression, or NaN if it failed
+     */
+    private static double evaluateOrNaN(final CompiledExpression pExpression, final Map<String, Double> pCells) {
+        try {
+            return pExpression.evaluate(pCells);
+        } catch (final IllegalArgumentException lException) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * A table of cells that keeps lookup indexes.
+     */
+    private static final class IndexedTable extends HashMap<String, Double> implements IndexedCells {
+        private static final long serialVersionUID = 1L;
+
+        private final transient LookupIndexCache iCache = new LookupIndexCache();
+
+        @Override
+        public LookupIndexCache getLookupIndexCache() {
+            return this.iCache;
+        }
+    }
+
+    /**
+     * evaluates an expression against the table
+     * @param pExpression the expression to evaluate
+     * @return the value of the expression
+     */
+    private double evaluate(final String pExpression) {
+        return this.iReader.evaluate(pExpression, this.iCells);
+    }
+}
@@ -2,7 +2,9 @@ package app.model.expr;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -411,6 +413,113 @@ public class GrammarExpressionReaderTest {
         );
     }
 
+    /**
+     * Tests if cellrefs and ranges are rewritten for inserted and deleted rows and columns
+     */
+    @Test
+    public void shiftReferencesTest() {
+        assertAll(
+                "Test for rewriting the text of an expression",
+                () -> assertEquals("R1C1 + R4C2", CompiledExpression.shiftReferences("R1C1 + R2C2", true, 1, 2)),
+                () -> assertEquals("SUM(R1C1:R12C1)", CompiledExpression.shiftReferences("SUM(R1C1:R10C1)", true, 4, 2)),
+                () -> assertEquals("SUM(R3C1:R12C1)", CompiledExpression.shiftReferences("SUM(R1C1:R10C1)", true, 0, 2)),
+                () -> assertEquals("SUM(R1C1:R7C1)", CompiledExpression.shiftReferences("SUM(R1C1:R10C1)", true, 2, -3)),
+                () -> assertEquals("SUM(R1C1:R2C1)", CompiledExpression.shiftReferences("SUM(R1C1:R4C1)", true, 2, -3)),
+                () -> assertEquals("#REF!*2", CompiledExpression.shiftReferences("R3C1*2", true, 2, -1)),
+                () -> assertEquals("SUM(#REF!)", CompiledExpression.shiftReferences("SUM(R3C1 : R4C1)", true, 1, -5)),
+                () -> assertEquals("R2C1+R2C5", CompiledExpression.shiftReferences("R2C1+R2C4", false, 1, 1)),
+                () -> assertEquals("LOG10(R5C1)", CompiledExpression.shiftReferences("LOG10(R5C1)", false, 1, 1))
+        );
+    }
+
+    /**
+     * Tests if a compiled expression follows inserted and deleted rows without being read again
+     */
+    @Test
+    public void shiftCompiledTest() {
+        final CompiledExpression lCompiled = this.iReader.compile("R1C1+SUM(R2C1:R3C1)");
+        final CompiledExpression lInserted = lCompiled.shift(true, 1, 1);
+        this.iDummyCells.put("R1C1", 1d);
+        this.iDummyCells.put("R3C1", 2d);
+        this.iDummyCells.put("R4C1", 4d);
+
+        assertAll(
+                "Test for shifting a compiled expression",
+                () -> assertEquals("R1C1+SUM(R3C1:R4C1)", lInserted.getExpression()),
+                () -> assertEquals(List.of("R1C1", "R3C1", "R4C1"), lInserted.getCellRefs()),
+                () -> assertEquals(7d, lInserted.evaluate(this.iDummyCells)),
+                () -> assertTrue(lCompiled.shift(true, 5, 1) == lCompiled),
+                () -> assertNull(lCompiled.shift(true, 0, -1)),
+                () -> assertEquals("R1C1+SUM(R2C1:R2C1)", lCompiled.shift(true, 2, -1).getExpression())
+        );
+    }
+
+    /**
+     * Tests if cellrefs follow the rows of a sorted block, leaving ranges and cells outside the block alone
+     */
+    @Test
+    public void permuteRowsTest() {
+        // rows 2 to 4, columns 1 to 2, reversed
+        final int[] lNewRows = {2, 1, 0};
+        final CompiledExpression lCompiled = this.iReader.compile("R2C1+R4C2*R2C3+SUM(R2C1:R4C1)");
+        final CompiledExpression lPermuted = lCompiled.permuteRows(1, 0, 1, lNewRows);
+        this.iDummyCells.put("R4C1", 1d);
+        this.iDummyCells.put("R2C2", 2d);
+        this.iDummyCells.put("R2C3", 3d);
+
+        assertAll(
+                "Test for following the rows of a sorted block",
+                () -> assertEquals("R4C1+R2C2*R2C3+SUM(R2C1:R4C1)", lPermuted.getExpression()),
+                () -> assertEquals(8d, lPermuted.evaluate(this.iDummyCells)),
+                () -> assertTrue(lCompiled.permuteRows(4, 0, 1, lNewRows) == lCompiled),
+                () -> assertEquals("R3C1 + R1C1", CompiledExpression.permuteReferences("R3C1 + R1C1", 1, 0, 1, lNewRows)),
+                () -> assertEquals("R4C2", CompiledExpression.permuteReferences("R2C2", 1, 0, 1, lNewRows))
+        );
+    }
+
+    /**
+     * Tests if cellrefs and ranges qualified with a sheet's name read that sheet's cells, and move only
+     * with that sheet's cells
+     */
+    @Test
+    public void sheetReferencesTest() {
+        final Map<String, Double> lInputs = new HashMap<>();
+        lInputs.put("R1C1", 2d);
+        lInputs.put("R2C1", 3d);
+        final class Workbook extends HashMap<String, Double> implements WorkbookCells {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Map<String, Double> getSheetCells(final String pSheet) {
+                return "INPUTS".equals(pSheet) ? lInputs : null;
+            }
+        }
+        final Workbook lCells = new Workbook();
+        lCells.put("R1C1", 10d);
+        final CompiledExpression lCompiled = this.iReader.compile("R1C1+inputs!R1C1*SUM(Inputs ! R1C1:R2C1)");
+
+        assertAll(
+                "Test for reading and moving references to other sheets",
+                () -> assertEquals(20d, lCompiled.evaluate(lCells)),
+                () -> assertEquals(List.of("R1C1"), lCompiled.getCellRefs()),
+                () -> assertEquals(List.of("INPUTS!R1C1", "INPUTS!R1C1", "INPUTS!R2C1"), lCompiled.getSheetCellRefs()),
+                () -> assertEquals(List.of("OTHER!R2C2"), this.iReader.getCellRefsOf("5+OTHER!R2C2")),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> this.iReader.evaluate("OTHER!R1C1", lCells)),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> this.iReader.evaluate("INPUTS!R1C1", this.iDummyCells)),
+                () -> assertThrows(IllegalArgumentException.class, () -> this.iReader.compile("INPUTS!5")),
+                () -> assertEquals("R2C1+INPUTS!R1C1*SUM(INPUTS ! R1C1:R2C1)",
+                        lCompiled.shift(true, 0, 1).getExpression()),
+                () -> assertEquals("R1C1+INPUTS!R2C1*SUM(INPUTS ! R2C1:R3C1)",
+                        lCompiled.shift("INPUTS", false, true, 0, 1).getExpression()),
+                () -> assertEquals("R2C1+INPUTS!R2C1", CompiledExpression.shiftReferences(
+                        "R1C1+INPUTS!R1C1", "INPUTS", true, true, 0, 1)),
+                () -> assertEquals("R1C1+INPUTS!#REF!", CompiledExpression.shiftReferences(
+                        "R1C1+INPUTS!R1C1", "INPUTS", false, true, 0, -1))
+        );
+    }
+
     /**
      * runs tests on all the expression in the map stored in this instance
      */
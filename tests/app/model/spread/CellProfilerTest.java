@@ -0,0 +1,84 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the cell profiler: what it records of each formula evaluated, and the order of the hot cells.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class CellProfilerTest {
+    private CellProfiler iProfiler;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iProfiler = new CellProfiler();
+    }
+
+    /**
+     * Tests that the hot cells are ordered by total time, then evaluations, then down each column, whatever order
+     * they were evaluated in
+     */
+    @Test
+    public void testHotCellOrder() {
+        this.iProfiler.formulaEvaluated("R2C1", "=R1C1", 0, 100, true);
+        this.iProfiler.formulaEvaluated("R1C2", "=SUM(R1C1:R9C1)", 400, 600, false);
+        this.iProfiler.formulaEvaluated("R3C1", "=R2C1", 0, 50, true);
+        this.iProfiler.formulaEvaluated("R3C1", "=R2C1", 0, 50, true);
+        this.iProfiler.formulaEvaluated("R1C1", "=R9C9", 0, 100, true);
+        this.iProfiler.formulaEvaluated("R2C2", "=R1C2*2", 0, 1200, true);
+
+        final List<String> lOrder = this.iProfiler.getProfiles().stream().map(CellProfiler.CellProfile::getRowColumn)
+                .toList();
+        assertEquals(List.of("R2C2", "R1C2", "R3C1", "R1C1", "R2C1"), lOrder, "hottest first");
+        assertEquals(1200L, this.iProfiler.getMaxTotalNanos(), "hottest total");
+    }
+
+    /**
+     * Tests that a profile sums the evaluations of its cell, including the time spent compiling, and keeps the
+     * latest formula, until cleared
+     */
+    @Test
+    public void testProfileOfOneCell() {
+        this.iProfiler.formulaEvaluated("R4C3", "=R1C1", 300, 100, false);
+        this.iProfiler.formulaEvaluated("R4C3", "=R1C1*2", 0, 200, true);
+
+        final CellProfiler.CellProfile lProfile = this.iProfiler.getProfile("R4C3");
+        assertEquals(3, lProfile.getRow(), "row");
+        assertEquals(2, lProfile.getColumn(), "column");
+        assertEquals("=R1C1*2", lProfile.getInstructions(), "latest formula");
+        assertEquals(2, lProfile.getEvaluations(), "evaluations");
+        assertEquals(600L, lProfile.getTotalNanos(), "total with the compile time");
+        assertEquals(300d, lProfile.getMeanNanos(), "mean");
+
+        this.iProfiler.clear();
+        assertNull(this.iProfiler.getProfile("R4C3"), "profile after clearing");
+        assertEquals(0L, this.iProfiler.getMaxTotalNanos(), "hottest total after clearing");
+    }
+
+    /**
+     * Tests that profiling a sheet records only the formulas its edits recalculate
+     */
+    @Test
+    public void testProfileSheet() {
+        final SpreadsheetGraph lSheet = new SpreadsheetGraph(5, 2);
+        lSheet.setCellInstructions("1", "R1C1");
+        lSheet.setCellInstructions("=R1C1+1", "R2C1");
+        lSheet.setCellInstructions("=R5C2", "R3C1");
+        lSheet.addRecalcListener(this.iProfiler);
+
+        lSheet.setCellInstructions("2", "R1C1");
+        lSheet.setCellInstructions("3", "R1C1");
+        assertEquals(2, this.iProfiler.getProfile("R2C1").getEvaluations(), "formula depending on the edits");
+        assertNull(this.iProfiler.getProfile("R3C1"), "formula not depending on them");
+        assertNull(this.iProfiler.getProfile("R1C1"), "edited literal");
+    }
+}
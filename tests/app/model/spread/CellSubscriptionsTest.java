@@ -0,0 +1,152 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests cell subscriptions: which changes each subscriber is given, and how changes arriving faster than they are
+ * delivered are merged. Most tests hand the work to a queue they run it from, so each decides when it is done.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class CellSubscriptionsTest {
+    private static final int EDITS = 1000;
+    private static final long WAIT_SECONDS = 10;
+
+    private SpreadsheetGraph iSheet;
+    private Deque<Runnable> iTasks;
+    private CellSubscriptions iSubscriptions;
+    private List<Map<String, Double>> iCellBatches;
+    private List<Map<String, Double>> iRangeBatches;
+    private List<Map<String, Double>> iSheetBatches;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(5, 2);
+        this.iSheet.setCellInstructions("=R1C1*10", "R2C1");
+        this.iTasks = new ArrayDeque<>();
+        this.iSubscriptions = new CellSubscriptions(this.iSheet, this.iTasks::add);
+        this.iCellBatches = new ArrayList<>();
+        this.iRangeBatches = new ArrayList<>();
+        this.iSheetBatches = new ArrayList<>();
+    }
+
+    /**
+     * Tests that edits made before the changes are matched reach each subscriber as one batch of the cells it
+     * watches, with their last values
+     */
+    @Test
+    public void testOneBatchPerSubscriber() {
+        subscribeAll();
+        this.iSheet.setCellInstructions("1", "R1C1");
+        this.iSheet.setCellInstructions("2", "R1C1");
+        this.iSheet.setCellInstructions("3", "R1C1");
+        this.iSheet.setCellInstructions("4", "R5C2");
+        runAll();
+
+        assertEquals(List.of(Map.of("R2C1", 30d)), this.iCellBatches, "batches of the cell");
+        assertEquals(List.of(Map.of("R1C1", 3d, "R2C1", 30d)), this.iRangeBatches, "batches of the range");
+        assertEquals(List.of(Map.of("R1C1", 3d, "R2C1", 30d, "R5C2", 4d)), this.iSheetBatches,
+                "batches of the sheet");
+    }
+
+    /**
+     * Tests that changes reaching a subscriber still waiting to be given its last batch are merged into it, the
+     * last value of each cell winning
+     */
+    @Test
+    public void testCoalescedWhileBusy() {
+        final CellSubscription lSubscription = subscribeAll();
+        this.iSheet.setCellInstructions("1", "R1C1");
+        this.iTasks.removeFirst().run(); // matches the changes, leaving the batches to be delivered
+        this.iSheet.setCellInstructions("2", "R1C1");
+        this.iSheet.setCellInstructions("5", "R5C2");
+        this.iTasks.removeLast().run(); // matches the new changes before the first batches are delivered
+        runAll();
+
+        assertEquals(List.of(Map.of("R2C1", 20d)), this.iCellBatches, "batches of the cell");
+        assertEquals(List.of(Map.of("R1C1", 2d, "R2C1", 20d)), this.iRangeBatches, "batches of the range");
+        assertEquals(List.of(Map.of("R1C1", 2d, "R2C1", 20d, "R5C2", 5d)), this.iSheetBatches,
+                "batches of the sheet");
+        assertEquals(1, lSubscription.getDelivered(), "batches delivered to the cell");
+        assertEquals(1, lSubscription.getCoalesced(), "batches merged for the cell");
+    }
+
+    /**
+     * Tests that a cancelled subscription, and every subscription once closed, is given nothing more
+     */
+    @Test
+    public void testCancel() {
+        final CellSubscription lSubscription = subscribeAll();
+        this.iSheet.setCellInstructions("1", "R1C1");
+        lSubscription.close();
+        runAll();
+        assertTrue(lSubscription.isCancelled(), "cancelled subscription");
+        assertEquals(List.of(), this.iCellBatches, "batches of the cancelled subscription");
+        assertEquals(1, this.iRangeBatches.size(), "batches of the range");
+
+        this.iSubscriptions.close();
+        this.iSheet.setCellInstructions("2", "R1C1");
+        runAll();
+        assertEquals(1, this.iRangeBatches.size(), "batches of the range once closed");
+        assertEquals(1, this.iSheetBatches.size(), "batches of the sheet once closed");
+    }
+
+    /**
+     * Tests that a slow subscriber on its own thread is given fewer batches than there are edits, the last holding
+     * the last value
+     * @throws InterruptedException if interrupted waiting for the last value
+     */
+    @Test
+    public void testSlowSubscriber() throws InterruptedException {
+        final List<Double> lValues = new CopyOnWriteArrayList<>();
+        final CountDownLatch lLast = new CountDownLatch(1);
+        try (CellSubscriptions lSubscriptions = new CellSubscriptions(this.iSheet)) {
+            lSubscriptions.subscribeCell("R2C1", lBatch -> {
+                lValues.add(lBatch.get("R2C1"));
+                if (lBatch.get("R2C1") == EDITS * 10d) lLast.countDown();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int lEdit = 1; lEdit <= EDITS; lEdit++) this.iSheet.setCellInstructions(String.valueOf(lEdit), "R1C1");
+
+            assertTrue(lLast.await(WAIT_SECONDS, TimeUnit.SECONDS), "last value delivered");
+            assertEquals(EDITS * 10d, lValues.getLast(), "last batch");
+            assertTrue(lValues.size() < EDITS, "fewer batches than edits");
+            for (int lBatch = 1; lBatch < lValues.size(); lBatch++) {
+                assertTrue(lValues.get(lBatch - 1) < lValues.get(lBatch), "batch " + lBatch + " in order");
+            }
+        }
+    }
+
+    //Helper method that subscribes to the second cell of the first column, to the first column's first two cells and
+    //to the sheet, giving the subscription to the cell
+    private CellSubscription subscribeAll() {
+        final CellSubscription lSubscription = this.iSubscriptions.subscribeCell("R2C1", this.iCellBatches::add);
+        this.iSubscriptions.subscribeRange("R2C1", "R1C1", this.iRangeBatches::add);
+        this.iSubscriptions.subscribeSheet(this.iSheetBatches::add);
+        return lSubscription;
+    }
+
+    //Helper method that runs the queued work, and any work it queues, in order
+    private void runAll() {
+        while (!this.iTasks.isEmpty()) this.iTasks.removeFirst().run();
+    }
+}
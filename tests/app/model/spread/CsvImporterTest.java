@@ -0,0 +1,100 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the CSV importer: quoted fields, line endings, numbers, text and formulas, growing the sheet, and the
+ * formulas referring to the imported block.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class CsvImporterTest {
+    private SpreadsheetGraph iSheet;
+    private CsvImporter iImporter;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(2, 2);
+        this.iImporter = new CsvImporter(this.iSheet);
+    }
+
+    /**
+     * Tests that quoted fields keep their delimiters, line breaks and doubled quotes, and that lines end with a
+     * line feed or a carriage return and line feed alike
+     * @throws IOException if the values could not be read
+     */
+    @Test
+    public void testQuotedFieldsAndLineEndings() throws IOException {
+        final String lCsv = "\"a,b\",\"say \"\"hi\"\"\"\r\n\"two\nlines\",plain\r\nlast,\"\"\n";
+        assertEquals(3, this.iImporter.importFrom(new StringReader(lCsv)), "rows imported");
+        assertEquals("a,b", this.iSheet.getCellInstructions(0, 0), "quoted delimiter");
+        assertEquals("say \"hi\"", this.iSheet.getCellInstructions(0, 1), "doubled quotes");
+        assertEquals("two\nlines", this.iSheet.getCellInstructions(1, 0), "quoted line break");
+        assertEquals("plain", this.iSheet.getCellInstructions(1, 1), "field after a carriage return and line feed");
+        assertEquals("last", this.iSheet.getCellInstructions(2, 0), "line after a carriage return and line feed");
+        assertNull(this.iSheet.getCellInstructions(2, 1), "empty quoted field");
+        assertEquals(6, this.iImporter.getCellCount(), "cells imported");
+    }
+
+    /**
+     * Tests that numbers get their values, text gets none, formulas are evaluated once the file is read, and the
+     * sheet grows to fit the values
+     * @throws IOException if the values could not be read
+     */
+    @Test
+    public void testNumbersTextAndFormulas() throws IOException {
+        final String lCsv = "name,amount,double\nfirst,1.25,=R2C2*2\nsecond,-3,=R3C2*2\nthird,1e3,=SUM(R2C2:R4C2)\n";
+        this.iImporter.setSkipHeader(true).setOrigin("R2C1");
+        assertEquals(3, this.iImporter.importFrom(new StringReader(lCsv)), "rows imported");
+        assertEquals(4, this.iSheet.getRowCount(), "rows after growing");
+        assertEquals(3, this.iSheet.getColumnCount(), "columns after growing");
+
+        assertNull(this.iSheet.getCellInstructions(0, 0), "header left out");
+        assertEquals(1.25d, this.iSheet.getCellValue("R2C2"), "number with a fraction");
+        assertEquals(-3d, this.iSheet.getCellValue("R3C2"), "negative number");
+        assertNull(this.iSheet.getCellValue("R4C2"), "exponent, which the sheet keeps as text");
+        assertEquals("1e3", this.iSheet.getCellInstructions(3, 1), "text as written");
+        assertEquals(2.5d, this.iSheet.getCellValue("R2C3"), "formula over the imported cells");
+        assertEquals(-6d, this.iSheet.getCellValue("R3C3"), "formula over another row");
+        assertEquals(-1.75d, this.iSheet.getCellValue("R4C3"), "formula over a range with text in it");
+    }
+
+    /**
+     * Tests that a formula of the sheet referring to the block is recalculated after an import, even one whose
+     * reading failed partway, which keeps the values read before
+     */
+    @Test
+    public void testFailedReadRecalculates() {
+        this.iSheet.setCellInstructions("=SUM(R1C1:R5C1)", "R1C2");
+        final Reader lFailing = new Reader() {
+            private final Reader iValues = new StringReader("1\n2\n3\n4,5");
+
+            @Override
+            public int read(final char[] pBuffer, final int pOffset, final int pLength) throws IOException {
+                final int lRead = this.iValues.read(pBuffer, pOffset, Math.min(pLength, 2));
+                if (lRead < 0) throw new IOException("Connection reset");
+                return lRead;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        assertThrows(IOException.class, () -> this.iImporter.importFrom(lFailing), "failed read");
+        assertEquals(4, this.iSheet.getRowCount(), "rows after growing");
+        assertEquals(10d, this.iSheet.getCellValue("R1C2"), "formula over the cells read, of a line cut short too");
+        assertNull(this.iSheet.getCellInstructions(3, 1), "field cut short");
+    }
+}
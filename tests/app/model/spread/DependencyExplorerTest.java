@@ -0,0 +1,109 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the dependency explorer: precedents and dependents of cells, direct and traced, and how they follow edits.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class DependencyExplorerTest {
+    private static final int CHAIN = 20000; // long enough a chain to overflow the stack if walked recursively
+
+    private SpreadsheetGraph iSheet;
+    private DependencyExplorer iExplorer;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(10, 10);
+        this.iSheet.setCellInstructions(Map.of(
+                "R1C1", "1",
+                "R2C1", "=R1C1*2",
+                "R3C1", "=R2C1+R1C1",
+                "R4C1", "=SUM(R1C1:R3C1)",
+                "R1C2", "=R3C1+R9C9",
+                "R2C2", "=R1C2+R4C1"));
+        this.iExplorer = new DependencyExplorer(this.iSheet);
+    }
+
+    /**
+     * Tests the direct precedents and dependents of cells, through ranges and of empty cells
+     */
+    @Test
+    public void testDirect() {
+        assertEquals(List.of("R1C2", "R4C1"), this.iExplorer.getPrecedents("R2C2"), "precedents in formula order");
+        assertEquals(List.of("R1C1", "R2C1", "R3C1"), this.iExplorer.getPrecedents("R4C1"), "cells of a range");
+        assertEquals(List.of(), this.iExplorer.getPrecedents("R1C1"), "precedents of a literal");
+        assertEquals(List.of("R2C1", "R3C1", "R4C1"), this.iExplorer.getDependents("R1C1"), "dependents by row");
+        assertEquals(List.of("R1C2"), this.iExplorer.getDependents("R9C9"), "dependents of an empty cell");
+        assertEquals(List.of(), this.iExplorer.getDependents("R2C2"), "dependents of the last formula");
+        assertThrows(IllegalArgumentException.class, () -> this.iExplorer.getDependents("A1"), "malformed cell");
+    }
+
+    /**
+     * Tests tracing precedents and dependents level by level, to a limit and to the end
+     */
+    @Test
+    public void testTrace() {
+        assertEquals(List.of("R1C2", "R4C1", "R3C1", "R9C9", "R1C1", "R2C1"),
+                List.copyOf(this.iExplorer.tracePrecedents("R2C2", Integer.MAX_VALUE).keySet()), "nearest first");
+        assertEquals(Map.of("R1C2", 1, "R4C1", 1, "R3C1", 2, "R9C9", 2, "R1C1", 2, "R2C1", 2),
+                this.iExplorer.tracePrecedents("R2C2", Integer.MAX_VALUE), "levels of the precedents");
+        assertEquals(Map.of("R1C2", 1, "R4C1", 1), this.iExplorer.tracePrecedents("R2C2", 1), "one level");
+
+        assertEquals(Map.of("R2C1", 1, "R3C1", 1, "R4C1", 1, "R1C2", 2, "R2C2", 2),
+                new HashMap<>(this.iExplorer.traceDependents("R1C1", Integer.MAX_VALUE)), "levels of the dependents");
+        assertEquals(Map.of(), this.iExplorer.traceDependents("R1C1", 0), "no levels");
+        assertThrows(IllegalArgumentException.class, () -> this.iExplorer.traceDependents("R1C1", -1),
+                "negative levels");
+
+        assertEquals(5, this.iExplorer.getImpactSize("R1C1"), "cells an edit of the input recalculates");
+        assertEquals(2, this.iExplorer.getImpactSize("R9C9"), "cells an edit of the empty cell recalculates");
+        assertEquals(4, this.iExplorer.getDepth("R2C2"), "longest chain");
+    }
+
+    /**
+     * Tests that the explorer sees edits made after it was created
+     */
+    @Test
+    public void testFollowsEdits() {
+        this.iSheet.setCellInstructions("5", "R3C1");
+        assertEquals(List.of("R2C1", "R4C1"), this.iExplorer.getDependents("R1C1"), "dependents after the edit");
+        assertEquals(List.of(), this.iExplorer.getPrecedents("R3C1"), "precedents of the new literal");
+        assertEquals(3, this.iExplorer.getDepth("R2C2"), "longest chain after the edit");
+        assertEquals(3, this.iExplorer.getImpactSize("R1C1"), "impact after the edit");
+
+        this.iSheet.setCellInstructions("=R2C2", "R10C10");
+        assertEquals(Map.of("R10C10", 1), this.iExplorer.traceDependents("R2C2", Integer.MAX_VALUE),
+                "dependent of a new formula");
+    }
+
+    /**
+     * Tests the depth and impact of a long chain of formulas
+     */
+    @Test
+    public void testLongChain() {
+        final SpreadsheetGraph lSheet = new SpreadsheetGraph(CHAIN, 1);
+        final Map<String, String> lCells = new HashMap<>();
+        lCells.put("R1C1", "1");
+        for (int lRow = 2; lRow <= CHAIN; lRow++) lCells.put("R" + lRow + "C1", "=R" + (lRow - 1) + "C1+1");
+        lSheet.setCellInstructions(lCells);
+        final DependencyExplorer lExplorer = new DependencyExplorer(lSheet);
+
+        assertEquals(CHAIN - 1, lExplorer.getDepth("R" + CHAIN + "C1"), "depth of the end of the chain");
+        assertEquals(CHAIN - 1, lExplorer.getImpactSize("R1C1"), "impact of the start of the chain");
+        assertEquals(CHAIN - 1, lExplorer.tracePrecedents("R" + CHAIN + "C1", Integer.MAX_VALUE).size(),
+                "precedents of the end of the chain");
+        assertEquals(Integer.valueOf(10), lExplorer.traceDependents("R1C1", 10).get("R11C1"), "dependent ten levels away");
+    }
+}
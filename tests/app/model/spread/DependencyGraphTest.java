@@ -0,0 +1,185 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the dependency graph: linking and unlinking formulas, compaction, and finding and ordering the cells an
+ * edit affects.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class DependencyGraphTest {
+    private static final int FORMULAS = 10000; // enough edits to compact the edges a few times
+
+    private DependencyGraph iGraph;
+    private Map<String, GraphVertex> iCells;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iGraph = new DependencyGraph();
+        this.iCells = new HashMap<>();
+    }
+
+    /**
+     * Tests that linking a formula again replaces the cells it refers to, and unlinking forgets them
+     */
+    @Test
+    public void testLinkUnlinkRelink() {
+        final GraphVertex lFormula = formula("R1C2", "R1C1", "R1C1");
+        assertEquals(List.of(lFormula), this.iGraph.dependentsOf(0, 0), "cell referred to twice");
+
+        this.iGraph.link(lFormula, List.of("R2C1"));
+        assertTrue(this.iGraph.dependentsOf(0, 0).isEmpty(), "cell no longer referred to");
+        assertEquals(List.of(lFormula), this.iGraph.dependentsOf(1, 0), "cell referred to after relinking");
+
+        this.iGraph.unlink(lFormula);
+        assertFalse(this.iGraph.hasDependents(1, 0), "cell after unlinking");
+        assertEquals(-1, lFormula.getLink(), "link of an unlinked formula");
+        this.iGraph.unlink(lFormula);
+
+        this.iGraph.link(lFormula, List.of("R1C1"));
+        assertEquals(List.of(lFormula), this.iGraph.dependentsOf(0, 0), "cell after linking again");
+    }
+
+    /**
+     * Tests that the dependents of every cell survive compacting the edges after many unlinks and relinks
+     */
+    @Test
+    public void testCompaction() {
+        final List<GraphVertex> lFormulas = new ArrayList<>();
+        for (int lRow = 0; lRow < FORMULAS; lRow++) {
+            lFormulas.add(formula("R" + (lRow + 1) + "C2", "R" + (lRow + 1) + "C1"));
+        }
+        for (int lRow = 0; lRow < FORMULAS; lRow++) {
+            if (lRow % 2 == 1) this.iGraph.unlink(lFormulas.get(lRow));
+            else this.iGraph.link(lFormulas.get(lRow), List.of("R" + (lRow + 1) + "C3", "R1C1:R2C1"));
+        }
+
+        for (int lRow = 0; lRow < FORMULAS; lRow++) {
+            assertFalse(lRow > 1 && this.iGraph.hasDependents(lRow, 0), "first column of row " + lRow);
+            assertEquals(lRow % 2 == 0 ? List.of(lFormulas.get(lRow)) : List.of(),
+                    this.iGraph.dependentsOf(lRow, 2), "third column of row " + lRow);
+        }
+        assertEquals(FORMULAS / 2, this.iGraph.dependentsOf(0, 0).size(), "cell in the range");
+    }
+
+    /**
+     * Tests that a diamond of formulas is affected once each, and ordered after the cells it refers to
+     */
+    @Test
+    public void testDiamond() {
+        final GraphVertex lTop = literal("R1C1");
+        final GraphVertex lLeft = formula("R2C1", "R1C1");
+        final GraphVertex lRight = formula("R2C2", "R1C1");
+        final GraphVertex lBottom = formula("R3C1", "R2C1", "R2C2");
+
+        final List<GraphVertex> lAffected = this.iGraph.affected(List.of("R1C1"), this.iCells);
+        assertEquals(Set.of(lTop, lLeft, lRight, lBottom), new HashSet<>(lAffected), "affected cells");
+        assertEquals(4, lAffected.size(), "each cell once");
+
+        final List<GraphVertex> lOrder = this.iGraph.order(lAffected);
+        assertEquals(lTop, lOrder.get(0), "first cell");
+        assertEquals(lBottom, lOrder.get(3), "last cell");
+        assertEquals(2, lBottom.getDepth(), "depth of the last cell");
+    }
+
+    /**
+     * Tests that a chain of formulas is ordered along the chain, and that editing its middle affects only the rest
+     */
+    @Test
+    public void testChain() {
+        final List<GraphVertex> lChain = new ArrayList<>();
+        lChain.add(literal("R1C1"));
+        for (int lRow = 2; lRow <= 100; lRow++) lChain.add(formula("R" + lRow + "C1", "R" + (lRow - 1) + "C1"));
+
+        assertEquals(lChain, this.iGraph.order(this.iGraph.affected(List.of("R1C1"), this.iCells)), "whole chain");
+        assertEquals(99, lChain.get(99).getDepth(), "depth of the end of the chain");
+        assertEquals(lChain.subList(50, 100), this.iGraph.order(this.iGraph.affected(List.of("R51C1"), this.iCells)),
+                "rest of the chain");
+    }
+
+    /**
+     * Tests that cells in a cycle are left out of the order with an indegree, and the rest are ordered
+     */
+    @Test
+    public void testCycle() {
+        final GraphVertex lInput = literal("R1C1");
+        final GraphVertex lFirst = formula("R2C1", "R1C1", "R3C1");
+        final GraphVertex lSecond = formula("R3C1", "R2C1");
+        final GraphVertex lAfter = formula("R4C1", "R3C1");
+        final GraphVertex lAside = formula("R1C2", "R1C1");
+
+        final List<GraphVertex> lAffected = this.iGraph.affected(List.of("R1C1"), this.iCells);
+        assertEquals(5, lAffected.size(), "affected cells");
+        final List<GraphVertex> lOrder = this.iGraph.order(lAffected);
+        assertEquals(List.of(lInput, lAside), lOrder, "cells outside the cycle");
+        assertTrue(lFirst.getIndegree() > 0 && lSecond.getIndegree() > 0 && lAfter.getIndegree() > 0,
+                "cells in and after the cycle");
+    }
+
+    /**
+     * Tests that a formula over a range is affected by any cell in it, and ordered after the affected ones
+     */
+    @Test
+    public void testRange() {
+        final GraphVertex lInput = literal("R1C1");
+        final GraphVertex lInside = formula("R5C1", "R1C1");
+        final GraphVertex lTotal = formula("R1C2", "R1C1:R10C1");
+
+        assertEquals(List.of(lTotal), this.iGraph.dependentsOf(9, 0), "last cell of the range");
+        assertFalse(this.iGraph.hasDependents(10, 0), "cell past the range");
+        assertEquals(List.of(lInput, lInside, lTotal),
+                this.iGraph.order(this.iGraph.affected(List.of("R1C1"), this.iCells)), "cells in order");
+        assertEquals(2, lTotal.getDepth(), "depth of the formula over the range");
+        assertEquals(List.of(lTotal), this.iGraph.affected(List.of("R7C1"), this.iCells), "empty cell in the range");
+    }
+
+    /**
+     * Tests that the formulas referring to cells at or past a row are found, by themselves or through ranges
+     */
+    @Test
+    public void testCollectDependentsFrom() {
+        final GraphVertex lBefore = formula("R1C2", "R4C1");
+        final GraphVertex lAt = formula("R2C2", "R5C1");
+        final GraphVertex lPast = formula("R3C2", "R9C3");
+        final GraphVertex lSpanning = formula("R4C2", "R2C1:R6C1");
+        final GraphVertex lRangeBefore = formula("R5C2", "R1C1:R4C3");
+
+        final Set<GraphVertex> lFound = new HashSet<>();
+        this.iGraph.collectDependentsFrom(true, 4, lFound);
+        assertEquals(Set.of(lAt, lPast, lSpanning), lFound, "formulas referring to rows from the fifth");
+        assertFalse(lFound.contains(lBefore) || lFound.contains(lRangeBefore), "formulas referring to earlier rows");
+
+        lFound.clear();
+        this.iGraph.collectDependentsFrom(false, 2, lFound);
+        assertEquals(Set.of(lPast, lRangeBefore), lFound, "formulas referring to columns from the third");
+    }
+
+    //Helper method that adds a cell without a formula
+    private GraphVertex literal(final String pRowColumn) {
+        final GraphVertex lVertex = new GraphVertex(pRowColumn);
+        this.iCells.put(pRowColumn, lVertex);
+        return lVertex;
+    }
+
+    //Helper method that adds a formula cell and links it to the cells and ranges it refers to
+    private GraphVertex formula(final String pRowColumn, final String... pReferences) {
+        final GraphVertex lVertex = literal(pRowColumn);
+        this.iGraph.link(lVertex, List.of(pReferences));
+        return lVertex;
+    }
+}
@@ -0,0 +1,91 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the edit journal: undoing and redoing edits, within its memory budget and past it.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class EditJournalTest {
+    private static final int EDITS = 200;
+    private static final long BUDGET = 2000; // bytes, a few dozen edits, so most are spilled
+
+    private SpreadsheetGraph iSheet;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(EDITS, 3);
+        this.iSheet.setCellInstructions("1", "R1C1");
+        this.iSheet.setCellInstructions("=SUM(R1C1:R" + EDITS + "C1)", "R1C2");
+    }
+
+    /**
+     * Tests that every edit is undone and redone in order, with the values recalculated, when most of them are
+     * spilled to a file past the memory budget
+     * @throws IOException if the spill file could not be created or deleted
+     */
+    @Test
+    public void testUndoRedoPastBudget() throws IOException {
+        final Path lSpill = Files.createTempFile("journal", ".spill");
+        try (EditJournal lJournal = new EditJournal(this.iSheet, BUDGET, lSpill)) {
+            for (int lRow = 2; lRow <= EDITS; lRow++) {
+                this.iSheet.setCellInstructions(String.valueOf(lRow), "R" + lRow + "C1");
+            }
+            this.iSheet.setCellInstructions("=R1C2*2", "R1C3");
+            assertEquals(EDITS, lJournal.getUndoCount(), "edits to undo");
+            assertTrue(lJournal.getMemoryBytes() <= BUDGET, "edits in memory within budget");
+            assertTrue(Files.size(lSpill) > 0, "edits spilled");
+
+            for (int lUndone = 0; lUndone < EDITS; lUndone++) assertTrue(lJournal.undo(), "undo " + lUndone);
+            assertFalse(lJournal.undo(), "undo past the first edit");
+            assertNull(this.iSheet.getCellInstructions(0, 2), "formula undone");
+            assertNull(this.iSheet.getCellValue("R" + EDITS + "C1"), "last edit undone");
+            assertEquals(1d, this.iSheet.getCellValue("R1C2"), "total with every edit undone");
+
+            //Edits to redo are not spilled, so only the first of them are kept within the budget
+            assertTrue(lJournal.getMemoryBytes() <= BUDGET, "edits in memory within budget after undoing");
+            int lRedone = 0;
+            while (lJournal.redo()) lRedone++;
+            assertTrue(lRedone > 0 && lRedone < EDITS, "edits redone");
+            assertEquals((lRedone + 1d) * (lRedone + 2) / 2, this.iSheet.getCellValue("R1C2"),
+                    "total with the first edits redone");
+
+            this.iSheet.setCellInstructions("0", "R1C1");
+            assertFalse(lJournal.canRedo(), "redo past a new edit");
+            assertTrue(lJournal.undo(), "undo the new edit");
+            assertEquals(1d, this.iSheet.getCellValue("R1C1"), "new edit undone");
+        }
+        assertFalse(Files.exists(lSpill), "spill file once the journal is closed");
+    }
+
+    /**
+     * Tests that without a spill file the oldest edits past the memory budget are forgotten, and the rest undone
+     */
+    @Test
+    public void testForgetPastBudget() {
+        final EditJournal lJournal = new EditJournal(this.iSheet, BUDGET);
+        for (int lRow = 2; lRow <= EDITS; lRow++) this.iSheet.setCellInstructions(String.valueOf(lRow), "R" + lRow + "C1");
+        final int lKept = lJournal.getUndoCount();
+        assertTrue(lKept > 0 && lKept < EDITS - 1, "edits kept");
+
+        while (lJournal.undo()) {
+            assertTrue(lJournal.getMemoryBytes() <= BUDGET, "edits in memory within budget");
+        }
+        assertEquals(String.valueOf(EDITS - lKept), this.iSheet.getCellInstructions(EDITS - lKept - 1, 0),
+                "newest edit forgotten");
+        assertNull(this.iSheet.getCellInstructions(EDITS - lKept, 0), "oldest edit undone");
+    }
+}
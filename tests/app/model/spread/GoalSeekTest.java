@@ -0,0 +1,93 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests goal seek and data tables against values worked by hand, over a sheet growing a principal at a rate for two
+ * years.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class GoalSeekTest {
+    private static final double TOLERANCE = 1e-9;
+
+    private SpreadsheetGraph iSheet;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(5, 3);
+        this.iSheet.setCellInstructions(Map.of(
+                "R1C1", "0.05",
+                "R2C1", "1000",
+                "R3C1", "=R2C1*(1+R1C1)",
+                "R4C1", "=R3C1*(1+R1C1)",
+                "R1C2", "=R1C1*R1C1",
+                "R2C2", "=1/R1C1",
+                "R1C3", "=R2C1+1"));
+    }
+
+    /**
+     * Tests that goal seek finds the rate that grows the principal to a goal, and leaves the sheet as it was
+     */
+    @Test
+    public void testSeekRate() {
+        final GoalSeek lSeek = new GoalSeek(this.iSheet, "R1C1", "R4C1").setTolerance(TOLERANCE);
+        assertEquals(0.1, lSeek.seek(1210), 1e-9, "rate growing 1000 to 1210");
+        assertEquals(-0.1, lSeek.seek(810), 1e-9, "rate shrinking 1000 to 810");
+        assertEquals(0.05, this.iSheet.getCellValue("R1C1"), "rate after seeking");
+        assertEquals(1102.5, this.iSheet.getCellValue("R4C1"), 1e-9, "total after seeking");
+
+        assertEquals(100, new GoalSeek(this.iSheet, "R2C1", "R3C1").setTolerance(TOLERANCE).seek(105), 1e-6,
+                "principal growing to 105 in a year");
+    }
+
+    /**
+     * Tests that goal seek finds a root of a square from either side of it, and gives up on a goal it cannot reach
+     */
+    @Test
+    public void testSeekSquare() {
+        final GoalSeek lSeek = new GoalSeek(this.iSheet, "R1C1", "R1C2").setTolerance(TOLERANCE);
+        assertEquals(9, Math.pow(lSeek.seek(9, 1), 2), 1e-9, "square of the root found from above zero");
+        assertEquals(-3, lSeek.seek(9, -1), 1e-6, "root found from below zero");
+        assertThrows(IllegalArgumentException.class, () -> lSeek.seek(-1), "goal below every square");
+        assertThrows(IllegalArgumentException.class, () -> new GoalSeek(this.iSheet, "R1C1", "R1C3").seek(5),
+                "output not depending on the input");
+    }
+
+    /**
+     * Tests a one-variable table of two outputs, where one fails for an input
+     */
+    @Test
+    public void testOneVariable() {
+        final double[][] lTable = DataTable.oneVariable(this.iSheet, "R1C1", new double[] {0, 0.1, 0.5},
+                "R4C1", "R2C2");
+        assertArrayEquals(new double[] {1000, Double.NaN}, lTable[0], "no growth");
+        assertEquals(1210, lTable[1][0], 1e-9, "total at a tenth");
+        assertEquals(10, lTable[1][1], 1e-9, "inverse of a tenth");
+        assertArrayEquals(new double[] {2250, 2}, lTable[2], "total and inverse at a half");
+        assertEquals(0.05, this.iSheet.getCellValue("R1C1"), "rate after the table");
+    }
+
+    /**
+     * Tests a two-variable table over the rate and the principal
+     */
+    @Test
+    public void testTwoVariable() {
+        final double[][] lTable = DataTable.twoVariable(this.iSheet, "R1C1", new double[] {0, 1},
+                "R2C1", new double[] {1, 10, 100}, "R4C1");
+        assertArrayEquals(new double[] {1, 10, 100}, lTable[0], "no growth");
+        assertArrayEquals(new double[] {4, 40, 400}, lTable[1], "doubling twice");
+        assertThrows(IllegalArgumentException.class, () -> DataTable.twoVariable(this.iSheet, "R1C1", new double[] {0},
+                "R1C1", new double[] {0}, "R4C1"), "same cell for both inputs");
+        assertEquals(1000d, this.iSheet.getCellValue("R2C1"), "principal after the table");
+    }
+}
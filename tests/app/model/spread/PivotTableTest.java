@@ -0,0 +1,150 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests pivot tables: the results of a refresh, and of refreshes after edits of the source block.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class PivotTableTest {
+    private static final int ROWS = 40000; // enough rows to read and aggregate in several chunks
+    private static final int GROUPS = 7;
+
+    private SpreadsheetGraph iSheet;
+    private PivotTable iPivot;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(7, 9);
+        this.iSheet.setCellInstructions(Map.ofEntries(
+                Map.entry("R1C1", "Region"), Map.entry("R1C2", "Amount"), Map.entry("R1C3", "Units"),
+                Map.entry("R2C1", "east"), Map.entry("R2C2", "10"), Map.entry("R2C3", "1"),
+                Map.entry("R3C1", "west"), Map.entry("R3C2", "20"), Map.entry("R3C3", "2"),
+                Map.entry("R4C1", "east"), Map.entry("R4C2", "5"), Map.entry("R4C3", "3"),
+                Map.entry("R5C1", "north"), Map.entry("R5C2", "=R1C9"), Map.entry("R5C3", "4"),
+                Map.entry("R6C1", "west"), Map.entry("R6C2", "n/a"), Map.entry("R6C3", "5"),
+                Map.entry("R7C1", "east"), Map.entry("R7C3", "6"),
+                Map.entry("R1C9", "7")));
+        this.iPivot = new PivotTable(this.iSheet, 1, 7, 1, 3).setHeader(true).groupBy(1)
+                .aggregate(2, PivotTable.Aggregate.SUM)
+                .aggregate(2, PivotTable.Aggregate.COUNT)
+                .aggregate(3, PivotTable.Aggregate.MAX)
+                .setTarget("R1C5");
+    }
+
+    /**
+     * Tests the results of a first refresh, which skip text and empty cells
+     */
+    @Test
+    public void testRefresh() {
+        assertEquals(3, this.iPivot.refresh(), "groups");
+        assertEquals(List.of(
+                List.of("Region", "Sum of Amount", "Count of Amount", "Max of Units"),
+                List.of("east", "15", "2", "6"),
+                List.of("north", "7", "1", "4"),
+                List.of("west", "20", "1", "5")), results(4), "results");
+    }
+
+    /**
+     * Tests that refreshing after edits of the block follows an edited number, a formula whose reference outside
+     * the block changed, a row moving to a new group and a group emptied
+     */
+    @Test
+    public void testRefreshAfterEdits() {
+        this.iPivot.refresh();
+        this.iSheet.setCellInstructions("25", "R3C2");
+        this.iSheet.setCellInstructions("9", "R1C9");
+        assertEquals(3, this.iPivot.refresh(), "groups after editing numbers");
+        assertEquals(List.of("north", "9", "1", "4"), results(4).get(2), "group of the formula");
+        assertEquals(List.of("west", "25", "1", "5"), results(4).get(3), "group of the edited number");
+
+        this.iSheet.setCellInstructions("south", "R6C1");
+        assertEquals(4, this.iPivot.refresh(), "groups after a row moved to a new group");
+        assertEquals(List.of(
+                List.of("east", "15", "2", "6"),
+                List.of("north", "9", "1", "4"),
+                List.of("south", "0", "0", "5"),
+                List.of("west", "25", "1", "2")), results(5).subList(1, 5), "results with the new group");
+
+        this.iSheet.setCellInstructions("east", "R5C1");
+        assertEquals(3, this.iPivot.refresh(), "groups after a group emptied");
+        assertEquals(List.of("east", "24", "3", "6"), results(5).get(1), "group joined");
+        assertEquals(List.of("", "", "", ""), results(5).get(4), "row of the emptied group cleared");
+    }
+
+    /**
+     * Tests that results overlapping the block are refused, and that results move with their target
+     */
+    @Test
+    public void testTarget() {
+        assertThrows(IllegalArgumentException.class, () -> this.iPivot.setTarget("R2C3").refresh(), "overlap");
+        this.iPivot.setTarget("R1C5").refresh();
+        this.iPivot.setTarget("R3C5").refresh();
+        assertEquals(List.of("", "", "", ""), results(4).get(0), "former results cleared");
+        assertEquals(List.of("Region", "Sum of Amount", "Count of Amount", "Max of Units"), results(4).get(2),
+                "header at the new target");
+    }
+
+    /**
+     * Tests the sums of a block of many rows against sums worked out row by row, before and after editing some
+     */
+    @Test
+    public void testManyRows() {
+        final SpreadsheetGraph lSheet = new SpreadsheetGraph(ROWS, 4);
+        final Map<String, String> lCells = new HashMap<>();
+        final double[] lSums = new double[GROUPS];
+        for (int lRow = 1; lRow <= ROWS; lRow++) {
+            lCells.put("R" + lRow + "C1", String.valueOf(lRow % GROUPS));
+            lCells.put("R" + lRow + "C2", String.valueOf(lRow));
+            lSums[lRow % GROUPS] += lRow;
+        }
+        lSheet.setCellInstructions(lCells);
+        final PivotTable lPivot = new PivotTable(lSheet, 1, ROWS, 1, 2).groupBy(1)
+                .aggregate(2, PivotTable.Aggregate.SUM).setTarget("R1C3");
+        assertEquals(GROUPS, lPivot.refresh(), "groups");
+        assertSums(lSheet, lSums);
+
+        for (int lRow = 1; lRow <= ROWS; lRow += 997) {
+            lSheet.setCellInstructions("-1", "R" + lRow + "C2");
+            lSums[lRow % GROUPS] -= lRow + 1;
+        }
+        lPivot.refresh();
+        assertSums(lSheet, lSums);
+        lPivot.close();
+    }
+
+    //Helper method that checks the sum written for each group of a pivot table of many rows
+    private static void assertSums(final SpreadsheetGraph pSheet, final double[] pSums) {
+        for (int lGroup = 0; lGroup < GROUPS; lGroup++) {
+            assertEquals(String.valueOf(lGroup), pSheet.getCellInstructions("R" + (lGroup + 1) + "C3"),
+                    "key of group " + lGroup);
+            assertEquals(pSums[lGroup], pSheet.getCellValue("R" + (lGroup + 1) + "C4"), "sum of group " + lGroup);
+        }
+    }
+
+    //Helper method that reads the results of the pivot table, empty cells as empty text
+    private List<List<String>> results(final int pRows) {
+        final List<List<String>> lResults = new ArrayList<>();
+        for (int lRow = 0; lRow < pRows; lRow++) {
+            final List<String> lCells = new ArrayList<>();
+            for (int lColumn = 4; lColumn < 8; lColumn++) {
+                final String lInstructions = this.iSheet.getCellInstructions(lRow, lColumn);
+                lCells.add(lInstructions == null ? "" : lInstructions);
+            }
+            lResults.add(lCells);
+        }
+        return lResults;
+    }
+}
@@ -0,0 +1,97 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the recalculation listeners and the metrics published over JMX.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class RecalcMetricsTest {
+    private SpreadsheetGraph iSheet;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(10, 2);
+        this.iSheet.setCellInstructions("1", "R1C1");
+        for (int lRow = 2; lRow <= 4; lRow++) this.iSheet.setCellInstructions("=R" + (lRow - 1) + "C1+1", "R" + lRow + "C1");
+    }
+
+    /**
+     * Tests that a listener is told of the start, of each formula evaluated with whether its compiled form was
+     * cached, and of the end with the cells evaluated and the chain depth
+     */
+    @Test
+    public void testListenerCalls() {
+        final List<String> lCalls = new ArrayList<>();
+        this.iSheet.addRecalcListener(new RecalcListener() {
+            @Override
+            public void recalcStarted() {
+                lCalls.add("started");
+            }
+
+            @Override
+            public void formulaEvaluated(final String pRowColumn, final String pInstructions,
+                                         final long pParseNanos, final long pEvalNanos, final boolean pCached) {
+                lCalls.add(pRowColumn + " " + pInstructions + (pCached ? " cached" : " compiled"));
+            }
+
+            @Override
+            public void recalcFinished(final int pCellsEvaluated, final int pChainDepth, final long pSortNanos,
+                                       final long pTotalNanos) {
+                lCalls.add("finished " + pCellsEvaluated + " " + pChainDepth);
+            }
+        });
+
+        this.iSheet.setCellInstructions("=R1C1*10", "R2C1");
+        assertEquals(List.of("started", "R2C1 =R1C1*10 compiled", "R3C1 =R2C1+1 cached", "R4C1 =R3C1+1 cached",
+                "finished 3 2"), lCalls, "calls of an edit of a formula");
+    }
+
+    /**
+     * Tests that the registered metrics count recalculations, cells and chain depth, can be read over JMX, and
+     * are reset and unregistered
+     * @throws JMException if the MBean could not be read
+     */
+    @Test
+    public void testMetricsOverJmx() throws JMException {
+        final RecalcMetrics lMetrics = RecalcMetrics.register(this.iSheet, "metrics test");
+        final MBeanServer lServer = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName lName = ObjectName.getInstance(
+                "app.model.spread:type=RecalcMetrics,name=" + ObjectName.quote("metrics test"));
+        try {
+            this.iSheet.setCellInstructions("5", "R1C1");
+            this.iSheet.setCellInstructions("=R4C1*2", "R5C1");
+            assertEquals(2L, lServer.getAttribute(lName, "RecalcCount"), "recalculations over JMX");
+            assertEquals(4L + 1, lMetrics.getTotalCellsEvaluated(), "cells of both edits");
+            assertEquals(1, lMetrics.getLastCellsEvaluated(), "cells of the last edit");
+            assertEquals(3, lMetrics.getMaxChainDepth(), "deepest chain");
+            assertEquals(0.75d, lMetrics.getCompileCacheHitRate(), "formulas whose compiled form was cached");
+            assertEquals(1, lMetrics.getSlowestFormulas().length, "slowest formulas of the last edit");
+            assertTrue(lMetrics.getSlowestFormulas()[0].startsWith("R5C1 =R4C1*2 ("), "slowest formula");
+
+            lServer.invoke(lName, "reset", null, null);
+            assertEquals(0L, lMetrics.getRecalcCount(), "recalculations after a reset");
+        } finally {
+            lMetrics.unregister();
+        }
+        assertFalse(lServer.isRegistered(lName), "MBean after unregistering");
+        this.iSheet.setCellInstructions("6", "R1C1");
+        assertEquals(0L, lMetrics.getRecalcCount(), "recalculations after unregistering");
+        assertTrue(Double.isNaN(lMetrics.getCompileCacheHitRate()), "hit rate with nothing counted");
+    }
+}
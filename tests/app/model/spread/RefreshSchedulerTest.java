@@ -0,0 +1,114 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the refresh scheduler: volatile cells recalculated at each tick, and values from a feed applied once per
+ * tick. Ticks are handed to a queue the test runs them from, so each test decides when a tick is applied.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class RefreshSchedulerTest {
+    private static final Duration TICK = Duration.ofMillis(1);
+    private static final long WAIT_SECONDS = 10;
+
+    private SpreadsheetGraph iSheet;
+    private BlockingQueue<Runnable> iTicks;
+    private RefreshScheduler iScheduler;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(5, 2);
+        this.iSheet.setCellInstructions("=RAND()", "R1C1");
+        this.iSheet.setCellInstructions("=R1C1*2", "R2C1");
+        this.iSheet.setCellInstructions("=R1C2*2", "R2C2");
+        this.iTicks = new LinkedBlockingQueue<>();
+        this.iScheduler = new RefreshScheduler(this.iSheet, TICK, this.iTicks::add);
+    }
+
+    /**
+     * Stops the scheduler
+     * @throws IOException if a feed could not be closed
+     */
+    @AfterEach
+    public void cleanup() throws IOException {
+        this.iScheduler.close();
+    }
+
+    /**
+     * Tests that a tick with no values recalculates the volatile cells and their dependents, unless told not to
+     * @throws InterruptedException if interrupted waiting for a tick
+     */
+    @Test
+    public void testVolatileOnTick() throws InterruptedException {
+        assertEquals(1, this.iSheet.getVolatileCount(), "volatile cells");
+        final Double lBefore = this.iSheet.getCellValue("R1C1");
+
+        runTick();
+        final Double lAfter = this.iSheet.getCellValue("R1C1");
+        assertNotEquals(lBefore, lAfter, "random number after a tick");
+        assertEquals(lAfter * 2, this.iSheet.getCellValue("R2C1"), "dependent after a tick");
+        assertEquals(0, this.iScheduler.getBatchesApplied(), "batches of a tick with no values");
+
+        this.iScheduler.setRefreshingVolatile(false);
+        runTick();
+        assertEquals(lAfter, this.iSheet.getCellValue("R1C1"), "random number after a tick not refreshing it");
+    }
+
+    /**
+     * Tests that values arriving between ticks are applied at the next as one batch, with the latest value of each
+     * key, and that unbound keys, values that are not finite and cells past the sheet are left out
+     * @throws IOException if the feed could not be connected
+     * @throws InterruptedException if interrupted waiting for a tick
+     */
+    @Test
+    public void testFeedCoalescedPerTick() throws IOException, InterruptedException {
+        final InProcessFeed lFeed = new InProcessFeed();
+        this.iScheduler.bind("R1C2", lFeed, "price");
+        this.iScheduler.bind("R3C2", lFeed, "volume");
+        for (int lValue = 1; lValue <= 100; lValue++) lFeed.publish("price", lValue);
+        lFeed.publish("volume", 0.5);
+        lFeed.publish("volume", Double.NaN);
+        lFeed.publish("unbound", 7);
+
+        runTick();
+        assertEquals(100d, this.iSheet.getCellValue("R1C2"), "latest price");
+        assertEquals(200d, this.iSheet.getCellValue("R2C2"), "dependent of the price");
+        assertEquals("0.5", this.iSheet.getCellInstructions("R3C2"), "latest finite volume");
+        assertEquals(101, this.iScheduler.getUpdatesReceived(), "values received for bound keys");
+        assertEquals(1, this.iScheduler.getBatchesApplied(), "batches");
+        assertEquals(2, this.iScheduler.getCellsApplied(), "cells applied");
+        assertNull(this.iScheduler.getFailure(), "failure of a whole batch");
+
+        this.iScheduler.bind("R9C1", lFeed, "price");
+        this.iScheduler.unbind("R3C2");
+        lFeed.publish("price", 3);
+        lFeed.publish("volume", 4);
+        runTick();
+        assertEquals(3d, this.iSheet.getCellValue("R1C2"), "price applied beside a cell past the sheet");
+        assertEquals("0.5", this.iSheet.getCellInstructions("R3C2"), "unbound cell keeping its last value");
+        assertNotNull(this.iScheduler.getFailure(), "failure of the cell past the sheet");
+    }
+
+    //Helper method that waits for the next tick and applies it
+    private void runTick() throws InterruptedException {
+        final Runnable lTick = this.iTicks.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(lTick, "tick");
+        lTick.run();
+    }
+}
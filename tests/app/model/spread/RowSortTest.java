@@ -0,0 +1,138 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests sorting the rows of a block and filtering the rows of a sheet, over a header row, six rows of data and a
+ * formula below them.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class RowSortTest {
+    private static final String[] KEYS = {"3", "pear", "1", "", "3", "Apple"};
+    private static final int ROWS = 30000; // enough rows for the parallel sorts to split
+
+    private SpreadsheetGraph iSheet;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(8, 4);
+        final Map<String, String> lCells = new HashMap<>();
+        lCells.put("R1C1", "key");
+        for (int lRow = 2; lRow <= 7; lRow++) {
+            if (!KEYS[lRow - 2].isEmpty()) lCells.put("R" + lRow + "C1", KEYS[lRow - 2]);
+            lCells.put("R" + lRow + "C2", String.valueOf((char) ('a' + lRow - 2)));
+            lCells.put("R" + lRow + "C3", String.valueOf((lRow - 1) * 10));
+            lCells.put("R" + lRow + "C4", "=R" + lRow + "C3+1");
+        }
+        lCells.put("R8C1", "=R2C3");
+        this.iSheet.setCellInstructions(lCells);
+    }
+
+    /**
+     * Tests that an ascending sort puts numbers before text before empty cells, keeps tied rows in order, and moves
+     * formulas with their rows and references to moved cells with them
+     */
+    @Test
+    public void testAscending() {
+        this.iSheet.sortRows(2, 7, 1, 4, new int[] {1}, new boolean[] {true});
+        assertEquals(List.of("c", "a", "e", "f", "b", "d"), labels(), "rows in order");
+        assertEquals("key", this.iSheet.getCellInstructions("R1C1"), "header left in place");
+        for (int lRow = 2; lRow <= 7; lRow++) {
+            assertEquals(this.iSheet.getCellValue("R" + lRow + "C3") + 1, this.iSheet.getCellValue("R" + lRow + "C4"),
+                    "formula moved with row " + lRow);
+        }
+        assertEquals(10d, this.iSheet.getCellValue("R8C1"), "formula following its moved cell");
+        assertEquals("=R3C3", this.iSheet.getCellInstructions("R8C1"), "reference rewritten to the moved cell");
+    }
+
+    /**
+     * Tests that a descending sort puts text before numbers with empty cells still last, and a second key breaks
+     * the ties of the first
+     */
+    @Test
+    public void testDescendingAndSecondKey() {
+        this.iSheet.sortRows(2, 7, 1, 4, new int[] {1}, new boolean[] {false});
+        assertEquals(List.of("b", "f", "a", "e", "c", "d"), labels(), "rows in descending order");
+
+        this.iSheet.sortRows(2, 7, 1, 4, new int[] {1, 3}, new boolean[] {true, false});
+        assertEquals(List.of("c", "e", "a", "f", "b", "d"), labels(), "ties broken by the second key");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> this.iSheet.sortRows(2, 7, 1, 2, new int[] {3}, new boolean[] {true}), "key outside the block");
+        assertEquals(List.of("c", "e", "a", "f", "b", "d"), labels(), "rows after a refused sort");
+    }
+
+    /**
+     * Tests that sorting many rows with few distinct keys keeps the rows of each key in their order
+     */
+    @Test
+    public void testStableOverManyRows() {
+        final SpreadsheetGraph lSheet = new SpreadsheetGraph(ROWS, 2);
+        final Map<String, String> lCells = new HashMap<>();
+        for (int lRow = 1; lRow <= ROWS; lRow++) {
+            lCells.put("R" + lRow + "C1", String.valueOf(lRow * 7919 % 5));
+            lCells.put("R" + lRow + "C2", String.valueOf(lRow));
+        }
+        lSheet.setCellInstructions(lCells);
+        lSheet.sortRows(1, ROWS, 1, 2, new int[] {1}, new boolean[] {true});
+
+        for (int lRow = 2; lRow <= ROWS; lRow++) {
+            final double lKey = lSheet.getCellValue("R" + lRow + "C1");
+            final double lPreviousKey = lSheet.getCellValue("R" + (lRow - 1) + "C1");
+            final boolean lInOrder = lPreviousKey < lKey || lPreviousKey == lKey
+                    && lSheet.getCellValue("R" + (lRow - 1) + "C2") < lSheet.getCellValue("R" + lRow + "C2");
+            assertTrue(lInOrder, "row " + lRow);
+        }
+    }
+
+    /**
+     * Tests the rows a filter shows for conditions on numbers, text and empty cells, on one and two columns
+     */
+    @Test
+    public void testFilter() {
+        final AutoFilter lFilter = new AutoFilter(this.iSheet, 2);
+        lFilter.setCondition(1, ">=3");
+        assertEquals(rows(0, 1, 5, 7), lFilter.apply(), "numbers of at least 3, and the formula's value");
+        lFilter.setCondition(1, "=");
+        assertEquals(rows(0, 4), lFilter.apply(), "empty cells");
+        lFilter.setCondition(1, "apple");
+        assertEquals(rows(0, 6), lFilter.apply(), "text ignoring case");
+
+        lFilter.setCondition(1, "<>");
+        lFilter.setCondition(3, ">25");
+        assertEquals(rows(0, 3, 5, 6), lFilter.apply(), "filled cells with more than 25 beside them");
+        assertEquals(">25", lFilter.getCondition(3), "condition as written");
+
+        lFilter.clear();
+        assertEquals(rows(0, 1, 2, 3, 4, 5, 6, 7), lFilter.apply(), "every row once cleared");
+        assertThrows(IllegalArgumentException.class, () -> lFilter.setCondition(1, ">"), "comparison with nothing");
+    }
+
+    //Helper method that gets the labels of the data rows, top to bottom
+    private List<String> labels() {
+        final List<String> lLabels = new ArrayList<>();
+        for (int lRow = 2; lRow <= 7; lRow++) lLabels.add(this.iSheet.getCellInstructions("R" + lRow + "C2"));
+        return lLabels;
+    }
+
+    //Helper method that makes a bitset of rows
+    private static BitSet rows(final int... pRows) {
+        final BitSet lRows = new BitSet();
+        for (final int lRow : pRows) lRows.set(lRow);
+        return lRows;
+    }
+}
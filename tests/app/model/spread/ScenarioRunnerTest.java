@@ -0,0 +1,94 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the scenario runner: the draws of its inputs, the outputs they give, and the distributions of the outputs.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class ScenarioRunnerTest {
+    private static final int SCENARIOS = 5000; // enough scenarios to run them on many threads
+    private static final long SEED = 42;
+
+    private SpreadsheetGraph iBase;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iBase = new SpreadsheetGraph(5, 2);
+        this.iBase.setCellInstructions(Map.of(
+                "R1C1", "1",
+                "R2C1", "1",
+                "R3C1", "=R1C1*10+R2C1",
+                "R4C1", "=1/R2C1"));
+    }
+
+    /**
+     * Tests that each scenario's output is the formula over that scenario's draws, in the order the inputs were set,
+     * and that the same seed gives the same samples
+     */
+    @Test
+    public void testSamplesFollowDraws() {
+        final ScenarioRunner lRunner = new ScenarioRunner(this.iBase)
+                .setInput("R1C1", ScenarioInput.uniform(0, 1))
+                .setInput("R2C1", ScenarioInput.choice(1, 2, 3));
+        final OutputDistribution lOutput = lRunner.run(SCENARIOS, SEED, "R3C1").get("R3C1");
+
+        final SplittableRandom lRandom = new SplittableRandom(SEED);
+        final double[] lSamples = lOutput.getSamples();
+        for (int lScenario = 0; lScenario < SCENARIOS; lScenario++) {
+            final double lFirst = ScenarioInput.uniform(0, 1).sample(lRandom);
+            final double lSecond = ScenarioInput.choice(1, 2, 3).sample(lRandom);
+            assertEquals(lFirst * 10 + lSecond, lSamples[lScenario], "scenario " + lScenario);
+        }
+        assertArrayEquals(lSamples, lRunner.run(SCENARIOS, SEED, "R3C1").get("R3C1").getSamples(), "second run");
+        assertTrue(lOutput.getMin() >= 1 && lOutput.getMax() < 13, "range of the samples");
+        assertEquals(1d, this.iBase.getCellValue("R1C1"), "base input after the runs");
+        assertEquals(11d, this.iBase.getCellValue("R3C1"), "base output after the runs");
+    }
+
+    /**
+     * Tests that scenarios where an output fails are counted apart from the statistics of the rest
+     */
+    @Test
+    public void testFailures() {
+        final Map<String, OutputDistribution> lOutputs = new ScenarioRunner(this.iBase)
+                .setInput("R2C1", ScenarioInput.choice(0, 2))
+                .run(SCENARIOS, SEED, "R4C1", "R3C1");
+        assertEquals(List.of("R4C1", "R3C1"), List.copyOf(lOutputs.keySet()), "outputs in the order given");
+
+        final OutputDistribution lQuotient = lOutputs.get("R4C1");
+        assertEquals(SCENARIOS, lQuotient.getCount() + lQuotient.getFailures(), "scenarios of the quotient");
+        assertTrue(lQuotient.getFailures() > 0 && lQuotient.getCount() > 0, "both choices drawn");
+        assertEquals(0.5, lQuotient.getMin(), "quotient when it has a value");
+        assertEquals(0.5, lQuotient.getMax(), "only quotient");
+        assertEquals(0, lOutputs.get("R3C1").getFailures(), "other output");
+    }
+
+    /**
+     * Tests the statistics of a distribution against values worked by hand
+     */
+    @Test
+    public void testStatistics() {
+        final OutputDistribution lOutput = new OutputDistribution("R1C1", new double[] {4, Double.NaN, 1, 3, 2});
+        assertEquals(4, lOutput.getCount(), "count");
+        assertEquals(1, lOutput.getFailures(), "failures");
+        assertEquals(2.5, lOutput.getMean(), "mean");
+        assertEquals(Math.sqrt(5 / 3d), lOutput.getStandardDeviation(), 1e-12, "standard deviation");
+        assertEquals(1d, lOutput.getPercentile(0), "lowest percentile");
+        assertEquals(2.5, lOutput.getPercentile(0.5), "median");
+        assertEquals(3.7, lOutput.getPercentile(0.9), 1e-12, "interpolated percentile");
+        assertEquals(4d, lOutput.getPercentile(1), "highest percentile");
+    }
+}
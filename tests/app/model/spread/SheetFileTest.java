@@ -0,0 +1,136 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the sheet file format: writing and reading back instructions, escaping, malformed files, and the bulk
+ * evaluation of a sheet the format relies on.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class SheetFileTest {
+    private Map<String, String> iInstructions;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iInstructions = new LinkedHashMap<>();
+        this.iInstructions.put("R1C1", "2");
+        this.iInstructions.put("R2C1", "=R1C1*3");
+        this.iInstructions.put("R1C2", "text");
+    }
+
+    /**
+     * Tests that contents written to a file read back the same, and evaluate
+     * @throws IOException if the file could not be written or read
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final Path lPath = Files.createTempFile("sheet", ".sheet");
+        try {
+            new SheetFile(4, 3, this.iInstructions).write(lPath);
+            final SheetFile lRead = SheetFile.read(lPath);
+            assertEquals(4, lRead.getRowCount(), "rows");
+            assertEquals(3, lRead.getColumnCount(), "columns");
+            assertEquals(this.iInstructions, lRead.getInstructions(), "instructions");
+            assertEquals(List.copyOf(this.iInstructions.keySet()), List.copyOf(lRead.getInstructions().keySet()),
+                    "order of the cells");
+
+            final SpreadsheetGraph lSheet = lRead.toSpreadsheet();
+            assertEquals(6d, lSheet.getCellValue("R2C1"), "formula evaluated");
+            assertEquals(this.iInstructions, SheetFile.of(lSheet).getInstructions(), "contents of the sheet");
+        } finally {
+            Files.delete(lPath);
+        }
+    }
+
+    /**
+     * Tests that instructions holding backslashes, line breaks and tabs keep to one line and read back the same
+     * @throws IOException if the text could not be written or read
+     */
+    @Test
+    public void testEscaping() throws IOException {
+        this.iInstructions.put("R3C1", "first line\nsecond line\r\n");
+        this.iInstructions.put("R3C2", "back\\slash and \\n as text");
+        this.iInstructions.put("R3C3", "tab\tseparated");
+        final StringWriter lText = new StringWriter();
+        new SheetFile(4, 3, this.iInstructions).write(lText);
+
+        assertEquals(this.iInstructions.size() + 1, lText.toString().split("\n").length, "one line per cell");
+        assertEquals(this.iInstructions, SheetFile.read(new StringReader(lText.toString())).getInstructions(),
+                "instructions read back");
+    }
+
+    /**
+     * Tests that comments and blank lines are skipped, and that malformed headers and cells are refused
+     * @throws IOException if the text could not be read
+     */
+    @Test
+    public void testMalformedFiles() throws IOException {
+        final SheetFile lCommented = SheetFile.read(new StringReader("# a sheet\n\nSHEET 2 2\n\nR1C1\t5\n# done\n"));
+        assertEquals(Map.of("R1C1", "5"), lCommented.getInstructions(), "comments and blank lines");
+
+        for (final String lText : List.of("", "# only a comment\n", "SHEETS 2 2\n", "SHEET 2\n", "SHEET 2 2 2\n",
+                "SHEET a b\n", "SHEET 0 3\n", "SHEET 3 -1\n", "SHEET 2 2\nR1C1 5\n", "R1C1\t5\nSHEET 2 2\n")) {
+            assertThrows(IllegalArgumentException.class, () -> SheetFile.read(new StringReader(lText)),
+                    "malformed file " + lText);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new SheetFile(0, 0, Map.of()), "empty sheet");
+    }
+
+    /**
+     * Tests that setting many cells at once evaluates every cell it can, keeping the ones that fail, and that a cell
+     * outside the sheet sets nothing
+     */
+    @Test
+    public void testBulkInstructions() {
+        final SpreadsheetGraph lSheet = new SpreadsheetGraph(4, 3);
+        this.iInstructions.put("R3C1", "=R1C2+1");
+        this.iInstructions.put("R4C1", "=R2C1+1");
+        assertThrows(IllegalArgumentException.class, () -> lSheet.setCellInstructions(this.iInstructions),
+                "formula over text");
+        assertEquals(7d, lSheet.getCellValue("R4C1"), "cell after the failure evaluated");
+        assertNull(lSheet.getCellValue("R3C1"), "failed cell");
+        assertEquals("=R1C2+1", lSheet.getCellInstructions("R3C1"), "failed cell kept");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> lSheet.setCellInstructions(Map.of("R1C1", "10", "R5C1", "1")), "cell outside the sheet");
+        assertEquals(2d, lSheet.getCellValue("R1C1"), "nothing set by the refused batch");
+    }
+
+    /**
+     * Tests that a new cell whose formula would form a cycle is taken away again, and the sheet still evaluates
+     */
+    @Test
+    public void testNewCyclicCellRemoved() {
+        final SpreadsheetGraph lSheet = new SheetFile(4, 3, this.iInstructions).toSpreadsheet();
+        lSheet.setCellInstructions("=R2C1+1", "R3C1");
+        assertThrows(IllegalArgumentException.class, () -> lSheet.setCellInstructions("=R3C1", "R1C1"),
+                "cycle through an existing cell");
+        assertEquals("2", lSheet.getCellInstructions("R1C1"), "existing cell keeps its instructions");
+
+        assertThrows(IllegalArgumentException.class, () -> lSheet.setCellInstructions("=R4C2+R3C1", "R4C2"),
+                "cycle through a new cell");
+        assertNull(lSheet.getCellInstructions("R4C2"), "new cell taken away");
+        assertEquals(Map.of("R1C1", "2", "R2C1", "=R1C1*3", "R1C2", "text", "R3C1", "=R2C1+1"),
+                SheetFile.of(lSheet).getInstructions(), "cells left");
+
+        lSheet.setCellInstructions("4", "R1C1");
+        assertEquals(13d, lSheet.getCellValue("R3C1"), "edit after the cycles");
+    }
+}
@@ -0,0 +1,177 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import app.control.CalculationService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests sheet overlays, and the calculation service answering from them: the overlay's results, and that neither
+ * changes the base sheet.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class SheetOverlayTest {
+    private static final int OVERLAYS = 64; // enough overlays at once to share the base between threads
+
+    private SpreadsheetGraph iBase;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iBase = new SpreadsheetGraph(10, 3);
+        this.iBase.setCellInstructions(Map.of(
+                "R1C1", "2",
+                "R2C1", "3",
+                "R3C1", "=R1C1*R2C1",
+                "R4C1", "=R3C1+1",
+                "R1C2", "=SUM(R1C1:R4C1)",
+                "R1C3", "7"));
+    }
+
+    /**
+     * Tests that an overlay recalculates what depends on its inputs, and leaves the base as it was
+     */
+    @Test
+    public void testOverlayLeavesBase() {
+        final SheetOverlay lOverlay = new SheetOverlay(this.iBase);
+        lOverlay.setCellInstructions("5", "R1C1");
+
+        assertEquals(15d, lOverlay.getCellValue("R3C1"), "product in the overlay");
+        assertEquals(16d, lOverlay.getCellValue("R4C1"), "sum in the overlay");
+        assertEquals(39d, lOverlay.getCellValue("R1C2"), "total in the overlay");
+        assertEquals(7d, lOverlay.getCellValue("R1C3"), "cell read through from the base");
+        assertEquals(Set.of("R1C1", "R3C1", "R4C1", "R1C2"), lOverlay.getChangedCells(), "cells the overlay holds");
+
+        assertBaseUnchanged();
+    }
+
+    /**
+     * Tests that an overlay may override a formula, and that a cyclic override is refused and leaves the overlay
+     * as it was
+     */
+    @Test
+    public void testFormulaOverride() {
+        final SheetOverlay lOverlay = new SheetOverlay(this.iBase);
+        lOverlay.setCellInstructions("=R1C3*2", "R3C1");
+        assertEquals(14d, lOverlay.getCellValue("R3C1"), "overridden formula");
+        assertEquals(15d, lOverlay.getCellValue("R4C1"), "dependent of the overridden formula");
+
+        lOverlay.setCellInstructions("1", "R1C3");
+        assertEquals(2d, lOverlay.getCellValue("R3C1"), "overridden formula after an edit of its reference");
+
+        assertThrows(IllegalArgumentException.class, () -> lOverlay.setCellInstructions("=R4C1", "R1C3"),
+                "cyclic override");
+        assertEquals("1", lOverlay.getCellInstructions("R1C3"), "cell after the refused override");
+        assertEquals(3d, lOverlay.getCellValue("R4C1"), "dependent after the refused override");
+
+        lOverlay.setCellInstructions("", "R1C1");
+        assertNull(lOverlay.getCellValue("R1C1"), "cleared cell");
+
+        assertBaseUnchanged();
+    }
+
+    /**
+     * Tests that many overlays of one base, each on its own thread, get their own results
+     * @throws InterruptedException if interrupted waiting for the overlays
+     * @throws ExecutionException if an overlay failed
+     */
+    @Test
+    public void testOverlaysOnThreads() throws InterruptedException, ExecutionException {
+        final List<Future<Double>> lTotals = new ArrayList<>();
+        try (ExecutorService lExecutor = Executors.newFixedThreadPool(4)) {
+            for (int lInput = 0; lInput < OVERLAYS; lInput++) {
+                final double lValue = lInput;
+                lTotals.add(lExecutor.submit(() -> {
+                    final SheetOverlay lOverlay = new SheetOverlay(this.iBase);
+                    lOverlay.setCellValues(Map.of("R1C1", lValue));
+                    return lOverlay.getCellValue("R1C2");
+                }));
+            }
+        }
+        for (int lInput = 0; lInput < OVERLAYS; lInput++) {
+            assertEquals(lInput * 7 + 4d, lTotals.get(lInput).get(), "total of overlay " + lInput);
+        }
+        assertBaseUnchanged();
+    }
+
+    /**
+     * Tests that the calculation service answers from an overlay, and leaves its template as it was
+     */
+    @Test
+    public void testServiceLeavesTemplate() {
+        final CalculationService lService = new CalculationService(this.iBase);
+        assertEquals("{\"outputs\":{\"R4C1\":11.0,\"R1C2\":28.0}}",
+                lService.calculate("{\"inputs\":{\"R2C1\":5},\"outputs\":[\"R4C1\",\"R1C2\"]}"), "answer");
+        assertEquals("{\"outputs\":{\"R1C1\":-1.0,\"R1C2\":-3.0,\"R3C1\":-3.0,\"R4C1\":-2.0}}",
+                lService.calculate("{\"inputs\":{\"R1C1\":-1}}"), "answer listing the changed cells");
+        assertBaseUnchanged();
+    }
+
+    /**
+     * Tests that numbers too large or too small to print without an exponent reach formulas as numbers, through
+     * the calculation service and an overlay
+     */
+    @Test
+    public void testNumbersWithoutExponents() {
+        final CalculationService lService = new CalculationService(this.iBase);
+        assertEquals("{\"outputs\":{\"R3C1\":1.2345678E27}}",
+                lService.calculate("{\"inputs\":{\"R1C1\":1e20,\"R2C1\":12345678},\"outputs\":[\"R3C1\"]}"),
+                "large inputs");
+        assertEquals("{\"outputs\":{\"R4C1\":1.0000000002}}",
+                lService.calculate("{\"inputs\":{\"R1C1\":0.00001,\"R2C1\":2e-5},\"outputs\":[\"R4C1\"]}"),
+                "small inputs");
+
+        final SheetOverlay lOverlay = new SheetOverlay(this.iBase);
+        lOverlay.setCellValues(Map.of("R1C1", 1e20, "R2C1", 0.00001));
+        assertEquals("100000000000000000000", lOverlay.getCellInstructions("R1C1"), "large value as text");
+        assertEquals("0.00001", lOverlay.getCellInstructions("R2C1"), "small value as text");
+        assertEquals(1e20 * 0.00001, lOverlay.getCellValue("R3C1"), "product of the values");
+        assertBaseUnchanged();
+    }
+
+    /**
+     * Tests that cells outside the sheet are refused by an overlay, and by the calculation service as a bad request
+     */
+    @Test
+    public void testCellsOutsideSheet() {
+        final SheetOverlay lOverlay = new SheetOverlay(this.iBase);
+        assertThrows(IllegalArgumentException.class, () -> lOverlay.setCellInstructions("1", "R99C99"),
+                "instructions outside the sheet");
+        assertThrows(IllegalArgumentException.class, () -> lOverlay.setCellValues(Map.of("R1C1", 1d, "R11C1", 1d)),
+                "values outside the sheet");
+        assertEquals(2d, lOverlay.getCellValue("R1C1"), "nothing set by a refused batch");
+
+        final CalculationService lService = new CalculationService(this.iBase);
+        assertThrows(IllegalArgumentException.class,
+                () -> lService.calculate("{\"inputs\":{\"R99C99\":1}}"), "input outside the template");
+        assertThrows(IllegalArgumentException.class,
+                () -> lService.calculate("{\"outputs\":[\"R1C4\"]}"), "output outside the template");
+        assertBaseUnchanged();
+    }
+
+    //Helper method that checks the base sheet still holds the values it was set up with
+    private void assertBaseUnchanged() {
+        final Map<String, Double> lExpected = new HashMap<>(Map.of(
+                "R1C1", 2d, "R2C1", 3d, "R3C1", 6d, "R4C1", 7d, "R1C2", 18d, "R1C3", 7d));
+        for (final Map.Entry<String, Double> lCell : lExpected.entrySet()) {
+            assertEquals(lCell.getValue(), this.iBase.getCellValue(lCell.getKey()), "base cell " + lCell.getKey());
+        }
+        assertTrue(this.iBase.getCellInstructions("R3C1").startsWith("="), "base formula");
+    }
+}
@@ -0,0 +1,310 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the spreadsheet graph: formulas over ranges, inserting and deleting rows and columns, and the cells
+ * recalculated as the sheet changes.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class SpreadsheetGraphTest {
+    private static final int ROWS = 8000; // as many formulas over one table as a large sheet has
+
+    private SpreadsheetGraph iSheet;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(ROWS, 4);
+    }
+
+    /**
+     * Tests that thousands of lookups into one table are linked, and follow an edit of the table
+     */
+    @Test
+    public void testLookupsIntoOneTable() {
+        final Map<String, String> lInstructions = new HashMap<>();
+        for (int lRow = 1; lRow <= ROWS; lRow++) {
+            lInstructions.put("R" + lRow + "C1", String.valueOf(lRow));
+            lInstructions.put("R" + lRow + "C2", String.valueOf(lRow * 2));
+            lInstructions.put("R" + lRow + "C3", "=VLOOKUP(R" + lRow + "C1, R1C1:R" + ROWS + "C2, 2, 0)");
+        }
+        this.iSheet.setCellInstructions(lInstructions);
+        assertEquals(2d, this.iSheet.getCellValue("R1C3"), "first lookup");
+        assertEquals(ROWS * 2d, this.iSheet.getCellValue("R" + ROWS + "C3"), "last lookup");
+
+        this.iSheet.setCellInstructions("-1", "R4000C2");
+        assertEquals(-1d, this.iSheet.getCellValue("R4000C3"), "lookup of the edited row");
+        assertEquals(7998d, this.iSheet.getCellValue("R3999C3"), "lookup of another row");
+    }
+
+    /**
+     * Tests that thousands of moving averages over overlapping ranges follow an edit of a cell in many of them
+     */
+    @Test
+    public void testMovingAverages() {
+        final Map<String, String> lInstructions = new HashMap<>();
+        for (int lRow = 1; lRow <= ROWS; lRow++) {
+            lInstructions.put("R" + lRow + "C1", String.valueOf(lRow % 2));
+            if (lRow >= 100) lInstructions.put("R" + lRow + "C2", "=AVERAGE(R" + (lRow - 99) + "C1:R" + lRow + "C1)");
+        }
+        this.iSheet.setCellInstructions(lInstructions);
+        assertEquals(0.5d, this.iSheet.getCellValue("R" + ROWS + "C2"), "last average");
+
+        this.iSheet.setCellInstructions("50", "R4000C1");
+        assertEquals(0.5d, this.iSheet.getCellValue("R3999C2"), "average before the edited cell");
+        assertEquals(1d, this.iSheet.getCellValue("R4000C2"), "average from the edited cell");
+        assertEquals(1d, this.iSheet.getCellValue("R4099C2"), "average to the edited cell");
+        assertEquals(0.5d, this.iSheet.getCellValue("R4100C2"), "average after the edited cell");
+    }
+
+    /**
+     * Tests that a formula over a range follows a formula inside the range, which is computed first
+     */
+    @Test
+    public void testRangeOverFormulas() {
+        this.iSheet.setCellInstructions("=R1C1*3", "R2C1");
+        this.iSheet.setCellInstructions("=AVERAGE(R1C1:R2C1)", "R1C2");
+        this.iSheet.setCellInstructions("=R1C2+1", "R3C1");
+        this.iSheet.setCellInstructions("2", "R1C1");
+        assertEquals(4d, this.iSheet.getCellValue("R1C2"), "average");
+        assertEquals(5d, this.iSheet.getCellValue("R3C1"), "formula after the average");
+    }
+
+    /**
+     * Tests that formulas follow the cells they refer to as rows and columns are inserted before them
+     */
+    @Test
+    public void testInsertFollowsMovedCells() {
+        this.iSheet.setCellInstructions("5", "R2C1");
+        this.iSheet.setCellInstructions("7", "R3C1");
+        this.iSheet.setCellInstructions("=R2C1+R3C1", "R1C2");
+
+        this.iSheet.insertRows(3, 2);
+        assertEquals("=R2C1+R5C1", this.iSheet.getCellInstructions("R1C2"), "rewritten formula");
+        assertEquals(7d, this.iSheet.getCellValue("R5C1"), "moved cell");
+        assertNull(this.iSheet.getCellValue("R3C1"), "inserted cell");
+        assertEquals(ROWS + 2, this.iSheet.getRowCount(), "rows");
+
+        this.iSheet.insertColumns(1, 1);
+        assertEquals("=R2C2+R5C2", this.iSheet.getCellInstructions("R1C3"), "formula in a moved column");
+        assertEquals(12d, this.iSheet.getCellValue("R1C3"), "value in a moved column");
+        this.iSheet.setCellInstructions("1", "R5C2");
+        assertEquals(6d, this.iSheet.getCellValue("R1C3"), "value after editing a moved cell");
+    }
+
+    /**
+     * Tests that references to deleted cells become #REF!, and the formula is left without a value
+     */
+    @Test
+    public void testDeleteLeavesRefError() {
+        this.iSheet.setCellInstructions("4", "R3C1");
+        this.iSheet.setCellInstructions("9", "R4C1");
+        this.iSheet.setCellInstructions("=R3C1+1", "R1C2");
+        this.iSheet.setCellInstructions("=R4C1+1", "R2C2");
+
+        assertThrows(IllegalArgumentException.class, () -> this.iSheet.deleteRows(3, 1), "deleted reference");
+        assertTrue(this.iSheet.getCellInstructions("R1C2").contains("#REF!"), "formula referring to a deleted cell");
+        assertNull(this.iSheet.getCellValue("R1C2"), "value of the formula");
+        assertEquals("=R3C1+1", this.iSheet.getCellInstructions("R2C2"), "formula referring to a moved cell");
+        assertEquals(10d, this.iSheet.getCellValue("R2C2"), "value of the formula");
+        assertEquals(9d, this.iSheet.getCellValue("R3C1"), "moved cell");
+    }
+
+    /**
+     * Tests that a range spanning deleted rows shrinks to the rows left
+     */
+    @Test
+    public void testDeleteShrinksRange() {
+        for (int lRow = 1; lRow <= 5; lRow++) this.iSheet.setCellInstructions(String.valueOf(lRow), "R" + lRow + "C1");
+        this.iSheet.setCellInstructions("=SUM(R1C1:R5C1)", "R1C2");
+
+        this.iSheet.deleteRows(2, 2);
+        assertEquals("=SUM(R1C1:R3C1)", this.iSheet.getCellInstructions("R1C2"), "shrunk range");
+        assertEquals(10d, this.iSheet.getCellValue("R1C2"), "sum of the rows left");
+        this.iSheet.setCellInstructions("6", "R3C1");
+        assertEquals(11d, this.iSheet.getCellValue("R1C2"), "sum after editing a moved cell");
+    }
+
+    /**
+     * Tests that inserting rows only recalculates the formulas it rewrote, along with their dependents
+     */
+    @Test
+    public void testInsertRecalculatesRewrittenOnly() {
+        this.iSheet.setCellInstructions("3", "R1C1");
+        this.iSheet.setCellInstructions("=R1C1*2", "R1C2");
+        this.iSheet.setCellInstructions("=R10C1*2", "R10C2");
+        this.iSheet.setCellInstructions("=R1C2+1", "R20C2");
+        this.iSheet.setCellInstructions("=R10C2+1", "R30C2");
+        final List<String> lEvaluated = new ArrayList<>();
+        this.iSheet.addRecalcListener(new RecalcListener() {
+            @Override
+            public void formulaEvaluated(final String pRowColumn, final String pInstructions,
+                                         final long pParseNanos, final long pEvalNanos, final boolean pCached) {
+                lEvaluated.add(pRowColumn);
+            }
+        });
+
+        this.iSheet.insertRows(5, 1);
+        assertEquals(List.of("R11C2", "R31C2"), lEvaluated, "recalculated formulas");
+        assertEquals("=R1C2+1", this.iSheet.getCellInstructions("R21C2"), "moved formula left as it was");
+        assertEquals(7d, this.iSheet.getCellValue("R21C2"), "value of the moved formula");
+    }
+
+    /**
+     * Tests that the flight recorder event of an edit counts the cells it recalculated, and that a rejected edit of
+     * a malformed cell is recorded as failed rather than looked up
+     * @throws IOException if the recording could not be written or read
+     */
+    @Test
+    public void testEditEventsRecorded() throws IOException {
+        final List<RecordedEvent> lEvents;
+        try (Recording lRecording = new Recording()) {
+            lRecording.enable("app.CellEdit");
+            lRecording.start();
+            assertThrows(IllegalArgumentException.class, () -> this.iSheet.setCellInstructions("5", "A1"),
+                    "malformed cell");
+            this.iSheet.setCellInstructions("=R1C1+1", "R1C2");
+            this.iSheet.setCellInstructions("=R1C2+1", "R1C3");
+            this.iSheet.setCellInstructions("2", "R1C1");
+            lRecording.stop();
+            final Path lFile = Files.createTempFile("edits", ".jfr");
+            lRecording.dump(lFile);
+            lEvents = RecordingFile.readAllEvents(lFile);
+            Files.delete(lFile);
+        }
+        final Map<String, RecordedEvent> lByCell = new HashMap<>();
+        for (final RecordedEvent lEvent : lEvents) {
+            if (lEvent.getEventType().getName().equals("app.CellEdit")) lByCell.put(lEvent.getString("cellRef"), lEvent);
+        }
+        assertEquals(false, lByCell.get("A1").getBoolean("succeeded"), "malformed edit");
+        assertEquals(0, lByCell.get("A1").getInt("dependents"), "dependents of a malformed edit");
+        assertEquals(true, lByCell.get("R1C1").getBoolean("succeeded"), "edit");
+        assertEquals(2, lByCell.get("R1C1").getInt("dependents"), "dependents of an edit");
+    }
+
+    /**
+     * Tests that shrinking the sheet empties the cells cut off at once, recalculating the formulas referring to
+     * them, and that growing it again does not bring them back
+     */
+    @Test
+    public void testShrinkAndGrow() {
+        this.iSheet.setCellInstructions("5", "R8C1");
+        this.iSheet.setCellInstructions("7", "R1C4");
+        this.iSheet.setCellInstructions("=R8C1+R1C4+1", "R1C1");
+        final List<Map<String, String>> lEdits = new ArrayList<>();
+        this.iSheet.addEditListener(lEdits::add);
+
+        this.iSheet.setRowCount(5);
+        this.iSheet.setColumnCount(3);
+        assertEquals(1d, this.iSheet.getCellValue("R1C1"), "formula referring to cut off cells");
+        assertEquals(2, lEdits.size(), "edits emptying the cut off cells");
+        assertTrue(lEdits.get(0).containsKey("R8C1") && lEdits.get(1).containsKey("R1C4"), "cut off cells");
+
+        assertNull(this.iSheet.getCellValue("R8C1"), "cut off cell");
+        assertNull(this.iSheet.getCellInstructions(0, 3), "cut off cell");
+        assertEquals(2, lEdits.size(), "edits after reading");
+
+        this.iSheet.setRowCount(10);
+        this.iSheet.setColumnCount(4);
+        assertNull(this.iSheet.getCellValue("R8C1"), "cell after growing the sheet");
+        assertEquals(1d, this.iSheet.getCellValue("R1C1"), "formula after growing the sheet");
+        this.iSheet.setCellInstructions("2", "R8C1");
+        assertEquals(3d, this.iSheet.getCellValue("R1C1"), "formula after editing a cell back in the sheet");
+    }
+
+    /**
+     * Tests that columns of one arithmetic formula, evaluated at once, give the values the formulas give one cell
+     * at a time, as they do while a recalculation listener times each cell
+     */
+    @Test
+    public void testColumnRunsMatchCells() {
+        final SpreadsheetGraph lTimed = new SpreadsheetGraph(ROWS, 4);
+        lTimed.addRecalcListener(new RecalcListener() { });
+        final Map<String, String> lInstructions = new HashMap<>();
+        for (int lRow = 1; lRow <= ROWS; lRow++) {
+            //Cells that are not a number, and zeros to divide by and raise to negative powers
+            lInstructions.put("R" + lRow + "C1", lRow % 97 == 0 ? "text" : String.valueOf(lRow % 13));
+            lInstructions.put("R" + lRow + "C2", String.valueOf(lRow % 5 - 1));
+            if (lRow == 1) continue;
+            lInstructions.put("R" + lRow + "C3", "=R" + lRow + "C1/R" + lRow + "C2+R" + (lRow - 1) + "C1^0");
+            lInstructions.put("R" + lRow + "C4", "=R" + lRow + "C3*2-R" + lRow + "C1^R" + lRow + "C2");
+        }
+        assertThrows(IllegalArgumentException.class, () -> this.iSheet.setCellInstructions(lInstructions),
+                "divisions by zero");
+        assertThrows(IllegalArgumentException.class, () -> lTimed.setCellInstructions(lInstructions),
+                "divisions by zero, one cell at a time");
+        assertSameValues(lTimed, "after setting the cells");
+
+        final Map<String, String> lEdits = new HashMap<>();
+        for (int lRow = 1; lRow <= ROWS; lRow++) lEdits.put("R" + lRow + "C1", String.valueOf(lRow % 11 + 0.5));
+        for (int lRow = 1; lRow <= ROWS; lRow += 485) lEdits.put("R" + lRow + "C2", "text");
+        assertThrows(IllegalArgumentException.class, () -> this.iSheet.setCellInstructions(lEdits), "edit");
+        assertThrows(IllegalArgumentException.class, () -> lTimed.setCellInstructions(lEdits), "edit, one at a time");
+        assertSameValues(lTimed, "after editing the first two columns");
+        assertEquals(this.iSheet.getCellValue("R10C1") / -1 + 1, this.iSheet.getCellValue("R10C3"), "one formula");
+    }
+
+    /**
+     * Tests that ranges written far past the edge of a small sheet read only the cells the sheet holds, in the
+     * sheet and in an overlay over it, and that a range too large to read by position is refused
+     */
+    @Test
+    public void testRangesPastTheSheet() {
+        final SpreadsheetGraph lSmall = new SpreadsheetGraph(10, 10);
+        final Map<String, String> lInstructions = new HashMap<>();
+        for (int lRow = 1; lRow <= 10; lRow++) lInstructions.put("R" + lRow + "C2", String.valueOf(lRow));
+        lInstructions.put("R3C3", "4");
+        lInstructions.put("R1C1", "=SUM(R1C2:R5000000C2)");
+        lInstructions.put("R2C1", "=SUM(R2C2:R70000C70000)");
+        lInstructions.put("R3C1", "=SUM(R11C1:R90000C9)");
+        lSmall.setCellInstructions(lInstructions);
+        assertEquals(55d, lSmall.getCellValue("R1C1"), "column far past the sheet");
+        assertEquals(58d, lSmall.getCellValue("R2C1"), "block of more cells than an int counts");
+        assertEquals(0d, lSmall.getCellValue("R3C1"), "block wholly past the sheet");
+
+        //Each edit reads the ranges again, which would look up millions of cells if every cell were read
+        for (int lEdit = 1; lEdit <= 200; lEdit++) lSmall.setCellInstructions(String.valueOf(lEdit), "R10C2");
+        assertEquals(245d, lSmall.getCellValue("R1C1"), "column after the edits");
+        assertEquals(248d, lSmall.getCellValue("R2C1"), "block after the edits");
+
+        final SheetOverlay lOverlay = new SheetOverlay(lSmall);
+        lOverlay.setCellInstructions("100", "R5C5");
+        lOverlay.setCellInstructions("", "R3C3");
+        assertEquals(344d, lOverlay.getCellValue("R2C1"), "block in an overlay");
+        assertEquals(248d, lSmall.getCellValue("R2C1"), "block in the sheet under the overlay");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> lSmall.setCellInstructions("=VLOOKUP(1, R2C2:R70000C70000, 2)", "R4C1"),
+                "lookup into a range too large to read by position");
+    }
+
+    //Helper method that checks every cell of the sheet has the value it has in another sheet
+    private void assertSameValues(final SpreadsheetGraph pOther, final String pMessage) {
+        for (int lRow = 1; lRow <= ROWS; lRow++) {
+            for (int lColumn = 1; lColumn <= 4; lColumn++) {
+                final String lCell = "R" + lRow + "C" + lColumn;
+                assertEquals(pOther.getCellValue(lCell), this.iSheet.getCellValue(lCell), lCell + " " + pMessage);
+            }
+        }
+    }
+}
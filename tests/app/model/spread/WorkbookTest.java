@@ -0,0 +1,178 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the workbook: formulas of one sheet referring to the cells and ranges of another.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class WorkbookTest {
+    private static final int ROWS = 8000; // as many formulas over one table as a large sheet has
+
+    private Workbook iWorkbook;
+    private SpreadsheetGraph iInputs;
+    private SpreadsheetGraph iReport;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iWorkbook = new Workbook();
+        this.iInputs = this.iWorkbook.addSheet("INPUTS", ROWS, 2);
+        this.iReport = this.iWorkbook.addSheet("REPORT", ROWS, 2);
+    }
+
+    /**
+     * Tests that thousands of lookups into a table of another sheet are linked, and follow an edit of the table
+     */
+    @Test
+    public void testLookupsIntoAnotherSheet() {
+        final Map<String, String> lInputs = new HashMap<>();
+        final Map<String, String> lReport = new HashMap<>();
+        for (int lRow = 1; lRow <= ROWS; lRow++) {
+            lInputs.put("R" + lRow + "C1", String.valueOf(lRow));
+            lInputs.put("R" + lRow + "C2", String.valueOf(lRow * 2));
+            lReport.put("R" + lRow + "C1", "=VLOOKUP(" + lRow + ", INPUTS!R1C1:R" + ROWS + "C2, 2, 0)");
+            lReport.put("R" + lRow + "C2", "=SUM(INPUTS!R" + Math.max(1, lRow - 9) + "C2:R" + lRow + "C2)");
+        }
+        this.iInputs.setCellInstructions(lInputs);
+        this.iReport.setCellInstructions(lReport);
+        assertEquals(ROWS * 2d, this.iReport.getCellValue("R" + ROWS + "C1"), "last lookup");
+        assertEquals(6d, this.iReport.getCellValue("R2C2"), "second total");
+
+        this.iInputs.setCellInstructions("-1", "R4000C2");
+        assertEquals(-1d, this.iReport.getCellValue("R4000C1"), "lookup of the edited row");
+        assertEquals(6d, this.iReport.getCellValue("R2C2"), "total before the edited row");
+        assertEquals(72089d, this.iReport.getCellValue("R4009C2"), "total through the edited row");
+        assertEquals(80110d, this.iReport.getCellValue("R4010C2"), "total after the edited row");
+    }
+
+    /**
+     * Tests that shrinking a sheet recalculates the formulas of other sheets referring to the cells cut off
+     */
+    @Test
+    public void testShrinkReferencedSheet() {
+        this.iInputs.setCellInstructions("4", "R8000C1");
+        this.iInputs.setCellInstructions("1", "R1C1");
+        this.iReport.setCellInstructions("=INPUTS!R8000C1*2", "R1C1");
+        this.iReport.setCellInstructions("=SUM(INPUTS!R1C1:R8000C1)", "R2C1");
+
+        this.iInputs.setRowCount(100);
+        assertEquals(0d, this.iReport.getCellValue("R1C1"), "formula referring to a cut off cell");
+        assertEquals(1d, this.iReport.getCellValue("R2C1"), "formula over a range cut off in part");
+        assertNull(this.iInputs.getCellValue("R8000C1"), "cut off cell");
+    }
+
+    /**
+     * Tests that an edit recalculates only the formulas of other sheets referring to the cells it changed, and the
+     * cells depending on those
+     */
+    @Test
+    public void testRecalculatesAffectedOnly() {
+        final Map<String, String> lReport = new HashMap<>();
+        for (int lRow = 1; lRow <= 100; lRow++) {
+            this.iInputs.setCellInstructions(String.valueOf(lRow), "R" + lRow + "C1");
+            lReport.put("R" + lRow + "C1", "=INPUTS!R" + lRow + "C1*2");
+            lReport.put("R" + lRow + "C2", "=R" + lRow + "C1+1");
+        }
+        this.iReport.setCellInstructions(lReport);
+        final List<String> lEvaluated = new ArrayList<>();
+        this.iReport.addRecalcListener(new RecalcListener() {
+            @Override
+            public void formulaEvaluated(final String pRowColumn, final String pInstructions,
+                                         final long pParseNanos, final long pEvalNanos, final boolean pCached) {
+                lEvaluated.add(pRowColumn);
+            }
+        });
+
+        this.iInputs.setCellInstructions("50", "R5C1");
+        assertEquals(List.of("R5C1", "R5C2"), lEvaluated, "formulas recalculated");
+        assertEquals(101d, this.iReport.getCellValue("R5C2"), "formula depending on the other sheet");
+        assertEquals(13d, this.iReport.getCellValue("R6C2"), "formula of another row");
+    }
+
+    /**
+     * Tests that a cycle through the cells of two sheets is rejected, leaving its cells and the cells depending on
+     * them empty rather than with the values of the last round, until the cycle is broken
+     */
+    @Test
+    public void testCycleAcrossSheets() {
+        this.iReport.setCellInstructions("=R2C1*2", "R3C1");
+        this.iInputs.setCellInstructions("=REPORT!R2C1+1", "R3C1");
+        this.iInputs.setCellInstructions("=R3C1+1", "R4C1");
+        assertThrows(IllegalArgumentException.class, () -> this.iReport.setCellInstructions("=INPUTS!R3C1+1", "R2C1"),
+                "cycle across sheets");
+        assertNull(this.iInputs.getCellValue("R3C1"), "cell of the cycle");
+        assertNull(this.iReport.getCellValue("R2C1"), "cell of the cycle in the edited sheet");
+        assertNull(this.iInputs.getCellValue("R4C1"), "cell depending on the cycle");
+        assertNull(this.iReport.getCellValue("R3C1"), "cell depending on the cycle in the edited sheet");
+
+        this.iReport.setCellInstructions("5", "R2C1");
+        assertEquals(6d, this.iInputs.getCellValue("R3C1"), "cell once the cycle is broken");
+        assertEquals(7d, this.iInputs.getCellValue("R4C1"), "cell depending on it");
+        assertEquals(10d, this.iReport.getCellValue("R3C1"), "cell depending on the edited cell");
+    }
+
+    /**
+     * Tests that formulas naming a sheet fail once it is removed or renamed, and read it again once a sheet of that
+     * name is added back
+     */
+    @Test
+    public void testRemoveRenameAndAddBack() {
+        this.iInputs.setCellInstructions("4", "R1C1");
+        this.iReport.setCellInstructions("=INPUTS!R1C1*2", "R1C1");
+        assertThrows(IllegalArgumentException.class, () -> this.iReport.setCellInstructions("=SOURCE!R1C1+1", "R2C1"),
+                "formula naming a sheet not yet added");
+
+        assertThrows(IllegalArgumentException.class, () -> this.iWorkbook.removeSheet("inputs"), "removed sheet");
+        assertNull(this.iReport.getCellValue("R1C1"), "formula naming the removed sheet");
+        this.iInputs.setCellInstructions("6", "R1C1");
+        assertNull(this.iReport.getCellValue("R1C1"), "formula after editing the removed sheet");
+
+        this.iWorkbook.addSheet("Source", this.iInputs);
+        assertEquals(7d, this.iReport.getCellValue("R2C1"), "formula naming the sheet's new name");
+        assertNull(this.iReport.getCellValue("R1C1"), "formula naming the sheet's old name");
+
+        assertThrows(IllegalArgumentException.class, () -> this.iWorkbook.removeSheet("SOURCE"), "renamed sheet");
+        this.iWorkbook.addSheet("INPUTS", this.iInputs);
+        assertSame(this.iInputs, this.iWorkbook.getSheet("inputs"), "sheet added back");
+        assertEquals(12d, this.iReport.getCellValue("R1C1"), "formula naming the sheet added back");
+        this.iInputs.setCellInstructions("1", "R1C1");
+        assertEquals(2d, this.iReport.getCellValue("R1C1"), "formula after editing the sheet added back");
+    }
+
+    /**
+     * Tests that inserting rows into a sheet rewrites the formulas of other sheets to follow the cells that moved,
+     * and grows the ranges spanning the inserted rows
+     */
+    @Test
+    public void testInsertRowsOfReferencedSheet() {
+        for (int lRow = 1; lRow <= 10; lRow++) this.iInputs.setCellInstructions(String.valueOf(lRow), "R" + lRow + "C1");
+        this.iReport.setCellInstructions("=INPUTS!R5C1*2", "R1C1");
+        this.iReport.setCellInstructions("=SUM(INPUTS!R1C1:R10C1)", "R2C1");
+        this.iReport.setCellInstructions("=INPUTS!R2C1", "R3C1");
+
+        this.iInputs.insertRows(3, 2);
+        assertEquals("=INPUTS!R7C1*2", this.iReport.getCellInstructions(0, 0), "formula after the inserted rows");
+        assertEquals("=SUM(INPUTS!R1C1:R12C1)", this.iReport.getCellInstructions(1, 0), "range over the rows");
+        assertEquals("=INPUTS!R2C1", this.iReport.getCellInstructions(2, 0), "formula before the inserted rows");
+        assertEquals(10d, this.iReport.getCellValue("R1C1"), "formula following its cell");
+
+        this.iInputs.setCellInstructions("20", "R3C1");
+        this.iInputs.setCellInstructions("30", "R7C1");
+        assertEquals(60d, this.iReport.getCellValue("R1C1"), "formula after editing the moved cell");
+        assertEquals(100d, this.iReport.getCellValue("R2C1"), "range after editing an inserted row");
+    }
+}
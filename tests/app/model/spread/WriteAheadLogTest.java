@@ -0,0 +1,122 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the write-ahead log: recovering a sheet from its snapshot and log, including a log whose last record was
+ * torn or corrupted by a crash.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class WriteAheadLogTest {
+    private Path iDirectory;
+    private SpreadsheetGraph iSheet;
+
+    /**
+     * Sets up the testing environment
+     * @throws IOException if the directory could not be created
+     */
+    @BeforeEach
+    public void setup() throws IOException {
+        this.iDirectory = Files.createTempDirectory("autosave");
+        this.iSheet = new SpreadsheetGraph(20, 3);
+        this.iSheet.setCellInstructions("2", "R1C1");
+    }
+
+    /**
+     * Deletes the directory saved into
+     * @throws IOException if the directory could not be deleted
+     */
+    @AfterEach
+    public void cleanup() throws IOException {
+        try (Stream<Path> lPaths = Files.walk(this.iDirectory)) {
+            for (final Path path : lPaths.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+
+    /**
+     * Tests that the snapshot and every logged edit, resize and row insertion are recovered and evaluated
+     * @throws Exception if the log could not be written or read
+     */
+    @Test
+    public void testRecoverEverything() throws Exception {
+        try (WriteAheadLog lLog = new WriteAheadLog(this.iSheet, this.iDirectory)) {
+            this.iSheet.setCellInstructions("=R1C1*10", "R2C1");
+            this.iSheet.setRowCount(30);
+            this.iSheet.setCellInstructions("5", "R30C2");
+            this.iSheet.insertRows(1, 2);
+            lLog.flush();
+        }
+
+        final SpreadsheetGraph lRecovered = WriteAheadLog.recover(this.iDirectory, 1, 1);
+        assertEquals(32, lRecovered.getRowCount(), "rows after the resize and insertion");
+        assertEquals("=R3C1*10", lRecovered.getCellInstructions(3, 0), "formula moved by the insertion");
+        assertEquals(20d, lRecovered.getCellValue("R4C1"), "formula evaluated");
+        assertEquals(5d, lRecovered.getCellValue("R32C2"), "cell moved by the insertion");
+        assertNull(lRecovered.getCellValue("R30C2"), "cell moved from");
+    }
+
+    /**
+     * Tests that a last record cut short, as by a crash in the middle of writing it, is dropped and the records
+     * before it are recovered
+     * @throws Exception if the log could not be written or read
+     */
+    @Test
+    public void testRecoverTornTail() throws Exception {
+        this.logTwoEdits();
+        try (FileChannel lLog = FileChannel.open(this.iDirectory.resolve(WriteAheadLog.LOG_FILE),
+                StandardOpenOption.WRITE)) {
+            lLog.truncate(lLog.size() - 3);
+        }
+
+        final SpreadsheetGraph lRecovered = WriteAheadLog.recover(this.iDirectory, 1, 1);
+        assertEquals(3d, lRecovered.getCellValue("R1C2"), "edit before the torn record");
+        assertNull(lRecovered.getCellInstructions(1, 1), "edit of the torn record");
+    }
+
+    /**
+     * Tests that a last record whose bytes no longer match its checksum is dropped, as is anything after it
+     * @throws Exception if the log could not be written or read
+     */
+    @Test
+    public void testRecoverCorruptTail() throws Exception {
+        this.logTwoEdits();
+        final Path lPath = this.iDirectory.resolve(WriteAheadLog.LOG_FILE);
+        try (FileChannel lLog = FileChannel.open(lPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer lLast = ByteBuffer.allocate(1);
+            lLog.read(lLast, lLog.size() - 1);
+            lLast.put(0, (byte) (lLast.get(0) ^ 1)).rewind();
+            lLog.write(lLast, lLog.size() - 1);
+            //Garbage after the corrupted record, as a crash can leave
+            lLog.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 4, 1, 2, 3, 4, 'E'}), lLog.size());
+        }
+
+        final SpreadsheetGraph lRecovered = WriteAheadLog.recover(this.iDirectory, 1, 1);
+        assertEquals(3d, lRecovered.getCellValue("R1C2"), "edit before the corrupt record");
+        assertNull(lRecovered.getCellInstructions(1, 1), "edit of the corrupt record");
+        assertEquals(2d, lRecovered.getCellValue("R1C1"), "snapshot");
+    }
+
+    //Helper method that logs two edits, the second one last in the log
+    private void logTwoEdits() throws Exception {
+        try (WriteAheadLog lLog = new WriteAheadLog(this.iSheet, this.iDirectory)) {
+            this.iSheet.setCellInstructions("=R1C1+1", "R1C2");
+            lLog.flush();
+            this.iSheet.setCellInstructions("=R1C2*4", "R2C2");
+            lLog.flush();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package app.model.spread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the XLSX file: a sheet written then read back has the same instructions and values.
+ *
+ * @author Roman Bureacov
+ * @version 2025-06
+ */
+public class XlsxFileTest {
+    private static final int ROWS = 300;
+    private static final int COLUMNS = 30; // past column Z, whose letters run to two
+
+    private SpreadsheetGraph iSheet;
+
+    /**
+     * Sets up the testing environment
+     */
+    @BeforeEach
+    public void setup() {
+        this.iSheet = new SpreadsheetGraph(ROWS, COLUMNS);
+    }
+
+    /**
+     * Tests that numbers, text needing escapes, formulas over cells and ranges, and failing formulas are read back
+     * as they were written
+     * @throws IOException if the workbook could not be written or read
+     */
+    @Test
+    public void testWriteThenRead() throws IOException {
+        final Map<String, String> lInstructions = new HashMap<>();
+        for (int lRow = 1; lRow <= ROWS; lRow++) {
+            lInstructions.put("R" + lRow + "C1", String.valueOf(lRow * 0.25));
+            lInstructions.put("R" + lRow + "C" + COLUMNS, "=R" + lRow + "C1*2+R1C28");
+        }
+        lInstructions.put("R1C28", "-7");
+        lInstructions.put("R2C2", "a < b & \"c\" > 'd'");
+        lInstructions.put("R3C2", "=SUM(R1C1:R" + ROWS + "C1)");
+        lInstructions.put("R4C2", "=R1C1/R5C2");
+        final Path lPath = Files.createTempFile("sheet", ".xlsx");
+        try {
+            assertThrows(IllegalArgumentException.class, () -> this.iSheet.setCellInstructions(lInstructions),
+                    "division by zero");
+            XlsxFile.write(this.iSheet, lPath);
+            final SpreadsheetGraph lRead = XlsxFile.read(lPath);
+
+            assertEquals(ROWS, lRead.getRowCount(), "rows read");
+            assertEquals(COLUMNS, lRead.getColumnCount(), "columns read");
+            for (int lRow = 0; lRow < ROWS; lRow++) {
+                for (int lColumn = 0; lColumn < COLUMNS; lColumn++) {
+                    final String lCell = "R" + (lRow + 1) + "C" + (lColumn + 1);
+                    assertEquals(this.iSheet.getCellInstructions(lRow, lColumn), lRead.getCellInstructions(lRow, lColumn),
+                            "instructions of " + lCell);
+                    assertEquals(this.iSheet.getCellValue(lCell), lRead.getCellValue(lCell), "value of " + lCell);
+                }
+            }
+            assertNull(lRead.getCellValue("R4C2"), "failing formula");
+
+            lRead.setCellInstructions("1", "R1C28");
+            assertEquals(ROWS * 0.5d + 1, lRead.getCellValue("R" + ROWS + "C" + COLUMNS), "formula after an edit");
+        } finally {
+            Files.delete(lPath);
+        }
+    }
+}